@@ -0,0 +1,94 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.Assistant;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.HybridContentRetriever;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.PackingContentAggregator;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.ParallelRetrievalRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Assistant.chat} de bout en bout, comme dans {@code TestRagavecRecuperation} (retriever
+ * hybride sur le PDF + recherche Web en parallèle, agrégation compacte), avec des modèles simulés.
+ * Avec les latences à {@code fixed:0}, on mesure le coût propre de l'application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class AssistantBenchmark {
+
+    @Param({"fixed:0", "lognormal:800:3000"})
+    String chatLatency;
+
+    @Param({"fixed:0", "lognormal:60:250"})
+    String embeddingLatency;
+
+    @Param({"fixed:0", "lognormal:400:1500"})
+    String webLatency;
+
+    private Assistant assistant;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkCorpus corpus = new BenchmarkCorpus();
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        List<String> ids = store.addAll(corpus.langchainEmbeddings, corpus.langchainSegments);
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(BenchmarkCorpus.DIMENSION,
+                LatencyDistribution.parse(embeddingLatency), Duration.ZERO);
+
+        ContentRetriever retriever = HybridContentRetriever.builder()
+                .lexicalIndex(Bm25Index.builder().addAll(ids, corpus.langchainSegments).build())
+                .embeddingStore(store)
+                .embeddingModel(embeddingModel)
+                .maxResults(2)
+                .build();
+        ContentRetriever webRetriever = WebSearchContentRetriever.builder()
+                .webSearchEngine(new StubWebSearchEngine(LatencyDistribution.parse(webLatency)))
+                .maxResults(3)
+                .build();
+
+        assistant = AiServices.builder(Assistant.class)
+                .chatLanguageModel(new StubChatModel(LatencyDistribution.parse(chatLatency), Duration.ZERO))
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .queryRouter(ParallelRetrievalRouter.builder()
+                                .delegate(new DefaultQueryRouter(retriever, webRetriever))
+                                .source(retriever, "pdf", Duration.ofSeconds(3))
+                                .source(webRetriever, "web", Duration.ofSeconds(2))
+                                .build())
+                        .contentAggregator(PackingContentAggregator.builder().build())
+                        .build())
+                .build();
+    }
+
+    @Benchmark
+    public String chat() {
+        next = (next + 1) % BenchmarkCorpus.QUERIES.size();
+        return assistant.chat(BenchmarkCorpus.QUERIES.get(next));
+    }
+}
@@ -0,0 +1,44 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.OffsetRecursiveSplitter;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PdfTextExtractor;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Corpus commun aux benchmarks JMH : les PDF du projet, découpés comme à l'ingestion,
+ * avec des embeddings déterministes ({@link StubEmbeddingModel}, sans réseau).
+ */
+final class BenchmarkCorpus {
+
+    static final Path LANGCHAIN_PDF = Path.of("src/main/resources/langchain_langchain4j.pdf");
+    static final Path GENIE_PDF = Path.of("src/main/resources/Génie Logiciel et Qualité du Logiciel.pdf");
+    static final int DIMENSION = 768;
+
+    static final List<String> QUERIES = List.of(
+            "Qu'est-ce que le RAG ?", "EmbeddingStoreContentRetriever", "Comment créer un AiServices ?",
+            "Quels sont les critères de qualité logicielle ?", "Qu'est-ce qu'un test unitaire ?",
+            "Comment fonctionne un QueryRouter ?", "Définir la maintenabilité", "ChatMemory et fenêtre de messages");
+
+    final Document langchain;
+    final Document genie;
+    final List<TextSegment> langchainSegments;
+    final List<TextSegment> genieSegments;
+    final List<Embedding> langchainEmbeddings;
+    final List<Embedding> genieEmbeddings;
+
+    BenchmarkCorpus() {
+        langchain = PdfTextExtractor.shared().load(LANGCHAIN_PDF);
+        genie = PdfTextExtractor.shared().load(GENIE_PDF);
+        OffsetRecursiveSplitter splitter = OffsetRecursiveSplitter.recursive(500, 100);
+        langchainSegments = splitter.split(langchain);
+        genieSegments = splitter.split(genie);
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(DIMENSION);
+        langchainEmbeddings = embeddingModel.embedAll(langchainSegments).content();
+        genieEmbeddings = embeddingModel.embedAll(genieSegments).content();
+    }
+}
@@ -0,0 +1,93 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import ma.emsi.cherqui.td4_de_cherqui.memory.ChatMemoryLog;
+import ma.emsi.cherqui.td4_de_cherqui.memory.TokenBudgetChatMemory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare {@code MessageWindowChatMemory.withMaxMessages(10)} et {@link TokenBudgetChatMemory}
+ * sur une conversation RAG : tokens envoyés au modèle par tour, puis octets par session inactive.
+ */
+public class ChatMemoryBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int turns = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int idleSessions = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+
+        // 1. Tokens envoyés par tour
+        ChatMemory window = MessageWindowChatMemory.withMaxMessages(10);
+        TokenBudgetChatMemory.Metrics metrics = new TokenBudgetChatMemory.Metrics();
+        ChatMemory budget = TokenBudgetChatMemory.builder().maxTokens(2_000).metrics(metrics).build();
+        long windowTokens = 0;
+        for (int turn = 0; turn < turns; turn++) {
+            for (ChatMemory memory : List.of(window, budget)) {
+                memory.add(augmentedQuestion(turn));
+                List<ChatMessage> prompt = memory.messages();
+                if (memory == window) {
+                    windowTokens += tokens(prompt);
+                }
+                memory.add(AiMessage.from("Réponse " + turn + " : " + "le RAG combine recherche et génération. ".repeat(6)));
+            }
+        }
+        System.out.printf("Fenêtre de 10 messages : %.0f tokens/tour en moyenne%n", (double) windowTokens / turns);
+        System.out.println("Budget de 2000 tokens   : " + metrics);
+
+        // 2. Sessions inactives : tas (store en mémoire) vs journal sur disque
+        Path dir = Files.createTempDirectory("chat-memory-bench");
+        try (ChatMemoryLog log = new ChatMemoryLog(dir.resolve("sessions.log"))) {
+            List<ChatMemory> onHeap = new ArrayList<>(idleSessions);
+            long before = usedHeap();
+            for (int s = 0; s < idleSessions; s++) {
+                ChatMemory memory = MessageWindowChatMemory.withMaxMessages(10);
+                fill(memory);
+                onHeap.add(memory);
+            }
+            long heapBytes = usedHeap() - before;
+
+            for (int s = 0; s < idleSessions; s++) {
+                fill(TokenBudgetChatMemory.builder().id("session-" + s).store(log).build());
+            }
+            System.out.printf("Sessions inactives sur le tas : ~%d octets/session (%d sessions)%n",
+                    heapBytes / idleSessions, onHeap.size());
+            System.out.println("Journal compressé            : " + log.stats());
+        }
+    }
+
+    private static void fill(ChatMemory memory) {
+        for (int turn = 0; turn < 5; turn++) {
+            memory.add(augmentedQuestion(turn));
+            memory.add(AiMessage.from("Réponse " + turn + " : " + "le RAG combine recherche et génération. ".repeat(6)));
+        }
+    }
+
+    private static UserMessage augmentedQuestion(int turn) {
+        // Question + contexte injecté par le DefaultContentInjector (2 segments de ~500 caractères)
+        return UserMessage.from("Question " + turn + " sur LangChain4j ?"
+                + TokenBudgetChatMemory.DEFAULT_RETRIEVED_CONTENT_MARKER
+                + "Segment récupéré sur les embeddings et les retrievers. ".repeat(18));
+    }
+
+    private static long tokens(List<ChatMessage> messages) {
+        long chars = 0;
+        for (ChatMessage message : messages) {
+            chars += TokenBudgetChatMemory.textOf(message).length();
+        }
+        return 4L * messages.size() + chars / 4;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
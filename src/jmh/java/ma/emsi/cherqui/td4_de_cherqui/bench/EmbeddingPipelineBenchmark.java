@@ -0,0 +1,54 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.EmbeddingPipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare le débit (segments/s) de l'ancienne boucle {@code embed()} + {@code add()} segment
+ * par segment avec {@link EmbeddingPipeline}, contre un modèle local à latence injectée.
+ */
+public class EmbeddingPipelineBenchmark {
+
+    public static void main(String[] args) {
+        int nbSegments = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        // ~ latence d'un aller-retour HTTP vers l'API + coût marginal par segment
+        StubEmbeddingModel model = new StubEmbeddingModel(768, Duration.ofMillis(40), Duration.ofMillis(1));
+
+        List<TextSegment> segments = new ArrayList<>(nbSegments);
+        for (int i = 0; i < nbSegments; i++) {
+            segments.add(TextSegment.from("Segment de test numéro " + i + " sur le génie logiciel."));
+        }
+
+        // 1. Boucle actuelle : un appel réseau par segment
+        EmbeddingStore<TextSegment> serialStore = new InMemoryEmbeddingStore<>();
+        long start = System.nanoTime();
+        for (TextSegment segment : segments) {
+            Embedding embedding = model.embed(segment.text()).content();
+            serialStore.add(embedding, segment);
+        }
+        double serial = nbSegments / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("Boucle séquentielle      : %8.1f segments/s%n", serial);
+
+        // 2. Pipeline : lots + plusieurs lots en vol
+        for (int batchSize : new int[]{16, 64}) {
+            for (int concurrency : new int[]{1, 4, 8}) {
+                EmbeddingPipeline.Stats stats = EmbeddingPipeline.builder()
+                        .embeddingModel(model)
+                        .embeddingStore(new InMemoryEmbeddingStore<>())
+                        .batchSize(batchSize)
+                        .concurrency(concurrency)
+                        .build()
+                        .ingest(segments);
+                System.out.printf("Pipeline lot=%-3d vol=%-2d : %8.1f segments/s (x%.1f)%n",
+                        batchSize, concurrency, stats.segmentsPerSecond(), stats.segmentsPerSecond() / serial);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.PackedEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.VectorKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requêtes/s de la recherche exacte : {@code InMemoryEmbeddingStore} contre
+ * {@link PackedEmbeddingStore} en float32 et en int8 (+ re-classement).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EmbeddingStoreSearchBenchmark {
+
+    @Param({"10000", "100000"})
+    int vectors;
+
+    @Param({"768"})
+    int dimension;
+
+    private EmbeddingStore<TextSegment> inMemory;
+    private PackedEmbeddingStore packed;
+    private PackedEmbeddingStore quantized;
+    private EmbeddingSearchRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        List<Embedding> embeddings = new ArrayList<>(vectors);
+        List<TextSegment> segments = new ArrayList<>(vectors);
+        for (int i = 0; i < vectors; i++) {
+            embeddings.add(Embedding.from(randomVector(random)));
+            segments.add(TextSegment.from("segment " + i));
+        }
+
+        inMemory = new InMemoryEmbeddingStore<>();
+        inMemory.addAll(embeddings, segments);
+        packed = new PackedEmbeddingStore();
+        packed.addAll(embeddings, segments);
+        quantized = new PackedEmbeddingStore(PackedEmbeddingStore.Mode.INT8, 4);
+        quantized.addAll(embeddings, segments);
+
+        request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(randomVector(random)))
+                .maxResults(10)
+                .build();
+
+        System.out.printf("%nSIMD=%s | octets parcourus/vecteur : float32 %d, int8 %d"
+                        + " | octets occupés/vecteur : float32 %d, int8 %d (InMemory : float[] + objets)%n",
+                VectorKernels.SIMD, packed.scannedBytesPerVector(), quantized.scannedBytesPerVector(),
+                packed.bytesPerVector(), quantized.bytesPerVector());
+    }
+
+    private float[] randomVector(SplittableRandom random) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> inMemory() {
+        return inMemory.search(request);
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> packedFloat32() {
+        return packed.search(request);
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> packedInt8() {
+        return quantized.search(request);
+    }
+}
@@ -0,0 +1,154 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.web.search.WebSearchEngine;
+import ma.emsi.cherqui.td4_de_cherqui.Assistant;
+import ma.emsi.cherqui.td4_de_cherqui.engine.ModelProvider;
+import ma.emsi.cherqui.td4_de_cherqui.engine.RagConfig;
+import ma.emsi.cherqui.td4_de_cherqui.engine.RagEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Compare plusieurs configurations du {@link RagEngine} avec les mêmes modèles simulés :
+ * ingestion à froid (index vide), démarrage à chaud (index présent), puis débit et latence de
+ * service avec {@code threads} clients simultanés.
+ * <p>
+ * Pour chaque configuration, l'index et les caches sont placés dans un répertoire temporaire
+ * (le texte extrait des PDF reste en cache : l'ingestion mesurée est découpage + embeddings) ;
+ * la mémoire est désactivée (questions indépendantes) et la réponse n'est pas diffusée en
+ * streaming (la génération est simulée de toute façon).
+ * <p>
+ * Arguments : {@code [threads] [requêtes] [configuration...]} (par défaut 8, 400 et les profils
+ * de {@code rag/}).
+ */
+public class EngineBenchmark {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Comment fonctionne le RetrievalAugmentor ?", "Qu'est-ce qu'un EmbeddingStore ?",
+            "AiServices builder", "Quelle est la différence entre test unitaire et test d'intégration ?",
+            "DocumentSplitters.recursive", "Qu'est-ce que la qualité logicielle ?",
+            "Comment configurer ChatMemory ?", "Quelles sont les métriques de complexité ?");
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        List<String> configs = args.length > 2 ? List.of(args).subList(2, args.length)
+                : List.of("rag/naif.properties", "rag/recuperation.properties", "rag/routage.properties",
+                "rag/pas-rag.properties");
+
+        System.out.printf("%-30s %10s %10s %10s %9s %9s%n",
+                "configuration", "froid", "chaud", "req/s", "p50", "p99");
+        for (String location : configs) {
+            Path workDir = Files.createTempDirectory("rag-engine-bench");
+            try {
+                RagConfig config = RagConfig.from(overridden(location, workDir));
+
+                // 1. Ingestion à froid, puis redémarrage sur l'index écrit
+                long start = System.nanoTime();
+                new StubModels().engine(config).close();
+                double coldMillis = (System.nanoTime() - start) / 1e6;
+                start = System.nanoTime();
+                RagEngine engine = new StubModels().engine(config);
+                double warmMillis = (System.nanoTime() - start) / 1e6;
+
+                // 2. Service : threads clients, questions en boucle
+                try (engine) {
+                    Assistant assistant = engine.assistant();
+                    for (String question : QUESTIONS) {
+                        assistant.chat(question);
+                    }
+                    long[] latencies = new long[requests];
+                    List<Future<?>> futures = new ArrayList<>();
+                    start = System.nanoTime();
+                    try (ExecutorService clients = Executors.newFixedThreadPool(threads)) {
+                        for (int r = 0; r < requests; r++) {
+                            int request = r;
+                            futures.add(clients.submit(() -> {
+                                long t0 = System.nanoTime();
+                                assistant.chat(QUESTIONS.get(request % QUESTIONS.size()));
+                                latencies[request] = System.nanoTime() - t0;
+                            }));
+                        }
+                        for (Future<?> future : futures) {
+                            future.get();
+                        }
+                    }
+                    double qps = requests / ((System.nanoTime() - start) / 1e9);
+                    System.out.printf("%-30s %7.0f ms %7.0f ms %10.1f %6.1f ms %6.1f ms%n",
+                            location, coldMillis, warmMillis, qps,
+                            HnswBenchmark.percentile(latencies, 50), HnswBenchmark.percentile(latencies, 99));
+                }
+            } finally {
+                delete(workDir);
+            }
+        }
+    }
+
+    /**
+     * Configuration d'origine, avec index et caches dans {@code workDir}, sans mémoire ni streaming.
+     */
+    private static Properties overridden(String location, Path workDir) {
+        Properties properties = RagConfig.properties(location);
+        properties.setProperty("index.dir", workDir.resolve("index").toString());
+        properties.setProperty("cache.query-embeddings", workDir.resolve("query-embeddings.log").toString());
+        if (!properties.getProperty("web.cache.file", "").isBlank()) {
+            properties.setProperty("web.cache.file", workDir.resolve("web-search.log").toString());
+        }
+        properties.setProperty("memory", "none");
+        properties.setProperty("chat.streaming", "false");
+        return properties;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Modèles simulés avec des latences proches des API distantes.
+     */
+    private static final class StubModels implements ModelProvider {
+
+        RagEngine engine(RagConfig config) {
+            return RagEngine.builder().config(config).modelProvider(this).build();
+        }
+
+        @Override
+        public ChatLanguageModel chatModel(RagConfig.Models models) {
+            return new StubChatModel(LatencyDistribution.parse("lognormal:400:1500"), Duration.ofMillis(20));
+        }
+
+        @Override
+        public StreamingChatLanguageModel streamingChatModel(RagConfig.Models models) {
+            return new FakeStreamingChatModel(Duration.ofMillis(300), Duration.ofMillis(10),
+                    "Réponse simulée pour le benchmark du moteur RAG.");
+        }
+
+        @Override
+        public EmbeddingModel embeddingModel(RagConfig.Models models) {
+            return new StubEmbeddingModel(768, LatencyDistribution.parse("lognormal:40:150"), Duration.ofMillis(1));
+        }
+
+        @Override
+        public WebSearchEngine webSearchEngine() {
+            return new StubWebSearchEngine(LatencyDistribution.parse("lognormal:800:2500"));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PdfTextExtractor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Extraction des deux PDF de {@code src/main/resources} : chargement actuel (un parseur Tika neuf
+ * par fichier) contre {@link PdfTextExtractor} à froid (parseurs réutilisés) puis à chaud (cache de texte).
+ * Rapporte pages/s et octets alloués par page.
+ */
+public class ExtractionBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        List<Path> pdfs = List.of(
+                Path.of("src/main/resources/langchain_langchain4j.pdf"),
+                Path.of("src/main/resources/Génie Logiciel et Qualité du Logiciel.pdf"));
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        // Référence : un ApacheTikaDocumentParser (et son parseur Tika) par fichier
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        for (int r = 0; r < rounds; r++) {
+            for (Path pdf : pdfs) {
+                FileSystemDocumentLoader.loadDocument(pdf, new ApacheTikaDocumentParser());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        allocated = allocatedBytes() - allocated;
+
+        // Pages comptées par l'extracteur, sans cache
+        PdfTextExtractor cold = PdfTextExtractor.builder().cacheDir(null).poolSize(1).build();
+        for (int r = 0; r < rounds; r++) {
+            for (Path pdf : pdfs) {
+                cold.extract(pdf, page -> {
+                });
+            }
+        }
+        PdfTextExtractor.Stats coldStats = cold.stats();
+        System.out.printf("Tika, parseur neuf par fichier : %.1f pages/s, %.0f Ko alloués/page%n",
+                coldStats.pages() / seconds, allocated / 1024.0 / coldStats.pages());
+        System.out.println("Extracteur, parseur réutilisé  : " + coldStats);
+
+        // Cache de texte : le premier passage remplit le cache, les suivants ne parsent plus
+        Path cacheDir = Files.createTempDirectory("extraction-bench");
+        PdfTextExtractor cached = PdfTextExtractor.builder().cacheDir(cacheDir).poolSize(1).build();
+        for (Path pdf : pdfs) {
+            cached.extract(pdf, page -> {
+            });
+        }
+        PdfTextExtractor warm = PdfTextExtractor.builder().cacheDir(cacheDir).poolSize(1).build();
+        for (int r = 0; r < rounds; r++) {
+            for (Path pdf : pdfs) {
+                warm.extract(pdf, page -> {
+                });
+            }
+        }
+        long cacheBytes;
+        try (var files = Files.list(cacheDir)) {
+            cacheBytes = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+        System.out.println("Extracteur, texte en cache     : " + warm.stats());
+        System.out.printf("Cache disque : %.1f Ko pour %d PDF%n", cacheBytes / 1024.0, pdfs.size());
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
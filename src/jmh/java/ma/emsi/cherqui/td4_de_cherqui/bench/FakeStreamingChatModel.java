@@ -0,0 +1,47 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * {@link StreamingChatLanguageModel} local : après {@code firstTokenLatency} (traitement du prompt),
+ * émet une réponse fixe mot par mot, un token toutes les {@code tokenLatency}.
+ */
+public class FakeStreamingChatModel implements StreamingChatLanguageModel {
+
+    private final Duration firstTokenLatency;
+    private final Duration tokenLatency;
+    private final String[] tokens;
+
+    public FakeStreamingChatModel(Duration firstTokenLatency, Duration tokenLatency, String answer) {
+        this.firstTokenLatency = firstTokenLatency;
+        this.tokenLatency = tokenLatency;
+        this.tokens = answer.split("(?<= )");
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        Thread.ofVirtual().start(() -> {
+            try {
+                StubEmbeddingModel.sleep(firstTokenLatency);
+                StringBuilder answer = new StringBuilder();
+                for (int i = 0; i < tokens.length; i++) {
+                    if (i > 0) {
+                        StubEmbeddingModel.sleep(tokenLatency);
+                    }
+                    answer.append(tokens[i]);
+                    handler.onNext(tokens[i]);
+                }
+                handler.onComplete(Response.from(AiMessage.from(answer.toString())));
+            } catch (RuntimeException e) {
+                handler.onError(e);
+            }
+        });
+    }
+}
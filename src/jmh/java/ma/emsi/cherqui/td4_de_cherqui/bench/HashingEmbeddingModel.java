@@ -0,0 +1,58 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link EmbeddingModel} local et déterministe dont les vecteurs ont un sens : chaque terme
+ * ({@link Bm25Tokenizer}) est projeté par hachage signé sur une dimension, puis le vecteur est
+ * normalisé. Deux textes qui partagent des termes sont proches, ce qui rend les métriques de
+ * récupération significatives sans API (contrairement à {@link StubEmbeddingModel}).
+ */
+public class HashingEmbeddingModel implements EmbeddingModel {
+
+    private final int dimension;
+
+    public HashingEmbeddingModel(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            embeddings.add(Embedding.from(vectorOf(segment.text())));
+        }
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    private float[] vectorOf(String text) {
+        float[] vector = new float[dimension];
+        for (String term : Bm25Tokenizer.tokenize(text)) {
+            int hash = term.hashCode() * 0x9E3779B9;
+            vector[Math.floorMod(hash, dimension)] += (hash & 0x10000) == 0 ? 1 : -1;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < dimension; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+}
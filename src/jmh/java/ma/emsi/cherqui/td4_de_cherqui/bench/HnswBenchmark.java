@@ -0,0 +1,113 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.HnswEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Rappel@k et latence de {@link HnswEmbeddingStore} comparés à la recherche exhaustive
+ * d'{@link InMemoryEmbeddingStore}, sur des vecteurs synthétiques de dimension 768.
+ * <p>
+ * Arguments : {@code [nbVecteurs] [nbRequêtes]} (par défaut 50 000 et 200).
+ */
+public class HnswBenchmark {
+
+    private static final int DIMENSION = 768;
+    private static final int K = 10;
+
+    public static void main(String[] args) {
+        int nbVectors = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int nbQueries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        SplittableRandom random = new SplittableRandom(42);
+
+        // Vecteurs groupés autour de centres, plus réalistes que du bruit uniforme
+        List<float[]> centers = new ArrayList<>();
+        for (int c = 0; c < 100; c++) {
+            centers.add(gaussian(random, 1.0f, null));
+        }
+        List<Embedding> embeddings = new ArrayList<>(nbVectors);
+        List<TextSegment> segments = new ArrayList<>(nbVectors);
+        for (int i = 0; i < nbVectors; i++) {
+            embeddings.add(Embedding.from(gaussian(random, 0.3f, centers.get(random.nextInt(centers.size())))));
+            segments.add(TextSegment.from("segment " + i));
+        }
+        List<Embedding> queries = new ArrayList<>(nbQueries);
+        for (int q = 0; q < nbQueries; q++) {
+            queries.add(Embedding.from(gaussian(random, 0.3f, centers.get(random.nextInt(centers.size())))));
+        }
+
+        EmbeddingStore<TextSegment> exact = new InMemoryEmbeddingStore<>();
+        exact.addAll(embeddings, segments);
+
+        long start = System.nanoTime();
+        HnswEmbeddingStore hnsw = HnswEmbeddingStore.builder().m(16).efConstruction(200).build();
+        hnsw.addAll(embeddings, segments);
+        System.out.printf("Construction HNSW : %d vecteurs en %d ms%n", nbVectors, (System.nanoTime() - start) / 1_000_000);
+
+        // Vérité terrain + latence exhaustive
+        List<Set<String>> truth = new ArrayList<>(nbQueries);
+        long[] exactLatencies = new long[nbQueries];
+        for (int q = 0; q < nbQueries; q++) {
+            long t0 = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> matches = exact.search(request(queries.get(q))).matches();
+            exactLatencies[q] = System.nanoTime() - t0;
+            truth.add(texts(matches));
+        }
+        System.out.printf("Exhaustif          : rappel@%d 1.000, p50 %7.3f ms, p99 %7.3f ms%n",
+                K, percentile(exactLatencies, 50), percentile(exactLatencies, 99));
+
+        for (int ef : new int[]{16, 32, 64, 128, 256}) {
+            hnsw.setEfSearch(ef);
+            long[] latencies = new long[nbQueries];
+            double recall = 0;
+            for (int q = 0; q < nbQueries; q++) {
+                long t0 = System.nanoTime();
+                List<EmbeddingMatch<TextSegment>> matches = hnsw.search(request(queries.get(q))).matches();
+                latencies[q] = System.nanoTime() - t0;
+                Set<String> found = texts(matches);
+                found.retainAll(truth.get(q));
+                recall += (double) found.size() / K;
+            }
+            System.out.printf("HNSW efSearch=%-4d : rappel@%d %.3f, p50 %7.3f ms, p99 %7.3f ms%n",
+                    ef, K, recall / nbQueries, percentile(latencies, 50), percentile(latencies, 99));
+        }
+    }
+
+    private static EmbeddingSearchRequest request(Embedding query) {
+        return EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(K).build();
+    }
+
+    private static Set<String> texts(List<EmbeddingMatch<TextSegment>> matches) {
+        Set<String> texts = new HashSet<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            texts.add(match.embedded().text());
+        }
+        return texts;
+    }
+
+    private static float[] gaussian(SplittableRandom random, float sigma, float[] center) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (center == null ? 0 : center[i]) + (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+
+    static double percentile(long[] nanos, int percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
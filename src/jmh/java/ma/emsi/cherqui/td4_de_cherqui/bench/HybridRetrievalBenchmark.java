@@ -0,0 +1,94 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.HybridContentRetriever;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Index BM25 et retriever hybride sur {@code langchain_langchain4j.pdf} : temps de construction,
+ * empreinte mémoire, latence des requêtes (lexical seul, hybride, hybride avec embedding trop lent).
+ */
+public class HybridRetrievalBenchmark {
+
+    private static final List<String> QUERIES = List.of(
+            "EmbeddingStoreContentRetriever", "DocumentSplitters.recursive", "AiServices builder",
+            "ChatMemory", "RetrievalAugmentor", "Comment fonctionne le RAG ?",
+            "Qu'est-ce qu'un embedding ?", "QueryRouter", "InMemoryEmbeddingStore", "streaming");
+
+    public static void main(String[] args) {
+        Path pdf = Path.of(args.length > 0 ? args[0] : "src/main/resources/langchain_langchain4j.pdf");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Document document = FileSystemDocumentLoader.loadDocument(pdf, new ApacheTikaDocumentParser());
+        List<TextSegment> segments = DocumentSplitters.recursive(500, 100).split(document);
+        // Corpus répliqué pour des mesures significatives
+        int copies = Math.max(1, 20_000 / Math.max(1, segments.size()));
+
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(768);
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        Bm25Index.Builder builder = Bm25Index.builder();
+        long textBytes = 0;
+        long buildNanos = 0;
+        for (int c = 0; c < copies; c++) {
+            List<String> ids = store.addAll(embeddingModel.embedAll(segments).content(), segments);
+            long start = System.nanoTime();
+            builder.addAll(ids, segments);
+            buildNanos += System.nanoTime() - start;
+            for (TextSegment segment : segments) {
+                textBytes += segment.text().getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        long start = System.nanoTime();
+        Bm25Index index = builder.build();
+        buildNanos += System.nanoTime() - start;
+
+        System.out.printf("Corpus : %d segments (%d copies), %.1f Mo de texte%n",
+                index.size(), copies, textBytes / 1e6);
+        System.out.printf("BM25   : construit en %.0f ms, %d termes, %.1f Mo (%.0f %% du texte)%n",
+                buildNanos / 1e6, index.terms(), index.memoryBytes() / 1e6, 100.0 * index.memoryBytes() / textBytes);
+
+        long[] lexical = new long[rounds * QUERIES.size()];
+        int i = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String query : QUERIES) {
+                long t0 = System.nanoTime();
+                index.search(query, 20);
+                lexical[i++] = System.nanoTime() - t0;
+            }
+        }
+        System.out.printf("Lexical seul            : p50 %.2f ms, p99 %.2f ms%n",
+                HnswBenchmark.percentile(lexical, 50), HnswBenchmark.percentile(lexical, 99));
+
+        run("Hybride (embedding 30 ms)", index, store,
+                new StubEmbeddingModel(768, Duration.ofMillis(30), Duration.ZERO), rounds / 10);
+        run("Hybride (embedding 3 s)  ", index, store,
+                new StubEmbeddingModel(768, Duration.ofSeconds(3), Duration.ZERO), 1);
+    }
+
+    private static void run(String label, Bm25Index index, InMemoryEmbeddingStore<TextSegment> store,
+                            StubEmbeddingModel embeddingModel, int rounds) {
+        HybridContentRetriever retriever = HybridContentRetriever.builder()
+                .lexicalIndex(index)
+                .embeddingStore(store)
+                .embeddingModel(embeddingModel)
+                .embeddingTimeout(Duration.ofMillis(200))
+                .build();
+        for (int r = 0; r < rounds; r++) {
+            for (String query : QUERIES) {
+                retriever.retrieve(Query.from(query));
+            }
+        }
+        System.out.println(label + " : " + retriever.stats());
+    }
+}
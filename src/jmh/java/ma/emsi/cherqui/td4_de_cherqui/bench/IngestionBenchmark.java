@@ -0,0 +1,73 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.OffsetRecursiveSplitter;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PdfTextExtractor;
+import ma.emsi.cherqui.td4_de_cherqui.store.HnswEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.PackedEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Étapes d'ingestion hors réseau : extraction du PDF (sans cache), découpage, insertion dans un store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class IngestionBenchmark {
+
+    @Param({"inmemory", "packed", "hnsw"})
+    String store;
+
+    private BenchmarkCorpus corpus;
+    private PdfTextExtractor extractor;
+    private OffsetRecursiveSplitter splitter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = new BenchmarkCorpus();
+        extractor = PdfTextExtractor.builder().cacheDir(null).poolSize(1).build();
+        splitter = OffsetRecursiveSplitter.recursive(500, 100);
+    }
+
+    @Benchmark
+    public int parse() {
+        return extractor.extract(BenchmarkCorpus.LANGCHAIN_PDF, page -> {
+        });
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return splitter.split(corpus.langchain);
+    }
+
+    @Benchmark
+    public EmbeddingStore<TextSegment> insert() {
+        EmbeddingStore<TextSegment> target = switch (store) {
+            case "inmemory" -> new InMemoryEmbeddingStore<>();
+            case "packed" -> new PackedEmbeddingStore();
+            case "hnsw" -> HnswEmbeddingStore.builder().build();
+            default -> throw new IllegalArgumentException(store);
+        };
+        target.addAll(corpus.langchainEmbeddings, corpus.langchainSegments);
+        return target;
+    }
+}
@@ -0,0 +1,85 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * Distribution de latence des modèles simulés, tirée avec une graine fixe (runs reproductibles).
+ * <pre>
+ * fixed:200            toujours 200 ms
+ * uniform:100:300      uniforme entre 100 et 300 ms
+ * lognormal:200:800    log-normale de médiane 200 ms et de p99 800 ms
+ * </pre>
+ */
+public final class LatencyDistribution {
+
+    private static final double Z_99 = 2.3263478740408408;
+
+    private final String spec;
+    private final Kind kind;
+    private final double a;
+    private final double b;
+    private final SplittableRandom random;
+
+    private enum Kind { FIXED, UNIFORM, LOGNORMAL }
+
+    private LatencyDistribution(String spec, Kind kind, double a, double b, long seed) {
+        this.spec = spec;
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public static LatencyDistribution fixed(Duration latency) {
+        return parse("fixed:" + latency.toMillis());
+    }
+
+    public static LatencyDistribution parse(String spec) {
+        return parse(spec, 42);
+    }
+
+    public static LatencyDistribution parse(String spec, long seed) {
+        String[] parts = spec.split(":");
+        try {
+            return switch (parts[0]) {
+                case "fixed" -> new LatencyDistribution(spec, Kind.FIXED, Double.parseDouble(parts[1]), 0, seed);
+                case "uniform" -> new LatencyDistribution(spec, Kind.UNIFORM,
+                        Double.parseDouble(parts[1]), Double.parseDouble(parts[2]), seed);
+                case "lognormal" -> {
+                    double median = Double.parseDouble(parts[1]);
+                    double p99 = Double.parseDouble(parts[2]);
+                    double mu = Math.log(median);
+                    yield new LatencyDistribution(spec, Kind.LOGNORMAL, mu, (Math.log(p99) - mu) / Z_99, seed);
+                }
+                default -> throw new IllegalArgumentException("Distribution inconnue : " + spec);
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Distribution invalide : " + spec, e);
+        }
+    }
+
+    public Duration next() {
+        double millis;
+        synchronized (random) {
+            millis = switch (kind) {
+                case FIXED -> a;
+                case UNIFORM -> a + random.nextDouble() * (b - a);
+                case LOGNORMAL -> Math.exp(a + b * gaussian());
+            };
+        }
+        return Duration.ofNanos((long) (millis * 1_000_000));
+    }
+
+    private double gaussian() {
+        // Box-Muller
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,100 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Quota simulé d'une API distante : au plus {@code requestsPerSecond} appels acceptés sur toute
+ * fenêtre glissante d'une seconde. Au-delà, l'appel échoue aussitôt comme chez Gemini
+ * ({@code 429 RESOURCE_EXHAUSTED}) ; un lot d'embeddings compte pour un appel.
+ */
+public class QuotaLimitedApi {
+
+    private final int requestsPerSecond;
+    private final ArrayDeque<Long> window = new ArrayDeque<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public QuotaLimitedApi(int requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public ChatLanguageModel chatModel(ChatLanguageModel delegate) {
+        return new LimitedChatModel(delegate);
+    }
+
+    public EmbeddingModel embeddingModel(EmbeddingModel delegate) {
+        return new LimitedEmbeddingModel(delegate);
+    }
+
+    /**
+     * Compte un appel, ou le refuse si le quota de la dernière seconde est atteint.
+     */
+    public void acquire() {
+        synchronized (window) {
+            long now = System.nanoTime();
+            while (!window.isEmpty() && now - window.peekFirst() >= 1_000_000_000L) {
+                window.pollFirst();
+            }
+            if (window.size() >= requestsPerSecond) {
+                rejected.incrementAndGet();
+                throw new RuntimeException("HTTP 429 RESOURCE_EXHAUSTED : quota de "
+                        + requestsPerSecond + " requêtes/s dépassé");
+            }
+            window.addLast(now);
+        }
+        accepted.incrementAndGet();
+    }
+
+    public long accepted() {
+        return accepted.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    private final class LimitedChatModel implements ChatLanguageModel {
+
+        private final ChatLanguageModel delegate;
+
+        private LimitedChatModel(ChatLanguageModel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            acquire();
+            return delegate.generate(messages);
+        }
+    }
+
+    private final class LimitedEmbeddingModel implements EmbeddingModel {
+
+        private final EmbeddingModel delegate;
+
+        private LimitedEmbeddingModel(EmbeddingModel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            acquire();
+            return delegate.embedAll(segments);
+        }
+
+        @Override
+        public int dimension() {
+            return delegate.dimension();
+        }
+    }
+}
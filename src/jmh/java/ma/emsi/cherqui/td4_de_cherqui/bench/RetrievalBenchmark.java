@@ -0,0 +1,128 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.HybridContentRetriever;
+import ma.emsi.cherqui.td4_de_cherqui.routing.EmbeddingQueryRouter;
+import ma.emsi.cherqui.td4_de_cherqui.store.HnswEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.PackedEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recherche dans les stores, retrievers (vectoriel, hybride BM25) et routage local par embeddings,
+ * avec un modèle d'embedding simulé de latence {@code embeddingLatency}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RetrievalBenchmark {
+
+    @Param({"inmemory", "packed", "hnsw"})
+    String store;
+
+    @Param({"fixed:0"})
+    String embeddingLatency;
+
+    private EmbeddingStore<TextSegment> embeddingStore;
+    private EmbeddingSearchRequest request;
+    private ContentRetriever vectorRetriever;
+    private ContentRetriever hybridRetriever;
+    private EmbeddingQueryRouter router;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkCorpus corpus = new BenchmarkCorpus();
+        embeddingStore = switch (store) {
+            case "inmemory" -> new InMemoryEmbeddingStore<>();
+            case "packed" -> new PackedEmbeddingStore();
+            case "hnsw" -> HnswEmbeddingStore.builder().build();
+            default -> throw new IllegalArgumentException(store);
+        };
+        List<String> ids = embeddingStore.addAll(corpus.langchainEmbeddings, corpus.langchainSegments);
+
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(BenchmarkCorpus.DIMENSION,
+                LatencyDistribution.parse(embeddingLatency), Duration.ZERO);
+        request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embeddingModel.embed(BenchmarkCorpus.QUERIES.getFirst()).content())
+                .maxResults(3)
+                .build();
+
+        vectorRetriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .embeddingModel(embeddingModel)
+                .maxResults(3)
+                .build();
+        hybridRetriever = HybridContentRetriever.builder()
+                .lexicalIndex(Bm25Index.builder().addAll(ids, corpus.langchainSegments).build())
+                .embeddingStore(embeddingStore)
+                .embeddingModel(embeddingModel)
+                .maxResults(3)
+                .build();
+
+        InMemoryEmbeddingStore<TextSegment> genieStore = new InMemoryEmbeddingStore<>();
+        genieStore.addAll(corpus.genieEmbeddings, corpus.genieSegments);
+        router = EmbeddingQueryRouter.builder()
+                .embeddingModel(embeddingModel)
+                .route(vectorRetriever, "Documents sur LangChain et LangChain4j", null)
+                .route(EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(genieStore)
+                        .embeddingModel(embeddingModel)
+                        .build(), "Documents sur le génie et la qualité logicielle", null)
+                .minSimilarity(-1)
+                .cacheSize(0) // on mesure la décision, pas le cache
+                .build();
+    }
+
+    private Query nextQuery() {
+        next = (next + 1) % BenchmarkCorpus.QUERIES.size();
+        return Query.from(BenchmarkCorpus.QUERIES.get(next));
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> search() {
+        return embeddingStore.search(request);
+    }
+
+    @Benchmark
+    public List<Content> vectorRetrieve() {
+        return vectorRetriever.retrieve(nextQuery());
+    }
+
+    @Benchmark
+    public List<Content> hybridRetrieve() {
+        return hybridRetriever.retrieve(nextQuery());
+    }
+
+    @Benchmark
+    public Collection<ContentRetriever> route() {
+        return router.route(nextQuery());
+    }
+}
@@ -0,0 +1,126 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiEmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.cherqui.td4_de_cherqui.cache.CachingEmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PersistentIngestor;
+import ma.emsi.cherqui.td4_de_cherqui.routing.EmbeddingQueryRouter;
+import ma.emsi.cherqui.td4_de_cherqui.store.MappedEmbeddingStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Précision et latence du routage sur le jeu étiqueté {@code routing-queries.tsv} :
+ * routeur LLM ({@link LanguageModelQueryRouter}) contre {@link EmbeddingQueryRouter},
+ * seul puis avec repli sur le LLM. Une question étiquetée {@code aucun} est bien routée si aucun retriever
+ * n'est choisi (pas de RAG) ; la précision est aussi donnée séparément pour ces questions hors sujet.
+ * Nécessite {@code GEMINI_API_KEY}.
+ */
+public class RoutingEvaluation {
+
+    public static void main(String[] args) throws IOException {
+        String apiKey = System.getenv("GEMINI_API_KEY");
+        if (apiKey == null || apiKey.isBlank()) {
+            throw new IllegalStateException(
+                    "La clé API Gemini n'est pas définie dans la variable d'environnement GEMINI_API_KEY"
+            );
+        }
+
+        ChatLanguageModel chatModel = GoogleAiGeminiChatModel.builder()
+                .apiKey(apiKey)
+                .modelName("gemini-2.5-flash")
+                .temperature(0.0)
+                .timeout(Duration.ofSeconds(60))
+                .build();
+        EmbeddingModel embeddingModel = GoogleAiEmbeddingModel.builder()
+                .apiKey(apiKey)
+                .modelName("text-embedding-004")
+                .build();
+        // Sans cache persistant : on veut mesurer le coût réel d'un embedding de requête
+        EmbeddingModel queryEmbeddingModel = CachingEmbeddingModel.builder()
+                .delegate(embeddingModel)
+                .modelName("text-embedding-004")
+                .build();
+
+        MappedEmbeddingStore storeLangchain = PersistentIngestor.loadOrIngest(
+                Path.of("src/main/resources/langchain_langchain4j.pdf"), embeddingModel, "text-embedding-004");
+        MappedEmbeddingStore storeGenie = PersistentIngestor.loadOrIngest(
+                Path.of("src/main/resources/Génie Logiciel et Qualité du Logiciel.pdf"), embeddingModel, "text-embedding-004");
+
+        // Les retrievers ne sont jamais interrogés ici : seule l'identité compte
+        ContentRetriever langchain = query -> List.of();
+        ContentRetriever genie = query -> List.of();
+        Map<ContentRetriever, String> labels = Map.of(langchain, "langchain", genie, "genie");
+        Map<ContentRetriever, String> descriptions = Map.of(
+                langchain, "Documents sur Langchain and Langchain4j.",
+                genie, "Documents sur Genie et Qualité Logiciel");
+
+        QueryRouter llmRouter = new LanguageModelQueryRouter(chatModel, descriptions);
+        QueryRouter localOnly = EmbeddingQueryRouter.builder()
+                .embeddingModel(queryEmbeddingModel)
+                .route(langchain, descriptions.get(langchain), storeLangchain.centroid())
+                .route(genie, descriptions.get(genie), storeGenie.centroid())
+                .cacheSize(0)
+                .build();
+        EmbeddingQueryRouter hybrid = EmbeddingQueryRouter.builder()
+                .embeddingModel(queryEmbeddingModel)
+                .route(langchain, descriptions.get(langchain), storeLangchain.centroid())
+                .route(genie, descriptions.get(genie), storeGenie.centroid())
+                .fallback(llmRouter)
+                .cacheSize(0)
+                .build();
+
+        List<String[]> labelled = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of("src/jmh/resources/routing-queries.tsv"))) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                labelled.add(line.split("\t"));
+            }
+        }
+
+        evaluate("LLM (LanguageModelQueryRouter)", llmRouter, labelled, labels);
+        evaluate("Embeddings seuls", localOnly, labelled, labels);
+        evaluate("Embeddings + repli LLM", hybrid, labelled, labels);
+        System.out.println("Repli : " + hybrid.stats());
+    }
+
+    private static void evaluate(String name, QueryRouter router, List<String[]> labelled,
+                                 Map<ContentRetriever, String> labels) {
+        int correct = 0;
+        int offTopic = 0;
+        int offTopicCorrect = 0;
+        long[] latencies = new long[labelled.size()];
+        for (int i = 0; i < labelled.size(); i++) {
+            String[] row = labelled.get(i);
+            long start = System.nanoTime();
+            Collection<ContentRetriever> routed = router.route(Query.from(row[0]));
+            latencies[i] = System.nanoTime() - start;
+            boolean expectedNone = "aucun".equals(row[1]);
+            boolean ok = expectedNone
+                    ? routed.isEmpty()
+                    : routed.size() == 1 && row[1].equals(labels.get(routed.iterator().next()));
+            if (ok) {
+                correct++;
+            }
+            if (expectedNone) {
+                offTopic++;
+                offTopicCorrect += ok ? 1 : 0;
+            }
+        }
+        System.out.printf("%-32s : précision %5.1f %% (hors sujet %d/%d) | p50 %7.1f ms | p99 %7.1f ms%n", name,
+                100.0 * correct / labelled.size(), offTopicCorrect, offTopic,
+                HnswBenchmark.percentile(latencies, 50), HnswBenchmark.percentile(latencies, 99));
+    }
+}
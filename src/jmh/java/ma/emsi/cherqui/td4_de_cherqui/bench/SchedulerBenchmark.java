@@ -0,0 +1,125 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.scheduling.RequestScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Questions interactives (10/s) pendant une ingestion massive, contre une API d'embedding à quota
+ * ({@link QuotaLimitedApi}, 429 au-delà) dont la latence a une longue queue : appels directs,
+ * {@link RequestScheduler}, puis {@link RequestScheduler} avec requêtes couvertes. Chaque
+ * scénario est joué avec et sans ingestion.
+ * <p>
+ * Arguments : {@code [quota/s] [threads d'ingestion] [questions]} (par défaut 20, 16 et 80).
+ */
+public class SchedulerBenchmark {
+
+    private static final int BATCH = 16;
+
+    public static void main(String[] args) throws Exception {
+        int quota = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int ingestionThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int questions = args.length > 2 ? Integer.parseInt(args[2]) : 80;
+
+        System.out.printf("%-26s %9s %9s %8s %12s %8s%n",
+                "scénario", "p50", "p99", "erreurs", "segments/s", "429");
+        for (int threads : new int[]{ingestionThreads, 0}) {
+            String load = threads > 0 ? " (ingestion)" : "";
+            run("direct" + load, quota, null, threads, questions);
+            run("ordonnanceur" + load, quota, scheduler(quota, null), threads, questions);
+            run("couverture" + load, quota, scheduler(quota, Duration.ofMillis(200)), threads, questions);
+        }
+    }
+
+    private static RequestScheduler scheduler(int quota, Duration hedgeAfter) {
+        // Débit un peu sous le quota et petite rafale : la fenêtre glissante du serveur n'est jamais dépassée
+        return RequestScheduler.builder()
+                .name("embedding")
+                .ratePerSecond(quota * 0.9)
+                .burst(2)
+                .maxConcurrency(16)
+                .latencyTarget(Duration.ofSeconds(2))
+                .hedgeAfter(hedgeAfter)
+                .build();
+    }
+
+    private static void run(String label, int quota, RequestScheduler scheduler, int ingestionThreads,
+                            int questions) throws Exception {
+        QuotaLimitedApi api = new QuotaLimitedApi(quota);
+        EmbeddingModel model = api.embeddingModel(
+                new StubEmbeddingModel(768, LatencyDistribution.parse("lognormal:80:1000"), Duration.ZERO));
+        EmbeddingModel interactive = scheduler == null ? model
+                : scheduler.embeddingModel(model, RequestScheduler.Priority.INTERACTIVE);
+        EmbeddingModel bulk = scheduler == null ? model
+                : scheduler.embeddingModel(model, RequestScheduler.Priority.BULK);
+
+        List<TextSegment> batch = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(TextSegment.from("Segment " + i + " d'un document en cours d'ingestion."));
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong segments = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long[] latencies = new long[questions];
+        Arrays.fill(latencies, -1);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // 1. Ingestion : lots de segments enchaînés sans pause
+            for (int t = 0; t < ingestionThreads; t++) {
+                executor.execute(() -> {
+                    while (!stop.get()) {
+                        try {
+                            bulk.embedAll(batch);
+                            segments.addAndGet(BATCH);
+                        } catch (RuntimeException e) {
+                            // Appel direct refusé : le client d'ingestion recommence aussitôt
+                        }
+                    }
+                });
+            }
+
+            // 2. Questions à intervalle régulier, chacune sur son thread
+            List<Future<?>> pending = new ArrayList<>();
+            for (int q = 0; q < questions; q++) {
+                int question = q;
+                pending.add(executor.submit(() -> {
+                    long t0 = System.nanoTime();
+                    try {
+                        interactive.embed("Question " + question + " sur LangChain4j");
+                        latencies[question] = System.nanoTime() - t0;
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                }));
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+            stop.set(true);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] answered = Arrays.stream(latencies).filter(latency -> latency >= 0).toArray();
+        System.out.printf("%-26s %6.0f ms %6.0f ms %8d %12.0f %8d%n", label,
+                answered.length == 0 ? Double.NaN : HnswBenchmark.percentile(answered, 50),
+                answered.length == 0 ? Double.NaN : HnswBenchmark.percentile(answered, 99),
+                errors.get(), segments.get() / seconds, api.rejected());
+        if (scheduler != null) {
+            System.out.println("    " + scheduler.stats());
+            scheduler.close();
+        }
+    }
+}
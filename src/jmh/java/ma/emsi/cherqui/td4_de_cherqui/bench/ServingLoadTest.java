@@ -0,0 +1,79 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.server.AdmissionControlledChatModel;
+import ma.emsi.cherqui.td4_de_cherqui.server.AdmissionRejectedException;
+import ma.emsi.cherqui.td4_de_cherqui.server.ChatService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test de charge du mode serveur ({@link ChatService} + {@link AdmissionControlledChatModel}) contre
+ * un LLM local : débit et latence de queue quand le nombre d'utilisateurs simultanés augmente.
+ * Chaque utilisateur a sa session et enchaîne ses questions sur un thread virtuel.
+ */
+public class ServingLoadTest {
+
+    public static void main(String[] args) {
+        int questionsPerUser = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int maxLlmCalls = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(384, Duration.ofMillis(20), Duration.ZERO);
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            segments.add(TextSegment.from("Segment " + i + " sur LangChain4j, le RAG et le génie logiciel."));
+        }
+        store.addAll(embeddingModel.embedAll(segments).content(), segments);
+        var augmentor = DefaultRetrievalAugmentor.builder()
+                .contentRetriever(EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(store)
+                        .embeddingModel(embeddingModel)
+                        .maxResults(2)
+                        .build())
+                .build();
+
+        System.out.printf("%-12s %12s %10s %10s %10s%n", "utilisateurs", "requêtes/s", "p50 (ms)", "p99 (ms)", "rejets");
+        for (int users : new int[]{1, 8, 32, 128, 512}) {
+            var chatModel = new AdmissionControlledChatModel(
+                    new StubChatModel(Duration.ofMillis(200)), maxLlmCalls, Duration.ofSeconds(5));
+            ChatService service = ChatService.builder()
+                    .chatModel(chatModel)
+                    .retrievalAugmentor(augmentor)
+                    .maxSessions(users)
+                    .build();
+
+            long[] latencies = new long[users * questionsPerUser];
+            AtomicLong next = new AtomicLong();
+            long start = System.nanoTime();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int u = 0; u < users; u++) {
+                    String sessionId = "user-" + u;
+                    executor.execute(() -> {
+                        for (int q = 0; q < questionsPerUser; q++) {
+                            long t0 = System.nanoTime();
+                            try {
+                                service.chat(sessionId, "Question " + q + " : comment fonctionne le RAG ?");
+                            } catch (AdmissionRejectedException e) {
+                                // compté par le modèle, latence gardée : c'est ce que voit l'utilisateur
+                            }
+                            latencies[(int) next.getAndIncrement()] = System.nanoTime() - t0;
+                        }
+                    });
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-12d %12.1f %10.1f %10.1f %10d%n", users, latencies.length / seconds,
+                    HnswBenchmark.percentile(latencies, 50), HnswBenchmark.percentile(latencies, 99),
+                    chatModel.rejected());
+        }
+    }
+}
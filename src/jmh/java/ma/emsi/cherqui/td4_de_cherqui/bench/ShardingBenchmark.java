@@ -0,0 +1,140 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import ma.emsi.cherqui.td4_de_cherqui.store.ShardedEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Passage à l'échelle de {@link ShardedEmbeddingStore} : pour 1, 2, 4... cœurs (un shard et un
+ * thread de pool par cœur), débit d'ingestion avec autant d'écrivains concurrents, puis
+ * requêtes/s et latences d'un client unique. Les résultats sont comparés à ceux d'un seul shard
+ * (la recherche reste exacte).
+ * <p>
+ * Arguments : {@code [nbVecteurs] [nbRequêtes] [dimension]} (par défaut 100 000, 300 et 384) ;
+ * pour 1 000 000 de vecteurs, prévoir {@code -Xmx4g}.
+ */
+public class ShardingBenchmark {
+
+    private static final int K = 10;
+    private static final int CHUNK = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int nbVectors = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int nbQueries = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int dimension = args.length > 2 ? Integer.parseInt(args[2]) : 384;
+        int maxCores = Runtime.getRuntime().availableProcessors();
+
+        SplittableRandom random = new SplittableRandom(42);
+        float[][] centers = new float[100][];
+        for (int c = 0; c < centers.length; c++) {
+            centers[c] = gaussian(random, dimension, 1.0f, null);
+        }
+        List<EmbeddingSearchRequest> queries = new ArrayList<>(nbQueries);
+        for (int q = 0; q < nbQueries; q++) {
+            float[] query = gaussian(random, dimension, 0.3f, centers[random.nextInt(centers.length)]);
+            queries.add(EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(query)).maxResults(K).build());
+        }
+
+        List<Integer> coreCounts = new ArrayList<>();
+        for (int cores = 1; cores < maxCores; cores *= 2) {
+            coreCounts.add(cores);
+        }
+        coreCounts.add(maxCores);
+
+        System.out.printf("%,d vecteurs de dimension %d, %d requêtes top-%d%n", nbVectors, dimension, nbQueries, K);
+        List<List<String>> reference = null;
+        double referenceQps = 0;
+        for (int cores : coreCounts) {
+            ForkJoinPool pool = new ForkJoinPool(cores);
+            ShardedEmbeddingStore store = ShardedEmbeddingStore.builder().shards(cores).pool(pool).build();
+
+            // 1. Ingestion : un écrivain par cœur, chacun sur sa tranche de lots
+            long start = System.nanoTime();
+            ingest(store, cores, nbVectors, dimension, centers);
+            double ingestSeconds = (System.nanoTime() - start) / 1e9;
+
+            // 2. Recherche : échauffement puis mesure
+            for (int w = 0; w < Math.min(nbQueries, 50); w++) {
+                store.search(queries.get(w));
+            }
+            long[] latencies = new long[nbQueries];
+            List<List<String>> results = new ArrayList<>(nbQueries);
+            start = System.nanoTime();
+            for (int q = 0; q < nbQueries; q++) {
+                long t0 = System.nanoTime();
+                List<EmbeddingMatch<TextSegment>> matches = store.search(queries.get(q)).matches();
+                latencies[q] = System.nanoTime() - t0;
+                results.add(matches.stream().map(match -> match.embedded().text()).toList());
+            }
+            double qps = nbQueries / ((System.nanoTime() - start) / 1e9);
+
+            if (reference == null) {
+                reference = results;
+                referenceQps = qps;
+            }
+            double agreement = 0;
+            for (int q = 0; q < nbQueries; q++) {
+                List<String> found = new ArrayList<>(results.get(q));
+                found.retainAll(reference.get(q));
+                agreement += (double) found.size() / Math.max(1, reference.get(q).size());
+            }
+            System.out.printf("%2d cœurs : ingestion (génération comprise) %,9.0f vecteurs/s | %8.1f requêtes/s (x%.2f), p50 %7.3f ms,"
+                            + " p99 %7.3f ms | identiques à 1 shard : %.3f%n",
+                    cores, nbVectors / ingestSeconds, qps, qps / referenceQps,
+                    HnswBenchmark.percentile(latencies, 50), HnswBenchmark.percentile(latencies, 99),
+                    agreement / nbQueries);
+
+            pool.shutdown();
+            store = null;
+            System.gc();
+        }
+    }
+
+    private static void ingest(ShardedEmbeddingStore store, int writers, int nbVectors, int dimension,
+                               float[][] centers) throws Exception {
+        int chunks = (nbVectors + CHUNK - 1) / CHUNK;
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int chunk = writer; chunk < chunks; chunk += writers) {
+                        // Lot reproductible quel que soit le nombre d'écrivains
+                        SplittableRandom random = new SplittableRandom(1_000L + chunk);
+                        int from = chunk * CHUNK;
+                        int to = Math.min(nbVectors, from + CHUNK);
+                        List<Embedding> embeddings = new ArrayList<>(to - from);
+                        List<TextSegment> segments = new ArrayList<>(to - from);
+                        for (int i = from; i < to; i++) {
+                            float[] center = centers[random.nextInt(centers.length)];
+                            embeddings.add(Embedding.from(gaussian(random, dimension, 0.3f, center)));
+                            segments.add(TextSegment.from("segment " + i));
+                        }
+                        store.addAll(embeddings, segments);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    private static float[] gaussian(SplittableRandom random, int dimension, float sigma, float[] center) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (center == null ? 0 : center[i]) + (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,68 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.OffsetRecursiveSplitter;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PdfTextExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit de découpage d'environ 1 Mo de texte (les deux PDF du projet, répétés) :
+ * {@code DocumentSplitters.recursive(500, 100)} contre {@link OffsetRecursiveSplitter} séquentiel et parallèle.
+ * <p>
+ * Octets alloués par opération (donc par Mo de texte) : {@code mvn -Pjmh compile exec:exec
+ * -Djmh.args="SplitterBenchmark -prof gc"}, colonne {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+
+    @Param({"langchain4j", "offset-sequential", "offset-parallel"})
+    String splitter;
+
+    private DocumentSplitter documentSplitter;
+    private Document document;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1_000_000) {
+            for (String pdf : List.of("langchain_langchain4j.pdf", "Génie Logiciel et Qualité du Logiciel.pdf")) {
+                text.append(PdfTextExtractor.shared().load(Path.of("src/main/resources", pdf)).text()).append("\n\n");
+            }
+        }
+        document = Document.from(text.substring(0, 1_000_000));
+        documentSplitter = switch (splitter) {
+            case "langchain4j" -> DocumentSplitters.recursive(500, 100);
+            case "offset-sequential" -> OffsetRecursiveSplitter.builder().pool(null).build();
+            case "offset-parallel" -> OffsetRecursiveSplitter.builder().parallelThreshold(16 * 1024).build();
+            default -> throw new IllegalArgumentException(splitter);
+        };
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return documentSplitter.split(document);
+    }
+}
@@ -0,0 +1,60 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.StreamingAssistant;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.StreamingMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Montre le gain de latence perçue du streaming avec {@link FakeStreamingChatModel} :
+ * en mode bloquant, l'utilisateur ne voit rien avant le dernier token (TTFT = latence totale).
+ */
+public class StreamingLatencyBenchmark {
+
+    public static void main(String[] args) {
+        int nbRequests = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        // Réponse de ~200 tokens, 300 ms de traitement du prompt puis 20 ms par token
+        String answer = "Le RAG récupère des segments pertinents avant la génération. ".repeat(25);
+        FakeStreamingChatModel chatModel =
+                new FakeStreamingChatModel(Duration.ofMillis(300), Duration.ofMillis(20), answer);
+
+        // Récupération locale, faite avant le début de la génération
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(384, Duration.ofMillis(30), Duration.ZERO);
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            segments.add(TextSegment.from("Segment " + i + " sur LangChain4j et le RAG."));
+        }
+        store.addAll(embeddingModel.embedAll(segments).content(), segments);
+        ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .embeddingModel(embeddingModel)
+                .maxResults(2)
+                .build();
+
+        StreamingAssistant assistant = AiServices.builder(StreamingAssistant.class)
+                .streamingChatLanguageModel(chatModel)
+                .contentRetriever(retriever)
+                .build();
+
+        StreamingMetrics metrics = new StreamingMetrics();
+        for (int i = 0; i < nbRequests; i++) {
+            long start = System.nanoTime();
+            metrics.stream(start, assistant.chat("Question " + i + " : qu'est-ce que le RAG ?"), token -> {
+            });
+        }
+
+        StreamingMetrics.Stats stats = metrics.stats();
+        System.out.println("Streaming : " + stats);
+        System.out.printf("Bloquant  : premier affichage p50 %.1f ms (= latence totale)%n", stats.totalP50Millis());
+        System.out.printf("Gain de latence perçue : x%.1f%n", stats.totalP50Millis() / stats.ttftP50Millis());
+    }
+}
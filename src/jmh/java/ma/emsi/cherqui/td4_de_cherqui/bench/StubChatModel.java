@@ -0,0 +1,53 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import ma.emsi.cherqui.td4_de_cherqui.memory.TokenBudgetChatMemory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ChatLanguageModel} local pour les benchmarks : répond après une latence tirée dans une
+ * {@link LatencyDistribution}, plus un coût par caractère de prompt (traitement des tokens d'entrée).
+ */
+public class StubChatModel implements ChatLanguageModel {
+
+    private final LatencyDistribution latency;
+    private final Duration latencyPer1000Chars;
+    private final AtomicLong calls = new AtomicLong();
+
+    public StubChatModel(LatencyDistribution latency, Duration latencyPer1000Chars) {
+        this.latency = latency;
+        this.latencyPer1000Chars = latencyPer1000Chars;
+    }
+
+    public StubChatModel(Duration latency, Duration latencyPer1000Chars) {
+        this(LatencyDistribution.fixed(latency), latencyPer1000Chars);
+    }
+
+    public StubChatModel(Duration latency) {
+        this(latency, Duration.ZERO);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        calls.incrementAndGet();
+        int promptChars = 0;
+        for (ChatMessage message : messages) {
+            promptChars += TokenBudgetChatMemory.textOf(message).length();
+        }
+        StubEmbeddingModel.sleep(latency.next().plus(latencyPer1000Chars.multipliedBy(promptChars).dividedBy(1000)));
+        String answer = "Réponse simulée (" + messages.size() + " messages, " + promptChars + " caractères).";
+        // ~4 caractères par token
+        return Response.from(AiMessage.from(answer), new TokenUsage(promptChars / 4, answer.length() / 4));
+    }
+
+    public long calls() {
+        return calls.get();
+    }
+}
@@ -0,0 +1,74 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EmbeddingModel} local et déterministe pour les benchmarks : le vecteur dépend
+ * uniquement du texte, et chaque appel simule la latence réseau d'une API distante.
+ */
+public class StubEmbeddingModel implements EmbeddingModel {
+
+    private final int dimension;
+    private final LatencyDistribution latencyPerCall;
+    private final Duration latencyPerSegment;
+    private final AtomicLong calls = new AtomicLong();
+
+    public StubEmbeddingModel(int dimension, LatencyDistribution latencyPerCall, Duration latencyPerSegment) {
+        this.dimension = dimension;
+        this.latencyPerCall = latencyPerCall;
+        this.latencyPerSegment = latencyPerSegment;
+    }
+
+    public StubEmbeddingModel(int dimension, Duration latencyPerCall, Duration latencyPerSegment) {
+        this(dimension, LatencyDistribution.fixed(latencyPerCall), latencyPerSegment);
+    }
+
+    public StubEmbeddingModel(int dimension) {
+        this(dimension, Duration.ZERO, Duration.ZERO);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        calls.incrementAndGet();
+        sleep(latencyPerCall.next().plus(latencyPerSegment.multipliedBy(segments.size())));
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            embeddings.add(Embedding.from(vectorOf(segment.text())));
+        }
+        return Response.from(embeddings);
+    }
+
+    public long calls() {
+        return calls.get();
+    }
+
+    private float[] vectorOf(String text) {
+        SplittableRandom random = new SplittableRandom(text.hashCode());
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    static void sleep(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link WebSearchEngine} local pour les benchmarks (à la place de Tavily) : résultats
+ * déterministes dérivés de la requête, après une latence tirée dans une {@link LatencyDistribution}.
+ */
+public class StubWebSearchEngine implements WebSearchEngine {
+
+    private final LatencyDistribution latency;
+    private final AtomicLong calls = new AtomicLong();
+
+    public StubWebSearchEngine(LatencyDistribution latency) {
+        this.latency = latency;
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        calls.incrementAndGet();
+        StubEmbeddingModel.sleep(latency.next());
+        int maxResults = request.maxResults() == null ? 5 : request.maxResults();
+        List<WebSearchOrganicResult> results = new ArrayList<>(maxResults);
+        for (int i = 0; i < maxResults; i++) {
+            String snippet = "Résultat " + (i + 1) + " pour « " + request.searchTerms() + " » : "
+                    + "LangChain4j simplifie l'intégration des LLM dans les applications Java.";
+            results.add(WebSearchOrganicResult.from("Résultat " + (i + 1),
+                    URI.create("https://example.org/" + Math.abs(request.searchTerms().hashCode()) + "/" + i),
+                    snippet, null));
+        }
+        return WebSearchResults.from(WebSearchInformationResult.from((long) maxResults), results);
+    }
+
+    public long calls() {
+        return calls.get();
+    }
+}
@@ -0,0 +1,191 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.Assistant;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PersistentIngestor;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.HybridContentRetriever;
+import ma.emsi.cherqui.td4_de_cherqui.snapshot.IndexSnapshot;
+import ma.emsi.cherqui.td4_de_cherqui.store.MappedEmbeddingStore;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Délai jusqu'à la première réponse d'un processus neuf, pour trois démarrages :
+ * <ol>
+ *     <li>à froid : extraction du PDF, découpage, embeddings, index BM25 et écriture du snapshot ;</li>
+ *     <li>index : rechargement du {@link MappedEmbeddingStore} puis reconstruction de l'index BM25
+ *     (le démarrage avant les snapshots) ;</li>
+ *     <li>snapshot : projection de l'image ({@link IndexSnapshot}), rien n'est relu ni re-tokenisé.</li>
+ * </ol>
+ * Chaque mesure relance la JVM (même commande et même classpath) dans un répertoire de travail
+ * temporaire qui contient {@code .rag-index}. Modèles simulés : seule la préparation de l'état est mesurée.
+ * <p>
+ * Arguments : {@code [pdf] [nbLancements]} (par défaut le PDF du TP et 5).
+ */
+public class WarmStartBenchmark {
+
+    private static final String CHILD = "--child";
+    private static final String QUESTION = "Comment fonctionne le RetrievalAugmentor ?";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && CHILD.equals(args[0])) {
+            child(args[1], Path.of(args[2]));
+            return;
+        }
+        Path pdf = Path.of(args.length > 0 ? args[0] : "src/main/resources/langchain_langchain4j.pdf").toAbsolutePath();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path workDir = Files.createTempDirectory("rag-warm-start");
+        try {
+            Run cold = launch(workDir, "snapshot", pdf);
+            System.out.printf("%-9s : %s%n", "à froid", cold);
+
+            List<Run> index = new ArrayList<>();
+            List<Run> snapshot = new ArrayList<>();
+            for (int r = 0; r < runs; r++) {
+                index.add(launch(workDir, "index", pdf));
+                snapshot.add(launch(workDir, "snapshot", pdf));
+            }
+            Run indexMedian = median(index);
+            Run snapshotMedian = median(snapshot);
+            System.out.printf("%-9s : %s (médiane de %d)%n", "index", indexMedian, runs);
+            System.out.printf("%-9s : %s (médiane de %d)%n", "snapshot", snapshotMedian, runs);
+            System.out.printf("Snapshot : état prêt %.1fx plus vite que l'index, %.1fx plus vite qu'à froid%n",
+                    indexMedian.stateMillis() / Math.max(0.001, snapshotMedian.stateMillis()),
+                    cold.stateMillis() / Math.max(0.001, snapshotMedian.stateMillis()));
+        } finally {
+            delete(workDir);
+        }
+    }
+
+    // -------------------------------
+    // Processus mesuré
+    // -------------------------------
+
+    private static void child(String mode, Path pdf) {
+        long start = System.nanoTime();
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(384, Duration.ofMillis(50), Duration.ZERO);
+
+        // 1. État d'index selon le mode de démarrage
+        EmbeddingStore<TextSegment> store;
+        Bm25Index lexicalIndex;
+        boolean restored = false;
+        if ("index".equals(mode)) {
+            MappedEmbeddingStore mapped = PersistentIngestor.loadOrIngest(pdf, embeddingModel, "stub-384");
+            Bm25Index.Builder lexical = Bm25Index.builder();
+            mapped.forEach(lexical::add);
+            store = mapped;
+            lexicalIndex = lexical.build();
+        } else {
+            IndexSnapshot snapshot = IndexSnapshot.loadOrBuild(pdf, embeddingModel, "stub-384");
+            store = snapshot.store();
+            lexicalIndex = snapshot.lexicalIndex();
+            restored = snapshot.restored();
+        }
+        long stateNanos = System.nanoTime() - start;
+
+        // 2. Première réponse, par le même chemin que l'application
+        Assistant assistant = AiServices.builder(Assistant.class)
+                .chatLanguageModel(new StubChatModel(Duration.ZERO))
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .contentRetriever(HybridContentRetriever.builder()
+                                .lexicalIndex(lexicalIndex)
+                                .embeddingStore(store)
+                                .embeddingModel(embeddingModel)
+                                .maxResults(2)
+                                .build())
+                        .build())
+                .build();
+        assistant.chat(QUESTION);
+        long answerNanos = System.nanoTime() - start;
+
+        long sinceJvmStart = ProcessHandle.current().info().startInstant()
+                .map(instant -> Duration.between(instant, Instant.now()).toMillis())
+                .orElse(-1L);
+        System.out.printf("RESULT %d %d %d %b%n", stateNanos, answerNanos, sinceJvmStart, restored);
+    }
+
+    private static Run launch(Path workDir, String mode, Path pdf) throws IOException, InterruptedException {
+        // Classpath en chemins absolus : le processus fils tourne dans workDir
+        String classPath = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Path.of(entry).toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(classPath);
+        command.add(WarmStartBenchmark.class.getName());
+        command.add(CHILD);
+        command.add(mode);
+        command.add(pdf.toString());
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(workDir.toFile()).redirectErrorStream(true).start();
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    result = line;
+                }
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Échec du lancement " + mode + " (code " + process.exitValue() + ")");
+        }
+        String[] fields = result.split(" ");
+        return new Run(Long.parseLong(fields[1]) / 1e6, Long.parseLong(fields[2]) / 1e6,
+                Long.parseLong(fields[3]), wallNanos / 1e6, Boolean.parseBoolean(fields[4]));
+    }
+
+    private static Run median(List<Run> runs) {
+        List<Run> sorted = new ArrayList<>(runs);
+        sorted.sort(Comparator.comparingDouble(Run::firstAnswerMillis));
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * @param firstAnswerMillis depuis {@code main} jusqu'à la première réponse
+     * @param sinceJvmStartMillis depuis le démarrage du processus (résolution de l'OS)
+     * @param processMillis durée totale du processus vue par le parent
+     */
+    private record Run(double stateMillis, double firstAnswerMillis, long sinceJvmStartMillis,
+                       double processMillis, boolean restored) {
+
+        @Override
+        public String toString() {
+            return String.format("état prêt en %.0f ms, 1re réponse à %.0f ms (%d ms depuis le lancement de la JVM,"
+                            + " processus %.0f ms)%s",
+                    stateMillis, firstAnswerMillis, sinceJvmStartMillis, processMillis,
+                    restored ? ", restauré" : "");
+        }
+    }
+}
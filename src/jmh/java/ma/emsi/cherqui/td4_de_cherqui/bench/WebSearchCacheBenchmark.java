@@ -0,0 +1,150 @@
+package ma.emsi.cherqui.td4_de_cherqui.bench;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchRequest;
+import ma.emsi.cherqui.td4_de_cherqui.cache.CachingWebSearchEngine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link CachingWebSearchEngine} contre {@link StubWebSearchEngine} (latence log-normale) :
+ * clients concurrents, questions répétées (loi de Zipf, casse et espaces variables), passage du
+ * TTL (résultats périmés + rafraîchissement) puis redémarrage depuis le journal disque.
+ * <p>
+ * Arguments : {@code [nbRecherches] [nbClients] [latence]} (par défaut 400, 16, {@code lognormal:150:600}).
+ */
+public class WebSearchCacheBenchmark {
+
+    private static final int DISTINCT_QUERIES = 40;
+
+    public static void main(String[] args) throws Exception {
+        int nbSearches = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int nbClients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        String latency = args.length > 2 ? args[2] : "lognormal:150:600";
+        List<String> queries = zipfQueries(nbSearches);
+        Path log = Files.createTempDirectory("web-search-cache").resolve("web-search.log");
+        ManualClock clock = new ManualClock();
+
+        // 1. Sans cache : chaque recherche est un appel au moteur
+        StubWebSearchEngine direct = new StubWebSearchEngine(LatencyDistribution.parse(latency, 1));
+        report("Sans cache", run(direct, queries, nbClients), direct.calls());
+
+        // 2. Avec cache : rafales concurrentes de questions identiques partagées, puis hits
+        StubWebSearchEngine backend = new StubWebSearchEngine(LatencyDistribution.parse(latency, 1));
+        CachingWebSearchEngine cache = CachingWebSearchEngine.builder()
+                .delegate(backend)
+                .ttl(Duration.ofHours(6))
+                .persistentFile(log)
+                .clock(clock)
+                .build();
+        report("Avec cache", run(cache, queries, nbClients), backend.calls());
+        System.out.println("  " + cache.stats());
+
+        // 3. TTL dépassé : réponses immédiates (périmées), rafraîchies en arrière-plan
+        clock.advance(Duration.ofHours(7));
+        long before = backend.calls();
+        report("TTL dépassé", run(cache, queries, nbClients), backend.calls() - before);
+        cache.close(); // attend la fin des rafraîchissements
+        System.out.println("  " + cache.stats());
+
+        // 4. Redémarrage : le journal disque évite tout appel
+        StubWebSearchEngine restarted = new StubWebSearchEngine(LatencyDistribution.parse(latency, 1));
+        try (CachingWebSearchEngine reloaded = CachingWebSearchEngine.builder()
+                .delegate(restarted)
+                .ttl(Duration.ofHours(6))
+                .persistentFile(log)
+                .clock(clock)
+                .build()) {
+            report("Après redémarrage", run(reloaded, queries, nbClients), restarted.calls());
+            System.out.println("  " + reloaded.stats() + ", journal " + Files.size(log) / 1024 + " Ko");
+        }
+    }
+
+    private static long[] run(WebSearchEngine engine, List<String> queries, int nbClients) throws Exception {
+        long[] latencies = new long[queries.size()];
+        try (ExecutorService clients = Executors.newFixedThreadPool(nbClients, Thread.ofVirtual().factory())) {
+            List<Future<?>> futures = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                int index = i;
+                futures.add(clients.submit(() -> {
+                    long start = System.nanoTime();
+                    engine.search(WebSearchRequest.builder().searchTerms(queries.get(index)).maxResults(3).build());
+                    latencies[index] = System.nanoTime() - start;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return latencies;
+    }
+
+    private static void report(String label, long[] latencies, long calls) {
+        System.out.printf("%-18s : p50 %7.1f ms, p99 %7.1f ms, %d appels au moteur pour %d recherches%n",
+                label, HnswBenchmark.percentile(latencies, 50), HnswBenchmark.percentile(latencies, 99),
+                calls, latencies.length);
+    }
+
+    /**
+     * Quelques questions très fréquentes, une longue traîne ; casse et espaces varient d'une occurrence à l'autre.
+     */
+    private static List<String> zipfQueries(int n) {
+        SplittableRandom random = new SplittableRandom(7);
+        double[] cumulative = new double[DISTINCT_QUERIES];
+        double total = 0;
+        for (int q = 0; q < DISTINCT_QUERIES; q++) {
+            total += 1.0 / (q + 1);
+            cumulative[q] = total;
+        }
+        List<String> queries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double draw = random.nextDouble() * total;
+            int q = 0;
+            while (cumulative[q] < draw) {
+                q++;
+            }
+            String text = "Nouveautés de LangChain4j, question " + q;
+            queries.add(random.nextBoolean() ? text.toUpperCase() : "  " + text.replace(" ", "  "));
+        }
+        return queries;
+    }
+
+    /**
+     * Horloge avancée à la main pour simuler l'expiration du TTL.
+     */
+    private static final class ManualClock extends Clock {
+
+        private volatile Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
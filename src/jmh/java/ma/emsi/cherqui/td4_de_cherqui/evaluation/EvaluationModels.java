@@ -0,0 +1,109 @@
+package ma.emsi.cherqui.td4_de_cherqui.evaluation;
+
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.web.search.WebSearchEngine;
+import ma.emsi.cherqui.td4_de_cherqui.bench.FakeStreamingChatModel;
+import ma.emsi.cherqui.td4_de_cherqui.bench.HashingEmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.bench.LatencyDistribution;
+import ma.emsi.cherqui.td4_de_cherqui.bench.StubChatModel;
+import ma.emsi.cherqui.td4_de_cherqui.bench.StubWebSearchEngine;
+import ma.emsi.cherqui.td4_de_cherqui.cache.CachingEmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.engine.ModelProvider;
+import ma.emsi.cherqui.td4_de_cherqui.engine.RagConfig;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Modèles de l'évaluation, tous utilisables hors ligne sauf l'enregistrement.
+ * <ul>
+ *     <li>{@code stub} : embeddings par hachage de termes ({@link HashingEmbeddingModel}), LLM et Web simulés ;</li>
+ *     <li>{@code record} : Gemini et Tavily, réponses et embeddings ajoutés aux journaux de {@code recordings} ;</li>
+ *     <li>{@code replay} : les mêmes journaux relus, sans réseau (une requête non enregistrée échoue).</li>
+ * </ul>
+ * Les recherches Web sont enregistrées par le cache persistant du moteur ({@code web.cache.file}).
+ */
+final class EvaluationModels implements ModelProvider {
+
+    enum Mode { STUB, RECORD, REPLAY }
+
+    private final Mode mode;
+    private final Path recordings;
+    private final ModelProvider live;
+    // Un seul journal d'embeddings ouvert par modèle, même si plusieurs moteurs se succèdent
+    private final Map<String, EmbeddingModel> embeddingModels = new ConcurrentHashMap<>();
+
+    EvaluationModels(Mode mode, Path recordings) {
+        this.mode = mode;
+        this.recordings = recordings;
+        this.live = mode == Mode.RECORD ? ModelProvider.gemini(false) : null;
+    }
+
+    static Mode mode(String value) {
+        try {
+            return Mode.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("eval.models : stub, record ou replay attendu, pas " + value);
+        }
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    Path recordings() {
+        return recordings;
+    }
+
+    @Override
+    public ChatLanguageModel chatModel(RagConfig.Models models) {
+        Path file = recordings.resolve("chat-" + models.chatModel() + ".log");
+        return switch (mode) {
+            case STUB -> new StubChatModel(LatencyDistribution.parse("lognormal:400:1500"), Duration.ofMillis(20));
+            case RECORD -> RecordedChatModel.recording(live.chatModel(models), models.chatModel(), file);
+            case REPLAY -> RecordedChatModel.replaying(models.chatModel(), file);
+        };
+    }
+
+    @Override
+    public StreamingChatLanguageModel streamingChatModel(RagConfig.Models models) {
+        // L'évaluation force chat.streaming=false ; modèle fourni pour respecter le contrat
+        return new FakeStreamingChatModel(Duration.ofMillis(300), Duration.ofMillis(10), "Réponse simulée.");
+    }
+
+    @Override
+    public EmbeddingModel embeddingModel(RagConfig.Models models) {
+        if (mode == Mode.STUB) {
+            return new HashingEmbeddingModel(768);
+        }
+        return embeddingModels.computeIfAbsent(models.embeddingModel(), name -> recordedEmbeddingModel(models));
+    }
+
+    private EmbeddingModel recordedEmbeddingModel(RagConfig.Models models) {
+        EmbeddingModel delegate = mode == Mode.RECORD ? live.embeddingModel(models) : segments -> {
+            throw new IllegalStateException("Embedding non enregistré dans " + recordings
+                    + " : relancer avec -Deval.models=record");
+        };
+        return CachingEmbeddingModel.builder()
+                .delegate(delegate)
+                .modelName(models.embeddingModel())
+                .persistentFile(recordings.resolve("embeddings-" + models.embeddingModel() + ".log"))
+                .build();
+    }
+
+    @Override
+    public WebSearchEngine webSearchEngine() {
+        return switch (mode) {
+            case STUB -> new StubWebSearchEngine(LatencyDistribution.parse("lognormal:800:2500"));
+            case RECORD -> live.webSearchEngine();
+            case REPLAY -> request -> {
+                throw new IllegalStateException("Recherche Web non enregistrée : relancer avec -Deval.models=record");
+            };
+        };
+    }
+}
@@ -0,0 +1,270 @@
+package ma.emsi.cherqui.td4_de_cherqui.evaluation;
+
+import ma.emsi.cherqui.td4_de_cherqui.metrics.StageMetrics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Résultats d'une évaluation : une ligne par question, un résumé et les métriques par étape du pipeline.
+ * <p>
+ * {@link #write} produit, dans un répertoire, {@code results.json} (tout), {@code questions.csv},
+ * {@code stages.csv} et {@code summary.properties}, sans date ni ordre aléatoire : deux exécutions se
+ * comparent avec {@code diff}, ou avec {@link #compare} qui signale les régressions du résumé.
+ */
+record EvaluationReport(String configuration, String questionSet, String mode, int threads,
+                        double coldStartMillis, double warmStartMillis, double wallSeconds,
+                        List<Result> results, List<StageMetrics> stages) {
+
+    // Seuils de régression : qualité en valeur absolue, latences en relatif
+    private static final double QUALITY_TOLERANCE = 0.01;
+    private static final double LATENCY_TOLERANCE = 0.10;
+
+    /**
+     * Une question : métriques de récupération ({@code NaN} si la question n'est pas étiquetée),
+     * latences, tokens et erreur éventuelle ({@code null} si la question a abouti).
+     */
+    record Result(String id, String question, boolean labelled, double recallAt1, double recallAt3,
+                  double recallAt5, double reciprocalRank, int retrieved, double retrievalMillis,
+                  double generationMillis, long tokensIn, long tokensOut, String error) {
+
+        double totalMillis() {
+            return retrievalMillis + generationMillis;
+        }
+
+        boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Résumé de l'exécution, dans un ordre stable (clés de {@code summary.properties}).
+     */
+    Map<String, Double> summary() {
+        List<Result> succeeded = results.stream().filter(Result::succeeded).toList();
+        List<Result> labelled = succeeded.stream().filter(Result::labelled).toList();
+        List<Result> offTopic = succeeded.stream().filter(result -> !result.labelled()).toList();
+
+        Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put("questions", (double) results.size());
+        summary.put("errors", (double) (results.size() - succeeded.size()));
+        summary.put("labelled", (double) labelled.size());
+        summary.put("recall_at_1", mean(labelled, Result::recallAt1));
+        summary.put("recall_at_3", mean(labelled, Result::recallAt3));
+        summary.put("recall_at_5", mean(labelled, Result::recallAt5));
+        summary.put("mrr", mean(labelled, Result::reciprocalRank));
+        summary.put("off_topic_segments", mean(offTopic, Result::retrieved));
+        summary.put("latency_p50_ms", percentile(succeeded, Result::totalMillis, 50));
+        summary.put("latency_p99_ms", percentile(succeeded, Result::totalMillis, 99));
+        summary.put("retrieval_p50_ms", percentile(succeeded, Result::retrievalMillis, 50));
+        summary.put("retrieval_p99_ms", percentile(succeeded, Result::retrievalMillis, 99));
+        summary.put("generation_p50_ms", percentile(succeeded, Result::generationMillis, 50));
+        summary.put("generation_p99_ms", percentile(succeeded, Result::generationMillis, 99));
+        summary.put("throughput_qps", wallSeconds > 0 ? results.size() / wallSeconds : 0);
+        summary.put("tokens_in", succeeded.stream().mapToDouble(Result::tokensIn).sum());
+        summary.put("tokens_out", succeeded.stream().mapToDouble(Result::tokensOut).sum());
+        summary.put("cold_start_ms", coldStartMillis);
+        summary.put("warm_start_ms", warmStartMillis);
+        return summary;
+    }
+
+    // -------------------------------
+    // Écriture
+    // -------------------------------
+
+    void write(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Files.writeString(directory.resolve("results.json"), json(), StandardCharsets.UTF_8);
+            Files.writeString(directory.resolve("questions.csv"), questionsCsv(), StandardCharsets.UTF_8);
+            Files.writeString(directory.resolve("stages.csv"), stagesCsv(), StandardCharsets.UTF_8);
+            StringBuilder properties = new StringBuilder("# Résumé de l'évaluation de ")
+                    .append(configuration).append(" (").append(mode).append(")\n");
+            summary().forEach((key, value) -> properties.append(key).append('=').append(number(value)).append('\n'));
+            Files.writeString(directory.resolve("summary.properties"), properties, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture impossible des résultats dans " + directory, e);
+        }
+    }
+
+    private String json() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"configuration\": ").append(string(configuration)).append(",\n");
+        json.append("  \"questionSet\": ").append(string(questionSet)).append(",\n");
+        json.append("  \"mode\": ").append(string(mode)).append(",\n");
+        json.append("  \"threads\": ").append(threads).append(",\n");
+        json.append("  \"summary\": {");
+        List<String> fields = new ArrayList<>();
+        summary().forEach((key, value) -> fields.add("\n    " + string(key) + ": " + number(value)));
+        json.append(String.join(",", fields)).append("\n  },\n");
+
+        json.append("  \"stages\": [");
+        fields.clear();
+        for (StageMetrics stage : stages) {
+            fields.add(String.format(Locale.ROOT, "\n    {\"name\": %s, \"kind\": %s, \"calls\": %d, \"p50Ms\": %s,"
+                            + " \"p99Ms\": %s, \"maxMs\": %s, \"errors\": %d, \"timeouts\": %d, \"tokensIn\": %d,"
+                            + " \"tokensOut\": %d}",
+                    string(stage.name()), string(stage.kind().name().toLowerCase(Locale.ROOT)), stage.calls(),
+                    number(stage.latency().percentileMillis(50)), number(stage.latency().percentileMillis(99)),
+                    number(stage.latency().maxMillis()), stage.errors(), stage.timeouts(),
+                    stage.tokensIn(), stage.tokensOut()));
+        }
+        json.append(String.join(",", fields)).append("\n  ],\n");
+
+        json.append("  \"questions\": [");
+        fields.clear();
+        for (Result result : results) {
+            fields.add(String.format(Locale.ROOT, "\n    {\"id\": %s, \"question\": %s, \"labelled\": %b,"
+                            + " \"recallAt1\": %s, \"recallAt3\": %s, \"recallAt5\": %s, \"reciprocalRank\": %s,"
+                            + " \"retrieved\": %d, \"retrievalMs\": %s, \"generationMs\": %s, \"tokensIn\": %d,"
+                            + " \"tokensOut\": %d, \"error\": %s}",
+                    string(result.id()), string(result.question()), result.labelled(),
+                    number(result.recallAt1()), number(result.recallAt3()), number(result.recallAt5()),
+                    number(result.reciprocalRank()), result.retrieved(), number(result.retrievalMillis()),
+                    number(result.generationMillis()), result.tokensIn(), result.tokensOut(),
+                    result.error() == null ? "null" : string(result.error())));
+        }
+        return json.append(String.join(",", fields)).append("\n  ]\n}\n").toString();
+    }
+
+    private String questionsCsv() {
+        StringBuilder csv = new StringBuilder("id,question,labelled,recall_at_1,recall_at_3,recall_at_5,"
+                + "reciprocal_rank,retrieved,retrieval_ms,generation_ms,tokens_in,tokens_out,error\n");
+        for (Result result : results) {
+            csv.append(String.join(",", result.id(), csv(result.question()), String.valueOf(result.labelled()),
+                    cell(result.recallAt1()), cell(result.recallAt3()), cell(result.recallAt5()),
+                    cell(result.reciprocalRank()), String.valueOf(result.retrieved()),
+                    cell(result.retrievalMillis()), cell(result.generationMillis()),
+                    String.valueOf(result.tokensIn()), String.valueOf(result.tokensOut()),
+                    result.error() == null ? "" : csv(result.error()))).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private String stagesCsv() {
+        StringBuilder csv = new StringBuilder("stage,kind,calls,p50_ms,p99_ms,max_ms,errors,timeouts,tokens_in,tokens_out\n");
+        for (StageMetrics stage : stages) {
+            csv.append(String.join(",", csv(stage.name()), stage.kind().name().toLowerCase(Locale.ROOT),
+                    String.valueOf(stage.calls()), cell(stage.latency().percentileMillis(50)),
+                    cell(stage.latency().percentileMillis(99)), cell(stage.latency().maxMillis()),
+                    String.valueOf(stage.errors()), String.valueOf(stage.timeouts()),
+                    String.valueOf(stage.tokensIn()), String.valueOf(stage.tokensOut()))).append('\n');
+        }
+        return csv.toString();
+    }
+
+    // -------------------------------
+    // Comparaison
+    // -------------------------------
+
+    /**
+     * Compare le résumé à celui d'une exécution précédente ({@code baseline/summary.properties}) :
+     * une ligne par métrique, marquée quand le rappel ou le MRR baissent, ou quand une latence
+     * ou le nombre d'erreurs augmentent au-delà de la tolérance.
+     */
+    String compare(Path baseline) {
+        Properties before = new Properties();
+        try (Reader reader = Files.newBufferedReader(baseline.resolve("summary.properties"), StandardCharsets.UTF_8)) {
+            before.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Résumé de référence illisible : " + baseline, e);
+        }
+        StringBuilder text = new StringBuilder("Comparaison avec " + baseline + " :\n");
+        summary().forEach((key, after) -> {
+            String previous = before.getProperty(key);
+            if (previous == null) {
+                return;
+            }
+            double was = previous.equals("null") ? Double.NaN : Double.parseDouble(previous);
+            text.append(String.format(Locale.ROOT, "  %-20s %10.3f -> %10.3f", key, was, after));
+            if (regressed(key, was, after)) {
+                text.append("   <- régression");
+            }
+            text.append('\n');
+        });
+        return text.toString();
+    }
+
+    private static boolean regressed(String key, double before, double after) {
+        if (Double.isNaN(before) || Double.isNaN(after)) {
+            return false;
+        }
+        if (key.startsWith("recall") || key.equals("mrr")) {
+            return after < before - QUALITY_TOLERANCE;
+        }
+        if (key.endsWith("_ms")) {
+            return after > before * (1 + LATENCY_TOLERANCE);
+        }
+        return key.equals("errors") && after > before;
+    }
+
+    // -------------------------------
+    // Utilitaires
+    // -------------------------------
+
+    private static double mean(List<Result> results, ToDoubleFunction<Result> metric) {
+        return results.stream().mapToDouble(metric).average().orElse(Double.NaN);
+    }
+
+    private static double percentile(List<Result> results, ToDoubleFunction<Result> metric, int percentile) {
+        if (results.isEmpty()) {
+            return Double.NaN;
+        }
+        List<Double> sorted = new ArrayList<>(results.stream().map(metric::applyAsDouble).toList());
+        Collections.sort(sorted);
+        int index = Math.min(sorted.size() - 1, (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1);
+        return sorted.get(Math.max(index, 0));
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String cell(double value) {
+        return Double.isNaN(value) ? "" : number(value);
+    }
+
+    private static String string(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static String csv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
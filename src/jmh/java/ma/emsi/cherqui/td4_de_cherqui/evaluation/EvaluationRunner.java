@@ -0,0 +1,182 @@
+package ma.emsi.cherqui.td4_de_cherqui.evaluation;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.AugmentationResult;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Metadata;
+import ma.emsi.cherqui.td4_de_cherqui.engine.RagConfig;
+import ma.emsi.cherqui.td4_de_cherqui.engine.RagEngine;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.PipelineMetrics;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.StageMetrics;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Évaluation hors ligne d'une configuration du {@link RagEngine} : rejoue un jeu de questions
+ * étiquetées ({@link EvaluationSet}) en parallèle, mesure pour chaque question la récupération
+ * (rappel@1/3/5, rang réciproque) et la latence et les tokens de chaque étape, puis écrit les
+ * résultats ({@link EvaluationReport}) pour les comparer d'une exécution à l'autre.
+ * <p>
+ * Chaque question passe par l'augmenteur puis par le modèle de chat du moteur, comme dans
+ * l'{@code Assistant}, mais sans mémoire (questions indépendantes), sans streaming et sans cache
+ * sémantique ni cache persistant d'embeddings de questions : deux exécutions mesurent le même travail.
+ * <p>
+ * Arguments : {@code [configuration] [questions] [sortie]} (par défaut {@code rag/routage.properties},
+ * {@code evaluation/questions.tsv} et {@code .rag-eval/<configuration>-<modèles>}). Propriétés système :
+ * <ul>
+ *     <li>{@code eval.models} : {@code stub} (défaut), {@code record} ou {@code replay}, voir {@link EvaluationModels} ;</li>
+ *     <li>{@code eval.threads} : questions simultanées (défaut 4) ;</li>
+ *     <li>{@code eval.recordings} : journaux d'enregistrement (défaut {@code .rag-eval/recordings}) ;</li>
+ *     <li>{@code eval.baseline} : répertoire d'une exécution précédente à comparer.</li>
+ * </ul>
+ */
+public final class EvaluationRunner {
+
+    private static final Path WORK_DIR = Path.of(".rag-eval");
+
+    private EvaluationRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String configuration = args.length > 0 ? args[0] : "rag/routage.properties";
+        String questionSet = args.length > 1 ? args[1] : "evaluation/questions.tsv";
+        EvaluationModels models = new EvaluationModels(
+                EvaluationModels.mode(System.getProperty("eval.models", "stub")),
+                Path.of(System.getProperty("eval.recordings", WORK_DIR.resolve("recordings").toString())));
+        String mode = models.mode().name().toLowerCase(Locale.ROOT);
+        Path output = args.length > 2 ? Path.of(args[2]) : WORK_DIR.resolve(baseName(configuration) + "-" + mode);
+        int threads = Integer.getInteger("eval.threads", 4);
+
+        EvaluationReport report = evaluate(configuration, EvaluationSet.load(questionSet), models, threads);
+        report.write(output);
+
+        System.out.printf(Locale.ROOT, "%s (%s, %d questions, %d threads) -> %s%n",
+                configuration, mode, report.results().size(), threads, output);
+        report.summary().forEach((key, value) -> System.out.printf(Locale.ROOT, "  %-20s %10.3f%n", key, value));
+        report.stages().forEach(stage -> System.out.println("  " + stage));
+        String baseline = System.getProperty("eval.baseline");
+        if (baseline != null && !baseline.isBlank()) {
+            System.out.print(report.compare(Path.of(baseline)));
+        }
+    }
+
+    static EvaluationReport evaluate(String configuration, EvaluationSet questions, EvaluationModels models,
+                                     int threads) throws Exception {
+        RagConfig config = RagConfig.from(overridden(configuration, models));
+
+        // 1. Index construit (ou rechargé) une première fois, puis moteur à chaud avec des métriques vierges
+        long start = System.nanoTime();
+        RagEngine.builder().config(config).modelProvider(models).build().close();
+        double coldMillis = (System.nanoTime() - start) / 1e6;
+        PipelineMetrics metrics = new PipelineMetrics(config.jfrEvents());
+        start = System.nanoTime();
+        try (RagEngine engine = RagEngine.builder().config(config).modelProvider(models).metrics(metrics).build()) {
+            double warmMillis = (System.nanoTime() - start) / 1e6;
+
+            // 2. Questions rejouées en parallèle, résultats dans l'ordre du jeu
+            List<Future<EvaluationReport.Result>> futures = new ArrayList<>();
+            start = System.nanoTime();
+            try (ExecutorService clients = Executors.newFixedThreadPool(threads)) {
+                for (EvaluationSet.Question question : questions.questions()) {
+                    futures.add(clients.submit(() -> ask(engine, question)));
+                }
+            }
+            double wallSeconds = (System.nanoTime() - start) / 1e9;
+            List<EvaluationReport.Result> results = new ArrayList<>();
+            for (Future<EvaluationReport.Result> future : futures) {
+                results.add(future.get());
+            }
+
+            List<StageMetrics> stages = metrics.stages().values().stream()
+                    .sorted(Comparator.comparing(StageMetrics::name))
+                    .toList();
+            return new EvaluationReport(configuration, questions.location(), models.mode().name().toLowerCase(Locale.ROOT),
+                    threads, coldMillis, warmMillis, wallSeconds, results, stages);
+        }
+    }
+
+    /**
+     * Récupération puis génération d'une question ; une erreur est rapportée sur sa ligne.
+     */
+    private static EvaluationReport.Result ask(RagEngine engine, EvaluationSet.Question question) {
+        UserMessage message = UserMessage.from(question.text());
+        long start = System.nanoTime();
+        double retrievalMillis = 0;
+        try {
+            AugmentationResult augmented = engine.retrievalAugmentor().augment(
+                    new AugmentationRequest(message, Metadata.from(message, question.id(), List.of())));
+            retrievalMillis = (System.nanoTime() - start) / 1e6;
+            List<String> retrieved = augmented.contents().stream()
+                    .map(Content::textSegment)
+                    .map(TextSegment::text)
+                    .toList();
+
+            long generationStart = System.nanoTime();
+            Response<AiMessage> response = engine.chatModel().generate(List.of(augmented.chatMessage()));
+            double generationMillis = (System.nanoTime() - generationStart) / 1e6;
+            TokenUsage usage = response.tokenUsage();
+
+            boolean labelled = question.labelled();
+            return new EvaluationReport.Result(question.id(), question.text(), labelled,
+                    labelled ? question.recallAt(1, retrieved) : Double.NaN,
+                    labelled ? question.recallAt(3, retrieved) : Double.NaN,
+                    labelled ? question.recallAt(5, retrieved) : Double.NaN,
+                    labelled ? question.reciprocalRank(retrieved) : Double.NaN,
+                    retrieved.size(), retrievalMillis, generationMillis,
+                    usage == null || usage.inputTokenCount() == null ? 0 : usage.inputTokenCount(),
+                    usage == null || usage.outputTokenCount() == null ? 0 : usage.outputTokenCount(),
+                    null);
+        } catch (RuntimeException e) {
+            // Temps passé jusqu'à l'échec, imputé à l'étape qui a échoué
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            boolean retrieved = retrievalMillis > 0;
+            return new EvaluationReport.Result(question.id(), question.text(), question.labelled(),
+                    Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0,
+                    retrieved ? retrievalMillis : elapsed, retrieved ? elapsed - retrievalMillis : 0, 0, 0,
+                    e.getClass().getSimpleName() + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Configuration d'origine, avec index et journaux propres à l'évaluation.
+     */
+    private static Properties overridden(String location, EvaluationModels models) {
+        Properties properties = RagConfig.properties(location);
+        // Un index par mode : les embeddings factices (stub) et réels ne partagent jamais un répertoire
+        properties.setProperty("index.dir",
+                WORK_DIR.resolve("index-" + models.mode().name().toLowerCase(Locale.ROOT)).toString());
+        properties.setProperty("chat.streaming", "false");
+        properties.setProperty("memory", "none");
+        properties.setProperty("cache.semantic", "false");
+        properties.setProperty("cache.query-embeddings", "");
+        if (models.mode() == EvaluationModels.Mode.STUB) {
+            // Index séparé de celui des vrais embeddings
+            properties.setProperty("embedding.model", "hashing-768");
+            properties.setProperty("web.cache.file", "");
+        } else {
+            // Recherches Web enregistrées par le cache persistant du moteur, jamais périmées
+            properties.setProperty("web.cache.file", models.recordings().resolve("web-search.log").toString());
+            properties.setProperty("web.cache.ttl", "36500d");
+        }
+        return properties;
+    }
+
+    private static String baseName(String location) {
+        String name = Path.of(location).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,117 @@
+package ma.emsi.cherqui.td4_de_cherqui.evaluation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Jeu de questions étiquetées : {@code question<TAB>passage | passage...} (sans passage : question hors sujet).
+ * <p>
+ * Un segment récupéré est pertinent s'il contient l'un des passages attendus, comparés après
+ * normalisation (NFKC, minuscules, ponctuation et espaces compactés). Les étiquettes ne dépendent
+ * donc ni du découpage ni de l'index : on peut comparer des tailles de segments différentes.
+ */
+public record EvaluationSet(String location, List<Question> questions) {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * @param passages extraits attendus, normalisés ; vide pour une question hors sujet
+     */
+    public record Question(String id, String text, List<String> passages) {
+
+        public boolean labelled() {
+            return !passages.isEmpty();
+        }
+
+        /**
+         * Part des passages attendus présents dans les {@code k} premiers segments.
+         */
+        public double recallAt(int k, List<String> retrieved) {
+            if (passages.isEmpty()) {
+                return 0;
+            }
+            List<String> top = normalized(retrieved.subList(0, Math.min(k, retrieved.size())));
+            long found = passages.stream().filter(passage -> top.stream().anyMatch(text -> text.contains(passage)))
+                    .count();
+            return (double) found / passages.size();
+        }
+
+        /**
+         * 1 / rang du premier segment pertinent, 0 si aucun.
+         */
+        public double reciprocalRank(List<String> retrieved) {
+            List<String> texts = normalized(retrieved);
+            for (int rank = 0; rank < texts.size(); rank++) {
+                String text = texts.get(rank);
+                if (passages.stream().anyMatch(text::contains)) {
+                    return 1.0 / (rank + 1);
+                }
+            }
+            return 0;
+        }
+
+        private static List<String> normalized(List<String> texts) {
+            return texts.stream().map(EvaluationSet::normalize).toList();
+        }
+    }
+
+    /**
+     * Charge un fichier, ou à défaut une ressource du classpath ; lignes vides et {@code #} ignorées.
+     */
+    public static EvaluationSet load(String location) {
+        List<Question> questions = new ArrayList<>();
+        try (BufferedReader reader = open(location)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split("\t", 2);
+                List<String> passages = new ArrayList<>();
+                if (columns.length > 1) {
+                    for (String passage : columns[1].split("\\|")) {
+                        if (!passage.isBlank()) {
+                            passages.add(normalize(passage));
+                        }
+                    }
+                }
+                questions.add(new Question(String.format(Locale.ROOT, "q%02d", questions.size() + 1),
+                        columns[0].strip(), List.copyOf(passages)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Jeu de questions illisible : " + location, e);
+        }
+        if (questions.isEmpty()) {
+            throw new IllegalArgumentException("Jeu de questions vide : " + location);
+        }
+        return new EvaluationSet(location, List.copyOf(questions));
+    }
+
+    static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return NON_WORD.matcher(normalized).replaceAll(" ").strip();
+    }
+
+    private static BufferedReader open(String location) throws IOException {
+        Path file = Path.of(location);
+        if (Files.isRegularFile(file)) {
+            return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        }
+        InputStream in = EvaluationSet.class.getClassLoader().getResourceAsStream(location);
+        if (in == null) {
+            throw new IllegalArgumentException("Jeu de questions introuvable : " + location);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,184 @@
+package ma.emsi.cherqui.td4_de_cherqui.evaluation;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import ma.emsi.cherqui.td4_de_cherqui.memory.TokenBudgetChatMemory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Modèle de chat enregistré : en enregistrement, chaque réponse du délégué est ajoutée à un journal ;
+ * en relecture, elle est servie depuis le journal, après la latence enregistrée, sans appel réseau.
+ * <p>
+ * Clé : SHA-256 du nom du modèle et des messages (type et texte). Format d'un enregistrement :
+ * {@code chaîne clé, chaîne réponse, int tokens entrée, int tokens sortie, long latence (ms)} ;
+ * une chaîne est {@code int longueur, octets UTF-8}. Un enregistrement tronqué termine la lecture.
+ */
+class RecordedChatModel implements ChatLanguageModel, AutoCloseable {
+
+    private final ChatLanguageModel delegate;
+    private final String modelName;
+    private final Path file;
+    private final Map<String, Recorded> recorded = new ConcurrentHashMap<>();
+    private DataOutputStream out;
+
+    private RecordedChatModel(ChatLanguageModel delegate, String modelName, Path file) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Appelle {@code delegate} pour toute requête absente du journal, puis l'enregistre.
+     */
+    static RecordedChatModel recording(ChatLanguageModel delegate, String modelName, Path file) {
+        return new RecordedChatModel(delegate, modelName, file);
+    }
+
+    /**
+     * Relecture seule : une requête absente du journal échoue.
+     */
+    static RecordedChatModel replaying(String modelName, Path file) {
+        return new RecordedChatModel(null, modelName, file);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        String key = key(messages);
+        Recorded hit = recorded.get(key);
+        if (hit != null) {
+            sleep(hit.latency());
+            return Response.from(AiMessage.from(hit.text()), new TokenUsage(hit.tokensIn(), hit.tokensOut()));
+        }
+        if (delegate == null) {
+            throw new IllegalStateException("Aucune réponse enregistrée pour cette requête dans " + file
+                    + " : relancer avec -Deval.models=record");
+        }
+        long start = System.nanoTime();
+        Response<AiMessage> response = delegate.generate(messages);
+        TokenUsage usage = response.tokenUsage();
+        Recorded entry = new Recorded(response.content().text(),
+                usage == null || usage.inputTokenCount() == null ? 0 : usage.inputTokenCount(),
+                usage == null || usage.outputTokenCount() == null ? 0 : usage.outputTokenCount(),
+                Duration.ofNanos(System.nanoTime() - start));
+        recorded.put(key, entry);
+        append(key, entry);
+        return response;
+    }
+
+    int size() {
+        return recorded.size();
+    }
+
+    private String key(List<ChatMessage> messages) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            for (ChatMessage message : messages) {
+                digest.update((byte) 0);
+                digest.update(message.type().name().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(TokenBudgetChatMemory.textOf(message).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                String key = readString(in);
+                String text = readString(in);
+                int tokensIn = in.readInt();
+                int tokensOut = in.readInt();
+                Duration latency = Duration.ofMillis(in.readLong());
+                recorded.put(key, new Recorded(text, tokensIn, tokensOut, latency));
+            }
+        } catch (EOFException e) {
+            // fin du journal (éventuellement tronqué)
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal de réponses illisible : " + file, e);
+        }
+    }
+
+    private synchronized void append(String key, Recorded entry) {
+        try {
+            if (out == null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            }
+            writeString(out, key);
+            writeString(out, entry.text());
+            out.writeInt(entry.tokensIn());
+            out.writeInt(entry.tokensOut());
+            out.writeLong(entry.latency().toMillis());
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    private record Recorded(String text, int tokensIn, int tokensOut, Duration latency) {
+    }
+}
@@ -0,0 +1,11 @@
+package ma.emsi.cherqui.td4_de_cherqui;
+
+import dev.langchain4j.service.TokenStream;
+
+/**
+ * Variante de {@link Assistant} en streaming : la récupération (RAG) est faite avant le début de
+ * la génération, puis les tokens sont transmis au fur et à mesure de leur arrivée.
+ */
+public interface StreamingAssistant {
+    TokenStream chat(String message);
+}
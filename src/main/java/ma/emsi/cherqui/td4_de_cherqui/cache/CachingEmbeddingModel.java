@@ -0,0 +1,278 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Décorateur d'{@link EmbeddingModel} avec cache des embeddings de requêtes.
+ * <ul>
+ *     <li>clé : nom du modèle + texte normalisé (Unicode NFC, espaces compactés) ;</li>
+ *     <li>niveau mémoire : LRU borné en octets ;</li>
+ *     <li>niveau disque optionnel : {@link EmbeddingLog} en ajout seul, relu au démarrage et borné en octets ;
+ *     une erreur disque est journalisée et traitée comme un défaut de cache ;</li>
+ *     <li>requêtes identiques simultanées : un seul appel au modèle, partagé par tous.</li>
+ * </ul>
+ * Le même décorateur peut être partagé par plusieurs retrievers : une question routée vers
+ * deux retrievers n'est alors embeddée qu'une fois.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CachingEmbeddingModel.class.getName());
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final EmbeddingModel delegate;
+    private final String modelName;
+    private final long maxBytes;
+    private final EmbeddingLog persistent;
+
+    private final Map<String, float[]> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+    private final Map<String, CompletableFuture<Embedding>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+
+    private CachingEmbeddingModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.modelName = builder.modelName;
+        this.maxBytes = builder.maxBytes;
+        this.persistent = builder.persistentFile == null ? null
+                : EmbeddingLog.open(builder.persistentFile, builder.maxDiskBytes);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        Embedding[] results = new Embedding[segments.size()];
+        Map<String, List<Integer>> toCompute = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<Embedding>> waiting = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Embedding>> owned = new LinkedHashMap<>();
+
+        for (int i = 0; i < segments.size(); i++) {
+            String key = key(segments.get(i).text());
+            Embedding cached = lookup(key);
+            if (cached != null) {
+                results[i] = cached;
+                continue;
+            }
+            if (owned.containsKey(key)) {
+                toCompute.get(key).add(i);
+                continue;
+            }
+            CompletableFuture<Embedding> future = new CompletableFuture<>();
+            CompletableFuture<Embedding> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                // Un autre thread calcule déjà cet embedding : on attend son résultat
+                coalesced.incrementAndGet();
+                waiting.put(i, existing);
+            } else {
+                owned.put(key, future);
+                toCompute.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (!owned.isEmpty()) {
+            List<String> keys = new ArrayList<>(owned.keySet());
+            List<TextSegment> batch = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                batch.add(segments.get(toCompute.get(key).get(0)));
+            }
+            long start = System.nanoTime();
+            try {
+                List<Embedding> computed = delegate.embedAll(batch).content();
+                if (computed == null || computed.size() != keys.size()) {
+                    throw new IllegalStateException("Le modèle a renvoyé "
+                            + (computed == null ? 0 : computed.size()) + " embeddings pour " + keys.size() + " textes");
+                }
+                misses.addAndGet(keys.size());
+                missNanos.addAndGet(System.nanoTime() - start);
+
+                for (int k = 0; k < keys.size(); k++) {
+                    String key = keys.get(k);
+                    Embedding embedding = computed.get(k);
+                    store(key, embedding.vector());
+                    owned.get(key).complete(embedding);
+                    for (int index : toCompute.get(key)) {
+                        results[index] = embedding;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Modèle ou taille de réponse en échec : les threads en attente
+                // reçoivent l'erreur au lieu de bloquer (sans effet sur les futures déjà complétés)
+                for (CompletableFuture<Embedding> future : owned.values()) {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<String, CompletableFuture<Embedding>> entry : owned.entrySet()) {
+                    inFlight.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, CompletableFuture<Embedding>> entry : waiting.entrySet()) {
+            results[entry.getKey()] = entry.getValue().join();
+        }
+        return Response.from(Arrays.asList(results));
+    }
+
+    private Embedding lookup(String key) {
+        float[] vector;
+        synchronized (memory) {
+            vector = memory.get(key);
+        }
+        if (vector != null) {
+            hits.incrementAndGet();
+            return Embedding.from(vector.clone());
+        }
+        if (persistent != null) {
+            try {
+                vector = persistent.get(key);
+            } catch (UncheckedIOException e) {
+                LOGGER.log(Level.WARNING, "Lecture impossible du cache d'embeddings", e);
+            }
+            if (vector != null) {
+                diskHits.incrementAndGet();
+                remember(key, vector);
+                return Embedding.from(vector.clone());
+            }
+        }
+        return null;
+    }
+
+    private void store(String key, float[] vector) {
+        remember(key, vector.clone());
+        if (persistent != null) {
+            try {
+                persistent.put(key, vector);
+            } catch (UncheckedIOException e) {
+                // L'embedding est calculé : un disque plein ne doit pas faire échouer la requête
+                LOGGER.log(Level.WARNING, "Écriture impossible dans le cache d'embeddings", e);
+            }
+        }
+    }
+
+    private void remember(String key, float[] vector) {
+        synchronized (memory) {
+            float[] previous = memory.put(key, vector);
+            if (previous != null) {
+                memoryBytes -= sizeOf(key, previous);
+            }
+            memoryBytes += sizeOf(key, vector);
+            var it = memory.entrySet().iterator();
+            while (memoryBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, float[]> eldest = it.next();
+                memoryBytes -= sizeOf(eldest.getKey(), eldest.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(String key, float[] vector) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length() + (long) Float.BYTES * vector.length;
+    }
+
+    private String key(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC);
+        normalized = WHITESPACE.matcher(normalized.strip()).replaceAll(" ");
+        return modelName + '\u0000' + normalized;
+    }
+
+    @Override
+    public void close() {
+        if (persistent != null) {
+            persistent.close();
+        }
+    }
+
+    public Stats stats() {
+        long missCount = misses.get();
+        long averageMiss = missCount == 0 ? 0 : missNanos.get() / missCount;
+        long avoided = hits.get() + diskHits.get() + coalesced.get();
+        synchronized (memory) {
+            return new Stats(hits.get(), diskHits.get(), coalesced.get(), missCount,
+                    avoided * averageMiss / 1_000_000, memory.size(), memoryBytes);
+        }
+    }
+
+    /**
+     * @param latencySavedMillis estimation : appels évités × latence moyenne d'un appel réel
+     */
+    public record Stats(long memoryHits, long diskHits, long coalesced, long misses,
+                        long latencySavedMillis, int entries, long bytes) {
+
+        public double hitRate() {
+            long total = memoryHits + diskHits + coalesced + misses;
+            return total == 0 ? 0 : (double) (memoryHits + diskHits + coalesced) / total;
+        }
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel delegate;
+        private String modelName = "default";
+        private long maxBytes = 64L * 1024 * 1024;
+        private Path persistentFile;
+        private long maxDiskBytes = 256L * 1024 * 1024;
+
+        public Builder delegate(EmbeddingModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public Builder modelName(String modelName) {
+            this.modelName = modelName;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder persistentFile(Path persistentFile) {
+            this.persistentFile = persistentFile;
+            return this;
+        }
+
+        /**
+         * Taille au-delà de laquelle le journal disque est compacté ; 256 Mo par défaut.
+         */
+        public Builder maxDiskBytes(long maxDiskBytes) {
+            this.maxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        public CachingEmbeddingModel build() {
+            if (delegate == null) {
+                throw new IllegalStateException("delegate est obligatoire");
+            }
+            return new CachingEmbeddingModel(this);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Décorateur de {@link WebSearchEngine} (Tavily) avec cache des résultats.
+ * <ul>
+ *     <li>clé : requête normalisée (NFC, minuscules, espaces compactés) + nombre de résultats, langue, page ;</li>
+ *     <li>entrée fraîche pendant {@code ttl}, puis servie périmée pendant {@code staleWhileRevalidate}
+ *     tandis qu'un thread virtuel la rafraîchit ;</li>
+ *     <li>recherches identiques simultanées : un seul appel au moteur, partagé par tous ;</li>
+ *     <li>si le moteur échoue (quota, réseau), une entrée même expirée est encore servie ;</li>
+ *     <li>LRU borné à {@code maxEntries}, journal disque optionnel relu (et compacté) au démarrage.</li>
+ * </ul>
+ */
+public class CachingWebSearchEngine implements WebSearchEngine, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CachingWebSearchEngine.class.getName());
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final WebSearchEngine delegate;
+    private final Duration ttl;
+    private final Duration staleWhileRevalidate;
+    private final int maxEntries;
+    private final Clock clock;
+    private final WebSearchLog persistent;
+
+    private final Map<String, Cached> entries;
+    private final Map<String, CompletableFuture<WebSearchResults>> inFlight = new ConcurrentHashMap<>();
+    // Rafraîchissements et compactions du journal, hors du chemin des requêtes
+    private final ExecutorService refresher = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong servedOnError = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+
+    private CachingWebSearchEngine(Builder builder) {
+        this.delegate = builder.delegate;
+        this.ttl = builder.ttl;
+        this.staleWhileRevalidate = builder.staleWhileRevalidate;
+        this.maxEntries = builder.maxEntries;
+        this.clock = builder.clock;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (builder.persistentFile == null) {
+            this.persistent = null;
+        } else {
+            this.persistent = new WebSearchLog(builder.persistentFile);
+            entries.putAll(persistent.load());
+            // Repart d'un fichier propre : sans doublons ni éventuel enregistrement tronqué
+            persistent.compact(() -> entries);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        requests.incrementAndGet();
+        String key = key(request);
+        Cached cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            Duration age = Duration.between(cached.fetchedAt(), clock.instant());
+            if (age.compareTo(ttl) < 0) {
+                hits.incrementAndGet();
+                return cached.results();
+            }
+            if (age.compareTo(ttl.plus(staleWhileRevalidate)) < 0) {
+                staleHits.incrementAndGet();
+                refreshInBackground(key, request);
+                return cached.results();
+            }
+        }
+
+        try {
+            return fetch(key, request, false).join();
+        } catch (CompletionException e) {
+            if (cached != null) {
+                servedOnError.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Recherche Web en échec, résultats expirés servis pour : "
+                        + request.searchTerms(), e.getCause());
+                return cached.results();
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    private void refreshInBackground(String key, WebSearchRequest request) {
+        if (inFlight.containsKey(key)) {
+            return; // rafraîchissement (ou appel) déjà en cours
+        }
+        refresher.execute(() -> fetch(key, request, true));
+    }
+
+    /**
+     * Appel au moteur, partagé avec les appels identiques déjà en cours.
+     */
+    private CompletableFuture<WebSearchResults> fetch(String key, WebSearchRequest request, boolean refresh) {
+        CompletableFuture<WebSearchResults> future = new CompletableFuture<>();
+        CompletableFuture<WebSearchResults> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            if (!refresh) {
+                coalesced.incrementAndGet();
+            }
+            return existing;
+        }
+        long start = System.nanoTime();
+        try {
+            WebSearchResults results = delegate.search(request);
+            (refresh ? refreshes : misses).incrementAndGet();
+            missNanos.addAndGet(System.nanoTime() - start);
+            store(key, new Cached(results, clock.instant()));
+            future.complete(results);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            if (refresh) {
+                LOGGER.log(Level.FINE, "Rafraîchissement en échec pour : " + request.searchTerms(), e);
+            }
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, future);
+        }
+        return future;
+    }
+
+    private void store(String key, Cached cached) {
+        synchronized (entries) {
+            entries.put(key, cached);
+        }
+        if (persistent != null) {
+            persistent.append(key, cached);
+            // Trop d'entrées remplacées ou évincées dans le fichier : réécriture, hors du chemin de la requête
+            if (persistent.records() > 2L * maxEntries && compacting.compareAndSet(false, true)) {
+                refresher.execute(() -> {
+                    try {
+                        persistent.compact(this::liveEntries);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Compaction du cache de recherche Web impossible", e);
+                    } finally {
+                        compacting.set(false);
+                    }
+                });
+            }
+        }
+    }
+
+    private static String key(WebSearchRequest request) {
+        String terms = Normalizer.normalize(request.searchTerms(), Normalizer.Form.NFC);
+        terms = WHITESPACE.matcher(terms.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+        return terms + '\u0000' + request.maxResults() + '\u0000' + request.language()
+                + '\u0000' + request.startPage() + '\u0000' + request.startIndex();
+    }
+
+    private Map<String, Cached> liveEntries() {
+        synchronized (entries) {
+            return new LinkedHashMap<>(entries);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        if (persistent != null) {
+            persistent.compact(this::liveEntries);
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.close();
+        if (persistent != null) {
+            persistent.close();
+        }
+    }
+
+    public Stats stats() {
+        long missCount = misses.get();
+        long calls = missCount + refreshes.get();
+        long averageMiss = calls == 0 ? 0 : missNanos.get() / calls;
+        long avoided = Math.max(0, requests.get() - calls - errors.get());
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(requests.get(), hits.get(), staleHits.get(), coalesced.get(), missCount,
+                refreshes.get(), errors.get(), servedOnError.get(), avoided,
+                avoided * averageMiss / 1_000_000, size);
+    }
+
+    /**
+     * @param avoidedCalls       recherches servies sans appel au moteur (requêtes - appels réels)
+     * @param latencySavedMillis estimation : recherches servies par le cache × latence moyenne d'un appel réel
+     */
+    public record Stats(long requests, long hits, long staleHits, long coalesced, long misses, long refreshes,
+                        long errors, long servedOnError, long avoidedCalls, long latencySavedMillis, int entries) {
+
+        public double hitRate() {
+            return requests == 0 ? 0 : (double) (hits + staleHits + coalesced + servedOnError) / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("recherche Web : taux de hit %.1f %% (%d frais, %d périmés, %d partagés sur %d),"
+                            + " %d appels évités (~%d ms), %d rafraîchissements, %d erreurs (%d servies du cache),"
+                            + " %d entrées",
+                    100 * hitRate(), hits, staleHits, coalesced, requests, avoidedCalls, latencySavedMillis,
+                    refreshes, errors, servedOnError, entries);
+        }
+    }
+
+    /**
+     * Résultats mis en cache et date de l'appel qui les a produits.
+     */
+    record Cached(WebSearchResults results, Instant fetchedAt) {
+    }
+
+    public static class Builder {
+
+        private WebSearchEngine delegate;
+        private Duration ttl = Duration.ofHours(6);
+        private Duration staleWhileRevalidate = Duration.ofDays(1);
+        private int maxEntries = 10_000;
+        private Path persistentFile;
+        private Clock clock = Clock.systemUTC();
+
+        public Builder delegate(WebSearchEngine delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Durée pendant laquelle un résultat est servi sans appel au moteur.
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Au-delà du TTL, durée pendant laquelle le résultat est encore servi, le temps de le rafraîchir.
+         */
+        public Builder staleWhileRevalidate(Duration staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder persistentFile(Path persistentFile) {
+            this.persistentFile = persistentFile;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public CachingWebSearchEngine build() {
+            if (delegate == null) {
+                throw new IllegalStateException("delegate est obligatoire");
+            }
+            if (maxEntries < 1) {
+                throw new IllegalStateException("maxEntries doit être positif");
+            }
+            return new CachingWebSearchEngine(this);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Journal disque en ajout seul {@code clé -> float[]}. Seul l'index (clé -> position) est
+ * gardé en mémoire ; les vecteurs sont relus à la demande par lecture positionnelle.
+ * <p>
+ * Le fichier est réservé à un seul processus par un verrou sur {@code <fichier>.lock} : un
+ * second processus (CLI lancée pendant le serveur) travaille sans cache disque plutôt que
+ * d'entrelacer ses enregistrements. Au-delà de {@code maxBytes}, le journal est réécrit avec
+ * les entrées les plus récemment utilisées (la moitié du budget), ce qui borne aussi l'index.
+ * <p>
+ * Format d'un enregistrement : {@code int longueurClé, octets UTF-8, int dimension, floats}.
+ */
+class EmbeddingLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(EmbeddingLog.class.getName());
+
+    private final Path file;
+    private final long maxBytes;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private FileChannel channel;
+    // Ordre d'accès : les premières entrées sont les moins récemment utilisées
+    private final Map<String, Long> offsets = new LinkedHashMap<>(256, 0.75f, true);
+
+    private EmbeddingLog(Path file, long maxBytes, FileChannel lockChannel, FileLock lock) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        rebuildIndex();
+    }
+
+    /**
+     * Ouvre le journal, ou renvoie {@code null} s'il est déjà utilisé par un autre processus
+     * (ou une autre instance de cette JVM).
+     */
+    static EmbeddingLog open(Path file, long maxBytes) {
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        FileChannel lockChannel = null;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockChannel.close();
+                LOGGER.warning(() -> "Cache d'embeddings " + file + " déjà utilisé : cache en mémoire seulement");
+                return null;
+            }
+            return new EmbeddingLog(file, maxBytes, lockChannel, lock);
+        } catch (IOException e) {
+            closeQuietly(lockChannel);
+            throw new UncheckedIOException("Cache d'embeddings illisible : " + file, e);
+        }
+    }
+
+    private void rebuildIndex() throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (position < size) {
+            try {
+                int keyLength = readInt(header, position);
+                if (keyLength < 0 || position + Integer.BYTES + keyLength > size) {
+                    break;
+                }
+                ByteBuffer keyBytes = ByteBuffer.allocate(keyLength);
+                readFully(keyBytes, position + Integer.BYTES);
+                long vectorPosition = position + Integer.BYTES + keyLength;
+                int dimension = readInt(header, vectorPosition);
+                long end = vectorPosition + Integer.BYTES + (long) dimension * Float.BYTES;
+                if (dimension < 0 || end > size) {
+                    break; // dernier enregistrement tronqué (arrêt brutal) : ignoré
+                }
+                offsets.put(new String(keyBytes.array(), StandardCharsets.UTF_8), vectorPosition);
+                position = end;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        channel.truncate(position);
+    }
+
+    synchronized float[] get(String key) {
+        Long position = offsets.get(key);
+        if (position == null) {
+            return null;
+        }
+        try {
+            return readVector(channel, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void put(String key, float[] vector) {
+        if (offsets.containsKey(key)) {
+            return;
+        }
+        try {
+            if (channel.size() + recordBytes(key, vector.length) > maxBytes) {
+                compact();
+            }
+            long position = channel.size();
+            offsets.put(key, append(channel, position, key, vector));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Nombre d'entrées du journal.
+     */
+    synchronized int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Réécrit le journal avec les entrées les plus récemment utilisées, dans la moitié du budget
+     * (fichier temporaire puis renommage atomique ; le verrou, sur un autre fichier, reste tenu).
+     */
+    private void compact() throws IOException {
+        // Entrées les plus récentes d'abord, dans la limite de maxBytes / 2
+        Map<String, Long> kept = new LinkedHashMap<>();
+        long budget = maxBytes / 2;
+        String[] keys = offsets.keySet().toArray(new String[0]);
+        for (int i = keys.length - 1; i >= 0; i--) {
+            long position = offsets.get(keys[i]);
+            long bytes = recordBytes(keys[i], dimensionAt(position));
+            if (bytes > budget) {
+                break;
+            }
+            budget -= bytes;
+            kept.put(keys[i], position);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Map<String, Long> rewritten = new LinkedHashMap<>(256, 0.75f, true);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            String[] order = kept.keySet().toArray(new String[0]);
+            long position = 0;
+            for (int i = order.length - 1; i >= 0; i--) { // du moins au plus récent, comme l'ordre d'accès
+                float[] vector = readVector(channel, kept.get(order[i]));
+                rewritten.put(order[i], append(out, position, order[i], vector));
+                position += recordBytes(order[i], vector.length);
+            }
+        }
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int before = offsets.size();
+        offsets.clear();
+        offsets.putAll(rewritten);
+        LOGGER.fine(() -> "Cache d'embeddings compacté : " + offsets.size() + "/" + before + " entrées gardées");
+    }
+
+    /**
+     * Écrit un enregistrement à {@code position} et renvoie la position de son vecteur.
+     */
+    private static long append(FileChannel target, long position, String key, float[] vector) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + keyBytes.length + vector.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(vector.length);
+        for (float v : vector) {
+            record.putFloat(v);
+        }
+        record.flip();
+        long written = 0;
+        while (record.hasRemaining()) {
+            written += target.write(record, position + written);
+        }
+        return position + Integer.BYTES + keyBytes.length;
+    }
+
+    private static long recordBytes(String key, int dimension) {
+        return 2L * Integer.BYTES + key.getBytes(StandardCharsets.UTF_8).length + (long) dimension * Float.BYTES;
+    }
+
+    private int dimensionAt(long position) throws IOException {
+        return readInt(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN), position);
+    }
+
+    private float[] readVector(FileChannel source, long position) throws IOException {
+        int dimension = dimensionAt(position);
+        ByteBuffer data = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(source, data, position + Integer.BYTES);
+        float[] vector = new float[dimension];
+        data.flip().asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private int readInt(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        readFully(channel, buffer, position);
+        return buffer.flip().getInt();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(channel, buffer, position);
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = source.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+            if (lock.isValid()) {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            closeQuietly(lockChannel);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // fermeture après une erreur déjà signalée
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import ma.emsi.cherqui.td4_de_cherqui.store.VectorKernels;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Réponses mémorisées par {@link SemanticCachingAssistant}, éventuellement partagées entre
+ * plusieurs assistants. Une entrée n'est trouvée que pour le même {@code scope} (retrievers et
+ * modèle derrière l'assistant) et la même version d'index ; les entrées d'une version précédente
+ * du même scope sont supprimées à la première recherche.
+ * <p>
+ * Vecteurs attendus normalisés : la similarité est un simple produit scalaire.
+ */
+public class SemanticCache {
+
+    private final double threshold;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Clock clock;
+
+    // Ordre LRU : les premières entrées sont les moins récemment utilisées
+    private final List<Entry> entries = new ArrayList<>();
+
+    private SemanticCache(Builder builder) {
+        this.threshold = builder.threshold;
+        this.ttl = builder.ttl;
+        this.maxEntries = builder.maxEntries;
+        this.clock = builder.clock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Réponse de la question la plus proche de {@code query} (cosinus &ge; {@code threshold}), ou {@code null}.
+     */
+    synchronized String lookup(String scope, Object version, float[] query) {
+        Instant now = clock.instant();
+        Entry best = null;
+        float bestSimilarity = (float) threshold;
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (!entry.scope().equals(scope)) {
+                continue;
+            }
+            if (!Objects.equals(entry.version(), version) || entry.expiresAt().isBefore(now)) {
+                it.remove();
+                continue;
+            }
+            if (entry.vector().length != query.length) {
+                continue;
+            }
+            float similarity = VectorKernels.dot(query, entry.vector(), 0);
+            if (similarity >= bestSimilarity) {
+                best = entry;
+                bestSimilarity = similarity;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        entries.remove(best);
+        entries.add(best);
+        return best.answer();
+    }
+
+    synchronized void store(String scope, Object version, float[] query, String answer) {
+        if (entries.size() >= maxEntries) {
+            entries.removeFirst();
+        }
+        entries.add(new Entry(scope, version, query, answer, clock.instant().plus(ttl)));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private record Entry(String scope, Object version, float[] vector, String answer, Instant expiresAt) {
+    }
+
+    public static class Builder {
+
+        private double threshold = 0.92;
+        private Duration ttl = Duration.ofHours(24);
+        private int maxEntries = 1_000;
+        private Clock clock = Clock.systemUTC();
+
+        /**
+         * Similarité cosinus minimale entre deux questions pour réutiliser une réponse.
+         */
+        public Builder threshold(double threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Nombre maximal d'entrées, tous scopes confondus.
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public SemanticCache build() {
+            if (maxEntries < 1) {
+                throw new IllegalStateException("maxEntries doit être >= 1");
+            }
+            return new SemanticCache(this);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.Assistant;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.LatencySamples;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache sémantique de réponses autour d'un {@link Assistant} : une question dont l'embedding est
+ * assez proche d'une question déjà traitée reçoit la réponse stockée dans le {@link SemanticCache},
+ * sans récupération ni appel au LLM.
+ * <p>
+ * Le {@code scope} (l'ensemble de retrievers et le modèle derrière l'assistant) et la version de
+ * l'index documentaire font partie de la clé : un cache partagé ne sert jamais la réponse d'un autre
+ * assistant, ni celle d'une version précédente de l'index.
+ * À réserver aux assistants sans mémoire de conversation, dont la réponse ne dépend que de la question.
+ */
+public class SemanticCachingAssistant implements Assistant {
+
+    private final Assistant delegate;
+    private final EmbeddingModel embeddingModel;
+    private final String scope;
+    private final Supplier<?> indexVersion;
+    private final SemanticCache cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final LatencySamples hitLatencies = new LatencySamples(10_000);
+    private final LatencySamples missLatencies = new LatencySamples(10_000);
+
+    private SemanticCachingAssistant(Builder builder) {
+        this.delegate = builder.delegate;
+        this.embeddingModel = builder.embeddingModel;
+        this.scope = builder.scope;
+        this.indexVersion = builder.indexVersion;
+        this.cache = builder.cache;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String chat(String message) {
+        long start = System.nanoTime();
+        float[] query = normalized(embeddingModel.embed(message).content().vector());
+
+        Object versionBefore = indexVersion.get();
+        String cached = cache.lookup(scope, versionBefore, query);
+        if (cached != null) {
+            hits.incrementAndGet();
+            hitLatencies.record(System.nanoTime() - start);
+            return cached;
+        }
+
+        String answer = delegate.chat(message);
+        misses.incrementAndGet();
+        missLatencies.record(System.nanoTime() - start);
+        // L'index a changé pendant la génération : la réponse est peut-être déjà périmée
+        if (Objects.equals(versionBefore, indexVersion.get())) {
+            cache.store(scope, versionBefore, query, answer);
+        }
+        return answer;
+    }
+
+    public Stats stats() {
+        return new Stats(scope, hits.get(), misses.get(),
+                hitLatencies.percentileMillis(50), hitLatencies.percentileMillis(99),
+                missLatencies.percentileMillis(50), missLatencies.percentileMillis(99));
+    }
+
+    public record Stats(String scope, long hits, long misses,
+                        double hitP50Millis, double hitP99Millis, double missP50Millis, double missP99Millis) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%s] taux de hit %.1f %% (%d/%d) | avec cache p50 %.1f ms p99 %.1f ms"
+                            + " | sans cache p50 %.1f ms p99 %.1f ms",
+                    scope, 100 * hitRate(), hits, hits + misses,
+                    hitP50Millis, hitP99Millis, missP50Millis, missP99Millis);
+        }
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float inverse = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+        float[] copy = Arrays.copyOf(vector, vector.length);
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] *= inverse;
+        }
+        return copy;
+    }
+
+    public static class Builder {
+
+        private Assistant delegate;
+        private EmbeddingModel embeddingModel;
+        private String scope = "default";
+        private Supplier<?> indexVersion = () -> 0;
+        private SemanticCache cache = SemanticCache.builder().build();
+
+        public Builder delegate(Assistant delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Identifie l'ensemble de retrievers et le modèle derrière l'assistant : fait partie de la clé
+         * du cache et apparaît dans les statistiques.
+         */
+        public Builder scope(String scope) {
+            this.scope = scope;
+            return this;
+        }
+
+        /**
+         * Version courante de l'index documentaire ; tout changement invalide le cache.
+         */
+        public Builder indexVersion(Supplier<?> indexVersion) {
+            this.indexVersion = indexVersion;
+            return this;
+        }
+
+        /**
+         * Cache des réponses, à partager entre assistants ; un cache privé par défaut.
+         */
+        public Builder cache(SemanticCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public SemanticCachingAssistant build() {
+            if (delegate == null || embeddingModel == null || cache == null) {
+                throw new IllegalStateException("delegate, embeddingModel et cache sont obligatoires");
+            }
+            return new SemanticCachingAssistant(this);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Journal disque en ajout seul des résultats de recherche Web, relu au démarrage
+ * (le dernier enregistrement d'une clé l'emporte) et réécrit quand il contient trop d'entrées périmées.
+ * <p>
+ * Format d'un enregistrement : {@code long dateMillis, chaîne clé, long totalRésultats (-1 si inconnu, relu comme 0),
+ * int n, n × (titre, url, extrait, contenu)} ; une chaîne est {@code int longueur (-1 = null), octets UTF-8}.
+ */
+class WebSearchLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(WebSearchLog.class.getName());
+
+    private final Path file;
+    private DataOutputStream out;
+    private long records;
+
+    WebSearchLog(Path file) {
+        this.file = file;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cache de recherche Web inaccessible : " + file, e);
+        }
+    }
+
+    /**
+     * Relit le journal ; un enregistrement tronqué (arrêt brutal) ou corrompu termine la lecture,
+     * les enregistrements précédents sont conservés et la suite est perdue à la prochaine compaction.
+     */
+    synchronized Map<String, CachingWebSearchEngine.Cached> load() {
+        Map<String, CachingWebSearchEngine.Cached> entries = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Reader in = new Reader(stream, Files.size(file));
+            while (in.remaining > 0) {
+                Instant fetchedAt = Instant.ofEpochMilli(in.readLong());
+                String key = in.readString();
+                long total = in.readLong();
+                int count = in.readInt();
+                // Chaque résultat occupe au moins 4 longueurs : un nombre aberrant est une corruption
+                if (count < 0 || count > in.remaining / (4L * Integer.BYTES)) {
+                    throw new IOException("nombre de résultats invalide : " + count);
+                }
+                List<WebSearchOrganicResult> results = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String title = in.readString();
+                    String url = in.readString();
+                    String snippet = in.readString();
+                    String content = in.readString();
+                    results.add(WebSearchOrganicResult.from(title, URI.create(url), snippet, content));
+                }
+                records++;
+                entries.remove(key); // ordre d'insertion = ordre de fraîcheur
+                entries.put(key, new CachingWebSearchEngine.Cached(WebSearchResults.from(
+                        WebSearchInformationResult.from(Math.max(total, 0)), results), fetchedAt));
+            }
+        } catch (EOFException e) {
+            LOGGER.warning(() -> "Cache de recherche Web tronqué, " + records + " enregistrements relus : " + file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Cache de recherche Web corrompu, " + records
+                    + " enregistrements relus : " + file, e);
+        }
+        return entries;
+    }
+
+    synchronized void append(String key, CachingWebSearchEngine.Cached cached) {
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            }
+            write(out, key, cached);
+            out.flush();
+            records++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Nombre d'enregistrements du fichier (vivants ou remplacés).
+     */
+    synchronized long records() {
+        return records;
+    }
+
+    /**
+     * Réécrit le journal avec les seules entrées vivantes (fichier temporaire puis renommage atomique).
+     * {@code live} est lu sous le verrou du journal : aucun ajout concurrent ne peut être perdu.
+     */
+    synchronized void compact(Supplier<Map<String, CachingWebSearchEngine.Cached>> live) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            close();
+            Map<String, CachingWebSearchEngine.Cached> entries = live.get();
+            try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                for (Map.Entry<String, CachingWebSearchEngine.Cached> entry : entries.entrySet()) {
+                    write(compacted, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            records = entries.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(DataOutputStream out, String key, CachingWebSearchEngine.Cached cached)
+            throws IOException {
+        WebSearchResults results = cached.results();
+        out.writeLong(cached.fetchedAt().toEpochMilli());
+        writeString(out, key);
+        Long total = results.searchInformation() == null ? null : results.searchInformation().totalResults();
+        out.writeLong(total == null ? -1 : total);
+        out.writeInt(results.results().size());
+        for (WebSearchOrganicResult result : results.results()) {
+            writeString(out, result.title());
+            writeString(out, result.url().toString());
+            writeString(out, result.snippet());
+            writeString(out, result.content());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Lecture bornée par ce qu'il reste du fichier : une longueur aberrante est signalée comme une
+     * corruption au lieu de provoquer une allocation géante.
+     */
+    private static final class Reader {
+
+        private final DataInputStream in;
+        private long remaining;
+
+        Reader(DataInputStream in, long size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        long readLong() throws IOException {
+            consume(Long.BYTES);
+            return in.readLong();
+        }
+
+        int readInt() throws IOException {
+            consume(Integer.BYTES);
+            return in.readInt();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            consume(length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void consume(long bytes) throws IOException {
+            if (bytes > remaining) {
+                throw new EOFException();
+            }
+            remaining -= bytes;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                out = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ma.emsi.cherqui.td4_de_cherqui.engine;
+
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiEmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
+
+/**
+ * Fabrique des modèles et du moteur de recherche Web utilisés par le {@link RagEngine} :
+ * Gemini et Tavily en production, modèles simulés dans les benchmarks.
+ */
+public interface ModelProvider {
+
+    ChatLanguageModel chatModel(RagConfig.Models models);
+
+    StreamingChatLanguageModel streamingChatModel(RagConfig.Models models);
+
+    EmbeddingModel embeddingModel(RagConfig.Models models);
+
+    WebSearchEngine webSearchEngine();
+
+    /**
+     * Gemini ({@code GEMINI_API_KEY}) et Tavily ({@code TAVILY_API_KEY}), clés lues à la première utilisation.
+     *
+     * @param verbose log complet des requêtes/réponses (lent, pour le débogage)
+     */
+    static ModelProvider gemini(boolean verbose) {
+        return new ModelProvider() {
+
+            @Override
+            public ChatLanguageModel chatModel(RagConfig.Models models) {
+                return GoogleAiGeminiChatModel.builder()
+                        .apiKey(key("GEMINI_API_KEY", "La clé API Gemini"))
+                        .modelName(models.chatModel())
+                        .temperature(models.temperature())
+                        .timeout(models.timeout())
+                        .logRequestsAndResponses(verbose)
+                        .build();
+            }
+
+            @Override
+            public StreamingChatLanguageModel streamingChatModel(RagConfig.Models models) {
+                return GoogleAiGeminiStreamingChatModel.builder()
+                        .apiKey(key("GEMINI_API_KEY", "La clé API Gemini"))
+                        .modelName(models.chatModel())
+                        .temperature(models.temperature())
+                        .timeout(models.timeout())
+                        .logRequestsAndResponses(verbose)
+                        .build();
+            }
+
+            @Override
+            public EmbeddingModel embeddingModel(RagConfig.Models models) {
+                return GoogleAiEmbeddingModel.builder()
+                        .apiKey(key("GEMINI_API_KEY", "La clé API Gemini"))
+                        .modelName(models.embeddingModel())
+                        .build();
+            }
+
+            @Override
+            public WebSearchEngine webSearchEngine() {
+                return TavilyWebSearchEngine.builder()
+                        .apiKey(key("TAVILY_API_KEY", "La clé API Tavily"))
+                        .build();
+            }
+        };
+    }
+
+    private static String key(String variable, String label) {
+        String value = System.getenv(variable);
+        if (value == null || value.isBlank()) {
+            throw new IllegalStateException(label + " n'est pas définie dans la variable d'environnement " + variable);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package ma.emsi.cherqui.td4_de_cherqui.engine;
+
+import ma.emsi.cherqui.td4_de_cherqui.metrics.StreamingMetrics;
+
+import java.util.Scanner;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Boucle de questions/réponses en console sur un {@link RagEngine}.
+ * <p>
+ * Argument : fichier de configuration, ou ressource du classpath
+ * (par défaut {@code rag/recuperation.properties}). Commandes : {@code fin} pour quitter,
+ * {@code :reload} pour relire la configuration sans redémarrer (modèles et index inchangés conservés).
+ */
+public final class RagCli {
+
+    // Log complet des requêtes/réponses (lent, pour le débogage) : -Drag.verbose=true
+    private static final boolean VERBOSE = Boolean.getBoolean("rag.verbose");
+
+    private RagCli() {
+    }
+
+    public static void main(String[] args) {
+        run(args.length > 0 ? args[0] : "rag/recuperation.properties");
+    }
+
+    public static void run(String configLocation) {
+        if (VERBOSE) {
+            configureLogger();
+        }
+
+        try (RagEngine engine = RagEngine.builder()
+                .config(RagConfig.load(configLocation))
+                .modelProvider(ModelProvider.gemini(VERBOSE))
+                .build()) {
+            StreamingMetrics streamingMetrics = new StreamingMetrics();
+
+            try (Scanner scanner = new Scanner(System.in)) {
+                while (true) {
+                    System.out.println("==================================================");
+                    System.out.println("Posez votre question : ");
+                    String question = scanner.nextLine();
+                    if (question.isBlank()) {
+                        continue;
+                    }
+                    System.out.println("==================================================");
+                    if ("fin".equalsIgnoreCase(question)) {
+                        break;
+                    }
+                    if (":reload".equals(question.strip())) {
+                        engine.reconfigure(RagConfig.load(configLocation));
+                        System.out.println("Configuration rechargée : " + configLocation);
+                        continue;
+                    }
+                    if (engine.config().models().streaming()) {
+                        // La récupération a lieu dans chat(), avant le premier token
+                        long debut = System.nanoTime();
+                        System.out.print("Assistant : ");
+                        streamingMetrics.stream(debut, engine.streamingAssistant().chat(question), token -> {
+                            System.out.print(token);
+                            System.out.flush();
+                        });
+                        System.out.println();
+                    } else {
+                        System.out.println("Assistant : " + engine.assistant().chat(question));
+                    }
+                    System.out.println("==================================================");
+                }
+            }
+
+            if (streamingMetrics.stats().requests() > 0) {
+                System.out.println("Latences : " + streamingMetrics.stats());
+            }
+            System.out.print(engine.stats());
+        }
+    }
+
+    private static void configureLogger() {
+        // Configure le logger sous-jacent (java.util.logging)
+        Logger packageLogger = Logger.getLogger("dev.langchain4j");
+        packageLogger.setLevel(Level.FINE);
+        ConsoleHandler handler = new ConsoleHandler();
+        handler.setLevel(Level.FINE);
+        packageLogger.addHandler(handler);
+    }
+}
@@ -0,0 +1,337 @@
+package ma.emsi.cherqui.td4_de_cherqui.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Configuration d'un pipeline RAG, lue depuis un fichier {@code .properties} : modèles, sources
+ * (découpage, type de store, retriever), recherche Web, routage, agrégation, mémoire, caches,
+ * échéances et quotas d'API. Voir {@code src/main/resources/rag/*.properties} pour des exemples complets.
+ * <p>
+ * Les sections sont des records : deux configurations qui ne diffèrent que par le routage
+ * partagent ainsi les mêmes modèles et les mêmes stores dans le {@link RagEngine}.
+ * Durées : {@code 1500ms}, {@code 3s}, {@code 5m}, {@code 6h}, {@code 1d} ou ISO-8601 ({@code PT3S}).
+ */
+public record RagConfig(Models models, Path indexDir, List<Source> sources, Web web, Routing routing,
+                        Aggregation aggregation, Memory memory, Caches caches, Scheduling scheduling,
+                        boolean jfrEvents) {
+
+    /**
+     * {@code mapped} et {@code snapshot} cherchent dans l'index persistant ; {@code hnsw}, {@code packed}
+     * et {@code sharded} le copient au démarrage dans un store en mémoire (HNSW approché, balayage SIMD
+     * contigu, shards interrogés en parallèle), l'index projeté restant la copie sur disque.
+     */
+    public enum StoreType { MAPPED, SNAPSHOT, HNSW, PACKED, SHARDED }
+
+    public enum RetrieverType { VECTOR, HYBRID }
+
+    public enum RouterType { DEFAULT, PARALLEL, EMBEDDING, LLM }
+
+    public enum Fallback { NONE, LLM, LLM_GATE }
+
+    public enum AggregatorType { DEFAULT, PACKING }
+
+    public enum MemoryType { NONE, WINDOW, TOKENS }
+
+    public record Models(String chatModel, double temperature, Duration timeout, boolean streaming,
+                         String embeddingModel) {
+    }
+
+    /**
+     * Un document (ou un répertoire, indexé incrémentalement) et son retriever.
+     *
+     * @param minScore        similarité minimale des candidats vectoriels
+     * @param lexicalMinScore score BM25 minimal des candidats lexicaux (retriever {@code hybrid})
+     * @param deadline        échéance de la source avec le routeur {@code parallel}
+     * @param glob            fichiers indexés quand {@code path} est un répertoire
+     * @param watch           délai de regroupement des modifications du répertoire surveillé, ou {@code null}
+     */
+    public record Source(String name, Path path, String description, int maxSegmentSize, int maxOverlap,
+                         StoreType store, RetrieverType retriever, int maxResults, double minScore,
+                         double lexicalMinScore, Duration embeddingTimeout, Duration deadline, String glob,
+                         Duration watch) {
+    }
+
+    /**
+     * @param cacheFile journal persistant du cache de recherches, ou {@code null} (cache en mémoire)
+     */
+    public record Web(boolean enabled, String description, int maxResults, Duration deadline, Duration cacheTtl,
+                      Path cacheFile) {
+    }
+
+    public record Routing(RouterType type, Fallback fallback, double minSimilarity) {
+    }
+
+    public record Aggregation(AggregatorType type, int maxTokens) {
+    }
+
+    /**
+     * @param size nombre de messages ({@code window}) ou budget de tokens ({@code tokens})
+     */
+    public record Memory(MemoryType type, int size) {
+    }
+
+    /**
+     * @param queryEmbeddingsFile journal du cache d'embeddings de questions, ou {@code null} (pas de cache)
+     */
+    public record Caches(Path queryEmbeddingsFile, boolean semantic, double semanticThreshold) {
+    }
+
+    /**
+     * Ordonnanceurs placés devant les API de chat et d'embedding.
+     */
+    public record Scheduling(Limits chat, Limits embedding) {
+    }
+
+    /**
+     * @param ratePerSecond quota en requêtes/s, ou {@code 0} (pas d'ordonnanceur)
+     * @param hedgeAfter    délai minimal des requêtes couvertes, ou {@code null} (désactivées)
+     */
+    public record Limits(double ratePerSecond, double burst, int maxConcurrency, Duration latencyTarget,
+                         Duration hedgeAfter) {
+
+        public boolean enabled() {
+            return ratePerSecond > 0;
+        }
+    }
+
+    /**
+     * Charge un fichier, ou à défaut une ressource du classpath (par ex. {@code rag/naif.properties}).
+     */
+    public static RagConfig load(String location) {
+        return from(properties(location));
+    }
+
+    /**
+     * Propriétés brutes d'une configuration, pour en surcharger certaines avant {@link #from}.
+     */
+    public static Properties properties(String location) {
+        Properties properties = new Properties();
+        try {
+            Path file = Path.of(location);
+            if (Files.isRegularFile(file)) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+            } else {
+                try (InputStream in = RagConfig.class.getClassLoader().getResourceAsStream(location)) {
+                    if (in == null) {
+                        throw new IllegalArgumentException("Configuration introuvable : " + location);
+                    }
+                    properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Configuration illisible : " + location, e);
+        }
+        return properties;
+    }
+
+    public static RagConfig from(Properties properties) {
+        Values values = new Values(properties);
+        Models models = new Models(
+                values.string("chat.model", "gemini-2.5-flash"),
+                values.decimal("chat.temperature", 0.7),
+                values.duration("chat.timeout", Duration.ofSeconds(60)),
+                values.bool("chat.streaming", false),
+                values.string("embedding.model", "text-embedding-004"));
+
+        List<Source> sources = new ArrayList<>();
+        for (String name : values.list("sources")) {
+            String prefix = "source." + name + ".";
+            sources.add(new Source(name,
+                    Path.of(values.required(prefix + "path")),
+                    values.string(prefix + "description", name),
+                    values.integer(prefix + "max-segment-size", 500),
+                    values.integer(prefix + "max-overlap", 100),
+                    values.choice(prefix + "store", StoreType.class, StoreType.MAPPED),
+                    values.choice(prefix + "retriever", RetrieverType.class, RetrieverType.VECTOR),
+                    values.integer(prefix + "max-results", 3),
+                    values.decimal(prefix + "min-score", 0.0),
+                    values.decimal(prefix + "lexical-min-score", 0.0),
+                    values.duration(prefix + "embedding-timeout", Duration.ofSeconds(2)),
+                    values.duration(prefix + "deadline", Duration.ofSeconds(3)),
+                    values.string(prefix + "glob", "*.pdf"),
+                    values.duration(prefix + "watch", null)));
+        }
+
+        String webCacheFile = values.string("web.cache.file", "");
+        Web web = new Web(
+                values.bool("web.enabled", false),
+                values.string("web.description", "Recherche sur le Web"),
+                values.integer("web.max-results", 3),
+                values.duration("web.deadline", Duration.ofSeconds(2)),
+                values.duration("web.cache.ttl", Duration.ofHours(6)),
+                webCacheFile.isBlank() ? null : Path.of(webCacheFile));
+
+        Routing routing = new Routing(
+                values.choice("router", RouterType.class, RouterType.DEFAULT),
+                values.choice("router.fallback", Fallback.class, Fallback.NONE),
+                values.decimal("router.min-similarity", 0.35));
+        Aggregation aggregation = new Aggregation(
+                values.choice("aggregator", AggregatorType.class, AggregatorType.DEFAULT),
+                values.integer("aggregator.max-tokens", 1_500));
+        Memory memory = new Memory(
+                values.choice("memory", MemoryType.class, MemoryType.NONE),
+                values.integer("memory.size", 10));
+
+        String queryCacheFile = values.string("cache.query-embeddings", "");
+        Caches caches = new Caches(
+                queryCacheFile.isBlank() ? null : Path.of(queryCacheFile),
+                values.bool("cache.semantic", false),
+                values.decimal("cache.semantic.threshold", 0.92));
+
+        Scheduling scheduling = new Scheduling(
+                limits(values, "scheduler.chat.", Duration.ofSeconds(20)),
+                limits(values, "scheduler.embedding.", Duration.ofSeconds(5)));
+
+        RagConfig config = new RagConfig(models, Path.of(values.string("index.dir", ".rag-index")), List.copyOf(sources),
+                web, routing, aggregation, memory, caches, scheduling,
+                values.bool("metrics.jfr", Boolean.getBoolean("rag.jfr")));
+        config.validate();
+        return config;
+    }
+
+    private static Limits limits(Values values, String prefix, Duration latencyTarget) {
+        return new Limits(
+                values.decimal(prefix + "rate", 0),
+                values.decimal(prefix + "burst", 2),
+                values.integer(prefix + "max-concurrency", 16),
+                values.duration(prefix + "latency-target", latencyTarget),
+                values.duration(prefix + "hedge-after", null));
+    }
+
+    private void validate() {
+        if (sources.isEmpty() && !web.enabled()) {
+            throw new IllegalArgumentException("Configuration : au moins une source (sources=...) ou web.enabled=true");
+        }
+        if (caches.semantic() && memory.type() != MemoryType.NONE) {
+            // la réponse dépendrait de l'historique : le cache servirait des réponses hors contexte
+            throw new IllegalArgumentException("Configuration : cache.semantic exige memory=none");
+        }
+        if (caches.semantic() && models.streaming()) {
+            throw new IllegalArgumentException("Configuration : cache.semantic n'est pas disponible en streaming");
+        }
+        if (routing.type() == RouterType.EMBEDDING && routing.fallback() == Fallback.LLM_GATE && sources.isEmpty()) {
+            throw new IllegalArgumentException("Configuration : router.fallback=llm-gate exige au moins une source");
+        }
+        for (Source source : sources) {
+            // Seul l'index projeté suit les mises à jour : les copies en mémoire et l'index BM25 sont figés au démarrage
+            if (source.watch() != null && (source.store() != StoreType.MAPPED || source.retriever() != RetrieverType.VECTOR)) {
+                throw new IllegalArgumentException("Configuration : source." + source.name()
+                        + ".watch exige store=mapped et retriever=vector");
+            }
+        }
+        for (Limits limits : List.of(scheduling.chat(), scheduling.embedding())) {
+            if (limits.ratePerSecond() < 0 || limits.enabled() && limits.maxConcurrency() < 1) {
+                throw new IllegalArgumentException("Configuration : scheduler.*.rate >= 0 et scheduler.*.max-concurrency >= 1");
+            }
+        }
+    }
+
+    /**
+     * Lecture typée des propriétés ; toute valeur invalide est signalée avec sa clé.
+     */
+    private record Values(Properties properties) {
+
+        String required(String key) {
+            String value = properties.getProperty(key);
+            if (value == null || value.isBlank()) {
+                throw new IllegalArgumentException("Configuration : " + key + " est obligatoire");
+            }
+            return value.strip();
+        }
+
+        String string(String key, String defaultValue) {
+            String value = properties.getProperty(key);
+            return value == null ? defaultValue : value.strip();
+        }
+
+        List<String> list(String key) {
+            List<String> items = new ArrayList<>();
+            for (String item : string(key, "").split(",")) {
+                if (!item.isBlank()) {
+                    items.add(item.strip());
+                }
+            }
+            return items;
+        }
+
+        boolean bool(String key, boolean defaultValue) {
+            String value = string(key, null);
+            return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+        }
+
+        int integer(String key, int defaultValue) {
+            String value = string(key, null);
+            try {
+                return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value.replace("_", ""));
+            } catch (NumberFormatException e) {
+                throw invalid(key, value);
+            }
+        }
+
+        double decimal(String key, double defaultValue) {
+            String value = string(key, null);
+            try {
+                return value == null || value.isEmpty() ? defaultValue : Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw invalid(key, value);
+            }
+        }
+
+        <E extends Enum<E>> E choice(String key, Class<E> type, E defaultValue) {
+            String value = string(key, null);
+            if (value == null || value.isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                return Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw invalid(key, value);
+            }
+        }
+
+        Duration duration(String key, Duration defaultValue) {
+            String value = string(key, null);
+            if (value == null || value.isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                if (value.startsWith("P") || value.startsWith("p")) {
+                    return Duration.parse(value);
+                }
+                String lower = value.toLowerCase(Locale.ROOT);
+                if (lower.endsWith("ms")) {
+                    return Duration.ofMillis(Long.parseLong(lower.substring(0, lower.length() - 2)));
+                }
+                long amount = Long.parseLong(lower.substring(0, lower.length() - 1));
+                return switch (lower.charAt(lower.length() - 1)) {
+                    case 's' -> Duration.ofSeconds(amount);
+                    case 'm' -> Duration.ofMinutes(amount);
+                    case 'h' -> Duration.ofHours(amount);
+                    case 'd' -> Duration.ofDays(amount);
+                    default -> throw invalid(key, value);
+                };
+            } catch (NumberFormatException | DateTimeParseException e) {
+                throw invalid(key, value);
+            }
+        }
+
+        private static IllegalArgumentException invalid(String key, String value) {
+            return new IllegalArgumentException("Configuration : valeur invalide pour " + key + " : " + value);
+        }
+    }
+}
@@ -0,0 +1,710 @@
+package ma.emsi.cherqui.td4_de_cherqui.engine;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.AugmentationResult;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.Assistant;
+import ma.emsi.cherqui.td4_de_cherqui.StreamingAssistant;
+import ma.emsi.cherqui.td4_de_cherqui.cache.CachingEmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.cache.CachingWebSearchEngine;
+import ma.emsi.cherqui.td4_de_cherqui.cache.SemanticCache;
+import ma.emsi.cherqui.td4_de_cherqui.cache.SemanticCachingAssistant;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.IncrementalIndexer;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PersistentIngestor;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.memory.TokenBudgetChatMemory;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.PipelineMetrics;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.HybridContentRetriever;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.PackingContentAggregator;
+import ma.emsi.cherqui.td4_de_cherqui.retrieval.ParallelRetrievalRouter;
+import ma.emsi.cherqui.td4_de_cherqui.routing.EmbeddingQueryRouter;
+import ma.emsi.cherqui.td4_de_cherqui.scheduling.RequestScheduler;
+import ma.emsi.cherqui.td4_de_cherqui.snapshot.IndexSnapshot;
+import ma.emsi.cherqui.td4_de_cherqui.store.HnswEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.MappedEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.PackedEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.ShardedEmbeddingStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Moteur RAG unique, construit à partir d'une {@link RagConfig} : modèles, index, retrievers,
+ * routeur, agrégateur, mémoire et caches sont assemblés une seule fois.
+ * <p>
+ * Les composants coûteux (modèles, index chargés ou ingérés, caches, mémoire) sont partagés et
+ * indexés par la partie de configuration qui les définit : {@link #reconfigure} ne reconstruit
+ * que ce qui a changé puis remplace le pipeline atomiquement. {@link #assistant()},
+ * {@link #streamingAssistant()}, {@link #retrievalAugmentor()} et {@link #chatModel()} suivent
+ * toujours le pipeline courant : les appelants n'ont pas à être reconstruits.
+ * <p>
+ * Avec {@code scheduler.*.rate}, chaque API passe par un {@link RequestScheduler} : l'ingestion
+ * y est en priorité basse, les questions et la génération en priorité interactive.
+ */
+public class RagEngine implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(RagEngine.class.getName());
+    // Étapes des sources préfixées : un nom de source ("web", "router", nom d'un modèle) ne peut
+    // ni fusionner ses mesures avec une étape fixe, ni entrer en conflit avec son type
+    private static final String SOURCE_STAGE = "source/";
+
+    private final ModelProvider modelProvider;
+    private final PipelineMetrics metrics;
+    private final Map<Key, CompletableFuture<Object>> shared = new ConcurrentHashMap<>();
+    private final AtomicReference<Pipeline> current = new AtomicReference<>();
+
+    private RagEngine(Builder builder) {
+        this.modelProvider = builder.modelProvider;
+        this.metrics = builder.metrics != null ? builder.metrics : new PipelineMetrics(builder.config.jfrEvents());
+        reconfigure(builder.config);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Construit le pipeline décrit par {@code config} en réutilisant les composants partagés
+     * inchangés, puis le substitue au pipeline courant (les requêtes en cours terminent sur l'ancien).
+     */
+    public synchronized void reconfigure(RagConfig config) {
+        long start = System.nanoTime();
+        Pipeline pipeline = build(config);
+        current.set(pipeline);
+        LOGGER.info(() -> String.format("Pipeline prêt en %.0f ms : %d source(s), routeur %s",
+                (System.nanoTime() - start) / 1e6, config.sources().size(),
+                config.routing().type().name().toLowerCase(Locale.ROOT)));
+    }
+
+    public RagConfig config() {
+        return pipeline().config();
+    }
+
+    public PipelineMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Assistant du pipeline courant (configuration sans streaming).
+     */
+    public Assistant assistant() {
+        return message -> {
+            Assistant assistant = pipeline().assistant();
+            if (assistant == null) {
+                throw new IllegalStateException("Pipeline configuré en streaming : utiliser streamingAssistant()");
+            }
+            return assistant.chat(message);
+        };
+    }
+
+    /**
+     * Assistant en streaming du pipeline courant ({@code chat.streaming=true}).
+     */
+    public StreamingAssistant streamingAssistant() {
+        return message -> {
+            StreamingAssistant assistant = pipeline().streamingAssistant();
+            if (assistant == null) {
+                throw new IllegalStateException("Pipeline configuré sans streaming : utiliser assistant()");
+            }
+            return assistant.chat(message);
+        };
+    }
+
+    /**
+     * Récupération du pipeline courant, pour un appelant qui gère lui-même modèle et mémoire (mode serveur).
+     */
+    public RetrievalAugmentor retrievalAugmentor() {
+        return new RetrievalAugmentor() {
+
+            @Override
+            public AugmentationResult augment(AugmentationRequest request) {
+                return pipeline().augmentor().augment(request);
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public UserMessage augment(UserMessage userMessage, Metadata metadata) {
+                return pipeline().augmentor().augment(userMessage, metadata);
+            }
+        };
+    }
+
+    /**
+     * Modèle de chat (instrumenté) du pipeline courant.
+     */
+    public ChatLanguageModel chatModel() {
+        return new CurrentChatModel();
+    }
+
+    /**
+     * Statistiques des composants du pipeline courant, puis métriques par étape.
+     */
+    public String stats() {
+        StringBuilder stats = new StringBuilder();
+        for (Supplier<String> report : pipeline().reports()) {
+            stats.append(report.get()).append(System.lineSeparator());
+        }
+        return stats.append(metrics).toString();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (CompletableFuture<Object> future : shared.values()) {
+            // Composant en cours de construction ou en échec : rien à fermer
+            if (future.state() == Future.State.SUCCESS && future.resultNow() instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Fermeture impossible : " + closeable, e);
+                }
+            }
+        }
+        shared.clear();
+    }
+
+    private Pipeline pipeline() {
+        return current.get();
+    }
+
+    // -------------------------------
+    // Assemblage
+    // -------------------------------
+
+    private Pipeline build(RagConfig config) {
+        RagConfig.Models models = config.models();
+        List<Supplier<String>> reports = new ArrayList<>();
+
+        // 1. Modèles d'embedding : documents (ingestion) et questions (cache persistant facultatif)
+        EmbeddingModel embeddingModel = embeddingModel(config, RequestScheduler.Priority.BULK);
+        EmbeddingModel queryEmbeddingModel = queryEmbeddingModel(models, config.caches(),
+                embeddingModel(config, RequestScheduler.Priority.INTERACTIVE));
+        // Arrays.asList : un ordonnanceur absent (pas de quota) est null
+        for (RequestScheduler scheduler : Arrays.asList(embeddingScheduler(config), chatScheduler(config))) {
+            if (scheduler != null) {
+                reports.add(() -> "Ordonnanceur " + scheduler.stats());
+            }
+        }
+
+        // 2. Sources : index chargé (ou ingéré) une fois, retriever propre au pipeline
+        Map<ContentRetriever, RagConfig.Source> sources = new LinkedHashMap<>();
+        Map<ContentRetriever, SourceIndex> indexes = new LinkedHashMap<>();
+        for (RagConfig.Source source : config.sources()) {
+            SourceIndex index = index(config.indexDir(), models, source, embeddingModel);
+            ContentRetriever retriever = metrics.contentRetriever(SOURCE_STAGE + source.name(),
+                    retriever(source, index, queryEmbeddingModel));
+            sources.put(retriever, source);
+            indexes.put(retriever, index);
+        }
+
+        // 3. Recherche Web, derrière le cache de résultats
+        ContentRetriever webRetriever = null;
+        if (config.web().enabled()) {
+            CachingWebSearchEngine webSearchEngine = webSearchEngine(config.web());
+            webRetriever = metrics.contentRetriever("web", WebSearchContentRetriever.builder()
+                    .webSearchEngine(webSearchEngine)
+                    .maxResults(config.web().maxResults())
+                    .build());
+            reports.add(() -> webSearchEngine.stats().toString());
+        }
+
+        // 4. Routage
+        QueryRouter router = router(config, queryEmbeddingModel, sources, indexes, webRetriever, reports);
+
+        // 5. Agrégation et augmentation
+        var augmentorBuilder = DefaultRetrievalAugmentor.builder()
+                .queryRouter(metrics.queryRouter("router", router));
+        if (config.aggregation().type() == RagConfig.AggregatorType.PACKING) {
+            PackingContentAggregator aggregator = PackingContentAggregator.builder()
+                    .maxTokens(config.aggregation().maxTokens())
+                    .maxOverlap(config.sources().stream().mapToInt(RagConfig.Source::maxOverlap).max().orElse(0))
+                    .build();
+            augmentorBuilder.contentAggregator(aggregator);
+            reports.add(() -> "Agrégateur : " + aggregator.stats());
+        }
+        RetrievalAugmentor augmentor = augmentorBuilder.build();
+
+        // 6. Assistant (mémoire partagée entre reconfigurations tant qu'elle ne change pas)
+        ChatMemory memory = memory(config.memory());
+        if (models.streaming()) {
+            StreamingChatLanguageModel streamingModel = shared(new Key("streaming-chat", models),
+                    () -> modelProvider.streamingChatModel(models));
+            var assistant = AiServices.builder(StreamingAssistant.class)
+                    .streamingChatLanguageModel(streamingModel)
+                    .retrievalAugmentor(augmentor);
+            if (memory != null) {
+                assistant.chatMemory(memory);
+            }
+            return new Pipeline(config, augmentor, null, null, assistant.build(), List.copyOf(reports));
+        }
+
+        ChatLanguageModel chatModel = chatModel(config);
+        var builder = AiServices.builder(Assistant.class)
+                .chatLanguageModel(chatModel)
+                .retrievalAugmentor(augmentor);
+        if (memory != null) {
+            builder.chatMemory(memory);
+        }
+        Assistant assistant = builder.build();
+        if (config.caches().semantic()) {
+            List<SourceIndex> versioned = List.copyOf(indexes.values());
+            // Un cache par seuil pour tout le moteur ; le scope sépare les configurations dont les réponses diffèrent
+            SemanticCache cache = shared(new Key("semantic-cache", config.caches().semanticThreshold()),
+                    () -> SemanticCache.builder().threshold(config.caches().semanticThreshold()).build());
+            List<Object> answerConfig = List.of(config.models(), config.sources(), config.web(), config.routing(),
+                    config.aggregation());
+            SemanticCachingAssistant cached = SemanticCachingAssistant.builder()
+                    .delegate(assistant)
+                    .embeddingModel(queryEmbeddingModel)
+                    .scope(config.sources().stream().map(RagConfig.Source::name).collect(Collectors.joining("+"))
+                            + "#" + Integer.toHexString(answerConfig.hashCode()))
+                    .cache(cache)
+                    .indexVersion(() -> versioned.stream().map(index -> index.version().get())
+                            .map(String::valueOf).collect(Collectors.joining(":")))
+                    .build();
+            reports.addFirst(() -> "Cache sémantique : " + cached.stats());
+            assistant = cached;
+        }
+        return new Pipeline(config, augmentor, chatModel, assistant, null, List.copyOf(reports));
+    }
+
+    private ChatLanguageModel chatModel(RagConfig config) {
+        RagConfig.Models models = config.models();
+        // La diffusion en streaming ne change pas le modèle utilisé pour le routage
+        RagConfig.Models key = new RagConfig.Models(models.chatModel(), models.temperature(), models.timeout(),
+                false, models.embeddingModel());
+        ChatLanguageModel api = shared(new Key("chat-api", key), () -> modelProvider.chatModel(models));
+        RequestScheduler scheduler = chatScheduler(config);
+        if (scheduler == null) {
+            return shared(new Key("chat", key), () -> metrics.chatModel(models.chatModel(), api));
+        }
+        // Métriques à l'extérieur : la latence mesurée inclut l'attente d'un jeton
+        return shared(new Key("chat", List.of(key, scheduler)), () -> metrics.chatModel(models.chatModel(),
+                scheduler.chatModel(api, RequestScheduler.Priority.INTERACTIVE)));
+    }
+
+    private EmbeddingModel embeddingModel(RagConfig config, RequestScheduler.Priority priority) {
+        RagConfig.Models models = config.models();
+        EmbeddingModel api = shared(new Key("embedding-api", models.embeddingModel()),
+                () -> modelProvider.embeddingModel(models));
+        RequestScheduler scheduler = embeddingScheduler(config);
+        if (scheduler == null) {
+            return shared(new Key("embedding", models.embeddingModel()),
+                    () -> metrics.embeddingModel(models.embeddingModel(), api));
+        }
+        return shared(new Key("embedding", List.of(models.embeddingModel(), scheduler, priority)),
+                () -> metrics.embeddingModel(models.embeddingModel(), scheduler.embeddingModel(api, priority)));
+    }
+
+    private RequestScheduler chatScheduler(RagConfig config) {
+        return scheduler("chat", config.models().chatModel(), config.scheduling().chat());
+    }
+
+    private RequestScheduler embeddingScheduler(RagConfig config) {
+        return scheduler("embedding", config.models().embeddingModel(), config.scheduling().embedding());
+    }
+
+    /**
+     * Ordonnanceur d'une API, ou {@code null} si {@code limits} ne fixe pas de quota. Un seul par
+     * modèle, comme le quota : créé avec les limites de la première configuration qui l'utilise.
+     */
+    private RequestScheduler scheduler(String api, String model, RagConfig.Limits limits) {
+        if (!limits.enabled()) {
+            return null;
+        }
+        return shared(new Key("scheduler", List.of(api, model)), () -> {
+            RequestScheduler scheduler = RequestScheduler.builder()
+                    .name(api + " " + model)
+                    .ratePerSecond(limits.ratePerSecond())
+                    .burst(limits.burst())
+                    .maxConcurrency(limits.maxConcurrency())
+                    .latencyTarget(limits.latencyTarget())
+                    .hedgeAfter(limits.hedgeAfter())
+                    .build();
+            metrics.gauge("rag_scheduler_" + api + "_limit", scheduler::concurrencyLimit);
+            metrics.gauge("rag_scheduler_" + api + "_in_flight", scheduler::inFlight);
+            return scheduler;
+        });
+    }
+
+    private EmbeddingModel queryEmbeddingModel(RagConfig.Models models, RagConfig.Caches caches,
+                                               EmbeddingModel embeddingModel) {
+        if (caches.queryEmbeddingsFile() == null) {
+            return embeddingModel;
+        }
+        return shared(new Key("query-embeddings", List.of(models.embeddingModel(), caches.queryEmbeddingsFile())), () -> {
+            CachingEmbeddingModel cache = CachingEmbeddingModel.builder()
+                    .delegate(embeddingModel)
+                    .modelName(models.embeddingModel())
+                    .persistentFile(caches.queryEmbeddingsFile())
+                    .build();
+            metrics.cache("query_embeddings", () -> {
+                CachingEmbeddingModel.Stats stats = cache.stats();
+                return stats.memoryHits() + stats.diskHits() + stats.coalesced();
+            }, () -> cache.stats().misses());
+            return cache;
+        });
+    }
+
+    private SourceIndex index(Path indexDir, RagConfig.Models models, RagConfig.Source source,
+                              EmbeddingModel embeddingModel) {
+        IndexKey key = new IndexKey(indexDir.toAbsolutePath().normalize(), source.path().toAbsolutePath().normalize(),
+                models.embeddingModel(), source.maxSegmentSize(), source.maxOverlap(), source.glob(), source.store());
+        return shared(new Key("index", key), () -> switch (source.store()) {
+            case MAPPED -> {
+                MappedEmbeddingStore store = mappedStore(key, source, embeddingModel);
+                yield new SourceIndex(store, null, store::forEach, store.centroid(), store::version);
+            }
+            case SNAPSHOT -> {
+                if (Files.isDirectory(source.path())) {
+                    throw new IllegalArgumentException("Source " + source.name()
+                            + " : store=snapshot exige un fichier, pas un répertoire");
+                }
+                IndexSnapshot snapshot = IndexSnapshot.loadOrBuild(source.path(), indexDir, embeddingModel,
+                        models.embeddingModel(), source.maxSegmentSize(), source.maxOverlap());
+                // Store figé : version constante
+                yield new SourceIndex(snapshot.store(), snapshot.lexicalIndex(), null, snapshot.centroid(), () -> 0);
+            }
+            case HNSW, PACKED, SHARDED -> {
+                // Index projeté (ingéré une fois) copié dans le store en mémoire qui sert les recherches
+                MappedEmbeddingStore persisted = mappedStore(key, source, embeddingModel);
+                EmbeddingStore<TextSegment> store = switch (source.store()) {
+                    case HNSW -> HnswEmbeddingStore.builder().build();
+                    case SHARDED -> ShardedEmbeddingStore.builder().build();
+                    default -> new PackedEmbeddingStore();
+                };
+                List<Map.Entry<String, TextSegment>> copied = new ArrayList<>();
+                long start = System.nanoTime();
+                persisted.copyTo(store, (id, segment) -> copied.add(Map.entry(id, segment)));
+                LOGGER.info(() -> String.format("%s : %d segments copiés dans un store %s en %.0f ms", source.name(),
+                        copied.size(), source.store().name().toLowerCase(Locale.ROOT), (System.nanoTime() - start) / 1e6));
+                yield new SourceIndex(store, null, action -> copied.forEach(entry -> action.accept(entry.getKey(),
+                        entry.getValue())), persisted.centroid(), () -> 0);
+            }
+        });
+    }
+
+    /**
+     * Index projeté d'une source, partagé par tous les types de store qui en dérivent. Un répertoire
+     * est indexé incrémentalement : seuls les fichiers et segments modifiés depuis le dernier démarrage
+     * sont ré-embeddés, puis, avec {@code watch}, à chaque modification pendant que le moteur répond.
+     */
+    private MappedEmbeddingStore mappedStore(IndexKey key, RagConfig.Source source, EmbeddingModel embeddingModel) {
+        IndexKey mapped = new IndexKey(key.indexDir(), key.document(), key.embeddingModel(), key.maxSegmentSize(),
+                key.maxOverlap(), key.glob(), RagConfig.StoreType.MAPPED);
+        if (!Files.isDirectory(source.path())) {
+            return shared(new Key("mapped", mapped), () -> PersistentIngestor.loadOrIngest(source.path(),
+                    key.indexDir(), embeddingModel, key.embeddingModel(), key.maxSegmentSize(), key.maxOverlap()));
+        }
+        IncrementalIndexer indexer = shared(new Key("indexer", mapped), () -> {
+            IncrementalIndexer created = IncrementalIndexer.builder()
+                    .sourceDir(source.path())
+                    .indexDir(key.indexDir())
+                    .embeddingModel(embeddingModel)
+                    .modelName(key.embeddingModel())
+                    .maxSegmentSize(key.maxSegmentSize())
+                    .maxOverlap(key.maxOverlap())
+                    .glob(key.glob())
+                    .build();
+            IncrementalIndexer.UpdateReport report = created.update();
+            LOGGER.info(() -> source.name() + " : " + report);
+            return created;
+        });
+        if (source.watch() != null) {
+            // Une seule surveillance par index, fermée avec le moteur
+            shared(new Key("watch", mapped), () -> indexer.watch(source.watch(),
+                    report -> LOGGER.info(() -> source.name() + " : " + report)));
+        }
+        return indexer.store();
+    }
+
+    private ContentRetriever retriever(RagConfig.Source source, SourceIndex index, EmbeddingModel queryEmbeddingModel) {
+        EmbeddingStore<TextSegment> store = metrics.embeddingStore(SOURCE_STAGE + source.name() + "/store",
+                index.store());
+        return switch (source.retriever()) {
+            case VECTOR -> EmbeddingStoreContentRetriever.builder()
+                    .embeddingStore(store)
+                    .embeddingModel(queryEmbeddingModel)
+                    .maxResults(source.maxResults())
+                    .minScore(source.minScore())
+                    .build();
+            case HYBRID -> HybridContentRetriever.builder()
+                    .lexicalIndex(lexicalIndex(source, index))
+                    .embeddingStore(store)
+                    .embeddingModel(queryEmbeddingModel)
+                    .maxResults(source.maxResults())
+                    .minScore(source.minScore())
+                    .lexicalMinScore(source.lexicalMinScore())
+                    .embeddingTimeout(source.embeddingTimeout())
+                    .executor(retrievalExecutor())
+                    .build();
+        };
+    }
+
+    /**
+     * Threads virtuels des recherches lancées en parallèle, communs à tous les pipelines et fermés avec le moteur.
+     */
+    private ExecutorService retrievalExecutor() {
+        return shared(new Key("executor", "retrieval"), Executors::newVirtualThreadPerTaskExecutor);
+    }
+
+    private Bm25Index lexicalIndex(RagConfig.Source source, SourceIndex index) {
+        if (index.lexicalIndex() != null) {
+            return index.lexicalIndex();
+        }
+        // Store sans snapshot : index BM25 construit une fois sur ses segments (mêmes identifiants)
+        return shared(new Key("bm25", index), () -> {
+            Bm25Index.Builder lexical = Bm25Index.builder();
+            index.segments().accept(lexical::add);
+            LOGGER.fine(() -> "Index BM25 construit pour " + source.name());
+            return lexical.build();
+        });
+    }
+
+    private CachingWebSearchEngine webSearchEngine(RagConfig.Web web) {
+        return shared(new Key("web", List.of(web.cacheTtl(), String.valueOf(web.cacheFile()))), () -> {
+            CachingWebSearchEngine.Builder builder = CachingWebSearchEngine.builder()
+                    .delegate(modelProvider.webSearchEngine())
+                    .ttl(web.cacheTtl());
+            if (web.cacheFile() != null) {
+                builder.persistentFile(web.cacheFile());
+            }
+            CachingWebSearchEngine engine = builder.build();
+            metrics.cache("web_search", () -> engine.stats().avoidedCalls(),
+                    () -> engine.stats().misses() + engine.stats().refreshes());
+            return engine;
+        });
+    }
+
+    private QueryRouter router(RagConfig config, EmbeddingModel queryEmbeddingModel,
+                               Map<ContentRetriever, RagConfig.Source> sources,
+                               Map<ContentRetriever, SourceIndex> indexes, ContentRetriever webRetriever,
+                               List<Supplier<String>> reports) {
+        List<ContentRetriever> all = new ArrayList<>(sources.keySet());
+        Map<ContentRetriever, String> descriptions = new LinkedHashMap<>();
+        sources.forEach((retriever, source) -> descriptions.put(retriever, source.description()));
+        if (webRetriever != null) {
+            all.add(webRetriever);
+            descriptions.put(webRetriever, config.web().description());
+        }
+
+        RagConfig.Routing routing = config.routing();
+        return switch (routing.type()) {
+            case DEFAULT -> new DefaultQueryRouter(all);
+            case LLM -> new LanguageModelQueryRouter(chatModel(config), descriptions);
+            case PARALLEL -> {
+                // Chaque source est interrogée en parallèle avec sa propre échéance
+                ParallelRetrievalRouter.Builder builder = ParallelRetrievalRouter.builder()
+                        .delegate(new DefaultQueryRouter(all))
+                        .executor(retrievalExecutor());
+                sources.forEach((retriever, source) -> builder.source(retriever, source.name(), source.deadline()));
+                if (webRetriever != null) {
+                    builder.source(webRetriever, "web", config.web().deadline());
+                }
+                ParallelRetrievalRouter router = builder.build();
+                reports.add(() -> router.stats().values().stream().map(stats -> "Source " + stats)
+                        .collect(Collectors.joining(System.lineSeparator())));
+                yield router;
+            }
+            case EMBEDDING -> {
+                // Routage local (description + barycentre) ; le LLM n'est consulté que dans les cas ambigus
+                EmbeddingQueryRouter.Builder builder = EmbeddingQueryRouter.builder()
+                        .embeddingModel(queryEmbeddingModel)
+                        .minSimilarity(routing.minSimilarity())
+                        .indexVersion(() -> indexes.values().stream().map(index -> index.version().get())
+                                .map(String::valueOf).collect(Collectors.joining(":")));
+                descriptions.forEach((retriever, description) -> {
+                    SourceIndex index = indexes.get(retriever);
+                    builder.route(retriever, description, index == null ? null : index.centroid());
+                });
+                switch (routing.fallback()) {
+                    case LLM -> builder.fallback(new LanguageModelQueryRouter(chatModel(config), descriptions));
+                    case LLM_GATE -> builder.fallback(llmGate(chatModel(config), all, descriptions.values()));
+                    case NONE -> {
+                    }
+                }
+                EmbeddingQueryRouter router = builder.build();
+                reports.add(() -> "Routeur : " + router.stats());
+                yield router;
+            }
+        };
+    }
+
+    /**
+     * Repli "RAG ou pas" : le LLM dit si la question porte sur les sujets indexés ; si oui, toutes
+     * les sources sont interrogées, sinon aucune (réponse directe du modèle).
+     */
+    private static QueryRouter llmGate(ChatLanguageModel chatModel, List<ContentRetriever> retrievers,
+                                       Collection<String> topics) {
+        String subject = String.join(" ; ", topics);
+        return query -> {
+            String prompt = "Est-ce que la requête \"" + query.text() + "\" porte sur : " + subject + " ? "
+                    + "Réponds seulement par 'oui', 'non' ou 'peut-être'.";
+            String answer = chatModel.generate(prompt).toLowerCase(Locale.ROOT);
+            return answer.contains("oui") || answer.contains("peut-être") ? retrievers : List.of();
+        };
+    }
+
+    private ChatMemory memory(RagConfig.Memory memory) {
+        return switch (memory.type()) {
+            case NONE -> null;
+            case WINDOW -> shared(new Key("memory", memory), () -> MessageWindowChatMemory.withMaxMessages(memory.size()));
+            case TOKENS -> shared(new Key("memory", memory),
+                    () -> TokenBudgetChatMemory.builder().maxTokens(memory.size()).build());
+        };
+    }
+
+    /**
+     * Composant partagé, construit une seule fois hors de la map : une ingestion de plusieurs
+     * minutes ne bloque pas les autres clés, et une fabrique peut elle-même demander un composant
+     * partagé. Les appelants concurrents attendent la même construction ; un échec n'est pas
+     * mémorisé (la clé est retirée et le prochain appel réessaie).
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T shared(Key key, Supplier<T> factory) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = shared.putIfAbsent(key, created);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            T component = factory.get();
+            created.complete(component);
+            return component;
+        } catch (RuntimeException | Error e) {
+            shared.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // -------------------------------
+    // Types internes
+    // -------------------------------
+
+    /**
+     * Composant partagé : type et partie de configuration qui le détermine.
+     */
+    private record Key(String kind, Object config) {
+    }
+
+    private record IndexKey(Path indexDir, Path document, String embeddingModel, int maxSegmentSize, int maxOverlap,
+                            String glob, RagConfig.StoreType store) {
+    }
+
+    /**
+     * @param segments parcours des segments du store (identifiant, segment), ou {@code null} si
+     *                 {@code lexicalIndex} est déjà fourni
+     */
+    private record SourceIndex(EmbeddingStore<TextSegment> store, Bm25Index lexicalIndex,
+                               Consumer<BiConsumer<String, TextSegment>> segments, float[] centroid,
+                               Supplier<Object> version) {
+    }
+
+    private record Pipeline(RagConfig config, RetrievalAugmentor augmentor, ChatLanguageModel chatModel,
+                            Assistant assistant, StreamingAssistant streamingAssistant,
+                            List<Supplier<String>> reports) {
+    }
+
+    /**
+     * Délègue au modèle du pipeline courant (remplacé par {@link #reconfigure}).
+     */
+    private final class CurrentChatModel implements ChatLanguageModel {
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return delegate().generate(messages);
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+            return delegate().generate(messages, toolSpecifications);
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+            return delegate().generate(messages, toolSpecification);
+        }
+
+        private ChatLanguageModel delegate() {
+            Pipeline pipeline = pipeline();
+            return pipeline.chatModel() != null ? pipeline.chatModel() : chatModel(pipeline.config());
+        }
+    }
+
+    public static class Builder {
+
+        private RagConfig config;
+        private ModelProvider modelProvider;
+        private PipelineMetrics metrics;
+
+        public Builder config(RagConfig config) {
+            this.config = config;
+            return this;
+        }
+
+        public Builder modelProvider(ModelProvider modelProvider) {
+            this.modelProvider = modelProvider;
+            return this;
+        }
+
+        /**
+         * Métriques partagées (par ex. exposées par le serveur) ; sinon créées selon {@code metrics.jfr}.
+         */
+        public Builder metrics(PipelineMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public RagEngine build() {
+            if (config == null || modelProvider == null) {
+                throw new IllegalStateException("config et modelProvider sont obligatoires");
+            }
+            return new RagEngine(this);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Ingestion d'un répertoire complet : les fichiers sont parsés et découpés en parallèle,
+ * et chaque segment part vers l'{@link EmbeddingPipeline} dès que sa page (avec l'extracteur)
+ * ou son document est découpé, sans attendre le reste du corpus.
+ * <p>
+ * La mémoire reste bornée par {@code parserConcurrency} pages (ou documents) en cours de traitement
+ * plus la file de lots du pipeline, quelle que soit la taille du corpus.
+ */
+public class DirectoryIngestor {
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> store;
+    private final PdfTextExtractor extractor;
+    private final Supplier<DocumentParser> parserFactory;
+    private final Supplier<DocumentSplitter> splitterFactory;
+    private final String glob;
+    private final int parserConcurrency;
+    private final int batchSize;
+    private final int embeddingConcurrency;
+    private final BiConsumer<List<String>, List<TextSegment>> onStored;
+
+    private DirectoryIngestor(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.store = builder.store;
+        this.extractor = builder.extractor;
+        this.parserFactory = builder.parserFactory;
+        this.splitterFactory = builder.splitterFactory;
+        this.glob = builder.glob;
+        this.parserConcurrency = builder.parserConcurrency;
+        this.batchSize = builder.batchSize;
+        this.embeddingConcurrency = builder.embeddingConcurrency;
+        this.onStored = builder.onStored;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Report ingest(Path directory) {
+        return ingest(listFiles(directory));
+    }
+
+    /**
+     * Ingère une liste de fichiers déjà sélectionnés, par ex. les seuls fichiers nouveaux d'un
+     * {@link IncrementalIndexer}.
+     */
+    public Report ingest(List<Path> files) {
+        long start = System.nanoTime();
+
+        LongAdder parseNanos = new LongAdder();
+        LongAdder splitNanos = new LongAdder();
+        LongAdder enqueueNanos = new LongAdder();
+        LongAdder segments = new LongAdder();
+        Map<Path, Throwable> failures = new ConcurrentHashMap<>();
+        Semaphore inFlight = new Semaphore(parserConcurrency);
+
+        EmbeddingPipeline pipeline = EmbeddingPipeline.builder()
+                .embeddingModel(embeddingModel)
+                .embeddingStore(store)
+                .batchSize(batchSize)
+                .concurrency(embeddingConcurrency)
+                .onStored(onStored)
+                .build();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : files) {
+                // On ne lance pas plus de parserConcurrency documents à la fois
+                inFlight.acquireUninterruptibly();
+                executor.submit(() -> {
+                    try {
+                        if (extractor != null) {
+                            ingestPages(file, pipeline, parseNanos, splitNanos, enqueueNanos, segments);
+                            return;
+                        }
+                        long t0 = System.nanoTime();
+                        Document document = FileSystemDocumentLoader.loadDocument(file, parserFactory.get());
+                        long t1 = System.nanoTime();
+                        List<TextSegment> parts = splitterFactory.get().split(document);
+                        long t2 = System.nanoTime();
+                        for (TextSegment segment : parts) {
+                            pipeline.accept(segment);
+                        }
+                        long t3 = System.nanoTime();
+
+                        parseNanos.add(t1 - t0);
+                        splitNanos.add(t2 - t1);
+                        enqueueNanos.add(t3 - t2);
+                        segments.add(parts.size());
+                    } catch (RuntimeException e) {
+                        failures.put(file, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+
+        long embedStart = System.nanoTime();
+        EmbeddingPipeline.Stats stats = pipeline.finish();
+        long end = System.nanoTime();
+
+        return new Report(
+                files.size() - failures.size(),
+                segments.sum(),
+                Duration.ofNanos(end - start),
+                Duration.ofNanos(parseNanos.sum()),
+                Duration.ofNanos(splitNanos.sum()),
+                Duration.ofNanos(enqueueNanos.sum()),
+                Duration.ofNanos(end - embedStart),
+                stats.retries(),
+                Map.copyOf(failures));
+    }
+
+    /**
+     * Avec l'extracteur : chaque page est découpée et mise en file dès qu'elle est extraite, sans
+     * attendre la fin du fichier ; le temps de parsing est le reste une fois découpage et file déduits.
+     */
+    private void ingestPages(Path file, EmbeddingPipeline pipeline, LongAdder parseNanos, LongAdder splitNanos,
+                             LongAdder enqueueNanos, LongAdder segments) {
+        DocumentSplitter splitter = splitterFactory.get();
+        long start = System.nanoTime();
+        long[] split = {0};
+        long[] enqueue = {0};
+        Consumer<TextSegment> enqueueSegment = segment -> {
+            long t0 = System.nanoTime();
+            pipeline.accept(segment);
+            enqueue[0] += System.nanoTime() - t0;
+            segments.increment();
+        };
+        Consumer<Document> splitPage = splitter instanceof OffsetRecursiveSplitter offsets
+                ? offsets.pageByPage(enqueueSegment) // index et positions numérotés sur tout le document
+                : page -> splitter.split(page).forEach(enqueueSegment);
+        extractor.loadPages(file, page -> {
+            long t0 = System.nanoTime();
+            long enqueued = enqueue[0];
+            splitPage.accept(page);
+            split[0] += System.nanoTime() - t0 - (enqueue[0] - enqueued);
+        });
+        parseNanos.add(System.nanoTime() - start - split[0] - enqueue[0]);
+        splitNanos.add(split[0]);
+        enqueueNanos.add(enqueue[0]);
+    }
+
+    private List<Path> listFiles(Path directory) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(p.getFileName()))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture impossible du répertoire " + directory, e);
+        }
+    }
+
+    /**
+     * Bilan d'une ingestion. Les durées par étape sont cumulées sur tous les threads :
+     * {@code enqueue} mesure le temps passé bloqué par la backpressure de l'embedding,
+     * {@code drain} le temps pour terminer les derniers lots après le dernier document.
+     */
+    public record Report(int files, long segments, Duration elapsed,
+                         Duration parse, Duration split, Duration enqueue, Duration drain,
+                         long retries, Map<Path, Throwable> failures) {
+
+        public double filesPerSecond() {
+            return files / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d fichiers, %d segments en %d ms (%.2f fichiers/s) | parse %d ms, split %d ms, "
+                            + "attente embedding %d ms, drain %d ms | %d retries, %d échecs",
+                    files, segments, elapsed.toMillis(), filesPerSecond(), parse.toMillis(), split.toMillis(),
+                    enqueue.toMillis(), drain.toMillis(), retries, failures.size());
+        }
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> store;
+        private PdfTextExtractor extractor = PdfTextExtractor.shared();
+        private Supplier<DocumentParser> parserFactory = ApacheTikaDocumentParser::new;
+        private Supplier<DocumentSplitter> splitterFactory = () -> OffsetRecursiveSplitter.recursive(500, 100);
+        private String glob = "*.pdf";
+        private int parserConcurrency = Runtime.getRuntime().availableProcessors();
+        private int batchSize = 32;
+        private int embeddingConcurrency = 4;
+        private BiConsumer<List<String>, List<TextSegment>> onStored = (ids, batch) -> {
+        };
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Extracteur (parseurs réutilisés, texte en cache) ; par défaut {@link PdfTextExtractor#shared()}.
+         */
+        public Builder extractor(PdfTextExtractor extractor) {
+            this.extractor = extractor;
+            return this;
+        }
+
+        /**
+         * Parseur LangChain4j à utiliser à la place de l'extracteur (un par document, sans cache).
+         */
+        public Builder parserFactory(Supplier<DocumentParser> parserFactory) {
+            this.parserFactory = parserFactory;
+            this.extractor = null;
+            return this;
+        }
+
+        public Builder splitterFactory(Supplier<DocumentSplitter> splitterFactory) {
+            this.splitterFactory = splitterFactory;
+            return this;
+        }
+
+        public Builder glob(String glob) {
+            this.glob = glob;
+            return this;
+        }
+
+        /**
+         * Nombre maximal de documents parsés/découpés simultanément (borne la mémoire).
+         */
+        public Builder parserConcurrency(int parserConcurrency) {
+            this.parserConcurrency = parserConcurrency;
+            return this;
+        }
+
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder embeddingConcurrency(int embeddingConcurrency) {
+            this.embeddingConcurrency = embeddingConcurrency;
+            return this;
+        }
+
+        /**
+         * Transmis à l'{@link EmbeddingPipeline}, par ex. pour savoir sous quels ids chaque fichier est indexé.
+         */
+        public Builder onStored(BiConsumer<List<String>, List<TextSegment>> onStored) {
+            this.onStored = onStored;
+            return this;
+        }
+
+        public DirectoryIngestor build() {
+            if (embeddingModel == null || store == null) {
+                throw new IllegalStateException("embeddingModel et embeddingStore sont obligatoires");
+            }
+            return new DirectoryIngestor(this);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Étape d'ingestion qui regroupe les segments en lots pour {@link EmbeddingModel#embedAll(List)}
+ * et garde plusieurs lots en vol sur des threads virtuels.
+ * <p>
+ * La file de lots est bornée : {@link #accept(TextSegment)} bloque le producteur quand les
+ * workers n'arrivent plus à suivre (backpressure), sans bloquer les autres producteurs. Les erreurs de quota (429) sont retentées
+ * avec un backoff exponentiel, et chaque lot est écrit d'un coup via {@code addAll}.
+ * <p>
+ * Utilisation : {@code accept(...)} autant de fois que nécessaire puis {@link #close()},
+ * ou directement {@link #ingest(List)}.
+ */
+public class EmbeddingPipeline implements AutoCloseable {
+
+    // Marqueur de fin comparé par identité
+    private static final List<TextSegment> POISON = new ArrayList<>(0);
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> store;
+    private final int batchSize;
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final Predicate<Throwable> retryable;
+    private final BiConsumer<List<String>, List<TextSegment>> onStored;
+
+    private final BlockingQueue<List<TextSegment>> queue;
+    private final ExecutorService workers;
+    private final int concurrency;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong embedded = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    // Lecture : producteurs en train d'ajouter ; écriture : fermeture (attend les lots en cours d'ajout)
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+    private List<TextSegment> current;
+    private boolean closed;
+
+    private EmbeddingPipeline(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.store = builder.store;
+        this.batchSize = builder.batchSize;
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoff = builder.initialBackoff;
+        this.retryable = builder.retryable;
+        this.onStored = builder.onStored;
+        this.concurrency = builder.concurrency;
+        this.queue = new ArrayBlockingQueue<>(builder.queueCapacity);
+        this.current = new ArrayList<>(batchSize);
+
+        this.workers = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(this::work);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Embedde et stocke tous les segments, puis attend la fin des lots en vol.
+     */
+    public Stats ingest(List<TextSegment> segments) {
+        for (TextSegment segment : segments) {
+            accept(segment);
+        }
+        return finish();
+    }
+
+    /**
+     * Ajoute un segment au lot courant ; bloque si {@code queueCapacity} lots sont déjà en attente.
+     */
+    public void accept(TextSegment segment) {
+        closing.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Pipeline déjà fermé");
+            }
+            rethrowFailure();
+            List<TextSegment> full = null;
+            synchronized (this) {
+                current.add(segment);
+                if (current.size() >= batchSize) {
+                    full = current;
+                    current = new ArrayList<>(batchSize);
+                }
+            }
+            // Hors du moniteur : un producteur bloqué par la file n'empêche pas les autres de remplir leur lot
+            if (full != null) {
+                enqueue(full);
+            }
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vide le dernier lot, attend les workers et renvoie les statistiques. Si l'attente est
+     * interrompue, les workers le sont aussi : aucun ne reste bloqué sur la file.
+     */
+    public Stats finish() {
+        closing.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                try {
+                    if (!current.isEmpty()) {
+                        queue.put(current);
+                    }
+                    for (int i = 0; i < concurrency; i++) {
+                        queue.put(POISON);
+                    }
+                    workers.shutdown();
+                    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    workers.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Ingestion interrompue", e);
+                }
+            }
+        } finally {
+            closing.writeLock().unlock();
+        }
+        rethrowFailure();
+        return new Stats(embedded.get(), retries.get(), Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    private void enqueue(List<TextSegment> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrompue", e);
+        }
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                List<TextSegment> batch = queue.take();
+                if (batch == POISON) {
+                    return;
+                }
+                if (failure.get() != null) {
+                    continue; // on draine la file sans travailler pour débloquer le producteur
+                }
+                try {
+                    List<Embedding> embeddings = embedWithRetry(batch);
+                    List<String> ids = store.addAll(embeddings, batch);
+                    onStored.accept(ids, batch);
+                    embedded.addAndGet(batch.size());
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Embedding> embedWithRetry(List<TextSegment> batch) throws InterruptedException {
+        long backoffMillis = initialBackoff.toMillis();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return embeddingModel.embedAll(batch).content();
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries || !retryable.test(e)) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                // Backoff exponentiel avec jitter pour ne pas resynchroniser les workers
+                long jitter = ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+                Thread.sleep(backoffMillis + jitter);
+                backoffMillis = Math.min(backoffMillis * 2, 30_000);
+            }
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException re) {
+            throw re;
+        }
+        if (t instanceof Error err) {
+            throw err;
+        }
+        if (t != null) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Heuristique par défaut : l'API Gemini signale un dépassement de quota par un HTTP 429
+     * ou un statut RESOURCE_EXHAUSTED dans le message d'erreur.
+     */
+    public static boolean isRateLimit(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause()) {
+            String message = c.getMessage();
+            if (message == null) {
+                continue;
+            }
+            String m = message.toLowerCase(Locale.ROOT);
+            if (m.contains("429") || m.contains("resource_exhausted") || m.contains("rate limit")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public record Stats(long segments, long retries, Duration elapsed) {
+
+        public double segmentsPerSecond() {
+            return segments / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+        }
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> store;
+        private int batchSize = 32;
+        private int concurrency = 4;
+        private int queueCapacity = 8;
+        private int maxRetries = 5;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Predicate<Throwable> retryable = EmbeddingPipeline::isRateLimit;
+        private BiConsumer<List<String>, List<TextSegment>> onStored = (ids, batch) -> {
+        };
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> store) {
+            this.store = store;
+            return this;
+        }
+
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Nombre de lots embeddés en parallèle.
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Nombre maximal de lots prêts en attente d'un worker.
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        public Builder retryable(Predicate<Throwable> retryable) {
+            this.retryable = retryable;
+            return this;
+        }
+
+        /**
+         * Appelé (depuis un worker) après l'écriture de chaque lot, avec les ids attribués par le store.
+         */
+        public Builder onStored(BiConsumer<List<String>, List<TextSegment>> onStored) {
+            this.onStored = onStored;
+            return this;
+        }
+
+        public EmbeddingPipeline build() {
+            if (embeddingModel == null || store == null) {
+                throw new IllegalStateException("embeddingModel et embeddingStore sont obligatoires");
+            }
+            if (batchSize < 1 || concurrency < 1 || queueCapacity < 1) {
+                throw new IllegalArgumentException("batchSize, concurrency et queueCapacity doivent être >= 1");
+            }
+            return new EmbeddingPipeline(this);
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.store.MappedEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.SegmentCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Indexation incrémentale d'un répertoire dans un {@link MappedEmbeddingStore}.
+ * <p>
+ * Un manifeste garde, pour chaque fichier, sa taille, sa date de modification, son empreinte
+ * et l'empreinte + l'id de chacun de ses segments. À chaque {@link #update()} :
+ * <ul>
+ *     <li>fichier nouveau : il est parsé, découpé et embeddé en parallèle par le {@link DirectoryIngestor} ;</li>
+ *     <li>fichier supprimé : ses segments sont retirés du store ;</li>
+ *     <li>fichier inchangé (taille + mtime, puis empreinte) : rien n'est fait ;</li>
+ *     <li>fichier modifié : seuls les segments dont le texte a changé sont ré-embeddés ; les autres gardent
+ *     leur vecteur mais reçoivent l'index, les positions et la page de la nouvelle version.</li>
+ * </ul>
+ * Le coût d'une ré-indexation est donc proportionnel au diff, pas au corpus. Un fichier n'entre
+ * dans le manifeste (ou n'y change) qu'une fois ses segments embeddés : après un échec, l'état
+ * précédent reste en place et le fichier est repris à la mise à jour suivante.
+ */
+public class IncrementalIndexer {
+
+    private static final Logger LOGGER = Logger.getLogger(IncrementalIndexer.class.getName());
+
+    private static final int MAGIC = 0x5241474D; // "RAGM"
+    private static final int VERSION = 1;
+    // Posée par l'extracteur sur chaque page, donc sur chaque segment
+    static final String SOURCE_KEY = Document.FILE_NAME;
+
+    private final Path sourceDir;
+    private final PathMatcher matcher;
+    private final EmbeddingModel embeddingModel;
+    private final PdfTextExtractor extractor;
+    private final int maxSegmentSize;
+    private final int maxOverlap;
+    private final String params;
+    private final MappedEmbeddingStore store;
+    private final Path manifestFile;
+    private final Map<String, FileEntry> manifest = new HashMap<>();
+
+    private IncrementalIndexer(Builder builder) {
+        this.sourceDir = builder.sourceDir;
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + builder.glob);
+        this.embeddingModel = builder.embeddingModel;
+        this.extractor = builder.extractor;
+        this.maxSegmentSize = builder.maxSegmentSize;
+        this.maxOverlap = builder.maxOverlap;
+        this.params = builder.modelName + "|offset-recursive-pages|" + maxSegmentSize + "|" + maxOverlap;
+        // Clé par défaut : un index par répertoire, motif et paramètres (deux sources ne se partagent pas un manifeste)
+        String key = builder.key != null ? builder.key
+                : Hashes.text(sourceDir.toAbsolutePath().normalize() + "|" + builder.glob + "|" + params);
+        this.store = MappedEmbeddingStore.open(builder.indexDir, key);
+        this.manifestFile = builder.indexDir.resolve(key + ".manifest");
+        loadManifest(MappedEmbeddingStore.exists(builder.indexDir, key));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public MappedEmbeddingStore store() {
+        return store;
+    }
+
+    /**
+     * Synchronise le store avec le contenu actuel du répertoire.
+     */
+    public synchronized UpdateReport update() {
+        long start = System.nanoTime();
+        Map<String, Path> files = listFiles();
+        int added = 0, changed = 0, unchanged = 0, removed = 0, failed = 0;
+        long embedded = 0, kept = 0, dropped = 0;
+
+        // 1. Fichiers disparus
+        for (String name : new ArrayList<>(manifest.keySet())) {
+            if (!files.containsKey(name)) {
+                FileEntry entry = manifest.remove(name);
+                store.removeAll(entry.ids());
+                dropped += entry.segments().size();
+                removed++;
+            }
+        }
+
+        // 2. Fichiers modifiés, un par un : le store et le manifeste ne changent qu'une fois les segments
+        //    modifiés embeddés ; en cas d'échec, l'ancienne version reste indexée et sera reprise
+        Map<String, FileEntry> fresh = new HashMap<>();
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            String name = file.getKey();
+            Path path = file.getValue();
+            BasicFileAttributes attributes = attributes(path);
+            long size = attributes.size();
+            long mtime = attributes.lastModifiedTime().toMillis();
+
+            FileEntry previous = manifest.get(name);
+            if (previous != null && previous.size() == size && previous.mtime() == mtime) {
+                unchanged++;
+                continue;
+            }
+            String hash = Hashes.file(path);
+            if (previous != null && previous.hash().equals(hash)) {
+                // Simple "touch" : le contenu n'a pas bougé
+                manifest.put(name, new FileEntry(size, mtime, hash, previous.segments()));
+                unchanged++;
+                continue;
+            }
+            if (previous == null) {
+                fresh.put(name, new FileEntry(size, mtime, hash, new ArrayList<>()));
+                continue;
+            }
+
+            List<SegmentRef> fileRefs = new ArrayList<>();
+            Map<String, TextSegment> renumbered = new HashMap<>();
+            try {
+                List<TextSegment> segments = new ArrayList<>();
+                extractor.loadPages(path, OffsetRecursiveSplitter.recursive(maxSegmentSize, maxOverlap)
+                        .pageByPage(segments::add));
+
+                // Segments existants regroupés par empreinte (un même texte peut apparaître plusieurs fois)
+                Map<String, Deque<String>> reusable = new HashMap<>();
+                for (SegmentRef ref : previous.segments()) {
+                    reusable.computeIfAbsent(ref.hash(), h -> new ArrayDeque<>()).add(ref.id());
+                }
+                List<TextSegment> toEmbed = new ArrayList<>();
+                for (TextSegment segment : segments) {
+                    String segmentHash = Hashes.text(segment.text());
+                    Deque<String> candidates = reusable.get(segmentHash);
+                    if (candidates != null && !candidates.isEmpty()) {
+                        String id = candidates.poll();
+                        renumbered.put(id, segment);
+                        fileRefs.add(new SegmentRef(segmentHash, id));
+                    } else {
+                        toEmbed.add(segment);
+                    }
+                }
+
+                // Embeddings des seuls segments modifiés, en lots
+                if (!toEmbed.isEmpty()) {
+                    EmbeddingPipeline.builder()
+                            .embeddingModel(embeddingModel)
+                            .embeddingStore(store)
+                            .onStored(recorder(Map.of(name, fileRefs)))
+                            .build()
+                            .ingest(toEmbed);
+                }
+
+                // Même texte, mais son index, ses positions et sa page ont pu bouger : métadonnées à jour.
+                // Ce qui reste dans "reusable" n'existe plus dans la nouvelle version du fichier
+                renumbered.forEach(store::replaceSegment);
+                for (Deque<String> obsolete : reusable.values()) {
+                    store.removeAll(obsolete);
+                    dropped += obsolete.size();
+                }
+                manifest.put(name, new FileEntry(size, mtime, hash, fileRefs));
+                embedded += toEmbed.size();
+                kept += renumbered.size();
+                changed++;
+            } catch (RuntimeException e) {
+                Set<String> written = new FileEntry(size, mtime, hash, fileRefs).ids();
+                written.removeAll(renumbered.keySet());
+                store.removeAll(written);
+                failed++;
+                LOGGER.log(Level.WARNING, "Ré-indexation impossible de " + path, e);
+            }
+        }
+
+        // 3. Fichiers nouveaux (tout le corpus au premier démarrage) : parsés, découpés et embeddés en parallèle
+        if (!fresh.isEmpty()) {
+            Map<String, List<SegmentRef>> refs = new HashMap<>();
+            fresh.forEach((name, entry) -> refs.put(name, entry.segments()));
+            DirectoryIngestor.Report report;
+            try {
+                report = DirectoryIngestor.builder()
+                        .embeddingModel(embeddingModel)
+                        .embeddingStore(store)
+                        .extractor(extractor)
+                        .splitterFactory(() -> OffsetRecursiveSplitter.recursive(maxSegmentSize, maxOverlap))
+                        .onStored(recorder(refs))
+                        .build()
+                        .ingest(fresh.keySet().stream().map(files::get).toList());
+            } catch (RuntimeException e) {
+                // Échec de l'embedding : aucun fichier nouveau n'entre dans le manifeste
+                fresh.values().forEach(entry -> store.removeAll(entry.ids()));
+                failed += fresh.size();
+                LOGGER.log(Level.WARNING, "Indexation impossible des nouveaux fichiers de " + sourceDir, e);
+                report = null;
+            }
+            if (report != null) {
+                DirectoryIngestor.Report done = report;
+                LOGGER.fine(() -> sourceDir + " : " + done);
+                for (Map.Entry<String, FileEntry> file : fresh.entrySet()) {
+                    String name = file.getKey();
+                    FileEntry entry = file.getValue();
+                    Throwable failure = report.failures().get(files.get(name));
+                    if (failure == null) {
+                        manifest.put(name, entry);
+                        embedded += entry.segments().size();
+                        added++;
+                    } else {
+                        // Hors manifeste : le fichier sera repris à la prochaine mise à jour
+                        store.removeAll(entry.ids());
+                        failed++;
+                        LOGGER.log(Level.WARNING, "Indexation impossible de " + files.get(name), failure);
+                    }
+                }
+            }
+        }
+
+        if (added + changed + removed + failed > 0) {
+            store.save();
+        }
+        saveManifest(); // les mtime ont pu changer même sans modification de contenu
+        return new UpdateReport(added, changed, unchanged, removed, failed, embedded, kept, dropped,
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Enregistre l'empreinte et l'id de chaque segment écrit, dans la liste de son fichier.
+     * Appelé depuis plusieurs workers.
+     */
+    private static BiConsumer<List<String>, List<TextSegment>> recorder(Map<String, List<SegmentRef>> refs) {
+        return (ids, batch) -> {
+            synchronized (refs) {
+                for (int i = 0; i < ids.size(); i++) {
+                    TextSegment segment = batch.get(i);
+                    refs.get(segment.metadata().getString(SOURCE_KEY))
+                            .add(new SegmentRef(Hashes.text(segment.text()), ids.get(i)));
+                }
+            }
+        };
+    }
+
+    /**
+     * Surveille le répertoire (non récursif) et appelle {@link #update()} après chaque rafale
+     * de modifications. Le store reste interrogeable pendant la mise à jour.
+     */
+    public AutoCloseable watch(Duration debounce, Consumer<UpdateReport> listener) {
+        WatchService watchService;
+        try {
+            watchService = sourceDir.getFileSystem().newWatchService();
+            sourceDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Surveillance impossible de " + sourceDir, e);
+        }
+
+        Thread.ofVirtual().name("rag-index-watch").start(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    // On laisse passer la rafale d'événements (copie d'un gros PDF, etc.)
+                    Thread.sleep(debounce);
+                    key.pollEvents();
+                    key.reset();
+                    try {
+                        listener.accept(update());
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Échec de la ré-indexation incrémentale", e);
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // arrêt demandé
+            }
+        });
+        return watchService::close;
+    }
+
+    private Map<String, Path> listFiles() {
+        Map<String, Path> files = new HashMap<>();
+        try (Stream<Path> list = Files.list(sourceDir)) {
+            list.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(p.getFileName()))
+                    .forEach(p -> files.put(p.getFileName().toString(), p));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture impossible du répertoire " + sourceDir, e);
+        }
+        return files;
+    }
+
+    private static BasicFileAttributes attributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // -------------------------------
+    // Manifeste
+    // -------------------------------
+
+    private void loadManifest(boolean indexed) {
+        // Sans index cohérent (jamais écrit, ou supprimé par MappedEmbeddingStore.open), le manifeste ne vaut rien
+        if (!indexed || !Files.exists(manifestFile)) {
+            store.removeAll();
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifestFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !params.equals(SegmentCodec.readString(in))) {
+                // Autre modèle ou autres paramètres de découpage : tout est à refaire
+                store.removeAll();
+                return;
+            }
+            int files = in.readInt();
+            for (int f = 0; f < files; f++) {
+                String name = SegmentCodec.readString(in);
+                long size = in.readLong();
+                long mtime = in.readLong();
+                String hash = SegmentCodec.readString(in);
+                int count = in.readInt();
+                List<SegmentRef> segments = new ArrayList<>(count);
+                for (int s = 0; s < count; s++) {
+                    segments.add(new SegmentRef(SegmentCodec.readString(in), SegmentCodec.readString(in)));
+                }
+                manifest.put(name, new FileEntry(size, mtime, hash, segments));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Manifeste illisible, ré-indexation complète", e);
+            manifest.clear();
+            store.removeAll();
+        }
+    }
+
+    private void saveManifest() {
+        Path tmp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(manifestFile.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            SegmentCodec.writeString(out, params);
+            out.writeInt(manifest.size());
+            for (Map.Entry<String, FileEntry> file : manifest.entrySet()) {
+                FileEntry entry = file.getValue();
+                SegmentCodec.writeString(out, file.getKey());
+                out.writeLong(entry.size());
+                out.writeLong(entry.mtime());
+                SegmentCodec.writeString(out, entry.hash());
+                out.writeInt(entry.segments().size());
+                for (SegmentRef ref : entry.segments()) {
+                    SegmentCodec.writeString(out, ref.hash());
+                    SegmentCodec.writeString(out, ref.id());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'écrire le manifeste " + manifestFile, e);
+        }
+        try {
+            Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record SegmentRef(String hash, String id) {
+    }
+
+    private record FileEntry(long size, long mtime, String hash, List<SegmentRef> segments) {
+
+        Set<String> ids() {
+            Set<String> ids = new HashSet<>();
+            for (SegmentRef ref : segments) {
+                ids.add(ref.id());
+            }
+            return ids;
+        }
+    }
+
+    public record UpdateReport(int filesAdded, int filesChanged, int filesUnchanged, int filesRemoved,
+                               int filesFailed, long segmentsEmbedded, long segmentsKept, long segmentsRemoved,
+                               Duration elapsed) {
+
+        @Override
+        public String toString() {
+            return String.format("fichiers +%d ~%d =%d -%d, %d échecs | segments embeddés %d, conservés %d, retirés %d"
+                            + " | %d ms", filesAdded, filesChanged, filesUnchanged, filesRemoved, filesFailed,
+                    segmentsEmbedded, segmentsKept, segmentsRemoved, elapsed.toMillis());
+        }
+    }
+
+    public static class Builder {
+
+        private Path sourceDir;
+        private Path indexDir = PersistentIngestor.DEFAULT_INDEX_DIR;
+        private EmbeddingModel embeddingModel;
+        private String modelName;
+        private PdfTextExtractor extractor = PdfTextExtractor.shared();
+        private int maxSegmentSize = 500;
+        private int maxOverlap = 100;
+        private String glob = "*.pdf";
+        private String key;
+
+        /**
+         * Répertoire indexé (non récursif).
+         */
+        public Builder sourceDir(Path sourceDir) {
+            this.sourceDir = sourceDir;
+            return this;
+        }
+
+        public Builder indexDir(Path indexDir) {
+            this.indexDir = indexDir;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Nom du modèle d'embedding : un autre modèle invalide tout l'index.
+         */
+        public Builder modelName(String modelName) {
+            this.modelName = modelName;
+            return this;
+        }
+
+        public Builder extractor(PdfTextExtractor extractor) {
+            this.extractor = extractor;
+            return this;
+        }
+
+        public Builder maxSegmentSize(int maxSegmentSize) {
+            this.maxSegmentSize = maxSegmentSize;
+            return this;
+        }
+
+        public Builder maxOverlap(int maxOverlap) {
+            this.maxOverlap = maxOverlap;
+            return this;
+        }
+
+        /**
+         * Motif des noms de fichiers indexés ; {@code *.pdf} par défaut.
+         */
+        public Builder glob(String glob) {
+            this.glob = glob;
+            return this;
+        }
+
+        /**
+         * Nom des fichiers de l'index et du manifeste dans {@code indexDir} ; par défaut dérivé du
+         * répertoire, du motif et des paramètres.
+         */
+        public Builder key(String key) {
+            this.key = key;
+            return this;
+        }
+
+        public IncrementalIndexer build() {
+            if (sourceDir == null || embeddingModel == null || modelName == null) {
+                throw new IllegalStateException("sourceDir, embeddingModel et modelName sont obligatoires");
+            }
+            if (extractor == null || indexDir == null || glob == null) {
+                throw new IllegalStateException("extractor, indexDir et glob ne peuvent pas être null");
+            }
+            return new IncrementalIndexer(this);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Découpage récursif (paragraphes, lignes, phrases, mots, caractères) travaillant sur des
+ * positions dans le texte du document : aucune sous-chaîne intermédiaire, seul le texte final
+ * de chaque segment est copié.
+ * <p>
+ * Les paragraphes trop longs sont redécoupés en parallèle (fork/join), puis les morceaux sont
+ * regroupés séquentiellement jusqu'à {@code maxSegmentSize} caractères : le résultat est
+ * identique quel que soit le parallélisme. Chaque segment porte, en plus de {@code index},
+ * ses positions {@code start_offset}/{@code end_offset} dans le document, ce qui permet de
+ * recoller exactement deux segments qui se recouvrent.
+ */
+public class OffsetRecursiveSplitter implements DocumentSplitter {
+
+    public static final String START_OFFSET = "start_offset";
+    public static final String END_OFFSET = "end_offset";
+
+    private static final Pattern[] LEVELS = {
+            Pattern.compile("\\n\\s*\\n"),        // paragraphes
+            Pattern.compile("\\n"),               // lignes
+            Pattern.compile("(?<=[.!?])\\s+"),    // phrases
+            Pattern.compile("\\s+")               // mots
+    };
+
+    private final int maxSegmentSize;
+    private final int maxOverlap;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    private OffsetRecursiveSplitter(Builder builder) {
+        this.maxSegmentSize = builder.maxSegmentSize;
+        this.maxOverlap = builder.maxOverlap;
+        this.pool = builder.pool;
+        this.parallelThreshold = builder.parallelThreshold;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static OffsetRecursiveSplitter recursive(int maxSegmentSize, int maxOverlap) {
+        return builder().maxSegmentSize(maxSegmentSize).maxOverlap(maxOverlap).build();
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        String text = document.text();
+
+        // 1. Morceaux de premier niveau (paragraphes), puis redécoupage parallèle des trop longs
+        int[] paragraphs = boundaries(text, 0, text.length(), 0);
+        int[] ends = pool == null || text.length() < parallelThreshold
+                ? new Refine(text, paragraphs, 0, paragraphs.length).compute()
+                : pool.invoke(new Refine(text, paragraphs, 0, paragraphs.length));
+
+        // 2. Regroupement séquentiel des morceaux en segments (déterministe)
+        int[] ranges = pack(text, ends);
+
+        // 3. Matérialisation des segments (seule copie du texte)
+        int count = ranges.length / 2;
+        TextSegment[] segments = new TextSegment[count];
+        Materialize materialize = new Materialize(text, document.metadata(), ranges, segments, 0, count);
+        if (pool == null || text.length() < parallelThreshold) {
+            materialize.compute();
+        } else {
+            pool.invoke(materialize);
+        }
+        return Arrays.asList(segments);
+    }
+
+    /**
+     * Découpage au fil des pages (voir {@link PdfTextExtractor#loadPages}) : chaque page est découpée dès
+     * qu'elle arrive et ses segments transmis à {@code onSegment}. Un segment ne chevauche pas deux pages ;
+     * {@code index} est numéroté sur tout le document et les positions sont celles du texte complet
+     * de {@link PdfTextExtractor#load} (pages séparées par une ligne vide).
+     */
+    public Consumer<Document> pageByPage(Consumer<TextSegment> onSegment) {
+        int[] next = {0, 0}; // index du prochain segment, position de la page dans le document
+        return page -> {
+            for (TextSegment segment : split(page)) {
+                Metadata metadata = segment.metadata();
+                metadata.put("index", String.valueOf(next[0]++))
+                        .put(START_OFFSET, metadata.getInteger(START_OFFSET) + next[1])
+                        .put(END_OFFSET, metadata.getInteger(END_OFFSET) + next[1]);
+                onSegment.accept(segment);
+            }
+            next[1] += page.text().length() + 2;
+        };
+    }
+
+    /**
+     * Fins des morceaux de {@code [start, end)} coupés au niveau {@code level} ; chaque morceau
+     * garde son séparateur final pour que les morceaux restent contigus.
+     */
+    private int[] boundaries(CharSequence text, int start, int end, int level) {
+        if (level == LEVELS.length) {
+            // Dernier recours : tranches de maxSegmentSize caractères
+            int[] cuts = new int[(end - start + maxSegmentSize - 1) / maxSegmentSize];
+            for (int i = 0; i < cuts.length; i++) {
+                cuts[i] = Math.min(end, start + (i + 1) * maxSegmentSize);
+            }
+            return cuts;
+        }
+        IntArray cuts = new IntArray();
+        Matcher matcher = LEVELS[level].matcher(text).region(start, end);
+        while (matcher.find()) {
+            if (matcher.end() > start && matcher.end() < end) {
+                cuts.add(matcher.end());
+            }
+        }
+        cuts.add(end);
+        return cuts.toArray();
+    }
+
+    /**
+     * Redécoupe récursivement un morceau trop long aux niveaux suivants.
+     */
+    private void refine(CharSequence text, int start, int end, int level, IntArray out) {
+        if (end - start <= maxSegmentSize || level > LEVELS.length) {
+            out.add(end);
+            return;
+        }
+        int previous = start;
+        for (int cut : boundaries(text, start, end, level)) {
+            refine(text, previous, cut, level + 1, out);
+            previous = cut;
+        }
+    }
+
+    private int[] pack(CharSequence text, int[] ends) {
+        IntArray ranges = new IntArray();
+        int n = ends.length;
+        int first = 0;
+        int previousEnd = -1;
+        while (first < n) {
+            int pieceStart = first == 0 ? 0 : ends[first - 1];
+            int last = first;
+            while (last + 1 < n && ends[last + 1] - pieceStart <= maxSegmentSize) {
+                last++;
+            }
+            int start = skipWhitespace(text, pieceStart, ends[last]);
+            int end = trimWhitespace(text, start, ends[last]);
+            if (end > start && end > previousEnd) {
+                ranges.add(start);
+                ranges.add(end);
+                previousEnd = end;
+            }
+            if (last == n - 1) {
+                break;
+            }
+            // Recouvrement : on reprend les derniers morceaux tenant dans maxOverlap, à condition que
+            // le segment suivant puisse encore inclure le morceau qui vient après
+            int next = last + 1;
+            while (next - 1 > first
+                    && ends[last] - ends[next - 2] <= maxOverlap
+                    && ends[last + 1] - ends[next - 2] <= maxSegmentSize) {
+                next--;
+            }
+            first = next;
+        }
+        return ranges.toArray();
+    }
+
+    private static int skipWhitespace(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimWhitespace(CharSequence text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private final class Refine extends RecursiveTask<int[]> {
+
+        private final String text;
+        private final int[] paragraphs;
+        private final int from;
+        private final int to;
+
+        private Refine(String text, int[] paragraphs, int from, int to) {
+            this.text = text;
+            this.paragraphs = paragraphs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            int start = from == 0 ? 0 : paragraphs[from - 1];
+            if (to - from <= 1 || paragraphs[to - 1] - start < parallelThreshold || getPool() == null) {
+                IntArray out = new IntArray();
+                int previous = start;
+                for (int i = from; i < to; i++) {
+                    refine(text, previous, paragraphs[i], 1, out);
+                    previous = paragraphs[i];
+                }
+                return out.toArray();
+            }
+            int middle = (from + to) >>> 1;
+            Refine left = new Refine(text, paragraphs, from, middle);
+            left.fork();
+            int[] right = new Refine(text, paragraphs, middle, to).compute();
+            int[] leftEnds = left.join();
+            int[] all = Arrays.copyOf(leftEnds, leftEnds.length + right.length);
+            System.arraycopy(right, 0, all, leftEnds.length, right.length);
+            return all;
+        }
+    }
+
+    private static final class Materialize extends RecursiveAction {
+
+        private static final int BATCH = 256;
+
+        private final String text;
+        private final Metadata metadata;
+        private final int[] ranges;
+        private final TextSegment[] segments;
+        private final int from;
+        private final int to;
+
+        private Materialize(String text, Metadata metadata, int[] ranges, TextSegment[] segments, int from, int to) {
+            this.text = text;
+            this.metadata = metadata;
+            this.ranges = ranges;
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH || getPool() == null) {
+                for (int i = from; i < to; i++) {
+                    int start = ranges[2 * i];
+                    int end = ranges[2 * i + 1];
+                    Metadata segmentMetadata = metadata.copy()
+                            .put("index", String.valueOf(i))
+                            .put(START_OFFSET, start)
+                            .put(END_OFFSET, end);
+                    segments[i] = TextSegment.from(text.substring(start, end), segmentMetadata);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Materialize(text, metadata, ranges, segments, from, middle),
+                    new Materialize(text, metadata, ranges, segments, middle, to));
+        }
+    }
+
+    /**
+     * Liste d'{@code int} extensible, sans boxing.
+     */
+    private static final class IntArray {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    public static class Builder {
+
+        private int maxSegmentSize = 500;
+        private int maxOverlap = 100;
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+        private int parallelThreshold = 64 * 1024;
+
+        public Builder maxSegmentSize(int maxSegmentSize) {
+            this.maxSegmentSize = maxSegmentSize;
+            return this;
+        }
+
+        public Builder maxOverlap(int maxOverlap) {
+            this.maxOverlap = maxOverlap;
+            return this;
+        }
+
+        /**
+         * Pool fork/join utilisé pour les longs documents ; {@code null} pour un découpage séquentiel.
+         */
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Taille (en caractères) à partir de laquelle le travail est réparti entre plusieurs tâches.
+         */
+        public Builder parallelThreshold(int parallelThreshold) {
+            this.parallelThreshold = parallelThreshold;
+            return this;
+        }
+
+        public OffsetRecursiveSplitter build() {
+            if (maxOverlap >= maxSegmentSize) {
+                throw new IllegalArgumentException("maxOverlap doit être inférieur à maxSegmentSize");
+            }
+            return new OffsetRecursiveSplitter(this);
+        }
+    }
+}
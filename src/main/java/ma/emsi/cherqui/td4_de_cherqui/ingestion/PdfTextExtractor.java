@@ -0,0 +1,367 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Extraction de texte des PDF (et autres formats Tika) :
+ * <ul>
+ *     <li>les parseurs Tika sont créés une fois et réutilisés (pool de {@code poolSize} instances) ;</li>
+ *     <li>le texte est produit page par page, au fil du parsing, au lieu d'un seul gros document ;</li>
+ *     <li>le texte extrait est gardé sur disque, compressé, sous l'empreinte SHA-256 du fichier :
+ *     une ré-ingestion (ou un essai d'autres paramètres de découpage) ne reparse plus le PDF.</li>
+ * </ul>
+ */
+public class PdfTextExtractor {
+
+    /**
+     * Numéro de page (à partir de 1) des documents produits par {@link #loadPages}.
+     */
+    public static final String PAGE_NUMBER = "page_number";
+
+    private static final String FORMAT = "tika-pages-v1";
+    private static final char PAGE_SEPARATOR = '\f';
+    private static final Set<String> BLOCKS = Set.of("p", "div", "br", "li", "h1", "h2", "h3", "h4", "h5", "h6", "tr");
+    private static final PdfTextExtractor SHARED = builder().build();
+
+    private final Path cacheDir;
+    private final Supplier<Parser> parserFactory;
+    private final int poolSize;
+    private final BlockingQueue<Parser> parsers;
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final AtomicLong parsedFiles = new AtomicLong();
+    private final AtomicLong parsedPages = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong cachedFiles = new AtomicLong();
+    private final AtomicLong cachedPages = new AtomicLong();
+    private final AtomicLong cachedNanos = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private PdfTextExtractor(Builder builder) {
+        this.cacheDir = builder.cacheDir;
+        this.parserFactory = builder.parserFactory;
+        this.poolSize = builder.poolSize;
+        this.parsers = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Extracteur partagé, avec le cache dans {@code .rag-index/text}.
+     */
+    public static PdfTextExtractor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Document complet (pages séparées par une ligne vide), avec les mêmes métadonnées que
+     * {@code FileSystemDocumentLoader} ({@code file_name}, {@code absolute_directory_path}).
+     * Tout le texte est en mémoire : pour ingérer un gros fichier, préférer {@link #loadPages}.
+     */
+    public Document load(Path path) {
+        StringBuilder text = new StringBuilder();
+        extract(path, page -> {
+            if (!text.isEmpty()) {
+                text.append("\n\n");
+            }
+            text.append(page);
+        });
+        return document(path, text.toString());
+    }
+
+    /**
+     * Transmet chaque page à {@code onPage} dès qu'elle est extraite, sous forme de {@link Document}
+     * (métadonnées de {@link #load} plus {@link #PAGE_NUMBER}) : seule la page en cours est en mémoire.
+     *
+     * @return le nombre de pages
+     */
+    public int loadPages(Path path, Consumer<Document> onPage) {
+        int[] number = {0};
+        return extract(path, page -> {
+            Document document = document(path, page);
+            document.metadata().put(PAGE_NUMBER, ++number[0]);
+            onPage.accept(document);
+        });
+    }
+
+    static Document document(Path path, String text) {
+        Metadata metadata = new Metadata()
+                .put("file_name", path.getFileName().toString())
+                .put("absolute_directory_path", path.toAbsolutePath().getParent().toString());
+        return Document.from(text, metadata);
+    }
+
+    /**
+     * Transmet le texte de chaque page à {@code onPage}, dans l'ordre, au fur et à mesure de l'extraction.
+     *
+     * @return le nombre de pages
+     */
+    public int extract(Path path, Consumer<String> onPage) {
+        long start = System.nanoTime();
+        long allocatedBefore = allocatedBytes();
+        Path cached = cacheDir == null ? null : cacheDir.resolve(Hashes.file(path) + "." + FORMAT + ".gz");
+        boolean hit = cached != null && Files.exists(cached);
+        int count;
+        try {
+            count = hit ? readCached(cached, onPage) : parse(path, cached, onPage);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Extraction impossible : " + path, e);
+        }
+        // Le temps inclut celui de onPage (découpage, mise en file) : débit vu par l'appelant
+        (hit ? cachedFiles : parsedFiles).incrementAndGet();
+        (hit ? cachedPages : parsedPages).addAndGet(count);
+        (hit ? cachedNanos : parseNanos).addAndGet(System.nanoTime() - start);
+        long allocatedAfter = allocatedBytes();
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            allocatedBytes.addAndGet(allocatedAfter - allocatedBefore);
+        }
+        return count;
+    }
+
+    private int parse(Path path, Path cached, Consumer<String> onPage) throws IOException {
+        Parser parser = borrowParser();
+        Path tmp = cached == null ? null : Files.createTempFile(Files.createDirectories(cacheDir), "extract", ".tmp");
+        try (InputStream in = Files.newInputStream(path);
+             Writer cache = tmp == null ? Writer.nullWriter() : new BufferedWriter(new OutputStreamWriter(
+                     new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+            PageHandler handler = new PageHandler(page -> {
+                try {
+                    cache.write(page);
+                    cache.write(PAGE_SEPARATOR);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                onPage.accept(page);
+            });
+            parser.parse(in, handler, new org.apache.tika.metadata.Metadata(), new ParseContext());
+            handler.flush();
+            cache.close();
+            if (tmp != null) {
+                Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return handler.pages;
+        } catch (SAXException | TikaException e) {
+            throw new IOException(e);
+        } finally {
+            parsers.offer(parser);
+            if (tmp != null) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private int readCached(Path cached, Consumer<String> onPage) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(cached)), StandardCharsets.UTF_8))) {
+            StringBuilder page = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == PAGE_SEPARATOR) {
+                    onPage.accept(page.toString());
+                    page.setLength(0);
+                    count++;
+                } else {
+                    page.append((char) c);
+                }
+            }
+        }
+        return count;
+    }
+
+    private Parser borrowParser() {
+        Parser parser = parsers.poll();
+        if (parser != null) {
+            return parser;
+        }
+        if (created.getAndIncrement() < poolSize) {
+            try {
+                return parserFactory.get();
+            } catch (RuntimeException | Error e) {
+                // Place rendue : sans cela, chaque échec réduirait le pool pour toujours
+                created.decrementAndGet();
+                throw e;
+            }
+        }
+        created.decrementAndGet();
+        try {
+            return parsers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    public Stats stats() {
+        return new Stats(parsedFiles.get(), parsedPages.get(), parseNanos.get(),
+                cachedFiles.get(), cachedPages.get(), cachedNanos.get(), allocatedBytes.get());
+    }
+
+    /**
+     * Extractions séparées entre parsing Tika (à froid) et relecture du cache de texte.
+     */
+    public record Stats(long parsedFiles, long parsedPages, long parseNanos,
+                        long cachedFiles, long cachedPages, long cachedNanos, long allocatedBytes) {
+
+        public long files() {
+            return parsedFiles + cachedFiles;
+        }
+
+        public long pages() {
+            return parsedPages + cachedPages;
+        }
+
+        public double parsedPagesPerSecond() {
+            return parseNanos == 0 ? 0 : parsedPages / (parseNanos / 1e9);
+        }
+
+        public double cachedPagesPerSecond() {
+            return cachedNanos == 0 ? 0 : cachedPages / (cachedNanos / 1e9);
+        }
+
+        public double allocatedKbPerPage() {
+            return pages() == 0 ? 0 : allocatedBytes / 1024.0 / pages();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("parsés : %d fichiers, %d pages en %d ms (%.1f pages/s) | cache : %d fichiers,"
+                            + " %d pages en %d ms (%.1f pages/s) | %.0f Ko alloués/page",
+                    parsedFiles, parsedPages, parseNanos / 1_000_000, parsedPagesPerSecond(),
+                    cachedFiles, cachedPages, cachedNanos / 1_000_000, cachedPagesPerSecond(), allocatedKbPerPage());
+        }
+    }
+
+    /**
+     * Reconstitue le texte de chaque {@code <div class="page">} émis par le parseur PDF de Tika.
+     * Les formats sans pages produisent une seule "page".
+     */
+    private static final class PageHandler extends DefaultHandler {
+
+        private final Consumer<String> onPage;
+        private final StringBuilder text = new StringBuilder();
+        private int pageDepth = -1;
+        private int pages;
+
+        private PageHandler(Consumer<String> onPage) {
+            this.onPage = onPage;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("div".equals(localName)) {
+                if (pageDepth < 0 && "page".equals(attributes.getValue("class"))) {
+                    flush();
+                    pageDepth = 0;
+                } else if (pageDepth >= 0) {
+                    pageDepth++;
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("div".equals(localName) && pageDepth >= 0 && pageDepth-- == 0) {
+                flush();
+                return;
+            }
+            if (BLOCKS.contains(localName) && !text.isEmpty() && text.charAt(text.length() - 1) != '\n') {
+                text.append('\n');
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            for (int i = start; i < start + length; i++) {
+                text.append(ch[i] == PAGE_SEPARATOR ? ' ' : ch[i]);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            characters(ch, start, length);
+        }
+
+        private void flush() {
+            String page = text.toString().strip();
+            text.setLength(0);
+            if (!page.isEmpty()) {
+                onPage.accept(page);
+                pages++;
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private Path cacheDir = PersistentIngestor.DEFAULT_INDEX_DIR.resolve("text");
+        private Supplier<Parser> parserFactory = AutoDetectParser::new;
+        private int poolSize = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Répertoire du cache de texte extrait ; {@code null} pour le désactiver.
+         */
+        public Builder cacheDir(Path cacheDir) {
+            this.cacheDir = cacheDir;
+            return this;
+        }
+
+        public Builder parserFactory(Supplier<Parser> parserFactory) {
+            this.parserFactory = parserFactory;
+            return this;
+        }
+
+        /**
+         * Nombre maximal de parseurs créés (donc d'extractions simultanées).
+         */
+        public Builder poolSize(int poolSize) {
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        public PdfTextExtractor build() {
+            return new PdfTextExtractor(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.store.MappedEmbeddingStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ingestion avec cache disque : un document déjà indexé avec les mêmes paramètres
+ * est rechargé depuis son {@link MappedEmbeddingStore} sans aucun appel d'embedding.
+ * <p>
+ * Quand le document change, la nouvelle version est indexée sous une nouvelle clé et les fichiers
+ * de la précédente (notée dans {@code <document>.current}) sont supprimés.
+ */
+public final class PersistentIngestor {
+
+    private static final Logger LOGGER = Logger.getLogger(PersistentIngestor.class.getName());
+
+    public static final Path DEFAULT_INDEX_DIR = Path.of(".rag-index");
+
+    private PersistentIngestor() {
+    }
+
+    public static MappedEmbeddingStore loadOrIngest(Path path, EmbeddingModel embeddingModel, String modelName) {
+        return loadOrIngest(path, DEFAULT_INDEX_DIR, embeddingModel, modelName, 500, 100);
+    }
+
+    public static MappedEmbeddingStore loadOrIngest(Path path, Path indexDir, EmbeddingModel embeddingModel,
+                                                    String modelName, int maxSegmentSize, int maxOverlap) {
+        String key = indexKey(path, modelName, maxSegmentSize, maxOverlap);
+        MappedEmbeddingStore store = MappedEmbeddingStore.open(indexDir, key);
+        // Index entièrement écrit, même vide (document sans texte) : rien à refaire
+        if (MappedEmbeddingStore.exists(indexDir, key)) {
+            retirePrevious(path, indexDir, params(modelName, maxSegmentSize, maxOverlap), key);
+            return store;
+        }
+
+        // Index absent (ou document modifié) : extraction (texte en cache si déjà parsé) ; chaque page est
+        // découpée et part vers les embeddings dès qu'elle est extraite. Un document sans texte donne un index vide
+        try (EmbeddingPipeline pipeline = EmbeddingPipeline.builder()
+                .embeddingModel(embeddingModel)
+                .embeddingStore(store)
+                .build()) {
+            PdfTextExtractor.shared().loadPages(path,
+                    OffsetRecursiveSplitter.recursive(maxSegmentSize, maxOverlap).pageByPage(pipeline::accept));
+        }
+        store.save();
+        retirePrevious(path, indexDir, params(modelName, maxSegmentSize, maxOverlap), key);
+        return store;
+    }
+
+    /**
+     * Clé d'index : SHA-256 du contenu du fichier + modèle d'embedding + paramètres du splitter.
+     */
+    public static String indexKey(Path path, String modelName, int maxSegmentSize, int maxOverlap) {
+        MessageDigest digest = Hashes.sha256();
+        Hashes.update(digest, path);
+        digest.update(params(modelName, maxSegmentSize, maxOverlap).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String params(String modelName, int maxSegmentSize, int maxOverlap) {
+        return modelName + "|offset-recursive-pages|" + maxSegmentSize + "|" + maxOverlap;
+    }
+
+    /**
+     * Supprime les fichiers ({@code .vec}, {@code .seg}, {@code .snapshot}...) de la version précédente
+     * du même document avec les mêmes paramètres ; sans cela, chaque modification laisserait un index orphelin.
+     */
+    private static void retirePrevious(Path path, Path indexDir, String params, String key) {
+        String document = Hashes.text(path.toAbsolutePath().normalize() + "|" + params);
+        Path current = indexDir.resolve(document + ".current");
+        try {
+            String previous = Files.exists(current) ? Files.readString(current).strip() : "";
+            if (previous.equals(key)) {
+                return;
+            }
+            if (!previous.isEmpty()) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(indexDir, previous + ".*")) {
+                    for (Path file : files) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                LOGGER.info(() -> "Ancien index de " + path + " supprimé : " + previous);
+            }
+            Files.writeString(current, key);
+        } catch (IOException e) {
+            // Nettoyage seulement : l'index courant reste utilisable
+            LOGGER.log(Level.WARNING, "Nettoyage de l'ancien index impossible : " + current, e);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package ma.emsi.cherqui.td4_de_cherqui.lexical;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Index inversé BM25 en mémoire, construit sur les mêmes {@link TextSegment} que l'index vectoriel.
+ * <p>
+ * Les listes de postings sont des tableaux primitifs : numéros de documents codés en écarts
+ * (delta) puis en varint, chacun suivi de sa fréquence, dans un seul {@code byte[]} par terme.
+ * L'index est immuable une fois construit ({@link Builder#build()}) et peut être lu par plusieurs threads.
+ * Il peut être figé dans un snapshot ({@link #write}) puis rouvert ({@link #read}) sans re-tokeniser
+ * les documents.
+ */
+public class Bm25Index {
+
+    private static final int MAGIC = 0x424d3235; // "BM25"
+    private static final int VERSION = 1;
+
+    private final float k1;
+    private final float b;
+    private final String[] ids;
+    private final IntFunction<TextSegment> segments;
+    private final int[] docLengths;
+    private final float averageLength;
+    private final Map<String, Integer> terms;
+    private final byte[][] postings;
+    private final int[] documentFrequencies;
+
+    private Bm25Index(Builder builder) {
+        this.k1 = builder.k1;
+        this.b = builder.b;
+        this.ids = builder.ids.toArray(String[]::new);
+        TextSegment[] built = builder.segments.toArray(TextSegment[]::new);
+        this.segments = doc -> built[doc];
+        this.docLengths = Arrays.copyOf(builder.docLengths, ids.length);
+        this.averageLength = averageLength(docLengths);
+
+        // Gel : chaque liste de postings (déjà triée par document) est compressée
+        this.terms = new HashMap<>(builder.terms.size() * 2);
+        this.postings = new byte[builder.terms.size()][];
+        this.documentFrequencies = new int[builder.terms.size()];
+        int termId = 0;
+        for (Map.Entry<String, Postings> entry : builder.terms.entrySet()) {
+            terms.put(entry.getKey(), termId);
+            postings[termId] = entry.getValue().encode();
+            documentFrequencies[termId] = entry.getValue().size;
+            termId++;
+        }
+    }
+
+    private Bm25Index(float k1, float b, String[] ids, IntFunction<TextSegment> segments, int[] docLengths,
+                      Map<String, Integer> terms, byte[][] postings, int[] documentFrequencies) {
+        this.k1 = k1;
+        this.b = b;
+        this.ids = ids;
+        this.segments = segments;
+        this.docLengths = docLengths;
+        this.averageLength = averageLength(docLengths);
+        this.terms = terms;
+        this.postings = postings;
+        this.documentFrequencies = documentFrequencies;
+    }
+
+    private static float averageLength(int[] docLengths) {
+        long total = 0;
+        for (int length : docLengths) {
+            total += length;
+        }
+        return docLengths.length == 0 ? 0 : (float) total / docLengths.length;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // -------------------------------
+    // Snapshot
+    // -------------------------------
+
+    /**
+     * Écrit l'index (paramètres, longueurs, identifiants, vocabulaire et postings compressés) ;
+     * le texte des segments n'est pas dupliqué, il est relu depuis le store au chargement.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeFloat(k1);
+        out.writeFloat(b);
+        out.writeInt(ids.length);
+        for (int length : docLengths) {
+            out.writeInt(length);
+        }
+        for (String id : ids) {
+            writeString(out, id);
+        }
+        out.writeInt(terms.size());
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            writeString(out, term.getKey());
+            out.writeInt(documentFrequencies[term.getValue()]);
+            byte[] list = postings[term.getValue()];
+            out.writeInt(list.length);
+            out.write(list);
+        }
+    }
+
+    /**
+     * Relit un index écrit par {@link #write} ; {@code segments} retrouve le segment d'un identifiant
+     * (appelé seulement pour les résultats renvoyés).
+     */
+    public static Bm25Index read(ByteBuffer image, Function<String, TextSegment> segments) {
+        ByteBuffer in = image.duplicate();
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IllegalArgumentException("Section d'index BM25 inconnue");
+        }
+        float k1 = in.getFloat();
+        float b = in.getFloat();
+        int n = in.getInt();
+        int[] docLengths = new int[n];
+        in.asIntBuffer().get(docLengths);
+        in.position(in.position() + n * Integer.BYTES);
+        String[] ids = new String[n];
+        for (int doc = 0; doc < n; doc++) {
+            ids[doc] = readString(in);
+        }
+        int termCount = in.getInt();
+        Map<String, Integer> terms = new HashMap<>(termCount * 2);
+        byte[][] postings = new byte[termCount][];
+        int[] documentFrequencies = new int[termCount];
+        for (int termId = 0; termId < termCount; termId++) {
+            terms.put(readString(in), termId);
+            documentFrequencies[termId] = in.getInt();
+            postings[termId] = new byte[in.getInt()];
+            in.get(postings[termId]);
+        }
+        return new Bm25Index(k1, b, ids, doc -> segments.apply(ids[doc]), docLengths,
+                terms, postings, documentFrequencies);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public List<Hit> search(String query, int maxResults) {
+        int n = ids.length;
+        if (n == 0 || maxResults <= 0) {
+            return List.of();
+        }
+        float[] scores = new float[n];
+        boolean any = false;
+        for (String term : distinct(Bm25Tokenizer.tokenize(query))) {
+            Integer termId = terms.get(term);
+            if (termId == null) {
+                continue;
+            }
+            any = true;
+            int df = documentFrequencies[termId];
+            float idf = (float) Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            byte[] bytes = postings[termId];
+            int[] cursor = {0};
+            int doc = 0;
+            while (cursor[0] < bytes.length) {
+                doc += readVarInt(bytes, cursor);
+                int tf = readVarInt(bytes, cursor);
+                float norm = k1 * (1 - b + b * docLengths[doc] / averageLength);
+                scores[doc] += idf * tf * (k1 + 1) / (tf + norm);
+            }
+        }
+        if (!any) {
+            return List.of();
+        }
+
+        PriorityQueue<Scored> top = new PriorityQueue<>(maxResults, (x, y) -> Float.compare(x.score(), y.score()));
+        for (int doc = 0; doc < n; doc++) {
+            float score = scores[doc];
+            if (score <= 0) {
+                continue;
+            }
+            if (top.size() < maxResults) {
+                top.add(new Scored(doc, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new Scored(doc, score));
+            }
+        }
+        // Segments résolus pour les seuls résultats (relus depuis le store pour un index restauré)
+        List<Hit> hits = new ArrayList<>(top.size());
+        for (Scored scored : top) {
+            hits.add(new Hit(ids[scored.doc()], segments.apply(scored.doc()), scored.score()));
+        }
+        hits.sort((x, y) -> Float.compare(y.score(), x.score()));
+        return hits;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int terms() {
+        return terms.size();
+    }
+
+    /**
+     * Estimation de l'empreinte mémoire de l'index (hors texte des segments, partagé avec le store).
+     */
+    public long memoryBytes() {
+        long bytes = 4L * docLengths.length + 16L * ids.length;
+        for (byte[] list : postings) {
+            bytes += 16 + list.length;
+        }
+        for (String term : terms.keySet()) {
+            bytes += 48 + 40 + term.length(); // entrée de HashMap + String Latin-1 + Integer
+        }
+        return bytes + 4L * documentFrequencies.length;
+    }
+
+    public record Hit(String id, TextSegment segment, float score) {
+    }
+
+    private record Scored(int doc, float score) {
+    }
+
+    private static List<String> distinct(List<String> tokens) {
+        return tokens.stream().distinct().toList();
+    }
+
+    private static int readVarInt(byte[] bytes, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = bytes[cursor[0]++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    /**
+     * Liste de postings en cours de construction : deux tableaux primitifs extensibles.
+     */
+    private static final class Postings {
+
+        private int[] docs = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        private void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        private byte[] encode() {
+            byte[] out = new byte[size * 10];
+            int position = 0;
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                position = writeVarInt(out, position, docs[i] - previous);
+                position = writeVarInt(out, position, frequencies[i]);
+                previous = docs[i];
+            }
+            return Arrays.copyOf(out, position);
+        }
+
+        private static int writeVarInt(byte[] out, int position, int value) {
+            while ((value & ~0x7F) != 0) {
+                out[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out[position++] = (byte) value;
+            return position;
+        }
+    }
+
+    public static class Builder {
+
+        private float k1 = 1.2f;
+        private float b = 0.75f;
+        private final List<String> ids = new ArrayList<>();
+        private final List<TextSegment> segments = new ArrayList<>();
+        private int[] docLengths = new int[64];
+        private final Map<String, Postings> terms = new HashMap<>();
+
+        public Builder k1(float k1) {
+            this.k1 = k1;
+            return this;
+        }
+
+        public Builder b(float b) {
+            this.b = b;
+            return this;
+        }
+
+        /**
+         * Indexe un segment. Thread-safe : utilisable comme {@code onStored} de l'{@code EmbeddingPipeline}.
+         */
+        public synchronized Builder add(String id, TextSegment segment) {
+            int doc = ids.size();
+            ids.add(id);
+            segments.add(segment);
+            List<String> tokens = Bm25Tokenizer.tokenize(segment.text());
+            if (doc == docLengths.length) {
+                docLengths = Arrays.copyOf(docLengths, doc * 2);
+            }
+            docLengths[doc] = tokens.size();
+
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            // Les documents sont numérotés dans l'ordre d'ajout : chaque liste reste triée
+            frequencies.forEach((term, tf) -> terms.computeIfAbsent(term, t -> new Postings()).add(doc, tf));
+            return this;
+        }
+
+        public synchronized Builder addAll(List<String> ids, List<TextSegment> segments) {
+            for (int i = 0; i < ids.size(); i++) {
+                add(ids.get(i), segments.get(i));
+            }
+            return this;
+        }
+
+        public synchronized Bm25Index build() {
+            return new Bm25Index(this);
+        }
+    }
+}
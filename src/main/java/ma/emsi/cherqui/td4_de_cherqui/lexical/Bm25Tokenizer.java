@@ -0,0 +1,46 @@
+package ma.emsi.cherqui.td4_de_cherqui.lexical;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Découpage en termes pour BM25 : minuscules, sans accents. Les identifiants en camelCase
+ * ({@code EmbeddingStoreContentRetriever}) produisent le terme entier et chacune de ses parties,
+ * pour retrouver aussi bien le nom exact d'une classe que ses mots.
+ */
+public final class Bm25Tokenizer {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern CAMEL_CASE = Pattern.compile("(?<=\\p{Ll})(?=\\p{Lu})|(?<=\\p{Lu})(?=\\p{Lu}\\p{Ll})");
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    private Bm25Tokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String word : SEPARATORS.split(text)) {
+            if (word.length() < 2) {
+                continue;
+            }
+            tokens.add(normalize(word));
+            String[] parts = CAMEL_CASE.split(word);
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    if (part.length() >= 2) {
+                        tokens.add(normalize(part));
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalize(String word) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        return ACCENTS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+    }
+}
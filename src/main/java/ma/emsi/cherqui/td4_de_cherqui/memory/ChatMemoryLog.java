@@ -0,0 +1,480 @@
+package ma.emsi.cherqui.td4_de_cherqui.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link ChatMemoryStore} sur disque, en ajout seul : chaque mise à jour d'une session ajoute un
+ * enregistrement (historique JSON compressé) et seule la position du dernier enregistrement de
+ * chaque session reste en mémoire. Des milliers de sessions inactives ne coûtent donc que leur index.
+ * <ul>
+ *     <li>concurrence : les écritures d'une même session sont sérialisées par un verrou de session ;
+ *     (dé)sérialisation et compression se font hors verrou, seul l'ajout en fin de fichier est exclusif ;</li>
+ *     <li>rétention : un historique non modifié depuis {@code retention} est oublié (ni servi, ni relu
+ *     au démarrage, retiré du fichier à la compaction suivante) ;</li>
+ *     <li>compaction : dès que les enregistrements périmés dépassent {@code compactionRatio} fois les
+ *     vivants, le fichier est réécrit sur un thread virtuel, hors du chemin des requêtes.</li>
+ * </ul>
+ * Format : en-tête {@code "RAGM", version}, puis des enregistrements
+ * {@code int longueurId, octets UTF-8, long dateMillis, int longueur (-1 = supprimé), octets deflate}.
+ */
+public class ChatMemoryLog implements ChatMemoryStore, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ChatMemoryLog.class.getName());
+
+    private static final int MAGIC = 0x5241474d; // "RAGM"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int RECORD_OVERHEAD = 2 * Integer.BYTES + Long.BYTES;
+    private static final int SESSION_LOCKS = 64;
+
+    private final Path file;
+    private final double compactionRatio;
+    private final Duration retention;
+    private final Clock clock;
+
+    private final Map<String, Record> index = new ConcurrentHashMap<>();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    // Lectures et ajouts sous le verrou partagé ; seul le remplacement du fichier prend le verrou exclusif
+    private final ReentrantReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock[] sessionLocks = new ReentrantLock[SESSION_LOCKS];
+    private final ExecutorService maintenance = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean maintaining = new AtomicBoolean();
+    private volatile FileChannel channel;
+    private volatile long end;
+    private volatile long lastSweepMillis;
+
+    public ChatMemoryLog(Path file) {
+        this(file, 2.0, null, Clock.systemUTC());
+    }
+
+    public ChatMemoryLog(Path file, Duration retention) {
+        this(file, 2.0, retention, Clock.systemUTC());
+    }
+
+    /**
+     * @param retention durée de conservation d'un historique depuis sa dernière modification ;
+     *                  {@code null} pour tout garder
+     */
+    public ChatMemoryLog(Path file, double compactionRatio, Duration retention, Clock clock) {
+        this.file = file;
+        this.compactionRatio = compactionRatio;
+        this.retention = retention;
+        this.clock = clock;
+        for (int i = 0; i < SESSION_LOCKS; i++) {
+            sessionLocks[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            rebuildIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal des sessions illisible : " + file, e);
+        }
+        this.lastSweepMillis = clock.millis();
+    }
+
+    private void rebuildIndex() throws IOException {
+        long size = channel.size();
+        ByteBuffer format = size < HEADER_BYTES ? null : read(0, HEADER_BYTES);
+        if (format == null || format.getInt() != MAGIC || format.getInt() != VERSION) {
+            if (size > 0) {
+                LOGGER.warning(() -> "Journal des sessions d'un format inconnu, historiques ignorés : " + file);
+            }
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            writeFully(channel, header.putInt(MAGIC).putInt(VERSION).flip(), 0);
+            end = HEADER_BYTES;
+            return;
+        }
+        long now = clock.millis();
+        long position = HEADER_BYTES;
+        while (position < size) {
+            try {
+                int idLength = read(position, Integer.BYTES).getInt();
+                if (idLength <= 0 || position + RECORD_OVERHEAD + idLength > size) {
+                    break;
+                }
+                String id = new String(read(position + Integer.BYTES, idLength).array(), StandardCharsets.UTF_8);
+                ByteBuffer fields = read(position + Integer.BYTES + idLength, Long.BYTES + Integer.BYTES);
+                long writtenAt = fields.getLong();
+                int length = fields.getInt();
+                long dataPosition = position + RECORD_OVERHEAD + idLength;
+                long recordEnd = dataPosition + Math.max(length, 0);
+                if (recordEnd > size) {
+                    break; // dernier enregistrement tronqué (arrêt brutal) : ignoré
+                }
+                boolean live = length >= 0 && !isExpired(writtenAt, now);
+                Record previous = live
+                        ? index.put(id, new Record(dataPosition, length, writtenAt))
+                        : index.remove(id);
+                liveBytes.addAndGet((live ? length : 0) - (previous == null ? 0 : previous.length()));
+                position = recordEnd;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        channel.truncate(position);
+        end = position;
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        byte[] data;
+        fileLock.readLock().lock();
+        try {
+            Record record = index.get(memoryId.toString());
+            if (record == null || isExpired(record.writtenAt(), clock.millis())) {
+                return new ArrayList<>();
+            }
+            data = read(record.position(), record.length()).array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        return new ArrayList<>(ChatMessageDeserializer.messagesFromJson(inflate(data)));
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        byte[] data = deflate(ChatMessageSerializer.messagesToJson(messages));
+        String id = memoryId.toString();
+        ReentrantLock lock = sessionLock(id);
+        lock.lock();
+        try {
+            write(id, data.length, data);
+        } finally {
+            lock.unlock();
+        }
+        maintainIfNeeded();
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String id = memoryId.toString();
+        ReentrantLock lock = sessionLock(id);
+        lock.lock();
+        try {
+            if (index.containsKey(id)) {
+                write(id, -1, new byte[0]);
+            }
+        } finally {
+            lock.unlock();
+        }
+        maintainIfNeeded();
+    }
+
+    /**
+     * Taille sur disque (compressée) de l'historique d'une session, 0 si inconnue.
+     */
+    public int bytes(Object memoryId) {
+        Record record = index.get(memoryId.toString());
+        return record == null ? 0 : record.length();
+    }
+
+    public Stats stats() {
+        return new Stats(index.size(), liveBytes.get(), end, expired.get());
+    }
+
+    /**
+     * @param expired historiques oubliés par la rétention depuis l'ouverture
+     */
+    public record Stats(int sessions, long liveBytes, long fileBytes, long expired) {
+
+        @Override
+        public String toString() {
+            return String.format("%d sessions, %d octets utiles, fichier %d octets (%.1f octets/session), %d expirées",
+                    sessions, liveBytes, fileBytes, sessions == 0 ? 0.0 : (double) liveBytes / sessions, expired);
+        }
+    }
+
+    /**
+     * Ajoute un enregistrement ; appelé sous le verrou de la session, l'ordre du fichier et celui de l'index concordent.
+     */
+    private void write(String id, int length, byte[] data) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        long now = clock.millis();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + idBytes.length + data.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(idBytes.length).put(idBytes).putLong(now).putInt(length).put(data).flip();
+        fileLock.readLock().lock();
+        try {
+            long position;
+            appendLock.lock();
+            try {
+                position = end;
+                writeFully(channel, record, position);
+                end = position + record.capacity();
+            } finally {
+                appendLock.unlock();
+            }
+            Record previous = length < 0
+                    ? index.remove(id)
+                    : index.put(id, new Record(position + RECORD_OVERHEAD + idBytes.length, length, now));
+            liveBytes.addAndGet(Math.max(length, 0) - (previous == null ? 0 : previous.length()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Expiration et compaction, sur un thread virtuel : une seule à la fois, jamais sur le chemin de la requête.
+     */
+    private void maintainIfNeeded() {
+        boolean sweep = retention != null && clock.millis() - lastSweepMillis >= sweepInterval();
+        if ((sweep || needsCompaction()) && maintaining.compareAndSet(false, true)) {
+            maintenance.execute(() -> {
+                try {
+                    if (sweep) {
+                        expire();
+                    }
+                    if (needsCompaction()) {
+                        compact();
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Maintenance du journal des sessions impossible : " + file, e);
+                } finally {
+                    maintaining.set(false);
+                }
+            });
+        }
+    }
+
+    private long sweepInterval() {
+        return Math.min(retention.toMillis() / 10, Duration.ofMinutes(1).toMillis());
+    }
+
+    /**
+     * Oublie les historiques dont la dernière modification dépasse la rétention.
+     */
+    void expire() {
+        if (retention == null) {
+            return;
+        }
+        long now = clock.millis();
+        lastSweepMillis = now;
+        fileLock.readLock().lock();
+        try {
+            for (String id : index.keySet()) {
+                ReentrantLock lock = sessionLock(id);
+                lock.lock();
+                try {
+                    Record record = index.get(id);
+                    if (record != null && isExpired(record.writtenAt(), now)) {
+                        index.remove(id);
+                        liveBytes.addAndGet(-record.length());
+                        expired.incrementAndGet();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    private boolean needsCompaction() {
+        long garbage = end - HEADER_BYTES - liveBytes.get();
+        return garbage >= 64 * 1024 && garbage >= compactionRatio * liveBytes.get();
+    }
+
+    /**
+     * Réécrit les seuls enregistrements vivants dans un fichier temporaire, puis le met en place atomiquement.
+     * La copie se fait sous le verrou partagé ; le verrou exclusif ne couvre que les historiques
+     * modifiés pendant la copie et le remplacement du fichier.
+     */
+    void compact() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Map<String, Record> copied = new HashMap<>();
+        Map<String, Record> sources = new HashMap<>();
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long position = writeFully(out, header.putInt(MAGIC).putInt(VERSION).flip(), 0);
+
+            // 1. Copie des historiques vivants, les sessions continuent d'écrire dans l'ancien fichier
+            fileLock.readLock().lock();
+            try {
+                for (Map.Entry<String, Record> entry : index.entrySet()) {
+                    sources.put(entry.getKey(), entry.getValue());
+                    position = copy(out, position, entry.getKey(), entry.getValue(), copied);
+                }
+            } finally {
+                fileLock.readLock().unlock();
+            }
+
+            // 2. Rattrapage des historiques modifiés entre-temps, puis remplacement du fichier
+            fileLock.writeLock().lock();
+            try {
+                for (Map.Entry<String, Record> entry : index.entrySet()) {
+                    if (sources.get(entry.getKey()) != entry.getValue()) {
+                        position = copy(out, position, entry.getKey(), entry.getValue(), copied);
+                    }
+                }
+                copied.keySet().retainAll(index.keySet());
+                out.force(true);
+                out.close();
+                channel.close();
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    index.putAll(copied);
+                    end = position;
+                } finally {
+                    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+            } finally {
+                fileLock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Compactage du journal des sessions impossible : " + file, e);
+        }
+    }
+
+    private long copy(FileChannel out, long position, String id, Record live, Map<String, Record> copied)
+            throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + idBytes.length + live.length())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(idBytes.length).put(idBytes).putLong(live.writtenAt()).putInt(live.length());
+        readFully(record, live.position() - record.position());
+        long next = writeFully(out, record.flip(), position);
+        copied.put(id, new Record(next - live.length(), live.length(), live.writtenAt()));
+        return next;
+    }
+
+    private boolean isExpired(long writtenAt, long now) {
+        return retention != null && now - writtenAt >= retention.toMillis();
+    }
+
+    private ReentrantLock sessionLock(String id) {
+        return sessionLocks[Math.floorMod(id.hashCode(), SESSION_LOCKS)];
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, position);
+        return buffer.flip();
+    }
+
+    /**
+     * Remplit {@code buffer} à partir de sa position courante ; {@code position} est l'offset
+     * du fichier correspondant à l'indice 0 du buffer.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * @return la position qui suit les octets écrits
+     */
+    private static long writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+        return position;
+    }
+
+    private static byte[] deflate(String json) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(json.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Historique de session tronqué");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Historique de session corrompu", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Attend la fin d'une maintenance en cours, puis ferme le fichier.
+     */
+    @Override
+    public void close() {
+        maintenance.close();
+        fileLock.writeLock().lock();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param writtenAt date de la dernière modification (millisecondes epoch)
+     */
+    private record Record(long position, int length, long writtenAt) {
+    }
+}
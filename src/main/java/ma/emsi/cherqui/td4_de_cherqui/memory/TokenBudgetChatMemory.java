@@ -0,0 +1,296 @@
+package ma.emsi.cherqui.td4_de_cherqui.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@link ChatMemory} bornée en tokens plutôt qu'en messages.
+ * <ul>
+ *     <li>le contexte injecté par le RAG n'est gardé que pour la question en cours : dès que la
+ *     réponse arrive, le message utilisateur est ramené à la question seule ;</li>
+ *     <li>au-delà de {@code maxTokens}, les plus anciens échanges (question + réponse) sont
+ *     retirés, et résumés par {@code summarizer} s'il est défini ;</li>
+ *     <li>l'historique est lu et écrit dans un {@link ChatMemoryStore} (typiquement un
+ *     {@link ChatMemoryLog}) : l'objet lui-même ne garde rien sur le tas entre deux tours.</li>
+ * </ul>
+ */
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    /**
+     * Début du texte ajouté par le {@code DefaultContentInjector} de LangChain4j.
+     */
+    public static final String DEFAULT_RETRIEVED_CONTENT_MARKER = "\n\nAnswer using the following information:\n";
+
+    private static final String SUMMARY_PREFIX = "Résumé de la conversation précédente : ";
+
+    private final Object id;
+    private final int maxTokens;
+    private final ToIntFunction<ChatMessage> tokenCounter;
+    private final ChatMemoryStore store;
+    private final ChatLanguageModel summarizer;
+    private final String retrievedContentMarker;
+    private final Metrics metrics;
+
+    private TokenBudgetChatMemory(Builder builder) {
+        this.id = builder.id;
+        this.maxTokens = builder.maxTokens;
+        this.tokenCounter = builder.tokenCounter;
+        this.store = builder.store;
+        this.summarizer = builder.summarizer;
+        this.retrievedContentMarker = builder.retrievedContentMarker;
+        this.metrics = builder.metrics;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        List<ChatMessage> messages = store.getMessages(id);
+        if (message instanceof SystemMessage system) {
+            // Un seul message système, en tête (le résumé éventuel y est conservé)
+            String summary = summaryOf(messages);
+            messages.removeIf(m -> m instanceof SystemMessage);
+            messages.addFirst(summary == null ? system : SystemMessage.from(system.text() + "\n\n" + summary));
+        } else {
+            if (message instanceof AiMessage && !messages.isEmpty()
+                    && messages.getLast() instanceof UserMessage question) {
+                messages.set(messages.size() - 1, stripRetrievedContent(question));
+            }
+            messages.add(message);
+        }
+        enforceBudget(messages);
+        store.updateMessages(id, messages);
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> messages = store.getMessages(id);
+        metrics.promptTokens(tokens(messages));
+        return messages;
+    }
+
+    @Override
+    public void clear() {
+        store.deleteMessages(id);
+    }
+
+    private void enforceBudget(List<ChatMessage> messages) {
+        int total = tokens(messages);
+        if (total <= maxTokens) {
+            return;
+        }
+        int first = messages.isEmpty() || !(messages.getFirst() instanceof SystemMessage) ? 0 : 1;
+        List<ChatMessage> evicted = new ArrayList<>();
+        // On retire des échanges complets, en gardant toujours le dernier message
+        while (total > maxTokens && messages.size() - first > 1) {
+            do {
+                ChatMessage removed = messages.remove(first);
+                total -= tokenCounter.applyAsInt(removed);
+                evicted.add(removed);
+            } while (messages.size() - first > 1
+                    && (messages.get(first) instanceof AiMessage
+                    || messages.get(first) instanceof ToolExecutionResultMessage));
+        }
+        metrics.dropped.addAndGet(evicted.size());
+
+        if (summarizer != null && !evicted.isEmpty()) {
+            String summary = summarize(summaryOf(messages), evicted);
+            SystemMessage system = first == 1 ? (SystemMessage) messages.removeFirst() : null;
+            String base = system == null ? "" : baseSystemText(system.text());
+            messages.addFirst(SystemMessage.from(base.isEmpty() ? summary : base + "\n\n" + summary));
+            metrics.summaries.incrementAndGet();
+        }
+    }
+
+    private String summarize(String previousSummary, List<ChatMessage> evicted) {
+        StringBuilder prompt = new StringBuilder(
+                "Résume en quelques phrases cette conversation, en gardant les faits utiles pour la suite.\n");
+        if (previousSummary != null) {
+            prompt.append(previousSummary).append('\n');
+        }
+        for (ChatMessage message : evicted) {
+            String text = textOf(message);
+            if (!text.isEmpty()) {
+                prompt.append(message instanceof UserMessage ? "Utilisateur : " : "Assistant : ")
+                        .append(text).append('\n');
+            }
+        }
+        return SUMMARY_PREFIX + summarizer.generate(prompt.toString());
+    }
+
+    private UserMessage stripRetrievedContent(UserMessage question) {
+        if (!question.hasSingleText()) {
+            return question;
+        }
+        String text = question.singleText();
+        int marker = text.indexOf(retrievedContentMarker);
+        if (marker < 0) {
+            return question;
+        }
+        String stripped = text.substring(0, marker);
+        return question.name() == null ? UserMessage.from(stripped) : UserMessage.from(question.name(), stripped);
+    }
+
+    private static String summaryOf(List<ChatMessage> messages) {
+        if (!messages.isEmpty() && messages.getFirst() instanceof SystemMessage system) {
+            int start = system.text().indexOf(SUMMARY_PREFIX);
+            return start < 0 ? null : system.text().substring(start);
+        }
+        return null;
+    }
+
+    private static String baseSystemText(String text) {
+        int start = text.indexOf(SUMMARY_PREFIX);
+        return start < 0 ? text : text.substring(0, start).strip();
+    }
+
+    private int tokens(List<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += tokenCounter.applyAsInt(message);
+        }
+        return total;
+    }
+
+    /**
+     * Texte d'un message, par l'accesseur propre à son type ({@code ChatMessage.text()} est dépréciée) ;
+     * chaîne vide pour un message sans texte (image, appels d'outils).
+     */
+    public static String textOf(ChatMessage message) {
+        String text = switch (message) {
+            case SystemMessage system -> system.text();
+            case UserMessage user -> user.hasSingleText() ? user.singleText() : "";
+            case AiMessage ai -> ai.text();
+            case ToolExecutionResultMessage result -> result.text();
+            default -> "";
+        };
+        return text == null ? "" : text;
+    }
+
+    /**
+     * Estimation sans tokenizer : ~4 caractères par token, plus un surcoût fixe par message.
+     */
+    static int estimateTokens(ChatMessage message) {
+        return 4 + (textOf(message).length() + 3) / 4;
+    }
+
+    /**
+     * Compteurs partagés par toutes les mémoires d'un même service.
+     */
+    public static final class Metrics {
+
+        private final AtomicLong prompts = new AtomicLong();
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong maxPromptTokens = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong summaries = new AtomicLong();
+
+        private void promptTokens(int tokens) {
+            prompts.incrementAndGet();
+            promptTokens.addAndGet(tokens);
+            maxPromptTokens.accumulateAndGet(tokens, Math::max);
+        }
+
+        public double averagePromptTokens() {
+            long count = prompts.get();
+            return count == 0 ? 0 : (double) promptTokens.get() / count;
+        }
+
+        public long maxPromptTokens() {
+            return maxPromptTokens.get();
+        }
+
+        public long droppedMessages() {
+            return dropped.get();
+        }
+
+        public long summaries() {
+            return summaries.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mémoire : %.0f tokens/tour en moyenne (max %d), %d messages retirés, %d résumés",
+                    averagePromptTokens(), maxPromptTokens(), droppedMessages(), summaries());
+        }
+    }
+
+    public static class Builder {
+
+        private Object id = "default";
+        private int maxTokens = 2_000;
+        private ToIntFunction<ChatMessage> tokenCounter = TokenBudgetChatMemory::estimateTokens;
+        private ChatMemoryStore store;
+        private ChatLanguageModel summarizer;
+        private String retrievedContentMarker = DEFAULT_RETRIEVED_CONTENT_MARKER;
+        private Metrics metrics = new Metrics();
+
+        public Builder id(Object id) {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * Budget de l'historique envoyé au modèle à chaque tour (question en cours comprise).
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        public Builder tokenizer(Tokenizer tokenizer) {
+            this.tokenCounter = tokenizer::estimateTokenCountInMessage;
+            return this;
+        }
+
+        public Builder store(ChatMemoryStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Modèle utilisé pour résumer les échanges retirés ; sans résumeur, ils sont simplement oubliés.
+         */
+        public Builder summarizer(ChatLanguageModel summarizer) {
+            this.summarizer = summarizer;
+            return this;
+        }
+
+        public Builder retrievedContentMarker(String retrievedContentMarker) {
+            this.retrievedContentMarker = retrievedContentMarker;
+            return this;
+        }
+
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public TokenBudgetChatMemory build() {
+            if (store == null) {
+                store = new InMemoryChatMemoryStore();
+            }
+            return new TokenBudgetChatMemory(this);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * {@link ChatLanguageModel} mesuré : latence de génération et tokens facturés (entrée / sortie).
+ */
+class InstrumentedChatModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final StageMetrics stage;
+
+    InstrumentedChatModel(ChatLanguageModel delegate, StageMetrics stage) {
+        this.delegate = delegate;
+        this.stage = stage;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return measure(() -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return measure(() -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return measure(() -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> measure(Supplier<Response<AiMessage>> call) {
+        long start = System.nanoTime();
+        StageEvent event = stage.begin();
+        try {
+            Response<AiMessage> response = call.get();
+            TokenUsage usage = response.tokenUsage();
+            stage.succeeded(start, event,
+                    usage == null || usage.inputTokenCount() == null ? 0 : usage.inputTokenCount(),
+                    usage == null || usage.outputTokenCount() == null ? 0 : usage.outputTokenCount(),
+                    0, Double.NaN);
+            return response;
+        } catch (RuntimeException e) {
+            stage.failed(start, event, e);
+            throw e;
+        }
+    }
+}
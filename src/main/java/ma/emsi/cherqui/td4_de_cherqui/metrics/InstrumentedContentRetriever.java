@@ -0,0 +1,35 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.util.List;
+
+/**
+ * {@link ContentRetriever} mesuré : latence, nombre de contenus renvoyés, requêtes sans résultat.
+ */
+class InstrumentedContentRetriever implements ContentRetriever {
+
+    private final ContentRetriever delegate;
+    private final StageMetrics stage;
+
+    InstrumentedContentRetriever(ContentRetriever delegate, StageMetrics stage) {
+        this.delegate = delegate;
+        this.stage = stage;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        long start = System.nanoTime();
+        StageEvent event = stage.begin();
+        try {
+            List<Content> contents = delegate.retrieve(query);
+            stage.succeeded(start, event, 0, 0, contents.size(), Double.NaN);
+            return contents;
+        } catch (RuntimeException e) {
+            stage.failed(start, event, e);
+            throw e;
+        }
+    }
+}
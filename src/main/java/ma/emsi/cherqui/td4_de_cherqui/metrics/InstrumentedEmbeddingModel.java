@@ -0,0 +1,55 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.List;
+
+/**
+ * {@link EmbeddingModel} mesuré : latence par appel (lot) et tokens envoyés.
+ */
+class InstrumentedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final StageMetrics stage;
+
+    InstrumentedEmbeddingModel(EmbeddingModel delegate, StageMetrics stage) {
+        this.delegate = delegate;
+        this.stage = stage;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        long start = System.nanoTime();
+        StageEvent event = stage.begin();
+        try {
+            Response<List<Embedding>> response = delegate.embedAll(segments);
+            stage.succeeded(start, event, inputTokens(response.tokenUsage(), segments), 0,
+                    segments.size(), Double.NaN);
+            return response;
+        } catch (RuntimeException e) {
+            stage.failed(start, event, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    private static long inputTokens(TokenUsage usage, List<TextSegment> segments) {
+        if (usage != null && usage.inputTokenCount() != null) {
+            return usage.inputTokenCount();
+        }
+        // Le fournisseur ne renvoie pas toujours l'usage : estimation à ~4 caractères par token
+        long chars = 0;
+        for (TextSegment segment : segments) {
+            chars += segment.text().length();
+        }
+        return (chars + 3) / 4;
+    }
+}
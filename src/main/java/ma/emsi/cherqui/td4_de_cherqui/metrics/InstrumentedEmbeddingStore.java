@@ -0,0 +1,86 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link EmbeddingStore} dont les recherches sont mesurées : latence, nombre de résultats
+ * et meilleur score. Les écritures sont transmises telles quelles.
+ */
+class InstrumentedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final EmbeddingStore<TextSegment> delegate;
+    private final StageMetrics stage;
+
+    InstrumentedEmbeddingStore(EmbeddingStore<TextSegment> delegate, StageMetrics stage) {
+        this.delegate = delegate;
+        this.stage = stage;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        long start = System.nanoTime();
+        StageEvent event = stage.begin();
+        try {
+            EmbeddingSearchResult<TextSegment> result = delegate.search(request);
+            int hits = result.matches().size();
+            stage.succeeded(start, event, 0, 0, hits, hits == 0 ? Double.NaN : result.matches().getFirst().score());
+            return result;
+        } catch (RuntimeException e) {
+            stage.failed(start, event, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return delegate.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        delegate.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return delegate.add(embedding, segment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return delegate.addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        return delegate.addAll(embeddings, embedded);
+    }
+
+    @Override
+    public void remove(String id) {
+        delegate.remove(id);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        delegate.removeAll(ids);
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        delegate.removeAll(filter);
+    }
+
+    @Override
+    public void removeAll() {
+        delegate.removeAll();
+    }
+}
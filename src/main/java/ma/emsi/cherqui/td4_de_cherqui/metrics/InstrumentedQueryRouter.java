@@ -0,0 +1,36 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.Collection;
+
+/**
+ * {@link QueryRouter} mesuré : latence de la décision et nombre de retrievers choisis
+ * (0 = question jugée hors sujet).
+ */
+class InstrumentedQueryRouter implements QueryRouter {
+
+    private final QueryRouter delegate;
+    private final StageMetrics stage;
+
+    InstrumentedQueryRouter(QueryRouter delegate, StageMetrics stage) {
+        this.delegate = delegate;
+        this.stage = stage;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        long start = System.nanoTime();
+        StageEvent event = stage.begin();
+        try {
+            Collection<ContentRetriever> retrievers = delegate.route(query);
+            stage.succeeded(start, event, 0, 0, retrievers.size(), Double.NaN);
+            return retrievers;
+        } catch (RuntimeException e) {
+            stage.failed(start, event, e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Derniers échantillons de latence (tampon circulaire) pour calculer p50/p99.
+ */
+public class LatencySamples {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public LatencySamples(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized double percentileMillis(int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,190 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Registre des métriques du pipeline RAG. Chaque décorateur ({@link #embeddingModel},
+ * {@link #contentRetriever}, {@link #queryRouter}, {@link #chatModel}, {@link #embeddingStore})
+ * alimente une {@link StageMetrics} nommée ; les caches et jauges existants sont exposés
+ * par {@link #cache} et {@link #gauge}.
+ * <p>
+ * {@link #scrape()} produit le format texte Prometheus, {@link #toString()} un résumé lisible.
+ * Avec {@code jfrEvents}, chaque appel émet aussi un {@code ma.emsi.rag.Stage} JFR.
+ * Ces compteurs remplacent le log {@code FINE} des requêtes/réponses, coûteux et sans chiffres.
+ */
+public class PipelineMetrics {
+
+    private final boolean jfrEvents;
+    private final Map<String, StageMetrics> stages = new ConcurrentSkipListMap<>();
+    private final Map<String, Cache> caches = new ConcurrentSkipListMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    public PipelineMetrics() {
+        this(false);
+    }
+
+    public PipelineMetrics(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    // ------------------------------------------------------------------
+    // Décorateurs
+    // ------------------------------------------------------------------
+
+    public EmbeddingModel embeddingModel(String name, EmbeddingModel delegate) {
+        return new InstrumentedEmbeddingModel(delegate, stage(name, StageMetrics.Kind.EMBEDDING));
+    }
+
+    public EmbeddingStore<TextSegment> embeddingStore(String name, EmbeddingStore<TextSegment> delegate) {
+        return new InstrumentedEmbeddingStore(delegate, stage(name, StageMetrics.Kind.STORE));
+    }
+
+    public ContentRetriever contentRetriever(String name, ContentRetriever delegate) {
+        return new InstrumentedContentRetriever(delegate, stage(name, StageMetrics.Kind.RETRIEVAL));
+    }
+
+    public QueryRouter queryRouter(String name, QueryRouter delegate) {
+        return new InstrumentedQueryRouter(delegate, stage(name, StageMetrics.Kind.ROUTING));
+    }
+
+    public ChatLanguageModel chatModel(String name, ChatLanguageModel delegate) {
+        return new InstrumentedChatModel(delegate, stage(name, StageMetrics.Kind.GENERATION));
+    }
+
+    /**
+     * Expose les compteurs d'un cache existant (hits / misses cumulés).
+     */
+    public void cache(String name, LongSupplier hits, LongSupplier misses) {
+        caches.put(name, new Cache(hits, misses));
+    }
+
+    /**
+     * Jauge libre, par ex. {@code rag_llm_waiting} ; le nom doit respecter la syntaxe Prometheus.
+     */
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public StageMetrics stage(String name, StageMetrics.Kind kind) {
+        StageMetrics stage = stages.computeIfAbsent(name, n -> new StageMetrics(n, kind, jfrEvents));
+        if (stage.kind() != kind) {
+            throw new IllegalArgumentException("L'étape " + name + " est déjà déclarée comme " + stage.kind());
+        }
+        return stage;
+    }
+
+    public Map<String, StageMetrics> stages() {
+        return Map.copyOf(stages);
+    }
+
+    // ------------------------------------------------------------------
+    // Export
+    // ------------------------------------------------------------------
+
+    /**
+     * Format d'exposition texte Prometheus (version 0.0.4).
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4_096);
+        header(out, "rag_stage_latency_seconds", "summary", "Latence par étape du pipeline");
+        for (StageMetrics stage : stages.values()) {
+            LatencyHistogram latency = stage.latency();
+            for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                sample(out, "rag_stage_latency_seconds", labels(stage) + ",quantile=\"" + quantile + "\"",
+                        latency.percentileMillis(quantile * 100) / 1e3);
+            }
+            sample(out, "rag_stage_latency_seconds_sum", labels(stage), latency.sumSeconds());
+            sample(out, "rag_stage_latency_seconds_count", labels(stage), latency.count());
+        }
+        counter(out, "rag_stage_errors_total", "Appels en erreur (hors timeouts)", StageMetrics::errors);
+        counter(out, "rag_stage_timeouts_total", "Appels abandonnés sur timeout", StageMetrics::timeouts);
+        counter(out, "rag_stage_input_tokens_total", "Tokens envoyés au modèle", StageMetrics::tokensIn);
+        counter(out, "rag_stage_output_tokens_total", "Tokens générés", StageMetrics::tokensOut);
+        counter(out, "rag_stage_hits_total", "Résultats renvoyés (segments, contenus, retrievers)",
+                StageMetrics::hits);
+        counter(out, "rag_stage_empty_total", "Appels sans aucun résultat", StageMetrics::empty);
+        header(out, "rag_stage_top_score", "gauge", "Meilleur score moyen des recherches");
+        for (StageMetrics stage : stages.values()) {
+            if (stage.kind() == StageMetrics.Kind.STORE) {
+                sample(out, "rag_stage_top_score", labels(stage), stage.meanTopScore());
+            }
+        }
+
+        if (!caches.isEmpty()) {
+            header(out, "rag_cache_hits_total", "counter", "Requêtes servies par le cache");
+            caches.forEach((name, cache) ->
+                    sample(out, "rag_cache_hits_total", "cache=\"" + escape(name) + "\"", cache.hits().getAsLong()));
+            header(out, "rag_cache_misses_total", "counter", "Requêtes transmises au modèle");
+            caches.forEach((name, cache) ->
+                    sample(out, "rag_cache_misses_total", "cache=\"" + escape(name) + "\"", cache.misses().getAsLong()));
+        }
+        gauges.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(gauge -> {
+            header(out, gauge.getKey(), "gauge", null);
+            sample(out, gauge.getKey(), null, gauge.getValue().getAsDouble());
+        });
+        return out.toString();
+    }
+
+    private void counter(StringBuilder out, String metric, String help, ToLongFunction<StageMetrics> value) {
+        header(out, metric, "counter", help);
+        for (StageMetrics stage : stages.values()) {
+            sample(out, metric, labels(stage), value.applyAsLong(stage));
+        }
+    }
+
+    private static void header(StringBuilder out, String metric, String type, String help) {
+        if (help != null) {
+            out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        }
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String metric, String labels, double value) {
+        out.append(metric);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : String.format(Locale.ROOT, "%.6g", value)).append('\n');
+    }
+
+    private static String labels(StageMetrics stage) {
+        return "stage=\"" + escape(stage.name()) + "\",kind=\"" + escape(stage.kind().label()) + "\"";
+    }
+
+    /**
+     * Valeur d'étiquette au format texte Prometheus : {@code \}, {@code "} et saut de ligne échappés.
+     */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        stages.values().forEach(stage -> text.append(stage).append('\n'));
+        caches.forEach((name, cache) -> {
+            long hits = cache.hits().getAsLong();
+            long total = hits + cache.misses().getAsLong();
+            text.append(String.format(Locale.ROOT, "cache %s : taux de hit %.1f %% (%d/%d)%n",
+                    name, total == 0 ? 0.0 : 100.0 * hits / total, hits, total));
+        });
+        return text.toString();
+    }
+
+    private record Cache(LongSupplier hits, LongSupplier misses) {
+    }
+}
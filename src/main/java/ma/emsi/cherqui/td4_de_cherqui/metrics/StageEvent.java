@@ -0,0 +1,41 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Événement JFR émis pour chaque appel d'une étape instrumentée (si {@code jfrEvents} est activé),
+ * visible dans JDK Mission Control à côté des GC et des threads virtuels bloqués.
+ */
+@Name("ma.emsi.rag.Stage")
+@Label("Étape RAG")
+@Category({"RAG"})
+@Description("Appel d'une étape du pipeline RAG (embedding, récupération, routage, génération)")
+@StackTrace(false)
+class StageEvent extends Event {
+
+    @Label("Étape")
+    String stage;
+
+    @Label("Type")
+    String kind;
+
+    @Label("Résultat")
+    String outcome;
+
+    @Label("Tokens en entrée")
+    long tokensIn;
+
+    @Label("Tokens en sortie")
+    long tokensOut;
+
+    @Label("Résultats")
+    int hits;
+
+    @Label("Meilleur score")
+    double topScore;
+}
@@ -0,0 +1,178 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs d'une étape du pipeline : latence (histogramme), erreurs et timeouts,
+ * tokens, nombre de résultats et scores. Mis à jour sans verrou par les décorateurs de
+ * {@link PipelineMetrics}.
+ */
+public final class StageMetrics {
+
+    public enum Kind {
+        EMBEDDING, STORE, RETRIEVAL, ROUTING, GENERATION;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final boolean jfrEvents;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder tokensIn = new LongAdder();
+    private final LongAdder tokensOut = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder empty = new LongAdder();
+    private final DoubleAdder topScores = new DoubleAdder();
+    private final LongAdder scored = new LongAdder();
+
+    StageMetrics(String name, Kind kind, boolean jfrEvents) {
+        this.name = name;
+        this.kind = kind;
+        this.jfrEvents = jfrEvents;
+    }
+
+    /**
+     * Début d'un appel : l'événement JFR à compléter, ou {@code null} si JFR est désactivé
+     * (ou si aucun enregistrement n'est en cours).
+     */
+    StageEvent begin() {
+        if (!jfrEvents) {
+            return null;
+        }
+        StageEvent event = new StageEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    void succeeded(long start, StageEvent event, long tokensIn, long tokensOut, int hits, double topScore) {
+        latency.record(System.nanoTime() - start);
+        this.tokensIn.add(tokensIn);
+        this.tokensOut.add(tokensOut);
+        if (kind != Kind.EMBEDDING && kind != Kind.GENERATION) {
+            this.hits.add(hits);
+            if (hits == 0) {
+                empty.increment();
+            }
+        }
+        if (!Double.isNaN(topScore)) {
+            topScores.add(topScore);
+            scored.increment();
+        }
+        commit(event, "ok", tokensIn, tokensOut, hits, topScore);
+    }
+
+    void failed(long start, StageEvent event, Throwable error) {
+        latency.record(System.nanoTime() - start);
+        boolean timeout = isTimeout(error);
+        (timeout ? timeouts : errors).increment();
+        commit(event, timeout ? "timeout" : "error", 0, 0, 0, Double.NaN);
+    }
+
+    private void commit(StageEvent event, String outcome, long tokensIn, long tokensOut, int hits, double topScore) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = name;
+            event.kind = kind.label();
+            event.outcome = outcome;
+            event.tokensIn = tokensIn;
+            event.tokensOut = tokensOut;
+            event.hits = hits;
+            event.topScore = topScore;
+            event.commit();
+        }
+    }
+
+    /**
+     * Timeout réseau ou échéance dépassée, quel que soit l'emballage de l'exception par le client HTTP.
+     */
+    static boolean isTimeout(Throwable error) {
+        Throwable cause = error;
+        for (int depth = 0; cause != null && depth < 10; depth++, cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException
+                    || cause instanceof InterruptedIOException) { // SocketTimeoutException en hérite
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    public long calls() {
+        return latency.count();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    public long tokensIn() {
+        return tokensIn.sum();
+    }
+
+    public long tokensOut() {
+        return tokensOut.sum();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long empty() {
+        return empty.sum();
+    }
+
+    public double meanTopScore() {
+        long n = scored.sum();
+        return n == 0 ? 0 : topScores.sum() / n;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                "%s [%s] : %d appels, p50 %.1f ms, p99 %.1f ms, max %.1f ms, %d erreurs, %d timeouts",
+                name, kind.label(), calls(), latency.percentileMillis(50), latency.percentileMillis(99),
+                latency.maxMillis(), errors(), timeouts()));
+        if (tokensIn() + tokensOut() > 0) {
+            text.append(String.format(Locale.ROOT, ", tokens %d -> %d", tokensIn(), tokensOut()));
+        }
+        if (kind != Kind.EMBEDDING && kind != Kind.GENERATION) {
+            text.append(String.format(Locale.ROOT, ", %d résultats (%d appels sans résultat)", hits(), empty()));
+        }
+        if (scored.sum() > 0) {
+            text.append(String.format(Locale.ROOT, ", meilleur score moyen %.3f", meanTopScore()));
+        }
+        return text.toString();
+    }
+}
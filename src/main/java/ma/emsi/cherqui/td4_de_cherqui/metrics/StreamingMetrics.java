@@ -0,0 +1,67 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.service.TokenStream;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Consomme un {@link TokenStream} en mesurant, par requête, le temps jusqu'au premier token
+ * (TTFT, latence perçue) et la latence totale.
+ */
+public class StreamingMetrics {
+
+    private final LatencySamples firstToken = new LatencySamples(10_000);
+    private final LatencySamples total = new LatencySamples(10_000);
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Démarre le flux, transmet chaque token à {@code onToken} et bloque jusqu'à la fin de la réponse.
+     *
+     * @param start instant ({@link System#nanoTime()}) où la question a été posée, récupération comprise
+     * @return la réponse complète
+     */
+    public String stream(long start, TokenStream tokens, Consumer<String> onToken) {
+        CompletableFuture<String> done = new CompletableFuture<>();
+        StringBuilder answer = new StringBuilder();
+        long[] firstTokenAt = {0};
+        tokens.onNext(token -> {
+                    if (firstTokenAt[0] == 0) {
+                        firstTokenAt[0] = System.nanoTime();
+                    }
+                    answer.append(token);
+                    onToken.accept(token);
+                })
+                .onComplete(response -> done.complete(answer.toString()))
+                .onError(done::completeExceptionally)
+                .start();
+        try {
+            String result = done.join();
+            long end = System.nanoTime();
+            firstToken.record((firstTokenAt[0] == 0 ? end : firstTokenAt[0]) - start);
+            total.record(end - start);
+            requests.incrementAndGet();
+            return result;
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(requests.get(),
+                firstToken.percentileMillis(50), firstToken.percentileMillis(99),
+                total.percentileMillis(50), total.percentileMillis(99));
+    }
+
+    public record Stats(long requests, double ttftP50Millis, double ttftP99Millis,
+                        double totalP50Millis, double totalP99Millis) {
+
+        @Override
+        public String toString() {
+            return String.format("%d requêtes | premier token p50 %.1f ms p99 %.1f ms | total p50 %.1f ms p99 %.1f ms",
+                    requests, ttftP50Millis, ttftP99Millis, totalP50Millis, totalP99Millis);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package ma.emsi.cherqui.td4_de_cherqui.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.LatencySamples;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retriever hybride : recherche lexicale BM25 ({@link Bm25Index}) et recherche vectorielle sur le
+ * même corpus, fusionnées par rang réciproque (RRF) sur l'id des segments.
+ * <p>
+ * La recherche vectorielle (embedding distant de la question) part sur un thread virtuel pendant
+ * la recherche lexicale ; si elle échoue ou dépasse {@code embeddingTimeout}, la réponse est
+ * donnée par l'index lexical seul.
+ * <p>
+ * Chaque liste a son propre seuil avant la fusion : {@code minScore} (similarité cosinus) pour les
+ * candidats vectoriels, {@code lexicalMinScore} (score BM25) pour les candidats lexicaux.
+ */
+public class HybridContentRetriever implements ContentRetriever, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(HybridContentRetriever.class.getName());
+
+    private final Bm25Index lexicalIndex;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final int maxResults;
+    private final int candidates;
+    private final double minScore;
+    private final double lexicalMinScore;
+    private final int rrfK;
+    private final Duration embeddingTimeout;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong lexicalOnly = new AtomicLong();
+    private final LatencySamples latencies = new LatencySamples(10_000);
+
+    private HybridContentRetriever(Builder builder) {
+        this.lexicalIndex = builder.lexicalIndex;
+        this.embeddingStore = builder.embeddingStore;
+        this.embeddingModel = builder.embeddingModel;
+        this.maxResults = builder.maxResults;
+        this.candidates = builder.candidates;
+        this.minScore = builder.minScore;
+        this.lexicalMinScore = builder.lexicalMinScore;
+        this.rrfK = builder.rrfK;
+        this.embeddingTimeout = builder.embeddingTimeout;
+        this.ownsExecutor = builder.executor == null;
+        this.executor = ownsExecutor ? Executors.newVirtualThreadPerTaskExecutor() : builder.executor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        long start = System.nanoTime();
+        // submit et non CompletableFuture : cancel(true) doit interrompre l'appel d'embedding en retard
+        Future<List<EmbeddingMatch<TextSegment>>> vector = embeddingStore == null
+                ? CompletableFuture.completedFuture(List.of())
+                : executor.submit(() -> vectorSearch(query.text()));
+
+        List<Bm25Index.Hit> lexical = lexicalIndex.search(query.text(), candidates).stream()
+                .filter(hit -> hit.score() >= lexicalMinScore)
+                .toList();
+
+        List<EmbeddingMatch<TextSegment>> semantic;
+        try {
+            semantic = vector.get(embeddingTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            vector.cancel(true);
+            semantic = null;
+            LOGGER.fine("Embedding de la question trop lent : réponse lexicale seule");
+        } catch (ExecutionException e) {
+            semantic = null;
+            LOGGER.log(Level.WARNING, "Recherche vectorielle indisponible : réponse lexicale seule", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            semantic = null;
+        }
+        if (semantic == null) {
+            lexicalOnly.incrementAndGet();
+            semantic = List.of();
+        }
+
+        // Fusion par rang réciproque : score = somme des 1 / (k + rang) sur les deux listes
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, TextSegment> byId = new HashMap<>();
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            Bm25Index.Hit hit = lexical.get(rank);
+            scores.merge(hit.id(), 1.0 / (rrfK + rank + 1), Double::sum);
+            byId.putIfAbsent(hit.id(), hit.segment());
+        }
+        for (int rank = 0; rank < semantic.size(); rank++) {
+            EmbeddingMatch<TextSegment> match = semantic.get(rank);
+            scores.merge(match.embeddingId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            byId.putIfAbsent(match.embeddingId(), match.embedded());
+        }
+
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        List<Content> contents = new ArrayList<>(Math.min(maxResults, ranked.size()));
+        for (Map.Entry<String, Double> entry : ranked) {
+            if (contents.size() == maxResults) {
+                break;
+            }
+            TextSegment segment = byId.get(entry.getKey());
+            if (segment != null) {
+                contents.add(Content.from(segment));
+            }
+        }
+        queries.incrementAndGet();
+        latencies.record(System.nanoTime() - start);
+        return contents;
+    }
+
+    private List<EmbeddingMatch<TextSegment>> vectorSearch(String text) {
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embeddingModel.embed(text).content())
+                .maxResults(candidates)
+                .minScore(minScore)
+                .build();
+        return embeddingStore.search(request).matches();
+    }
+
+    /**
+     * Arrête l'exécuteur des recherches vectorielles s'il a été créé par ce retriever.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.close();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(queries.get(), lexicalOnly.get(), latencies.percentileMillis(50), latencies.percentileMillis(99));
+    }
+
+    public record Stats(long queries, long lexicalOnly, double p50Millis, double p99Millis) {
+
+        @Override
+        public String toString() {
+            return String.format("%d requêtes (%d en lexical seul), p50 %.1f ms p99 %.1f ms",
+                    queries, lexicalOnly, p50Millis, p99Millis);
+        }
+    }
+
+    public static class Builder {
+
+        private Bm25Index lexicalIndex;
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private EmbeddingModel embeddingModel;
+        private int maxResults = 3;
+        private int candidates = 20;
+        private double minScore = 0.0;
+        private double lexicalMinScore = 0.0;
+        private int rrfK = 60;
+        private Duration embeddingTimeout = Duration.ofSeconds(2);
+        private ExecutorService executor;
+
+        public Builder lexicalIndex(Bm25Index lexicalIndex) {
+            this.lexicalIndex = lexicalIndex;
+            return this;
+        }
+
+        /**
+         * Store vectoriel contenant les mêmes segments (mêmes ids) que l'index lexical ; optionnel.
+         */
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        /**
+         * Nombre de candidats demandés à chaque recherche avant la fusion.
+         */
+        public Builder candidates(int candidates) {
+            this.candidates = candidates;
+            return this;
+        }
+
+        /**
+         * Score minimal des candidats vectoriels ; sans effet sur les candidats BM25 (voir {@link #lexicalMinScore}).
+         */
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * Score BM25 minimal des candidats lexicaux (0 : tous). Non borné, il dépend du corpus : à calibrer
+         * sur des questions hors sujet, qui obtiennent sinon leurs meilleurs segments par les mots outils.
+         */
+        public Builder lexicalMinScore(double lexicalMinScore) {
+            this.lexicalMinScore = lexicalMinScore;
+            return this;
+        }
+
+        public Builder rrfK(int rrfK) {
+            this.rrfK = rrfK;
+            return this;
+        }
+
+        public Builder embeddingTimeout(Duration embeddingTimeout) {
+            this.embeddingTimeout = embeddingTimeout;
+            return this;
+        }
+
+        /**
+         * Exécuteur partagé des recherches vectorielles, fermé par son propriétaire ; par défaut, le
+         * retriever crée le sien et le ferme dans {@link #close()}.
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public HybridContentRetriever build() {
+            if (lexicalIndex == null) {
+                throw new IllegalStateException("lexicalIndex est obligatoire");
+            }
+            if (embeddingStore != null && embeddingModel == null) {
+                throw new IllegalStateException("embeddingModel est obligatoire avec un embeddingStore");
+            }
+            return new HybridContentRetriever(this);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package ma.emsi.cherqui.td4_de_cherqui.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.ReciprocalRankFuser;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.OffsetRecursiveSplitter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ContentAggregator} qui réduit le contexte injecté dans le prompt :
+ * <ol>
+ *     <li>fusion par rang réciproque, comme le {@code DefaultContentAggregator} ;</li>
+ *     <li>fusion des segments consécutifs d'un même document (métadonnée {@code index} du splitter),
+ *     en supprimant le recouvrement entre eux (exactement si le segment porte ses positions, sinon
+ *     par comparaison de texte, d'au moins {@code minOverlap} caractères) ;</li>
+ *     <li>suppression des quasi-doublons (shingles de {@code shingleSize} mots hachés) ;</li>
+ *     <li>remplissage d'un budget de {@code maxTokens}, dans l'ordre de pertinence.</li>
+ * </ol>
+ */
+public class PackingContentAggregator implements ContentAggregator {
+
+    private static final Pattern WORDS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final int maxTokens;
+    private final int minOverlap;
+    private final int maxOverlap;
+    private final int shingleSize;
+    private final double duplicateThreshold;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong tokensIn = new AtomicLong();
+    private final AtomicLong tokensOut = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+
+    private PackingContentAggregator(Builder builder) {
+        this.maxTokens = builder.maxTokens;
+        this.minOverlap = builder.minOverlap;
+        this.maxOverlap = builder.maxOverlap;
+        this.shingleSize = builder.shingleSize;
+        this.duplicateThreshold = builder.duplicateThreshold;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        // 1. Classement unique (RRF par requête, puis entre requêtes)
+        List<List<Content>> perQuery = new ArrayList<>();
+        for (Collection<List<Content>> lists : queryToContents.values()) {
+            perQuery.add(ReciprocalRankFuser.fuse(lists));
+        }
+        List<Content> ranked = ReciprocalRankFuser.fuse(perQuery);
+        int inputTokens = 0;
+        for (Content content : ranked) {
+            inputTokens += tokens(content.textSegment().text());
+        }
+
+        // 2. Segments voisins d'un même document : un seul passage continu
+        List<Passage> passages = mergeAdjacent(ranked);
+
+        // 3. Quasi-doublons : un passage presque entièrement contenu dans un passage mieux classé est retiré
+        List<Passage> kept = new ArrayList<>();
+        for (Passage passage : passages) {
+            boolean duplicate = false;
+            for (Passage better : kept) {
+                if (containment(passage.shingles, better.shingles) >= duplicateThreshold) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (duplicate) {
+                duplicates.incrementAndGet();
+            } else {
+                kept.add(passage);
+            }
+        }
+
+        // 4. Budget de tokens : les passages trop longs sont sautés au profit des suivants
+        List<Content> packed = new ArrayList<>();
+        int used = 0;
+        for (Passage passage : kept) {
+            int cost = tokens(passage.segment.text());
+            if (used + cost > maxTokens) {
+                overBudget.incrementAndGet();
+                continue;
+            }
+            used += cost;
+            packed.add(Content.from(passage.segment));
+        }
+
+        calls.incrementAndGet();
+        tokensIn.addAndGet(inputTokens);
+        tokensOut.addAndGet(used);
+        return packed;
+    }
+
+    private List<Passage> mergeAdjacent(List<Content> ranked) {
+        Map<String, List<Ranked>> byDocument = new LinkedHashMap<>();
+        List<Passage> passages = new ArrayList<>();
+        for (int rank = 0; rank < ranked.size(); rank++) {
+            TextSegment segment = ranked.get(rank).textSegment();
+            String document = documentOf(segment.metadata());
+            Integer index = indexOf(segment.metadata());
+            if (document == null || index == null) {
+                passages.add(new Passage(segment, rank, shingles(segment.text())));
+            } else {
+                Metadata metadata = segment.metadata();
+                byDocument.computeIfAbsent(document, d -> new ArrayList<>()).add(new Ranked(segment, index, rank,
+                        offsetOf(metadata, OffsetRecursiveSplitter.START_OFFSET),
+                        offsetOf(metadata, OffsetRecursiveSplitter.END_OFFSET)));
+            }
+        }
+
+        for (List<Ranked> group : byDocument.values()) {
+            group.sort(Comparator.comparingInt(Ranked::index));
+            Ranked first = group.getFirst();
+            StringBuilder text = new StringBuilder(first.segment().text());
+            int lastIndex = first.index();
+            int lastEnd = first.end();
+            int bestRank = first.rank();
+            Metadata metadata = first.segment().metadata();
+            for (Ranked next : group.subList(1, group.size())) {
+                if (next.index() == lastIndex) {
+                    bestRank = Math.min(bestRank, next.rank()); // même segment, renvoyé deux fois
+                    duplicates.incrementAndGet();
+                } else if (next.index() == lastIndex + 1) {
+                    String nextText = next.segment().text();
+                    if (lastEnd >= 0 && next.start() >= 0) {
+                        // Positions connues (OffsetRecursiveSplitter) : recollage exact, simple jonction s'il y a un écart
+                        if (next.start() <= lastEnd) {
+                            text.append(nextText, Math.min(nextText.length(), lastEnd - next.start()), nextText.length());
+                        } else {
+                            text.append(' ').append(nextText);
+                        }
+                    } else {
+                        appendWithoutOverlap(text, nextText, minOverlap, maxOverlap);
+                    }
+                    lastIndex = next.index();
+                    lastEnd = next.end();
+                    bestRank = Math.min(bestRank, next.rank());
+                    merged.incrementAndGet();
+                } else {
+                    passages.add(passage(text, metadata, bestRank));
+                    text = new StringBuilder(next.segment().text());
+                    lastIndex = next.index();
+                    lastEnd = next.end();
+                    bestRank = next.rank();
+                    metadata = next.segment().metadata();
+                }
+            }
+            passages.add(passage(text, metadata, bestRank));
+        }
+        passages.sort(Comparator.comparingInt(Passage::rank));
+        return passages;
+    }
+
+    private Passage passage(StringBuilder text, Metadata metadata, int rank) {
+        String merged = text.toString();
+        return new Passage(TextSegment.from(merged, metadata), rank, shingles(merged));
+    }
+
+    /**
+     * Ajoute {@code next} en retirant le plus long préfixe de {@code next} qui termine déjà {@code text}
+     * (le recouvrement {@code maxOverlap} du splitter). Un recouvrement plus court que {@code minOverlap}
+     * est une coïncidence ("la classe" + "est utile") : les deux textes sont alors simplement joints.
+     */
+    static void appendWithoutOverlap(StringBuilder text, String next, int minOverlap, int maxOverlap) {
+        int max = Math.min(maxOverlap, Math.min(text.length(), next.length()));
+        String tail = text.substring(text.length() - max);
+        for (int length = max; length >= minOverlap; length--) {
+            if (tail.regionMatches(max - length, next, 0, length)) {
+                text.append(next, length, next.length());
+                return;
+            }
+        }
+        text.append(' ').append(next);
+    }
+
+    private Set<Long> shingles(String text) {
+        String[] words = WORDS.split(text.toLowerCase(Locale.ROOT));
+        Set<Long> shingles = new HashSet<>();
+        for (int i = 0; i + shingleSize <= words.length; i++) {
+            long hash = 1125899906842597L;
+            for (int w = i; w < i + shingleSize; w++) {
+                hash = 31 * hash + words[w].hashCode();
+            }
+            shingles.add(hash);
+        }
+        if (shingles.isEmpty() && words.length > 0) {
+            shingles.add((long) String.join(" ", words).hashCode());
+        }
+        return shingles;
+    }
+
+    private static double containment(Set<Long> candidate, Set<Long> other) {
+        if (candidate.isEmpty()) {
+            return 0; // passage sans mot : rien ne permet de le dire contenu dans un autre
+        }
+        int common = 0;
+        for (Long shingle : candidate) {
+            if (other.contains(shingle)) {
+                common++;
+            }
+        }
+        return (double) common / candidate.size();
+    }
+
+    private static String documentOf(Metadata metadata) {
+        Object fileName = metadata.toMap().get("file_name");
+        if (fileName == null) {
+            return null;
+        }
+        Object directory = metadata.toMap().get("absolute_directory_path");
+        return directory == null ? fileName.toString() : directory + "/" + fileName;
+    }
+
+    private static int offsetOf(Metadata metadata, String key) {
+        Object offset = metadata.toMap().get(key);
+        return offset instanceof Number number ? number.intValue() : -1;
+    }
+
+    private static Integer indexOf(Metadata metadata) {
+        Object index = metadata.toMap().get("index");
+        if (index == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(index.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Estimation : ~4 caractères par token.
+     */
+    private static int tokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    public Stats stats() {
+        return new Stats(calls.get(), tokensIn.get(), tokensOut.get(), merged.get(), duplicates.get(), overBudget.get());
+    }
+
+    public record Stats(long calls, long tokensIn, long tokensOut, long merged, long duplicates, long overBudget) {
+
+        @Override
+        public String toString() {
+            return String.format("contexte : %d -> %d tokens (-%.0f %%) sur %d appels | %d segments fusionnés,"
+                            + " %d doublons, %d hors budget",
+                    tokensIn, tokensOut, tokensIn == 0 ? 0.0 : 100.0 * (tokensIn - tokensOut) / tokensIn,
+                    calls, merged, duplicates, overBudget);
+        }
+    }
+
+    private record Ranked(TextSegment segment, int index, int rank, int start, int end) {
+    }
+
+    private record Passage(TextSegment segment, int rank, Set<Long> shingles) {
+    }
+
+    public static class Builder {
+
+        private int maxTokens = 1_500;
+        private int minOverlap = 10;
+        private int maxOverlap = 1_000;
+        private int shingleSize = 5;
+        private double duplicateThreshold = 0.8;
+
+        /**
+         * Budget de tokens du contexte injecté dans le prompt.
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        /**
+         * Recouvrement minimal, en caractères, pour recoller deux segments sans positions.
+         */
+        public Builder minOverlap(int minOverlap) {
+            this.minOverlap = minOverlap;
+            return this;
+        }
+
+        /**
+         * Recouvrement maximal entre segments voisins : le {@code maxOverlap} du splitter.
+         */
+        public Builder maxOverlap(int maxOverlap) {
+            this.maxOverlap = maxOverlap;
+            return this;
+        }
+
+        public Builder shingleSize(int shingleSize) {
+            this.shingleSize = shingleSize;
+            return this;
+        }
+
+        /**
+         * Part minimale des shingles d'un passage présents dans un passage mieux classé pour le retirer.
+         */
+        public Builder duplicateThreshold(double duplicateThreshold) {
+            this.duplicateThreshold = duplicateThreshold;
+            return this;
+        }
+
+        public PackingContentAggregator build() {
+            if (minOverlap < 1) {
+                throw new IllegalStateException("minOverlap doit être >= 1");
+            }
+            return new PackingContentAggregator(this);
+        }
+    }
+}
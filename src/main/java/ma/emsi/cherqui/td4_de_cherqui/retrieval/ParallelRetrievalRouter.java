@@ -0,0 +1,188 @@
+package ma.emsi.cherqui.td4_de_cherqui.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ReciprocalRankFuser;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.LatencySamples;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Décorateur de {@link QueryRouter} qui interroge tous les retrievers routés en parallèle
+ * (threads virtuels), chacun avec sa propre échéance.
+ * <p>
+ * Le routeur renvoie un unique retriever "fan-out" : à l'échéance d'une source, ce qui est
+ * arrivé est fusionné (RRF, comme le {@code DefaultContentAggregator}) et la source en retard
+ * est abandonnée (son thread est interrompu) au lieu de bloquer la réponse. Une source routée seule
+ * a aussi son échéance. Latence, timeouts et erreurs sont comptés par source.
+ */
+public class ParallelRetrievalRouter implements QueryRouter, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelRetrievalRouter.class.getName());
+
+    private final QueryRouter delegate;
+    private final Map<ContentRetriever, String> names;
+    private final Map<ContentRetriever, Duration> deadlines;
+    private final Duration defaultDeadline;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Map<String, SourceStats> stats = new ConcurrentHashMap<>();
+
+    private ParallelRetrievalRouter(Builder builder) {
+        this.delegate = builder.delegate;
+        this.names = builder.names;
+        this.deadlines = builder.deadlines;
+        this.defaultDeadline = builder.defaultDeadline;
+        this.ownsExecutor = builder.executor == null;
+        this.executor = ownsExecutor ? Executors.newVirtualThreadPerTaskExecutor() : builder.executor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Collection<ContentRetriever> routed = delegate.route(query);
+        if (routed.isEmpty()) {
+            return routed;
+        }
+        List<ContentRetriever> retrievers = List.copyOf(routed);
+        return List.of(q -> fanOut(retrievers, q));
+    }
+
+    private List<Content> fanOut(List<ContentRetriever> retrievers, Query query) {
+        long start = System.nanoTime();
+        // submit et non CompletableFuture : cancel(true) doit interrompre la source en retard
+        Map<ContentRetriever, Future<List<Content>>> futures = new LinkedHashMap<>();
+        for (ContentRetriever retriever : retrievers) {
+            futures.put(retriever, executor.submit(() -> retriever.retrieve(query)));
+        }
+
+        List<List<Content>> arrived = new ArrayList<>(retrievers.size());
+        for (Map.Entry<ContentRetriever, Future<List<Content>>> entry : futures.entrySet()) {
+            ContentRetriever retriever = entry.getKey();
+            SourceStats source = stats.computeIfAbsent(nameOf(retriever), SourceStats::new);
+            long deadline = start + deadlines.getOrDefault(retriever, defaultDeadline).toNanos();
+            try {
+                List<Content> contents = entry.getValue().get(Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
+                source.latencies.record(System.nanoTime() - start);
+                source.calls.incrementAndGet();
+                arrived.add(contents);
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                source.timeouts.incrementAndGet();
+                LOGGER.fine(() -> "Source " + source.name + " abandonnée après son échéance");
+            } catch (ExecutionException e) {
+                source.errors.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Échec de la source " + source.name, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(future -> future.cancel(true));
+                break;
+            }
+        }
+        return ReciprocalRankFuser.fuse(arrived);
+    }
+
+    /**
+     * Arrête l'exécuteur des sources s'il a été créé par ce routeur.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.close();
+        }
+    }
+
+    private String nameOf(ContentRetriever retriever) {
+        return names.getOrDefault(retriever, retriever.getClass().getSimpleName());
+    }
+
+    public Map<String, SourceStats> stats() {
+        return Map.copyOf(stats);
+    }
+
+    public static final class SourceStats {
+
+        private final String name;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final LatencySamples latencies = new LatencySamples(10_000);
+
+        private SourceStats(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s : %d réponses (p50 %.1f ms, p99 %.1f ms), %d timeouts, %d erreurs",
+                    name, calls.get(), latencies.percentileMillis(50), latencies.percentileMillis(99),
+                    timeouts.get(), errors.get());
+        }
+    }
+
+    public static class Builder {
+
+        private QueryRouter delegate;
+        private final Map<ContentRetriever, String> names = new IdentityHashMap<>();
+        private final Map<ContentRetriever, Duration> deadlines = new IdentityHashMap<>();
+        private Duration defaultDeadline = Duration.ofSeconds(3);
+        private ExecutorService executor;
+
+        public Builder delegate(QueryRouter delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Nomme une source (pour les statistiques) et fixe son échéance propre.
+         */
+        public Builder source(ContentRetriever retriever, String name, Duration deadline) {
+            names.put(retriever, name);
+            deadlines.put(retriever, deadline);
+            return this;
+        }
+
+        public Builder defaultDeadline(Duration defaultDeadline) {
+            this.defaultDeadline = defaultDeadline;
+            return this;
+        }
+
+        /**
+         * Exécuteur partagé des sources, fermé par son propriétaire ; par défaut, le routeur crée le sien
+         * et le ferme dans {@link #close()}.
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public ParallelRetrievalRouter build() {
+            if (delegate == null) {
+                throw new IllegalStateException("delegate est obligatoire");
+            }
+            return new ParallelRetrievalRouter(this);
+        }
+    }
+}
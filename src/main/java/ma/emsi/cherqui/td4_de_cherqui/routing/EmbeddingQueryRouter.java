@@ -0,0 +1,263 @@
+package ma.emsi.cherqui.td4_de_cherqui.routing;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Routeur local par embeddings : la question est comparée au prototype de chaque retriever
+ * (barycentre des segments indexés + description), sans appel au LLM.
+ * <p>
+ * Quand la décision est ambiguë (deux retrievers trop proches, ou similarité proche du seuil
+ * "hors sujet"), on délègue au routeur {@code fallback} (par ex. {@code LanguageModelQueryRouter}).
+ * Si le fallback échoue, la meilleure route locale est utilisée (sans être mise en cache).
+ * <p>
+ * Les décisions sont mises en cache par texte de question normalisé, pour une version d'index
+ * donnée : le cache est vidé dès que {@code indexVersion} change.
+ */
+public class EmbeddingQueryRouter implements QueryRouter {
+
+    private static final Logger LOGGER = Logger.getLogger(EmbeddingQueryRouter.class.getName());
+
+    private final EmbeddingModel embeddingModel;
+    private final List<Route> routes;
+    private final QueryRouter fallback;
+    private final double minSimilarity;
+    private final double ambiguityBand;
+    private final double margin;
+    private final Supplier<?> indexVersion;
+    private final Map<String, Collection<ContentRetriever>> decisions;
+    private Object decisionsVersion;
+
+    private final AtomicLong local = new AtomicLong();
+    private final AtomicLong delegated = new AtomicLong();
+    private final AtomicLong cached = new AtomicLong();
+    private final AtomicLong fallbackFailures = new AtomicLong();
+
+    private EmbeddingQueryRouter(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.routes = List.copyOf(builder.routes);
+        this.fallback = builder.fallback;
+        this.minSimilarity = builder.minSimilarity;
+        this.ambiguityBand = builder.ambiguityBand;
+        this.margin = builder.margin;
+        this.indexVersion = builder.indexVersion;
+        int cacheSize = builder.cacheSize;
+        this.decisions = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Collection<ContentRetriever>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        String key = query.text().strip().toLowerCase(Locale.ROOT);
+        Object version = indexVersion.get();
+        synchronized (decisions) {
+            if (!Objects.equals(version, decisionsVersion)) {
+                decisions.clear(); // index modifié : les décisions précédentes sont périmées
+                decisionsVersion = version;
+            }
+            Collection<ContentRetriever> decision = decisions.get(key);
+            if (decision != null) {
+                cached.incrementAndGet();
+                return decision;
+            }
+        }
+
+        Decision decision = decide(query);
+        synchronized (decisions) {
+            if (decision.cacheable() && Objects.equals(version, decisionsVersion)) {
+                decisions.put(key, decision.retrievers());
+            }
+        }
+        return decision.retrievers();
+    }
+
+    private Decision decide(Query query) {
+        float[] vector = normalized(embeddingModel.embed(query.text()).content().vector());
+
+        Route best = null;
+        double bestSimilarity = -1;
+        double secondSimilarity = -1;
+        for (Route route : routes) {
+            double similarity = dot(vector, route.prototype());
+            if (similarity > bestSimilarity) {
+                secondSimilarity = bestSimilarity;
+                bestSimilarity = similarity;
+                best = route;
+            } else if (similarity > secondSimilarity) {
+                secondSimilarity = similarity;
+            }
+        }
+
+        boolean ambiguous = Math.abs(bestSimilarity - minSimilarity) < ambiguityBand
+                || (routes.size() > 1 && bestSimilarity - secondSimilarity < margin);
+        boolean cacheable = true;
+        if (ambiguous && fallback != null) {
+            try {
+                Collection<ContentRetriever> retrievers = fallback.route(query);
+                delegated.incrementAndGet();
+                return new Decision(retrievers, true);
+            } catch (RuntimeException e) {
+                // LLM indisponible : meilleure route locale, réessayée à la prochaine question
+                fallbackFailures.incrementAndGet();
+                LOGGER.warning(() -> "Routeur de repli en échec, routage local : " + e.getMessage());
+                cacheable = false;
+            }
+        }
+
+        local.incrementAndGet();
+        if (best == null || bestSimilarity < minSimilarity) {
+            return new Decision(List.of(), cacheable); // hors sujet : pas de RAG
+        }
+        return new Decision(List.of(best.retriever()), cacheable);
+    }
+
+    public Stats stats() {
+        return new Stats(local.get(), delegated.get(), cached.get(), fallbackFailures.get());
+    }
+
+    public record Stats(long local, long delegated, long cached, long fallbackFailures) {
+
+        @Override
+        public String toString() {
+            return String.format("routage local %d, délégué au LLM %d, depuis le cache %d, échecs du LLM %d",
+                    local, delegated, cached, fallbackFailures);
+        }
+    }
+
+    private record Decision(Collection<ContentRetriever> retrievers, boolean cacheable) {
+    }
+
+    private record Route(ContentRetriever retriever, float[] prototype) {
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] copy = new float[vector.length];
+        if (norm == 0) {
+            return copy;
+        }
+        double inverse = 1 / Math.sqrt(norm);
+        for (int i = 0; i < vector.length; i++) {
+            copy[i] = (float) (vector[i] * inverse);
+        }
+        return copy;
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private final List<Route> routes = new ArrayList<>();
+        private QueryRouter fallback;
+        private double minSimilarity = 0.35;
+        private double ambiguityBand = 0.05;
+        private double margin = 0.05;
+        private int cacheSize = 1_000;
+        private Supplier<?> indexVersion = () -> 0;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Ajoute un retriever. Le prototype combine le barycentre des segments indexés
+         * (calculé à l'ingestion, peut être {@code null}) et l'embedding de la description.
+         */
+        public Builder route(ContentRetriever retriever, String description, float[] centroid) {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("embeddingModel doit être défini avant les routes");
+            }
+            float[] prototype = normalized(embeddingModel.embed(description).content().vector());
+            if (centroid != null) {
+                float[] normalizedCentroid = normalized(centroid);
+                for (int i = 0; i < prototype.length; i++) {
+                    prototype[i] += normalizedCentroid[i];
+                }
+                prototype = normalized(prototype);
+            }
+            routes.add(new Route(retriever, prototype));
+            return this;
+        }
+
+        /**
+         * Routeur consulté pour les cas ambigus ; sans fallback, le meilleur prototype l'emporte.
+         */
+        public Builder fallback(QueryRouter fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        /**
+         * En dessous de cette similarité, la question est considérée hors sujet (aucun retriever).
+         */
+        public Builder minSimilarity(double minSimilarity) {
+            this.minSimilarity = minSimilarity;
+            return this;
+        }
+
+        public Builder ambiguityBand(double ambiguityBand) {
+            this.ambiguityBand = ambiguityBand;
+            return this;
+        }
+
+        /**
+         * Écart minimal entre les deux meilleurs retrievers pour décider localement.
+         */
+        public Builder margin(double margin) {
+            this.margin = margin;
+            return this;
+        }
+
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Version courante des index routés ; les décisions en cache ne valent que pour cette version.
+         */
+        public Builder indexVersion(Supplier<?> indexVersion) {
+            this.indexVersion = indexVersion;
+            return this;
+        }
+
+        public EmbeddingQueryRouter build() {
+            if (routes.isEmpty()) {
+                throw new IllegalStateException("Au moins une route est nécessaire");
+            }
+            return new EmbeddingQueryRouter(this);
+        }
+    }
+}
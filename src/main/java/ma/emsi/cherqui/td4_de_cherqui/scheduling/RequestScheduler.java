@@ -0,0 +1,621 @@
+package ma.emsi.cherqui.td4_de_cherqui.scheduling;
+
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.LatencyHistogram;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.LatencySamples;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Ordonnanceur partagé devant une API à quota (un par modèle) : tous les appels, interactifs ou
+ * d'ingestion, passent par lui.
+ * <ul>
+ *     <li>Débit : seau à jetons de {@code ratePerSecond} requêtes/s, rafales jusqu'à {@code burst}.</li>
+ *     <li>Priorité : un appel {@link Priority#INTERACTIVE} en attente passe avant tout appel
+ *     {@link Priority#BULK} ; l'ingestion ne peut jamais occuper la part {@code interactiveReserve}
+ *     des jetons ni des appels simultanés.</li>
+ *     <li>Concurrence adaptative (AIMD) : la limite d'appels simultanés augmente de 1 par
+ *     « fenêtre » de succès rapides et est divisée par deux sur un 429, un timeout ou une latence
+ *     au-delà de {@code latencyTarget} (au plus une fois par {@code latencyTarget}).</li>
+ *     <li>429 : l'API est mise en pause (seau vidé) puis l'appel est réessayé avec un recul
+ *     exponentiel et aléatoire, au plus {@code maxRetries} fois.</li>
+ *     <li>Requêtes couvertes (hedging, appels interactifs seulement) : si la réponse tarde au-delà
+ *     du percentile {@code hedgePercentile} des latences observées, un second appel est lancé s'il
+ *     reste un jeton et une place ; le premier arrivé l'emporte, l'autre est interrompu.</li>
+ * </ul>
+ */
+public class RequestScheduler implements AutoCloseable {
+
+    public enum Priority { INTERACTIVE, BULK }
+
+    private enum Outcome { SUCCESS, RATE_LIMITED, OVERLOADED, FAILED, CANCELLED }
+
+    private final String name;
+    private final double ratePerSecond;
+    private final double burst;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final double interactiveReserve;
+    private final long latencyTargetNanos;
+    private final long pauseNanos;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final Duration maxWait;
+    private final Duration hedgeAfter;
+    private final double hedgePercentile;
+    private final Predicate<Throwable> rateLimited;
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // État du seau et de la limite, protégé par lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private double tokens;
+    private long refilledAt;
+    private double limit;
+    private int inFlight;
+    private int waitingInteractive;
+    private long pausedUntil;
+    private long lastDecrease;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong rateLimitedCalls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LatencySamples interactiveWaits = new LatencySamples(10_000);
+    private final LatencySamples bulkWaits = new LatencySamples(10_000);
+
+    private RequestScheduler(Builder builder) {
+        this.name = builder.name;
+        this.ratePerSecond = builder.ratePerSecond;
+        this.burst = Math.max(1, builder.burst);
+        this.minConcurrency = builder.minConcurrency;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.interactiveReserve = builder.interactiveReserve;
+        this.latencyTargetNanos = builder.latencyTarget.toNanos();
+        this.pauseNanos = builder.pauseAfterRateLimit.toNanos();
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoff = builder.retryBackoff;
+        this.maxWait = builder.maxWait;
+        this.hedgeAfter = builder.hedgeAfter;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.rateLimited = builder.rateLimited;
+        this.tokens = this.burst;
+        this.refilledAt = System.nanoTime();
+        this.limit = Math.clamp(builder.initialConcurrency, minConcurrency, maxConcurrency);
+        this.lastDecrease = refilledAt - latencyTargetNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // -------------------------------
+    // Décorateurs
+    // -------------------------------
+
+    public ChatLanguageModel chatModel(ChatLanguageModel delegate, Priority priority) {
+        return new ScheduledChatModel(delegate, this, priority);
+    }
+
+    public EmbeddingModel embeddingModel(EmbeddingModel delegate, Priority priority) {
+        return new ScheduledEmbeddingModel(delegate, this, priority);
+    }
+
+    // -------------------------------
+    // Exécution
+    // -------------------------------
+
+    /**
+     * Exécute {@code call} quand le quota et la limite de concurrence le permettent ; les 429 sont
+     * réessayés, les autres erreurs remontent telles quelles.
+     *
+     * @throws SchedulerRejectedException si aucune place n'est obtenue en {@code maxWait}
+     */
+    public <T> T execute(Priority priority, Callable<T> call) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return priority == Priority.INTERACTIVE && hedgeAfter != null ? hedged(call) : single(priority, call);
+            } catch (RuntimeException e) {
+                if (!rateLimited.test(e) || attempt >= maxRetries) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                // Recul exponentiel avec gigue : les appels refusés ne reviennent pas tous ensemble
+                long backoff = retryBackoff.toNanos() << Math.min(attempt, 10);
+                sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(Math.max(1, backoff / 2)));
+            }
+        }
+    }
+
+    private <T> T single(Priority priority, Callable<T> call) {
+        acquire(priority, true);
+        return run(call);
+    }
+
+    /**
+     * Appel principal puis, s'il tarde, un second appel identique ; le premier résultat gagne.
+     */
+    private <T> T hedged(Callable<T> call) {
+        acquire(Priority.INTERACTIVE, true);
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        Attempt<T> first = new Attempt<>(call);
+        Attempt<T> second = null;
+        Future<T> primary = null;
+        Future<T> backup = null;
+        try {
+            primary = completion.submit(first);
+            Future<T> done = completion.poll(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            if (done == null && acquire(Priority.INTERACTIVE, false)) {
+                hedges.incrementAndGet();
+                second = new Attempt<>(call);
+                backup = completion.submit(second);
+            }
+            if (done == null) {
+                done = completion.take();
+            }
+            try {
+                T result = done.get();
+                if (done == backup) {
+                    hedgesWon.incrementAndGet();
+                }
+                return result;
+            } catch (ExecutionException e) {
+                // Le premier a échoué : le second, s'il existe, a encore sa chance
+                if (backup == null) {
+                    throw unwrap(e);
+                }
+                Future<T> other = completion.take();
+                if (other == backup) {
+                    hedgesWon.incrementAndGet();
+                }
+                return other.get();
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchedulerRejectedException(name + " : attente interrompue");
+        } finally {
+            // Un appel annulé avant d'avoir démarré (ou jamais soumis) rend sa place ici
+            if (primary != null) {
+                primary.cancel(true);
+            }
+            first.abandon();
+            if (second != null) {
+                if (backup != null) {
+                    backup.cancel(true);
+                }
+                second.abandon();
+            }
+        }
+    }
+
+    /**
+     * Appel dont la place est déjà réservée : la place est rendue par {@link #run} s'il démarre,
+     * sinon par {@link #abandon()} ; le drapeau garantit qu'elle ne l'est qu'une fois.
+     */
+    private final class Attempt<T> implements Callable<T> {
+
+        private final Callable<T> call;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        Attempt(Callable<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public T call() {
+            if (!started.compareAndSet(false, true)) {
+                throw new CancellationException("Appel abandonné avant son démarrage");
+            }
+            return run(call);
+        }
+
+        void abandon() {
+            if (started.compareAndSet(false, true)) {
+                release(Outcome.CANCELLED, 0);
+            }
+        }
+    }
+
+    private long hedgeDelayNanos() {
+        // Délai fixe tant que l'échantillon est trop petit, puis percentile des latences observées
+        long fixed = hedgeAfter.toNanos();
+        if (latencies.count() < 100) {
+            return fixed;
+        }
+        return Math.max(fixed, (long) (latencies.percentileMillis(hedgePercentile) * 1_000_000));
+    }
+
+    /**
+     * Exécute un appel pour lequel une place a déjà été obtenue, puis la libère avec son issue.
+     */
+    private <T> T run(Callable<T> call) {
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.FAILED;
+        try {
+            T result = call.call();
+            outcome = Outcome.SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            outcome = classify(e);
+            throw e;
+        } catch (Exception e) {
+            outcome = classify(e);
+            throw new IllegalStateException(e);
+        } finally {
+            release(outcome, System.nanoTime() - start);
+        }
+    }
+
+    private Outcome classify(Throwable error) {
+        if (rateLimited.test(error)) {
+            return Outcome.RATE_LIMITED;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof SocketTimeoutException
+                    || cause instanceof HttpTimeoutException) {
+                return Outcome.OVERLOADED;
+            }
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException
+                    || cause instanceof CancellationException) {
+                return Outcome.CANCELLED;
+            }
+        }
+        return Thread.currentThread().isInterrupted() ? Outcome.CANCELLED : Outcome.FAILED;
+    }
+
+    // -------------------------------
+    // Seau à jetons et AIMD
+    // -------------------------------
+
+    /**
+     * Réserve un jeton et une place d'appel simultané.
+     *
+     * @param wait {@code false} : seulement si c'est possible immédiatement
+     * @return {@code false} si {@code wait} est faux et qu'aucune place n'est libre
+     */
+    private boolean acquire(Priority priority, boolean wait) {
+        long start = System.nanoTime();
+        long deadline = start + maxWait.toNanos();
+        boolean interactive = priority == Priority.INTERACTIVE;
+        lock.lock();
+        try {
+            if (interactive && wait) {
+                waitingInteractive++;
+            }
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    long delay = admissionDelay(interactive, now);
+                    if (delay == 0) {
+                        tokens -= 1;
+                        inFlight++;
+                        calls.incrementAndGet();
+                        (interactive ? interactiveWaits : bulkWaits).record(now - start);
+                        return true;
+                    }
+                    if (!wait) {
+                        return false;
+                    }
+                    if (now >= deadline) {
+                        rejected.incrementAndGet();
+                        throw new SchedulerRejectedException(String.format(
+                                "%s : quota saturé, aucune place en %d ms", name, maxWait.toMillis()));
+                    }
+                    changed.awaitNanos(Math.min(delay, deadline - now));
+                }
+            } finally {
+                if (interactive && wait) {
+                    waitingInteractive--;
+                    changed.signalAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchedulerRejectedException(name + " : attente interrompue");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 0 si l'appel peut partir maintenant, sinon une attente avant de réévaluer (en ns).
+     */
+    private long admissionDelay(boolean interactive, long now) {
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        // Réserve bornée à burst - 1 : même avec une petite rafale, un seau plein admet l'ingestion
+        double reservedTokens = interactive ? 0 : Math.min(interactiveReserve * burst, burst - 1);
+        int slots = (int) limit;
+        int allowedInFlight = interactive ? slots : Math.max(1, (int) (slots * (1 - interactiveReserve)));
+        if (!interactive && waitingInteractive > 0) {
+            return TimeUnit.MILLISECONDS.toNanos(50); // réveillé dès qu'un appel interactif part
+        }
+        if (inFlight >= allowedInFlight) {
+            return TimeUnit.MILLISECONDS.toNanos(50); // réveillé à la fin d'un appel
+        }
+        double missing = 1 + reservedTokens - tokens;
+        if (missing > 0) {
+            return Math.max(1, (long) (missing / ratePerSecond * 1e9));
+        }
+        return 0;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * ratePerSecond);
+        refilledAt = now;
+    }
+
+    private void release(Outcome outcome, long latencyNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            long now = System.nanoTime();
+            switch (outcome) {
+                case SUCCESS -> {
+                    latencies.record(latencyNanos);
+                    if (latencyNanos > latencyTargetNanos) {
+                        decrease(now);
+                    } else {
+                        // +1 par fenêtre de "limit" succès
+                        limit = Math.min(maxConcurrency, limit + 1 / limit);
+                    }
+                }
+                case RATE_LIMITED -> {
+                    rateLimitedCalls.incrementAndGet();
+                    // Quota épuisé côté serveur : plus de jetons, pause courte pour tous
+                    tokens = Math.min(tokens, 0);
+                    pausedUntil = Math.max(pausedUntil, now + pauseNanos);
+                    decrease(now);
+                }
+                case OVERLOADED -> decrease(now);
+                case FAILED, CANCELLED -> {
+                    // erreur applicative ou appel abandonné : aucun signal de congestion
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long now) {
+        if (now - lastDecrease < latencyTargetNanos) {
+            return; // une seule réduction par épisode de congestion
+        }
+        limit = Math.max(minConcurrency, limit / 2);
+        lastDecrease = now;
+        decreases.incrementAndGet();
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SchedulerRejectedException("Attente avant nouvel essai interrompue");
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        return e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+    }
+
+    /**
+     * Reconnaît un refus de quota : HTTP 429 ou {@code RESOURCE_EXHAUSTED} (Gemini) dans la chaîne des causes.
+     */
+    public static boolean isRateLimited(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null) {
+                String lower = message.toLowerCase(Locale.ROOT);
+                if (lower.contains("429") || lower.contains("resource_exhausted") || lower.contains("rate limit")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public double concurrencyLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(name, calls.get(), rateLimitedCalls.get(), retries.get(), hedges.get(), hedgesWon.get(),
+                rejected.get(), decreases.get(), concurrencyLimit(), latencies.percentileMillis(50),
+                latencies.percentileMillis(99), interactiveWaits.percentileMillis(99), bulkWaits.percentileMillis(99));
+    }
+
+    @Override
+    public void close() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    public record Stats(String name, long calls, long rateLimited, long retries, long hedges, long hedgesWon,
+                        long rejected, long decreases, double concurrencyLimit, double p50Millis, double p99Millis,
+                        double interactiveWaitP99Millis, double bulkWaitP99Millis) {
+
+        @Override
+        public String toString() {
+            return String.format("[%s] %d appels (p50 %.0f ms, p99 %.0f ms) | %d refus 429, %d nouveaux essais,"
+                            + " %d rejetés | limite %.1f (%d réductions) | %d couvertures (%d gagnantes)"
+                            + " | attente p99 : interactif %.0f ms, ingestion %.0f ms",
+                    name, calls, p50Millis, p99Millis, rateLimited, retries, rejected, concurrencyLimit, decreases,
+                    hedges, hedgesWon, interactiveWaitP99Millis, bulkWaitP99Millis);
+        }
+    }
+
+    public static class Builder {
+
+        private String name = "api";
+        private double ratePerSecond = 5;
+        private double burst = 2;
+        private int initialConcurrency = 4;
+        private int minConcurrency = 1;
+        private int maxConcurrency = 32;
+        private double interactiveReserve = 0.25;
+        private Duration latencyTarget = Duration.ofSeconds(10);
+        private Duration pauseAfterRateLimit = Duration.ofMillis(250);
+        private int maxRetries = 3;
+        private Duration retryBackoff = Duration.ofMillis(500);
+        private Duration maxWait = Duration.ofSeconds(60);
+        private Duration hedgeAfter;
+        private double hedgePercentile = 95;
+        private Predicate<Throwable> rateLimited = RequestScheduler::isRateLimited;
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Quota de l'API en requêtes par seconde (par ex. 15 requêtes/min : {@code 0.25}).
+         */
+        public Builder ratePerSecond(double ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            return this;
+        }
+
+        /**
+         * Rafale autorisée au-delà du débit. À garder petite : les quotas sont comptés sur une fenêtre
+         * glissante, et {@code burst + ratePerSecond} appels dans la même seconde déclenchent des 429.
+         */
+        public Builder burst(double burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        public Builder initialConcurrency(int initialConcurrency) {
+            this.initialConcurrency = initialConcurrency;
+            return this;
+        }
+
+        public Builder minConcurrency(int minConcurrency) {
+            this.minConcurrency = minConcurrency;
+            return this;
+        }
+
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Part des jetons et des appels simultanés que l'ingestion ne peut pas utiliser. La part des jetons
+         * est plafonnée à {@code burst - 1} : avec {@code burst = 1}, seule la priorité en file et la part
+         * des appels simultanés protègent les appels interactifs.
+         */
+        public Builder interactiveReserve(double interactiveReserve) {
+            this.interactiveReserve = interactiveReserve;
+            return this;
+        }
+
+        /**
+         * Latence au-delà de laquelle un succès compte comme un signal de congestion.
+         */
+        public Builder latencyTarget(Duration latencyTarget) {
+            this.latencyTarget = latencyTarget;
+            return this;
+        }
+
+        public Builder pauseAfterRateLimit(Duration pauseAfterRateLimit) {
+            this.pauseAfterRateLimit = pauseAfterRateLimit;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder retryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+            return this;
+        }
+
+        /**
+         * Attente maximale d'une place avant {@link SchedulerRejectedException}.
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        /**
+         * Active les requêtes couvertes pour les appels interactifs : délai minimal avant le second appel
+         * ({@code null} : désactivé).
+         */
+        public Builder hedgeAfter(Duration hedgeAfter) {
+            this.hedgeAfter = hedgeAfter;
+            return this;
+        }
+
+        public Builder hedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        /**
+         * Reconnaît une erreur de quota (par défaut {@link #isRateLimited}).
+         */
+        public Builder rateLimited(Predicate<Throwable> rateLimited) {
+            this.rateLimited = rateLimited;
+            return this;
+        }
+
+        public RequestScheduler build() {
+            if (ratePerSecond <= 0) {
+                throw new IllegalStateException("ratePerSecond doit être positif");
+            }
+            if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+                throw new IllegalStateException("Il faut 1 <= minConcurrency <= maxConcurrency");
+            }
+            if (interactiveReserve < 0 || interactiveReserve >= 1) {
+                throw new IllegalStateException("interactiveReserve doit être dans [0, 1[");
+            }
+            return new RequestScheduler(this);
+        }
+    }
+}
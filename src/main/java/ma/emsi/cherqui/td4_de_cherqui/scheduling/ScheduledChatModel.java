@@ -0,0 +1,40 @@
+package ma.emsi.cherqui.td4_de_cherqui.scheduling;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * {@link ChatLanguageModel} dont les appels passent par un {@link RequestScheduler}.
+ */
+class ScheduledChatModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final RequestScheduler scheduler;
+    private final RequestScheduler.Priority priority;
+
+    ScheduledChatModel(ChatLanguageModel delegate, RequestScheduler scheduler, RequestScheduler.Priority priority) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.priority = priority;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return scheduler.execute(priority, () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return scheduler.execute(priority, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return scheduler.execute(priority, () -> delegate.generate(messages, toolSpecification));
+    }
+}
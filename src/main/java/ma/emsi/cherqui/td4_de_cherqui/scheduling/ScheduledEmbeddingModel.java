@@ -0,0 +1,35 @@
+package ma.emsi.cherqui.td4_de_cherqui.scheduling;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * {@link EmbeddingModel} dont les appels passent par un {@link RequestScheduler} : un lot compte
+ * pour une requête, comme dans les quotas de l'API.
+ */
+class ScheduledEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final RequestScheduler scheduler;
+    private final RequestScheduler.Priority priority;
+
+    ScheduledEmbeddingModel(EmbeddingModel delegate, RequestScheduler scheduler, RequestScheduler.Priority priority) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.priority = priority;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return scheduler.execute(priority, () -> delegate.embedAll(segments));
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
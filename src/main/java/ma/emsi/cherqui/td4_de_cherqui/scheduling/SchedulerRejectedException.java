@@ -0,0 +1,11 @@
+package ma.emsi.cherqui.td4_de_cherqui.scheduling;
+
+/**
+ * Levée quand un appel n'obtient ni jeton ni place dans le délai d'attente de l'ordonnanceur (quota saturé).
+ */
+public class SchedulerRejectedException extends RuntimeException {
+
+    public SchedulerRejectedException(String message) {
+        super(message);
+    }
+}
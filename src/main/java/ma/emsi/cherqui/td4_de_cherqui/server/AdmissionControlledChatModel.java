@@ -0,0 +1,80 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Contrôle d'admission : au plus {@code maxConcurrentCalls} appels simultanés au LLM, partagés par
+ * toutes les sessions. Un appel qui attend plus de {@code maxWait} est rejeté
+ * ({@link AdmissionRejectedException}) plutôt que d'allonger la file indéfiniment.
+ */
+public class AdmissionControlledChatModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final Semaphore permits;
+    private final Duration maxWait;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdmissionControlledChatModel(ChatLanguageModel delegate, int maxConcurrentCalls, Duration maxWait) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return admit(() -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return admit(() -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return admit(() -> delegate.generate(messages, toolSpecification));
+    }
+
+    private <T> T admit(Supplier<T> call) {
+        try {
+            if (!permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.incrementAndGet();
+                throw new AdmissionRejectedException("Trop d'appels au LLM en cours, réessayez plus tard");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AdmissionRejectedException("Attente d'admission interrompue");
+        }
+        try {
+            admitted.incrementAndGet();
+            return call.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public long admitted() {
+        return admitted.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public int waiting() {
+        return permits.getQueueLength();
+    }
+}
@@ -0,0 +1,11 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+/**
+ * Levée quand un appel au LLM n'obtient pas de place dans le délai d'admission (serveur saturé).
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    public AdmissionRejectedException(String message) {
+        super(message);
+    }
+}
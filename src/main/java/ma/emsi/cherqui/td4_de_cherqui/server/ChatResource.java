@@ -0,0 +1,91 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import ma.emsi.cherqui.td4_de_cherqui.memory.ChatMemoryLog;
+import ma.emsi.cherqui.td4_de_cherqui.memory.TokenBudgetChatMemory;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.PipelineMetrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Point d'entrée HTTP du chat.
+ * <pre>
+ * POST   /api/chat          (en-tête X-Session-Id, corps = question)  -> réponse texte
+ * DELETE /api/chat/{id}     fin de session
+ * GET    /api/chat/stats
+ * GET    /api/metrics       (format Prometheus, voir {@link MetricsResource})
+ * </pre>
+ * Chaque requête est suspendue puis traitée sur son propre thread virtuel : le thread du
+ * conteneur est libéré pendant l'appel au LLM.
+ */
+@Path("/chat")
+public class ChatResource {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Inject
+    ChatService chatService;
+
+    @Inject
+    AdmissionControlledChatModel admission;
+
+    @Inject
+    ChatMemoryLog sessionLog;
+
+    @Inject
+    TokenBudgetChatMemory.Metrics memoryMetrics;
+
+    @Inject
+    PipelineMetrics metrics;
+
+    @POST
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.TEXT_PLAIN)
+    public void chat(@HeaderParam("X-Session-Id") String sessionId, String question,
+                     @Suspended AsyncResponse response) {
+        if (sessionId == null || sessionId.isBlank() || question == null || question.isBlank()) {
+            response.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("En-tête X-Session-Id et question obligatoires").build());
+            return;
+        }
+        EXECUTOR.execute(() -> {
+            try {
+                response.resume(chatService.chat(sessionId, question));
+            } catch (AdmissionRejectedException e) {
+                response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", 1)
+                        .entity(e.getMessage()).build());
+            } catch (RuntimeException e) {
+                response.resume(e);
+            }
+        });
+    }
+
+    @DELETE
+    @Path("/{sessionId}")
+    public void close(@PathParam("sessionId") String sessionId) {
+        chatService.close(sessionId);
+    }
+
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String stats() {
+        return chatService.stats() + "\nLLM : " + admission.admitted() + " appels admis, "
+                + admission.rejected() + " rejetés, " + admission.waiting() + " en attente"
+                + "\n" + memoryMetrics + "\nHistoriques : " + sessionLog.stats() + "\n" + metrics;
+    }
+}
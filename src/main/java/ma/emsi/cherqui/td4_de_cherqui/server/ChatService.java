@@ -0,0 +1,267 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.service.AiServices;
+import ma.emsi.cherqui.td4_de_cherqui.Assistant;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.LatencySamples;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Service de chat multi-utilisateurs : un {@link Assistant} et une {@link ChatMemory} par session,
+ * le modèle et le {@link RetrievalAugmentor} (stores, retrievers) étant partagés en lecture seule.
+ * <p>
+ * Les sessions sont gardées dans une table bornée : au-delà de {@code maxSessions}, la moins
+ * récemment utilisée est évincée, et une session inactive depuis {@code idleTimeout} est oubliée.
+ * Une session dont une question est en cours n'est jamais évincée : une seconde instance de la même
+ * session écrirait en parallèle dans le même historique.
+ * Les questions d'une même session sont traitées l'une après l'autre (la mémoire n'est pas
+ * thread-safe) ; le verrou est un {@link ReentrantLock} pour ne pas épingler les threads virtuels.
+ * L'assistant d'une nouvelle session est construit sous ce verrou, pas sous celui de la table.
+ */
+public class ChatService {
+
+    private final ChatLanguageModel chatModel;
+    private final RetrievalAugmentor retrievalAugmentor;
+    private final Function<String, ChatMemory> memoryFactory;
+    private final int maxSessions;
+    private final Duration idleTimeout;
+    private final Clock clock;
+
+    private final Map<String, Session> sessions = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final LatencySamples latencies = new LatencySamples(10_000);
+
+    private ChatService(Builder builder) {
+        this.chatModel = builder.chatModel;
+        this.retrievalAugmentor = builder.retrievalAugmentor;
+        this.memoryFactory = builder.memoryFactory;
+        this.maxSessions = builder.maxSessions;
+        this.idleTimeout = builder.idleTimeout;
+        this.clock = builder.clock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String chat(String sessionId, String question) {
+        long start = System.nanoTime();
+        Session session = acquire(sessionId);
+        session.lock.lock();
+        try {
+            ChatMemory memory = memory(session, sessionId);
+            String answer;
+            try {
+                answer = session.assistant.chat(question);
+            } catch (RuntimeException e) {
+                // Appel rejeté (admission) ou en échec : la question sans réponse ne reste pas dans l'historique
+                rollbackQuestion(memory);
+                throw e;
+            }
+            requests.incrementAndGet();
+            latencies.record(System.nanoTime() - start);
+            return answer;
+        } finally {
+            session.lock.unlock();
+            release(sessionId, session, false);
+        }
+    }
+
+    /**
+     * Termine la session et efface son historique (y compris persisté) ; une question en cours se termine d'abord.
+     */
+    public void close(String sessionId) {
+        Session session = acquire(sessionId);
+        session.lock.lock();
+        try {
+            memory(session, sessionId).clear();
+        } finally {
+            session.lock.unlock();
+            release(sessionId, session, true);
+        }
+    }
+
+    private Session acquire(String sessionId) {
+        Instant now = clock.instant();
+        synchronized (sessions) {
+            evictIdle(now);
+            Session session = sessions.get(sessionId);
+            if (session == null) {
+                session = new Session();
+                sessions.put(sessionId, session);
+                if (sessions.size() > maxSessions) {
+                    evictEldest(session);
+                }
+            }
+            session.lastAccess = now;
+            session.inUse++;
+            return session;
+        }
+    }
+
+    private void release(String sessionId, Session session, boolean remove) {
+        synchronized (sessions) {
+            if (--session.inUse == 0 && remove) {
+                sessions.remove(sessionId, session);
+            }
+        }
+    }
+
+    /**
+     * Mémoire et assistant de la session, créés au premier appel ; sous le verrou de la session.
+     */
+    private ChatMemory memory(Session session, String sessionId) {
+        if (session.assistant == null) {
+            session.memory = memoryFactory.apply(sessionId);
+            session.assistant = newAssistant(session.memory);
+        }
+        return session.memory;
+    }
+
+    private void evictIdle(Instant now) {
+        // Ordre d'accès : les sessions inactives sont en tête de la table
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (session.lastAccess.plus(idleTimeout).isAfter(now)) {
+                break;
+            }
+            if (session.inUse == 0) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void evictEldest(Session added) {
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (session != added && session.inUse == 0) {
+                it.remove();
+                evictions.incrementAndGet();
+                return;
+            }
+        }
+        // Toutes les sessions sont occupées : la table dépasse temporairement maxSessions
+    }
+
+    private static void rollbackQuestion(ChatMemory memory) {
+        List<ChatMessage> messages = memory.messages();
+        if (messages.isEmpty() || !(messages.getLast() instanceof UserMessage)) {
+            return;
+        }
+        memory.clear();
+        messages.subList(0, messages.size() - 1).forEach(memory::add);
+    }
+
+    private Assistant newAssistant(ChatMemory memory) {
+        AiServices<Assistant> services = AiServices.builder(Assistant.class)
+                .chatLanguageModel(chatModel)
+                .chatMemory(memory);
+        if (retrievalAugmentor != null) {
+            services.retrievalAugmentor(retrievalAugmentor);
+        }
+        return services.build();
+    }
+
+    public Stats stats() {
+        int active;
+        synchronized (sessions) {
+            active = sessions.size();
+        }
+        return new Stats(active, evictions.get(), requests.get(),
+                latencies.percentileMillis(50), latencies.percentileMillis(99));
+    }
+
+    public record Stats(int activeSessions, long evictions, long requests, double p50Millis, double p99Millis) {
+
+        @Override
+        public String toString() {
+            return String.format("%d sessions actives, %d évincées | %d requêtes, p50 %.1f ms p99 %.1f ms",
+                    activeSessions, evictions, requests, p50Millis, p99Millis);
+        }
+    }
+
+    /**
+     * {@code inUse} et {@code lastAccess} sont protégés par le verrou de la table ;
+     * {@code memory} et {@code assistant}, créés au premier appel, par {@code lock}.
+     */
+    private static final class Session {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private ChatMemory memory;
+        private Assistant assistant;
+        private Instant lastAccess;
+        private int inUse;
+    }
+
+    public static class Builder {
+
+        private ChatLanguageModel chatModel;
+        private RetrievalAugmentor retrievalAugmentor;
+        private Function<String, ChatMemory> memoryFactory = sessionId -> MessageWindowChatMemory.withMaxMessages(10);
+        private int maxSessions = 10_000;
+        private Duration idleTimeout = Duration.ofMinutes(30);
+        private Clock clock = Clock.systemUTC();
+
+        /**
+         * Modèle partagé par toutes les sessions (typiquement un {@link AdmissionControlledChatModel}).
+         */
+        public Builder chatModel(ChatLanguageModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        public Builder retrievalAugmentor(RetrievalAugmentor retrievalAugmentor) {
+            this.retrievalAugmentor = retrievalAugmentor;
+            return this;
+        }
+
+        /**
+         * Crée la mémoire d'une nouvelle session à partir de son identifiant.
+         */
+        public Builder memoryFactory(Function<String, ChatMemory> memoryFactory) {
+            this.memoryFactory = memoryFactory;
+            return this;
+        }
+
+        public Builder maxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ChatService build() {
+            if (chatModel == null) {
+                throw new IllegalStateException("chatModel est obligatoire");
+            }
+            return new ChatService(this);
+        }
+    }
+}
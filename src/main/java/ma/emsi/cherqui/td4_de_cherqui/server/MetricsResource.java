@@ -0,0 +1,23 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.PipelineMetrics;
+
+/**
+ * Point de collecte Prometheus : {@code GET /api/metrics}.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    @Inject
+    PipelineMetrics metrics;
+
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public String scrape() {
+        return metrics.scrape();
+    }
+}
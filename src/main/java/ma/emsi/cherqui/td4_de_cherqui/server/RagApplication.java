@@ -0,0 +1,11 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+import jakarta.ws.rs.ApplicationPath;
+import jakarta.ws.rs.core.Application;
+
+/**
+ * Mode serveur : l'application est déployée dans un conteneur Jakarta EE (war) sous {@code /api}.
+ */
+@ApplicationPath("/api")
+public class RagApplication extends Application {
+}
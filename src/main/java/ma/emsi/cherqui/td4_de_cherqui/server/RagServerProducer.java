@@ -0,0 +1,102 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Disposes;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+import ma.emsi.cherqui.td4_de_cherqui.engine.ModelProvider;
+import ma.emsi.cherqui.td4_de_cherqui.engine.RagConfig;
+import ma.emsi.cherqui.td4_de_cherqui.engine.RagEngine;
+import ma.emsi.cherqui.td4_de_cherqui.memory.ChatMemoryLog;
+import ma.emsi.cherqui.td4_de_cherqui.memory.TokenBudgetChatMemory;
+import ma.emsi.cherqui.td4_de_cherqui.metrics.PipelineMetrics;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Construit une seule fois les objets partagés du mode serveur. Modèles, index et retriever
+ * viennent d'un {@link RagEngine} décrit par {@code RAG_CONFIG} (par défaut
+ * {@code rag/serveur.properties}) ; le reste est configuré par variables d'environnement :
+ * {@code GEMINI_API_KEY}, {@code RAG_MAX_SESSIONS}, {@code RAG_MAX_LLM_CALLS},
+ * {@code RAG_MEMORY_TOKENS}, {@code RAG_HISTORY_DAYS}, {@code RAG_JFR_EVENTS}.
+ * <p>
+ * Les modèles, le store et le retriever sont instrumentés ({@link PipelineMetrics}, exposé sur
+ * {@code /api/metrics}) ; le log des requêtes/réponses du client Gemini reste désactivé.
+ */
+@ApplicationScoped
+public class RagServerProducer {
+
+    @Produces
+    @Singleton
+    PipelineMetrics pipelineMetrics() {
+        return new PipelineMetrics(Boolean.parseBoolean(System.getenv("RAG_JFR_EVENTS")));
+    }
+
+    @Produces
+    @Singleton
+    RagEngine ragEngine(PipelineMetrics metrics) {
+        return RagEngine.builder()
+                .config(RagConfig.load(System.getenv().getOrDefault("RAG_CONFIG", "rag/serveur.properties")))
+                .modelProvider(ModelProvider.gemini(false))
+                .metrics(metrics)
+                .build();
+    }
+
+    void closeRagEngine(@Disposes RagEngine engine) {
+        engine.close();
+    }
+
+    @Produces
+    @Singleton
+    AdmissionControlledChatModel chatModel(RagEngine engine, PipelineMetrics metrics) {
+        // Mesuré sous le contrôle d'admission : la latence est celle du LLM, sans l'attente de permis
+        var admission = new AdmissionControlledChatModel(engine.chatModel(),
+                intEnv("RAG_MAX_LLM_CALLS", 16), Duration.ofSeconds(10));
+        metrics.gauge("rag_llm_waiting", admission::waiting);
+        metrics.gauge("rag_llm_rejected", admission::rejected);
+        return admission;
+    }
+
+    @Produces
+    @Singleton
+    ChatMemoryLog sessionLog() {
+        // Un historique inactif depuis RAG_HISTORY_DAYS jours est effacé
+        return new ChatMemoryLog(Path.of(".rag-index/sessions.log"), Duration.ofDays(intEnv("RAG_HISTORY_DAYS", 30)));
+    }
+
+    void closeSessionLog(@Disposes ChatMemoryLog sessionLog) {
+        sessionLog.close();
+    }
+
+    @Produces
+    @Singleton
+    TokenBudgetChatMemory.Metrics memoryMetrics() {
+        return new TokenBudgetChatMemory.Metrics();
+    }
+
+    @Produces
+    @Singleton
+    ChatService chatService(AdmissionControlledChatModel chatModel, ChatMemoryLog sessionLog,
+                            TokenBudgetChatMemory.Metrics memoryMetrics, RagEngine engine) {
+        // Store et retriever en lecture seule, partagés par toutes les sessions
+        return ChatService.builder()
+                .chatModel(chatModel)
+                .retrievalAugmentor(engine.retrievalAugmentor())
+                // Historique borné en tokens et persisté sur disque : une session évincée (ou un
+                // redémarrage) reprend là où elle en était
+                .memoryFactory(sessionId -> TokenBudgetChatMemory.builder()
+                        .id(sessionId)
+                        .maxTokens(intEnv("RAG_MEMORY_TOKENS", 2_000))
+                        .store(sessionLog)
+                        .metrics(memoryMetrics)
+                        .build())
+                .maxSessions(intEnv("RAG_MAX_SESSIONS", 10_000))
+                .build();
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.strip());
+    }
+}
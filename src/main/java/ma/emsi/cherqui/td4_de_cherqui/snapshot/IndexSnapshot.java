@@ -0,0 +1,73 @@
+package ma.emsi.cherqui.td4_de_cherqui.snapshot;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PersistentIngestor;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.store.FrozenEmbeddingStore;
+import ma.emsi.cherqui.td4_de_cherqui.store.MappedEmbeddingStore;
+
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * État d'index d'un document (store vectoriel, index BM25, barycentre pour le routage), restauré
+ * depuis un {@link RagSnapshot} quand il est à jour, sinon reconstruit puis figé pour le
+ * prochain démarrage.
+ * <p>
+ * Restauré, le store est un {@link FrozenEmbeddingStore} en lecture seule sur la section projetée :
+ * vecteurs et segments ne sont chargés qu'au premier accès. Seul l'index BM25 (petit) est décodé.
+ *
+ * @param restored {@code true} si l'état vient du snapshot
+ */
+public record IndexSnapshot(EmbeddingStore<TextSegment> store, Bm25Index lexicalIndex, float[] centroid,
+                            boolean restored) {
+
+    private static final Logger LOGGER = Logger.getLogger(IndexSnapshot.class.getName());
+
+    static final String STORE_SECTION = "store";
+    static final String LEXICAL_SECTION = "bm25";
+
+    public static IndexSnapshot loadOrBuild(Path path, EmbeddingModel embeddingModel, String modelName) {
+        return loadOrBuild(path, PersistentIngestor.DEFAULT_INDEX_DIR, embeddingModel, modelName, 500, 100);
+    }
+
+    public static IndexSnapshot loadOrBuild(Path path, Path indexDir, EmbeddingModel embeddingModel,
+                                            String modelName, int maxSegmentSize, int maxOverlap) {
+        String key = PersistentIngestor.indexKey(path, modelName, maxSegmentSize, maxOverlap);
+        String fingerprint = key + "|" + STORE_SECTION + "|" + LEXICAL_SECTION;
+        Path file = indexDir.resolve(key + ".snapshot");
+
+        // 1. Snapshot à jour : projection des sections, sans relire ni re-tokeniser les segments
+        RagSnapshot snapshot = RagSnapshot.openIfCurrent(file, fingerprint);
+        if (snapshot != null) {
+            try (snapshot) {
+                FrozenEmbeddingStore store = FrozenEmbeddingStore.open(snapshot.section(STORE_SECTION));
+                Bm25Index lexicalIndex = Bm25Index.read(snapshot.section(LEXICAL_SECTION), store::segment);
+                return new IndexSnapshot(store, lexicalIndex, store.centroid(), true);
+            } catch (RuntimeException e) {
+                LOGGER.warning(() -> "Snapshot " + file + " inutilisable (" + e + ") : reconstruction");
+            }
+        }
+
+        // 2. Sinon : index persistant (ou ingestion complète), index BM25, puis écriture du snapshot
+        MappedEmbeddingStore store = PersistentIngestor.loadOrIngest(path, indexDir, embeddingModel, modelName,
+                maxSegmentSize, maxOverlap);
+        Bm25Index.Builder lexical = Bm25Index.builder();
+        store.forEach(lexical::add);
+        Bm25Index lexicalIndex = lexical.build();
+
+        try {
+            RagSnapshot.writer(file, fingerprint)
+                    .section(STORE_SECTION, out -> FrozenEmbeddingStore.write(out, store))
+                    .section(LEXICAL_SECTION, lexicalIndex::write)
+                    .commit();
+        } catch (RuntimeException e) {
+            // Le snapshot n'accélère que le prochain démarrage : l'état construit reste utilisable
+            LOGGER.log(Level.WARNING, "Écriture du snapshot " + file + " impossible", e);
+        }
+        return new IndexSnapshot(store, lexicalIndex, store.centroid(), false);
+    }
+}
@@ -0,0 +1,304 @@
+package ma.emsi.cherqui.td4_de_cherqui.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Image binaire versionnée de l'état RAG : une suite de sections nommées (store figé, index
+ * lexical, barycentres...) dans un seul fichier.
+ * <p>
+ * Écriture par {@link FileChannel} dans un fichier temporaire renommé atomiquement à la fin.
+ * Lecture : seule la table des sections est lue à l'ouverture ; chaque section est projetée en
+ * mémoire à la demande ({@link #section}) et ses pages ne sont chargées qu'au premier accès.
+ * <p>
+ * Format : en-tête de 64 octets ({@code "RAGS"}, version), sections alignées sur 64 octets,
+ * table ({@code empreinte, n, n × (nom, position, longueur)}), puis 16 octets de fin
+ * ({@code position de la table, longueur, "RAGS"}). Un fichier tronqué n'a pas de fin valide.
+ */
+public final class RagSnapshot implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(RagSnapshot.class.getName());
+
+    private static final int MAGIC = 0x52414753; // "RAGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int ALIGNMENT = 64;
+    private static final int TRAILER_BYTES = 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final String fingerprint;
+    private final Map<String, long[]> table;
+    private final Map<String, MappedByteBuffer> mapped = new ConcurrentHashMap<>();
+
+    private RagSnapshot(Path file, FileChannel channel, String fingerprint, Map<String, long[]> table) {
+        this.file = file;
+        this.channel = channel;
+        this.fingerprint = fingerprint;
+        this.table = table;
+    }
+
+    /**
+     * Ouvre un snapshot ; seules la fin et la table des sections sont lues.
+     */
+    public static RagSnapshot open(Path file) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES) {
+                throw new IOException("Snapshot tronqué : " + file);
+            }
+            ByteBuffer header = read(channel, 0, 2 * Integer.BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Format de snapshot inconnu : " + file);
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long tableOffset = trailer.getLong();
+            int tableLength = trailer.getInt();
+            if (trailer.getInt() != MAGIC || tableOffset < HEADER_BYTES
+                    || tableOffset + tableLength != size - TRAILER_BYTES) {
+                throw new IOException("Snapshot incomplet : " + file);
+            }
+
+            ByteBuffer in = read(channel, tableOffset, tableLength);
+            String fingerprint = readString(in);
+            int count = in.getInt();
+            Map<String, long[]> table = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = readString(in);
+                long offset = in.getLong();
+                long length = in.getLong();
+                if (offset < HEADER_BYTES || offset + length > tableOffset) {
+                    throw new IOException("Section " + name + " hors du fichier : " + file);
+                }
+                table.put(name, new long[]{offset, length});
+            }
+            return new RagSnapshot(file, channel, fingerprint, table);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Snapshot illisible : " + file, e);
+        } catch (RuntimeException e) {
+            // table corrompue (longueurs incohérentes...)
+            closeQuietly(channel);
+            throw new UncheckedIOException("Snapshot illisible : " + file, new IOException(e));
+        }
+    }
+
+    /**
+     * Ouvre le snapshot s'il existe, est lisible et a été écrit pour la même {@code fingerprint}
+     * (document, modèle, paramètres) ; sinon {@code null} et l'état doit être reconstruit.
+     */
+    public static RagSnapshot openIfCurrent(Path file, String fingerprint) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            RagSnapshot snapshot = open(file);
+            if (snapshot.fingerprint().equals(fingerprint)) {
+                return snapshot;
+            }
+            LOGGER.info(() -> "Snapshot périmé (contenu ou paramètres modifiés) : " + file);
+            snapshot.close();
+        } catch (UncheckedIOException e) {
+            LOGGER.warning(() -> e.getMessage() + " : reconstruction");
+        }
+        return null;
+    }
+
+    public static Writer writer(Path file, String fingerprint) {
+        return new Writer(file, fingerprint);
+    }
+
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    public Set<String> sections() {
+        return table.keySet();
+    }
+
+    public boolean has(String name) {
+        return table.containsKey(name);
+    }
+
+    /**
+     * Section {@code name} projetée en lecture seule (gros-boutiste, position 0).
+     */
+    public ByteBuffer section(String name) {
+        long[] entry = table.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Section absente du snapshot " + file + " : " + name);
+        }
+        if (entry[1] > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Section trop grande pour une projection : " + name);
+        }
+        MappedByteBuffer buffer = mapped.computeIfAbsent(name, n -> {
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return buffer.duplicate();
+    }
+
+    /**
+     * Ferme le fichier ; les sections déjà projetées restent lisibles.
+     */
+    @Override
+    public void close() {
+        closeQuietly(channel);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Fin de fichier inattendue");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // lecture seule : rien à perdre
+            }
+        }
+    }
+
+    /**
+     * Contenu d'une section, écrit en flux ({@link DataOutputStream}, gros-boutiste).
+     */
+    @FunctionalInterface
+    public interface SectionWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public static final class Writer {
+
+        private final Path file;
+        private final Path tmp;
+        private final String fingerprint;
+        private final FileChannel channel;
+        private final Map<String, long[]> table = new LinkedHashMap<>();
+
+        private Writer(Path file, String fingerprint) {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.fingerprint = fingerprint;
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                this.channel = FileChannel.open(tmp,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).clear();
+                writeFully(header);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossible de créer le snapshot " + file, e);
+            }
+        }
+
+        public Writer section(String name, SectionWriter body) {
+            if (table.containsKey(name)) {
+                throw new IllegalArgumentException("Section déjà écrite : " + name);
+            }
+            try {
+                long start = channel.position();
+                // Tampon sur le canal, vidé mais pas fermé : le canal reste ouvert pour la suite
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+                        1 << 16));
+                body.write(out);
+                out.flush();
+                long end = channel.position();
+                table.put(name, new long[]{start, end - start});
+                long padding = (ALIGNMENT - end % ALIGNMENT) % ALIGNMENT;
+                writeFully(ByteBuffer.allocate((int) padding));
+                return this;
+            } catch (IOException e) {
+                abort();
+                throw new UncheckedIOException("Écriture de la section " + name + " impossible", e);
+            } catch (RuntimeException e) {
+                // Erreur du contenu lui-même : ni canal ouvert ni fichier .tmp laissés derrière
+                abort();
+                throw e;
+            }
+        }
+
+        /**
+         * Écrit la table et la fin, force le fichier sur disque puis le met en place atomiquement.
+         */
+        public void commit() {
+            try {
+                long tableOffset = channel.position();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                writeString(out, fingerprint);
+                out.writeInt(table.size());
+                for (Map.Entry<String, long[]> entry : table.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeLong(entry.getValue()[0]);
+                    out.writeLong(entry.getValue()[1]);
+                }
+                writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+                ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+                trailer.putLong(tableOffset).putInt(bytes.size()).putInt(MAGIC).flip();
+                writeFully(trailer);
+                channel.force(true);
+                channel.close();
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                abort();
+                throw new UncheckedIOException("Impossible d'écrire le snapshot " + file, e);
+            }
+        }
+
+        private void abort() {
+            closeQuietly(channel);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // fichier temporaire : écrasé à la prochaine tentative
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * {@link EmbeddingStore} en lecture seule sur l'image figée d'un {@link MappedEmbeddingStore}
+ * (section d'un snapshot projetée en mémoire). Rien n'est désérialisé à l'ouverture : les vecteurs
+ * sont lus directement dans la projection, les segments ne sont décodés que pour les résultats
+ * renvoyés, et les pages du fichier ne sont chargées par l'OS qu'au premier accès.
+ * <p>
+ * Disposition (gros-boutiste) : en-tête de 64 octets, vecteurs normalisés, barycentre,
+ * table des identifiants, identifiants UTF-8, table des segments, segments ({@link SegmentCodec}).
+ */
+public class FrozenEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int MAGIC = 0x46525a4e; // "FRZN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+
+    private final ByteBuffer image;
+    private final int dimension;
+    private final int count;
+    private final FloatBuffer vectors;
+    private final float[] centroid;
+    private final IntBuffer idOffsets;
+    private final int idsOffset;
+    private final IntBuffer segmentOffsets;
+    private final int segmentsOffset;
+
+    private volatile Map<String, Integer> positions; // construit à la première recherche par identifiant
+
+    private FrozenEmbeddingStore(ByteBuffer image) {
+        this.image = image;
+        if (image.getInt(0) != MAGIC || image.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Section de store figé inconnue");
+        }
+        this.dimension = image.getInt(8);
+        this.count = image.getInt(12);
+        int vectorsOffset = (int) image.getLong(16);
+        int centroidOffset = (int) image.getLong(24);
+        int idOffsetsOffset = (int) image.getLong(32);
+        this.idsOffset = (int) image.getLong(40);
+        int segmentOffsetsOffset = (int) image.getLong(48);
+        this.segmentsOffset = (int) image.getLong(56);
+
+        this.vectors = image.slice(vectorsOffset, count * dimension * Float.BYTES).asFloatBuffer();
+        if (count == 0) {
+            this.centroid = null;
+        } else {
+            this.centroid = new float[dimension];
+            image.slice(centroidOffset, dimension * Float.BYTES).asFloatBuffer().get(centroid);
+        }
+        this.idOffsets = image.slice(idOffsetsOffset, (count + 1) * Integer.BYTES).asIntBuffer();
+        this.segmentOffsets = image.slice(segmentOffsetsOffset, (count + 1) * Integer.BYTES).asIntBuffer();
+    }
+
+    /**
+     * Ouvre une image écrite par {@link #write}, typiquement une section projetée en mémoire.
+     */
+    public static FrozenEmbeddingStore open(ByteBuffer image) {
+        return new FrozenEmbeddingStore(image.duplicate());
+    }
+
+    /**
+     * Fige le contenu actuel de {@code source} (entrées supprimées exclues).
+     */
+    public static void write(DataOutputStream out, MappedEmbeddingStore source) throws IOException {
+        // 1. Identifiants et segments encodés d'abord : leurs tailles fixent les positions de l'en-tête
+        ByteArrayOutputStream idBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream segmentBytes = new ByteArrayOutputStream();
+        DataOutputStream segmentOut = new DataOutputStream(segmentBytes);
+        List<Integer> idEnds = new ArrayList<>();
+        List<Integer> segmentEnds = new ArrayList<>();
+        int dimension = source.dimension();
+        float[] centroid = source.centroid();
+        try {
+            source.forEachEntry((id, vector, segment) -> {
+                try {
+                    idBytes.write(id.getBytes(StandardCharsets.UTF_8));
+                    idEnds.add(idBytes.size());
+                    SegmentCodec.write(segmentOut, segment);
+                    segmentEnds.add(segmentOut.size());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int count = idEnds.size();
+
+        long vectorsOffset = HEADER_BYTES;
+        long centroidOffset = vectorsOffset + (long) count * dimension * Float.BYTES;
+        long idOffsetsOffset = centroidOffset + (count == 0 ? 0 : (long) dimension * Float.BYTES);
+        long idsOffset = idOffsetsOffset + (count + 1L) * Integer.BYTES;
+        long segmentOffsetsOffset = idsOffset + idBytes.size();
+        long segmentsOffset = segmentOffsetsOffset + (count + 1L) * Integer.BYTES;
+        if (segmentsOffset + segmentBytes.size() > Integer.MAX_VALUE) {
+            throw new IOException("Store trop volumineux pour une section de snapshot (2 Go)");
+        }
+
+        // 2. En-tête
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(dimension);
+        out.writeInt(count);
+        out.writeLong(vectorsOffset);
+        out.writeLong(centroidOffset);
+        out.writeLong(idOffsetsOffset);
+        out.writeLong(idsOffset);
+        out.writeLong(segmentOffsetsOffset);
+        out.writeLong(segmentsOffset);
+
+        // 3. Vecteurs (deuxième parcours), barycentre, tables et blocs encodés
+        try {
+            source.forEachEntry((id, vector, segment) -> {
+                try {
+                    for (float v : vector) {
+                        out.writeFloat(v);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (centroid != null) {
+            for (float v : centroid) {
+                out.writeFloat(v);
+            }
+        }
+        writeOffsets(out, idEnds);
+        idBytes.writeTo(out);
+        writeOffsets(out, segmentEnds);
+        segmentBytes.writeTo(out);
+    }
+
+    private static void writeOffsets(DataOutputStream out, List<Integer> ends) throws IOException {
+        out.writeInt(0);
+        for (int end : ends) {
+            out.writeInt(end);
+        }
+    }
+
+    // -------------------------------
+    // Lecture
+    // -------------------------------
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        int maxResults = request.maxResults();
+        double minScore = request.minScore();
+        Filter filter = request.filter();
+        float[] query = normalized(request.queryEmbedding().vector());
+
+        PriorityQueue<Candidate> top = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+        for (int i = 0; i < count; i++) {
+            double score = RelevanceScore.fromCosineSimilarity(dot(i, query));
+            if (score < minScore) {
+                continue;
+            }
+            if (filter != null) {
+                TextSegment segment = segment(i);
+                if (segment == null || !filter.test(segment.metadata())) {
+                    continue;
+                }
+            }
+            if (top.size() < maxResults) {
+                top.add(new Candidate(i, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new Candidate(i, score));
+            }
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Candidate candidate = top.poll();
+            matches.add(new EmbeddingMatch<>(candidate.score(), id(candidate.index()),
+                    Embedding.from(vector(candidate.index())), segment(candidate.index())));
+        }
+        matches.sort(Comparator.comparingDouble(EmbeddingMatch<TextSegment>::score).reversed());
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private record Candidate(int index, double score) {
+    }
+
+    private double dot(int index, float[] query) {
+        double sum = 0;
+        int offset = index * dimension;
+        for (int d = 0; d < dimension; d++) {
+            sum += vectors.get(offset + d) * query[d];
+        }
+        return sum;
+    }
+
+    private float[] vector(int index) {
+        float[] vector = new float[dimension];
+        vectors.get(index * dimension, vector);
+        return vector;
+    }
+
+    private String id(int index) {
+        int start = idOffsets.get(index);
+        byte[] bytes = new byte[idOffsets.get(index + 1) - start];
+        image.get(idsOffset + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private TextSegment segment(int index) {
+        int start = segmentsOffset + segmentOffsets.get(index);
+        int end = segmentsOffset + segmentOffsets.get(index + 1);
+        try {
+            return SegmentCodec.read(new DataInputStream(new BufferInput(image.slice(start, end - start))));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Segment illisible dans le snapshot", e);
+        }
+    }
+
+    /**
+     * Segment d'identifiant {@code id}, ou {@code null} (par ex. pour résoudre les résultats de l'index lexical).
+     */
+    public TextSegment segment(String id) {
+        Map<String, Integer> index = positions;
+        if (index == null) {
+            synchronized (this) {
+                index = positions;
+                if (index == null) {
+                    index = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        index.put(id(i), i);
+                    }
+                    positions = index;
+                }
+            }
+        }
+        Integer position = index.get(id);
+        return position == null ? null : segment(position);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Barycentre calculé à l'écriture (pour le routage), ou {@code null} si le store est vide.
+     */
+    public float[] centroid() {
+        return centroid == null ? null : centroid.clone();
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] copy = new float[vector.length];
+        if (norm == 0) {
+            return copy;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            copy[i] = (float) (vector[i] / norm);
+        }
+        return copy;
+    }
+
+    // -------------------------------
+    // Écriture : non supportée
+    // -------------------------------
+
+    @Override
+    public String add(Embedding embedding) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        throw readOnly();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Store figé (snapshot) : lecture seule");
+    }
+
+    /**
+     * {@link InputStream} sur un {@link ByteBuffer}, pour relire les segments avec {@link SegmentCodec}.
+     */
+    private static final class BufferInput extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+    }
+}
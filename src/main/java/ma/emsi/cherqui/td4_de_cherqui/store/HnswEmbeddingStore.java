@@ -0,0 +1,482 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link EmbeddingStore} approximatif basé sur un graphe HNSW (Malkov &amp; Yashunin).
+ * <p>
+ * Remplace {@code InMemoryEmbeddingStore} sans changer le retriever : les scores renvoyés
+ * sont les mêmes ({@code (cos + 1) / 2}), donc {@code maxResults} et {@code minScore} gardent
+ * leur sens. Paramètres :
+ * <ul>
+ *     <li>{@code m} : nombre de voisins par nœud (2·m au niveau 0) ;</li>
+ *     <li>{@code efConstruction} : largeur de la recherche lors des insertions ;</li>
+ *     <li>{@code efSearch} : largeur de la recherche à la requête (rappel vs latence).</li>
+ * </ul>
+ * Les insertions peuvent avoir lieu pendant les recherches : chaque liste de voisins est
+ * remplacée en bloc (copy-on-write) sous le verrou de son nœud, les lecteurs ne bloquent jamais.
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int[] NO_LINKS = new int[0];
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private volatile int efSearch;
+
+    private final Object growLock = new Object();
+    private final Object entryLock = new Object();
+    private volatile Node[] nodes = new Node[1024];
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile Node entryPoint;
+
+    private final Map<String, Integer> positions = new ConcurrentHashMap<>();
+    private final Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+
+    private HnswEmbeddingStore(Builder builder) {
+        this.m = builder.m;
+        this.maxM0 = 2 * builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(builder.m);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    public int size() {
+        return size.get() - deleted.size();
+    }
+
+    // -------------------------------
+    // Écriture
+    // -------------------------------
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        insert(id, embedding, null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        insert(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        insert(id, embedding, segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            ids.add(add(embedding));
+        }
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("Le nombre d'embeddings et de segments doit être identique");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(add(embeddings.get(i), embedded.get(i)));
+        }
+        return ids;
+    }
+
+    /**
+     * Suppression logique : le nœud reste dans le graphe pour la navigation mais n'est plus renvoyé.
+     */
+    @Override
+    public void remove(String id) {
+        Integer index = positions.remove(id);
+        if (index != null) {
+            deleted.add(index);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        ids.forEach(this::remove);
+    }
+
+    @Override
+    public void removeAll() {
+        for (String id : List.copyOf(positions.keySet())) {
+            remove(id);
+        }
+    }
+
+    private void insert(String id, Embedding embedding, TextSegment segment) {
+        float[] vector = normalized(embedding.vector());
+        int level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+
+        Node node;
+        synchronized (growLock) {
+            int index = size.get();
+            if (index == nodes.length) {
+                nodes = Arrays.copyOf(nodes, index * 2);
+            }
+            node = new Node(index, id, vector, segment, level);
+            nodes[index] = node;
+            size.set(index + 1);
+        }
+        Integer previous = positions.put(id, node.index);
+        if (previous != null) {
+            deleted.add(previous);
+        }
+
+        Node entry = entryPoint;
+        if (entry == null) {
+            synchronized (entryLock) {
+                if (entryPoint == null) {
+                    entryPoint = node;
+                    return;
+                }
+                entry = entryPoint;
+            }
+        }
+
+        // 1. Descente gloutonne dans les niveaux supérieurs au niveau du nouveau nœud
+        Node current = entry;
+        for (int lc = entry.level; lc > level; lc--) {
+            current = greedy(vector, current, lc);
+        }
+
+        // 2. Connexion du nœud à chaque niveau où il existe
+        List<Node> entryPoints = List.of(current);
+        for (int lc = Math.min(level, entry.level); lc >= 0; lc--) {
+            List<Scored> candidates = searchLayer(vector, entryPoints, efConstruction, lc);
+            int[] selected = new int[Math.min(m, candidates.size())];
+            int count = 0;
+            for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+                Node candidate = candidates.get(i).node();
+                if (candidate != node) {
+                    selected[count++] = candidate.index;
+                }
+            }
+            selected = Arrays.copyOf(selected, count);
+            int maxConnections = lc == 0 ? maxM0 : m;
+            synchronized (node) {
+                // Un autre thread a pu nous ajouter comme voisin entre-temps : on ne l'écrase pas
+                int[] existing = node.links.get(lc);
+                node.links.set(lc, existing == null ? selected : prune(node, union(selected, existing), maxConnections));
+            }
+
+            for (int neighbour : selected) {
+                connect(node(neighbour), node, lc, maxConnections);
+            }
+
+            List<Node> next = new ArrayList<>(candidates.size());
+            for (Scored scored : candidates) {
+                next.add(scored.node());
+            }
+            entryPoints = next;
+        }
+
+        // 3. Nouveau point d'entrée si le nœud est plus haut que l'actuel
+        if (level > entry.level) {
+            synchronized (entryLock) {
+                if (level > entryPoint.level) {
+                    entryPoint = node;
+                }
+            }
+        }
+    }
+
+    private void connect(Node neighbour, Node node, int level, int maxConnections) {
+        synchronized (neighbour) {
+            int[] old = links(neighbour, level);
+            int[] updated = Arrays.copyOf(old, old.length + 1);
+            updated[old.length] = node.index;
+            neighbour.links.set(level, prune(neighbour, updated, maxConnections));
+        }
+    }
+
+    /**
+     * Liste trop longue : on garde les {@code maxConnections} voisins les plus proches de {@code owner}.
+     */
+    private int[] prune(Node owner, int[] links, int maxConnections) {
+        if (links.length <= maxConnections) {
+            return links;
+        }
+        List<Scored> pool = new ArrayList<>(links.length);
+        for (int index : links) {
+            Node other = node(index);
+            pool.add(new Scored(other, dot(owner.vector, other.vector)));
+        }
+        pool.sort(Comparator.comparingDouble(Scored::similarity).reversed());
+        int[] pruned = new int[maxConnections];
+        for (int i = 0; i < maxConnections; i++) {
+            pruned[i] = pool.get(i).node().index;
+        }
+        return pruned;
+    }
+
+    // -------------------------------
+    // Recherche
+    // -------------------------------
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        Node entry = entryPoint;
+        if (entry == null) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float[] query = normalized(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+        Filter filter = request.filter();
+
+        Node current = entry;
+        for (int lc = entry.level; lc > 0; lc--) {
+            current = greedy(query, current, lc);
+        }
+        // Les nœuds filtrés ou supprimés consomment des places : on double ef jusqu'à trouver
+        // maxResults résultats vivants, ou avoir parcouru tout ce qui est atteignable
+        int ef = Math.max(efSearch, maxResults);
+        while (true) {
+            List<Scored> candidates = searchLayer(query, List.of(current), ef, 0);
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(maxResults);
+            boolean belowMinScore = false;
+            for (Scored candidate : candidates) {
+                Node node = candidate.node();
+                if (deleted.contains(node.index)) {
+                    continue;
+                }
+                if (filter != null && (node.segment == null || !filter.test(node.segment.metadata()))) {
+                    continue;
+                }
+                double score = RelevanceScore.fromCosineSimilarity(candidate.similarity());
+                if (score < request.minScore()) {
+                    belowMinScore = true;
+                    break; // candidats triés par similarité décroissante
+                }
+                matches.add(new EmbeddingMatch<>(score, node.id, Embedding.from(node.vector.clone()), node.segment));
+                if (matches.size() == maxResults) {
+                    break;
+                }
+            }
+            if (matches.size() == maxResults || belowMinScore || candidates.size() < ef || ef >= size.get()) {
+                return new EmbeddingSearchResult<>(matches);
+            }
+            ef = Math.min(ef * 2, size.get());
+        }
+    }
+
+    private Node greedy(float[] query, Node start, int level) {
+        Node current = start;
+        double best = dot(query, current.vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int index : links(current, level)) {
+                Node neighbour = node(index);
+                double similarity = dot(query, neighbour.vector);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Recherche en largeur limitée à {@code ef} dans un niveau ; résultat trié par similarité décroissante.
+     */
+    private List<Scored> searchLayer(float[] query, List<Node> entryPoints, int ef, int level) {
+        BitSet visited = new BitSet(size.get());
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(
+                Comparator.comparingDouble(Scored::similarity).reversed());
+        PriorityQueue<Scored> results = new PriorityQueue<>(Comparator.comparingDouble(Scored::similarity));
+
+        for (Node node : entryPoints) {
+            visited.set(node.index);
+            Scored scored = new Scored(node, dot(query, node.vector));
+            candidates.add(scored);
+            results.add(scored);
+            if (results.size() > ef) {
+                results.poll();
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            Scored closest = candidates.poll();
+            if (results.size() >= ef && closest.similarity() < results.peek().similarity()) {
+                break;
+            }
+            for (int index : links(closest.node(), level)) {
+                if (visited.get(index)) {
+                    continue;
+                }
+                visited.set(index);
+                Node neighbour = node(index);
+                double similarity = dot(query, neighbour.vector);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Scored scored = new Scored(neighbour, similarity);
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Scored> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Scored::similarity).reversed());
+        return sorted;
+    }
+
+    /**
+     * Plus longue liste de voisins au niveau {@code level} (pour les tests).
+     */
+    int maxDegree(int level) {
+        int max = 0;
+        for (int i = 0; i < size.get(); i++) {
+            max = Math.max(max, links(node(i), level).length);
+        }
+        return max;
+    }
+
+    // Lecture volatile à chaque fois : un lien peut viser un nœud ajouté après un agrandissement du tableau
+    private Node node(int index) {
+        return nodes[index];
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] merged = Arrays.copyOf(a, a.length + b.length);
+        int count = a.length;
+        outer:
+        for (int candidate : b) {
+            for (int i = 0; i < count; i++) {
+                if (merged[i] == candidate) {
+                    continue outer;
+                }
+            }
+            merged[count++] = candidate;
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    private static int[] links(Node node, int level) {
+        if (level > node.level) {
+            return NO_LINKS;
+        }
+        int[] links = node.links.get(level);
+        return links == null ? NO_LINKS : links;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] copy = new float[vector.length];
+        if (norm == 0) {
+            return copy;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            copy[i] = (float) (vector[i] / norm);
+        }
+        return copy;
+    }
+
+    private record Scored(Node node, double similarity) {
+    }
+
+    private static final class Node {
+
+        final int index;
+        final String id;
+        final float[] vector;
+        final TextSegment segment;
+        final int level;
+        final AtomicReferenceArray<int[]> links;
+
+        Node(int index, String id, float[] vector, TextSegment segment, int level) {
+            this.index = index;
+            this.id = id;
+            this.vector = vector;
+            this.segment = segment;
+            this.level = level;
+            this.links = new AtomicReferenceArray<>(level + 1);
+        }
+    }
+
+    public static class Builder {
+
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public HnswEmbeddingStore build() {
+            if (m < 2) {
+                throw new IllegalArgumentException("m doit être >= 2");
+            }
+            return new HnswEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * {@link EmbeddingStore} persistant : les vecteurs (normalisés) sont rangés à pas fixe dans un
+ * fichier {@code .vec} projeté en mémoire, les segments dans un fichier {@code .seg} à côté.
+ * <p>
+ * Les ajouts restent en mémoire jusqu'à {@link #save()}, qui réécrit les deux fichiers puis
+ * les re-projette. Les suppressions sont des "tombstones" compactées au prochain {@code save()}.
+ * <p>
+ * Les deux fichiers portent la même génération, tirée à chaque {@code save()} : une paire
+ * incohérente (arrêt entre les deux déplacements) est détectée à l'ouverture et l'index est
+ * alors à reconstruire. Les vecteurs sont projetés par tranches de moins de 2 Go.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final Logger LOGGER = Logger.getLogger(MappedEmbeddingStore.class.getName());
+
+    private static final int MAGIC = 0x52414756; // "RAGV"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    private static final int COPY_BATCH = 512;
+
+    private final Path vectorFile;
+    private final Path segmentFile;
+
+    private int dimension;
+    private FloatBuffer[] mapped = new FloatBuffer[0]; // vecteurs déjà sur disque, par tranches
+    private int vectorsPerChunk;
+    private int mappedCount;
+    private final List<float[]> pending = new ArrayList<>();
+
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private long version;
+
+    private MappedEmbeddingStore(Path vectorFile, Path segmentFile) {
+        this.vectorFile = vectorFile;
+        this.segmentFile = segmentFile;
+    }
+
+    /**
+     * Ouvre l'index {@code key} dans {@code directory} ; il est vide si les fichiers n'existent pas encore.
+     * Un index incohérent (sauvegarde interrompue, ancien format) est supprimé : il est alors vide et
+     * {@link #exists} renvoie {@code false}, ce qui déclenche sa reconstruction.
+     */
+    public static MappedEmbeddingStore open(Path directory, String key) {
+        MappedEmbeddingStore store = new MappedEmbeddingStore(
+                directory.resolve(key + ".vec"),
+                directory.resolve(key + ".seg"));
+        if (Files.exists(store.vectorFile) && Files.exists(store.segmentFile)) {
+            try {
+                store.load();
+            } catch (InconsistentIndexException e) {
+                LOGGER.warning(e.getMessage() + " : index supprimé, il sera reconstruit");
+                store.discard();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Index illisible : " + store.vectorFile, e);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * {@code true} si l'index {@code key} a été entièrement écrit par {@link #save()}, même vide
+     * (le sidecar est déplacé en dernier).
+     */
+    public static boolean exists(Path directory, String key) {
+        return Files.exists(directory.resolve(key + ".vec")) && Files.exists(directory.resolve(key + ".seg"));
+    }
+
+    // -------------------------------
+    // Écriture
+    // -------------------------------
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        append(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        append(id, embedding, segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> added = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            added.add(add(embedding));
+        }
+        return added;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("Le nombre d'embeddings et de segments doit être identique");
+        }
+        List<String> added = new ArrayList<>(embeddings.size());
+        synchronized (this) {
+            for (int i = 0; i < embeddings.size(); i++) {
+                added.add(add(embeddings.get(i), embedded.get(i)));
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Remplace le segment (texte et métadonnées) de l'entrée {@code id} en gardant son vecteur,
+     * par ex. quand seule sa position dans le document a changé.
+     *
+     * @return {@code false} si l'entrée n'existe pas
+     */
+    public synchronized boolean replaceSegment(String id, TextSegment segment) {
+        Integer index = positions.get(id);
+        if (index == null) {
+            return false;
+        }
+        segments.set(index, segment);
+        version++;
+        return true;
+    }
+
+    @Override
+    public synchronized void remove(String id) {
+        Integer index = positions.remove(id);
+        if (index != null) {
+            deleted.set(index);
+            version++;
+        }
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<String> idsToRemove) {
+        for (String id : idsToRemove) {
+            remove(id);
+        }
+    }
+
+    @Override
+    public synchronized void removeAll() {
+        deleted.set(0, ids.size());
+        positions.clear();
+        version++;
+    }
+
+    private synchronized void append(String id, Embedding embedding, TextSegment segment) {
+        float[] vector = embedding.vector();
+        if (dimension == 0) {
+            dimension = vector.length;
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Dimension " + vector.length + " incompatible avec l'index (" + dimension + ")");
+        }
+        pending.add(normalized(vector));
+        Integer previous = positions.put(id, ids.size());
+        if (previous != null) {
+            deleted.set(previous); // même id : la nouvelle valeur remplace l'ancienne
+        }
+        ids.add(id);
+        segments.add(segment);
+        version++;
+    }
+
+    // -------------------------------
+    // Recherche
+    // -------------------------------
+
+    @Override
+    public synchronized EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        int maxResults = request.maxResults();
+        double minScore = request.minScore();
+        Filter filter = request.filter();
+        float[] query = normalized(request.queryEmbedding().vector());
+
+        // Tas min de taille maxResults : on ne crée les EmbeddingMatch qu'à la fin
+        PriorityQueue<Candidate> top = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+        for (int i = 0; i < ids.size(); i++) {
+            if (deleted.get(i)) {
+                continue;
+            }
+            if (filter != null) {
+                TextSegment segment = segments.get(i);
+                if (segment == null || !filter.test(segment.metadata())) {
+                    continue;
+                }
+            }
+            double score = RelevanceScore.fromCosineSimilarity(dot(i, query));
+            if (score < minScore) {
+                continue;
+            }
+            if (top.size() < maxResults) {
+                top.add(new Candidate(i, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new Candidate(i, score));
+            }
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Candidate candidate = top.poll();
+            matches.add(new EmbeddingMatch<>(candidate.score(), ids.get(candidate.index()),
+                    Embedding.from(vector(candidate.index())), segments.get(candidate.index())));
+        }
+        matches.sort(Comparator.comparingDouble(EmbeddingMatch<TextSegment>::score).reversed());
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private record Candidate(int index, double score) {
+    }
+
+    private double dot(int index, float[] query) {
+        double sum = 0;
+        if (index < mappedCount) {
+            FloatBuffer chunk = mapped[index / vectorsPerChunk];
+            int offset = index % vectorsPerChunk * dimension;
+            for (int d = 0; d < dimension; d++) {
+                sum += chunk.get(offset + d) * query[d];
+            }
+        } else {
+            float[] vector = pending.get(index - mappedCount);
+            for (int d = 0; d < dimension; d++) {
+                sum += vector[d] * query[d];
+            }
+        }
+        return sum;
+    }
+
+    private float[] vector(int index) {
+        if (index >= mappedCount) {
+            return pending.get(index - mappedCount).clone();
+        }
+        float[] vector = new float[dimension];
+        mapped[index / vectorsPerChunk].get(index % vectorsPerChunk * dimension, vector);
+        return vector;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] copy = new float[vector.length];
+        if (norm == 0) {
+            return copy;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            copy[i] = (float) (vector[i] / norm);
+        }
+        return copy;
+    }
+
+    public synchronized int size() {
+        return ids.size() - deleted.cardinality();
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Barycentre des vecteurs (normalisés) présents dans l'index, ou {@code null} s'il est vide.
+     */
+    public synchronized float[] centroid() {
+        if (isEmpty()) {
+            return null;
+        }
+        float[] centroid = new float[dimension];
+        for (int i = 0; i < ids.size(); i++) {
+            if (deleted.get(i)) {
+                continue;
+            }
+            float[] vector = vector(i);
+            for (int d = 0; d < dimension; d++) {
+                centroid[d] += vector[d];
+            }
+        }
+        return normalized(centroid);
+    }
+
+    /**
+     * Parcourt les segments présents dans l'index (sans les vecteurs), par ex. pour reconstruire
+     * un index lexical au démarrage sans aucun appel d'embedding.
+     */
+    public synchronized void forEach(BiConsumer<String, TextSegment> action) {
+        for (int i = 0; i < ids.size(); i++) {
+            if (!deleted.get(i) && segments.get(i) != null) {
+                action.accept(ids.get(i), segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Parcourt les entrées présentes (identifiant, vecteur normalisé, segment), dans l'ordre de
+     * {@link #forEach} ; utilisé pour figer l'index dans un snapshot ({@link FrozenEmbeddingStore}).
+     */
+    synchronized void forEachEntry(EntryConsumer action) {
+        for (int i = 0; i < ids.size(); i++) {
+            if (!deleted.get(i)) {
+                action.accept(ids.get(i), vector(i), segments.get(i));
+            }
+        }
+    }
+
+    interface EntryConsumer {
+        void accept(String id, float[] vector, TextSegment segment);
+    }
+
+    /**
+     * Copie les entrées présentes dans un store en mémoire (HNSW, packed, sharded) qui sert alors
+     * les recherches, ce store restant la copie persistante. Les identifiants attribués par
+     * {@code target} sont passés à {@code copied} avec leur segment, par ex. pour l'index BM25.
+     */
+    public synchronized void copyTo(EmbeddingStore<TextSegment> target, BiConsumer<String, TextSegment> copied) {
+        List<Embedding> embeddings = new ArrayList<>(COPY_BATCH);
+        List<TextSegment> batch = new ArrayList<>(COPY_BATCH);
+        forEachEntry((id, vector, segment) -> {
+            embeddings.add(Embedding.from(vector));
+            batch.add(segment);
+            if (embeddings.size() == COPY_BATCH) {
+                copyBatch(target, embeddings, batch, copied);
+            }
+        });
+        copyBatch(target, embeddings, batch, copied);
+    }
+
+    private static void copyBatch(EmbeddingStore<TextSegment> target, List<Embedding> embeddings,
+                                  List<TextSegment> batch, BiConsumer<String, TextSegment> copied) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        List<String> added = target.addAll(embeddings, batch);
+        for (int i = 0; i < added.size(); i++) {
+            if (batch.get(i) != null) {
+                copied.accept(added.get(i), batch.get(i));
+            }
+        }
+        embeddings.clear();
+        batch.clear();
+    }
+
+    public synchronized int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Compteur incrémenté à chaque ajout ou suppression : permet aux caches en aval
+     * de savoir que le contenu de l'index a changé.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    // -------------------------------
+    // Persistance
+    // -------------------------------
+
+    /**
+     * Écrit l'index (en compactant les entrées supprimées) puis re-projette le fichier de vecteurs.
+     */
+    public synchronized void save() {
+        try {
+            Files.createDirectories(vectorFile.toAbsolutePath().getParent());
+            int live = size();
+            long generation = ThreadLocalRandom.current().nextLong();
+
+            // 1. Fichier de vecteurs : en-tête + floats little-endian à pas fixe
+            Path tmpVec = vectorFile.resolveSibling(vectorFile.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmpVec,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(dimension).putInt(live).flip();
+                channel.write(header);
+
+                ByteBuffer row = ByteBuffer.allocateDirect(Math.max(dimension, 1) * Float.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < ids.size(); i++) {
+                    if (deleted.get(i)) {
+                        continue;
+                    }
+                    row.clear();
+                    row.asFloatBuffer().put(vector(i));
+                    row.limit(dimension * Float.BYTES);
+                    while (row.hasRemaining()) {
+                        channel.write(row);
+                    }
+                }
+            }
+
+            // 2. Sidecar : identifiants + segments (texte et métadonnées)
+            Path tmpSeg = segmentFile.resolveSibling(segmentFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpSeg)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(generation);
+                out.writeInt(live);
+                for (int i = 0; i < ids.size(); i++) {
+                    if (deleted.get(i)) {
+                        continue;
+                    }
+                    SegmentCodec.writeString(out, ids.get(i));
+                    SegmentCodec.write(out, segments.get(i));
+                }
+            }
+
+            // 3. Deux déplacements atomiques : entre les deux, les générations diffèrent et load() le détecte
+            Files.move(tmpVec, vectorFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpSeg, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            ids.clear();
+            positions.clear();
+            segments.clear();
+            pending.clear();
+            deleted.clear();
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'écrire l'index " + vectorFile, e);
+        }
+    }
+
+    private void load() throws IOException {
+        long generation;
+        try (FileChannel channel = FileChannel.open(vectorFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // lecture complète de l'en-tête
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new InconsistentIndexException("Format d'index inconnu : " + vectorFile);
+            }
+            generation = header.getLong();
+            dimension = header.getInt();
+            mappedCount = header.getInt();
+            // En long : count * dimension * 4 déborde un int bien avant la taille du fichier
+            long bytes = (long) mappedCount * dimension * Float.BYTES;
+            if (mappedCount < 0 || dimension < 0 || bytes > channel.size() - HEADER_BYTES) {
+                throw new InconsistentIndexException("Index tronqué : " + mappedCount + " vecteurs de dimension "
+                        + dimension + " dans " + vectorFile);
+            }
+            mapChunks(channel);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new InconsistentIndexException("Format de sidecar inconnu : " + segmentFile);
+            }
+            if (in.readLong() != generation) {
+                throw new InconsistentIndexException("Index incohérent : " + segmentFile
+                        + " ne provient pas de la même sauvegarde que " + vectorFile);
+            }
+            int count = in.readInt();
+            if (count != mappedCount) {
+                throw new InconsistentIndexException(
+                        "Index incohérent : " + count + " segments pour " + mappedCount + " vecteurs");
+            }
+            for (int i = 0; i < count; i++) {
+                String id = SegmentCodec.readString(in);
+                positions.put(id, i);
+                ids.add(id);
+                segments.add(SegmentCodec.read(in));
+            }
+        }
+    }
+
+    /**
+     * Projette les vecteurs par tranches d'un nombre entier de vecteurs : une projection (et un
+     * {@link FloatBuffer}) est limitée à 2 Go.
+     */
+    private void mapChunks(FileChannel channel) throws IOException {
+        int rowBytes = Math.max(dimension, 1) * Float.BYTES;
+        vectorsPerChunk = Integer.MAX_VALUE / rowBytes;
+        int chunks = (mappedCount + vectorsPerChunk - 1) / vectorsPerChunk;
+        mapped = new FloatBuffer[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int first = c * vectorsPerChunk;
+            int rows = Math.min(vectorsPerChunk, mappedCount - first);
+            mapped[c] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + (long) first * rowBytes,
+                            (long) rows * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+        }
+    }
+
+    /**
+     * Oublie un index incohérent : état vide et fichiers supprimés.
+     */
+    private void discard() {
+        ids.clear();
+        positions.clear();
+        segments.clear();
+        mapped = new FloatBuffer[0];
+        mappedCount = 0;
+        dimension = 0;
+        try {
+            Files.deleteIfExists(segmentFile);
+            Files.deleteIfExists(vectorFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible de supprimer l'index " + vectorFile, e);
+        }
+    }
+
+    /**
+     * Fichiers d'index présents mais incohérents entre eux ou d'un autre format.
+     */
+    private static final class InconsistentIndexException extends IOException {
+
+        InconsistentIndexException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link EmbeddingStore} exact à recherche exhaustive, sans objets par entrée : tous les vecteurs
+ * (pré-normalisés) sont rangés bout à bout dans un seul {@code float[]} et scorés par
+ * {@link VectorKernels} (API Vector quand elle est disponible).
+ * <p>
+ * En mode {@link Mode#INT8}, chaque vecteur a aussi une version quantifiée sur 8 bits
+ * (échelle symétrique par vecteur). Le balayage se fait sur ces octets (4x moins de mémoire
+ * parcourue) et seuls les {@code maxResults × rerankFactor} meilleurs candidats sont re-scorés
+ * en pleine précision. Les floats restent donc en mémoire : INT8 accélère la recherche mais
+ * occupe plus de place que FLOAT32.
+ */
+public class PackedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    public enum Mode {
+        FLOAT32,
+        INT8
+    }
+
+    private final Mode mode;
+    private final int rerankFactor;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int dimension;
+    private int count;
+    private float[] vectors = new float[0];
+    private byte[] codes = new byte[0];
+    private float[] scales = new float[0];
+
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+
+    public PackedEmbeddingStore() {
+        this(Mode.FLOAT32, 1);
+    }
+
+    public PackedEmbeddingStore(Mode mode, int rerankFactor) {
+        this.mode = mode;
+        this.rerankFactor = Math.max(rerankFactor, 1);
+    }
+
+    /**
+     * Octets occupés par vecteur (floats, plus codes et échelle en INT8).
+     */
+    public int bytesPerVector() {
+        int floats = dimension * Float.BYTES;
+        return mode == Mode.INT8 ? floats + scannedBytesPerVector() : floats;
+    }
+
+    /**
+     * Octets parcourus par vecteur lors du balayage.
+     */
+    public int scannedBytesPerVector() {
+        return mode == Mode.INT8 ? dimension + Float.BYTES : dimension * Float.BYTES;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // -------------------------------
+    // Écriture
+    // -------------------------------
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        append(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        append(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> added = randomIds(embeddings.size());
+        append(added, embeddings, null);
+        return added;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("Le nombre d'embeddings et de segments doit être identique");
+        }
+        List<String> added = randomIds(embeddings.size());
+        append(added, embeddings, embedded);
+        return added;
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idsToRemove) {
+                Integer index = positions.remove(id);
+                if (index != null) {
+                    deleted.set(index);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            deleted.set(0, count);
+            positions.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+        lock.writeLock().lock();
+        try {
+            if (dimension == 0 && !embeddings.isEmpty()) {
+                dimension = embeddings.get(0).dimension();
+            }
+            ensureCapacity(count + embeddings.size());
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException(
+                            "Dimension " + vector.length + " incompatible avec le store (" + dimension + ")");
+                }
+                int offset = count * dimension;
+                normalizeInto(vector, vectors, offset);
+                if (mode == Mode.INT8) {
+                    scales[count] = quantizeInto(vectors, offset, dimension, codes, offset);
+                }
+                Integer previous = positions.put(newIds.get(i), count);
+                if (previous != null) {
+                    deleted.set(previous);
+                }
+                ids.add(newIds.get(i));
+                segments.add(embedded == null ? null : embedded.get(i));
+                count++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity * dimension <= vectors.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, vectors.length / Math.max(dimension, 1) * 3 / 2));
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        if (mode == Mode.INT8) {
+            codes = Arrays.copyOf(codes, newCapacity * dimension);
+            scales = Arrays.copyOf(scales, newCapacity);
+        }
+    }
+
+    // -------------------------------
+    // Recherche
+    // -------------------------------
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (count == 0 || request.maxResults() <= 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = new float[dimension];
+            normalizeInto(request.queryEmbedding().vector(), query, 0);
+            int maxResults = request.maxResults();
+            Filter filter = request.filter();
+
+            TopK top;
+            if (mode == Mode.FLOAT32) {
+                top = new TopK(maxResults);
+                for (int i = 0; i < count; i++) {
+                    if (accept(i, filter)) {
+                        top.offer(i, VectorKernels.dot(query, vectors, i * dimension));
+                    }
+                }
+            } else {
+                // 1. Balayage approximatif sur les octets
+                byte[] queryCodes = new byte[dimension];
+                float queryScale = quantizeInto(query, 0, dimension, queryCodes, 0);
+                TopK coarse = new TopK(maxResults * rerankFactor);
+                for (int i = 0; i < count; i++) {
+                    if (accept(i, filter)) {
+                        coarse.offer(i, VectorKernels.dot(queryCodes, codes, i * dimension) * queryScale * scales[i]);
+                    }
+                }
+                // 2. Re-classement exact des candidats retenus
+                top = new TopK(maxResults);
+                for (int k = 0; k < coarse.size; k++) {
+                    int i = coarse.indexes[k];
+                    top.offer(i, VectorKernels.dot(query, vectors, i * dimension));
+                }
+            }
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size);
+            for (int k : top.sortedPositions()) {
+                int i = top.indexes[k];
+                double score = RelevanceScore.fromCosineSimilarity(top.scores[k]);
+                if (score < request.minScore()) {
+                    break;
+                }
+                float[] vector = Arrays.copyOfRange(vectors, i * dimension, (i + 1) * dimension);
+                matches.add(new EmbeddingMatch<>(score, ids.get(i), Embedding.from(vector), segments.get(i)));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean accept(int index, Filter filter) {
+        if (deleted.get(index)) {
+            return false;
+        }
+        if (filter == null) {
+            return true;
+        }
+        TextSegment segment = segments.get(index);
+        return segment != null && filter.test(segment.metadata());
+    }
+
+    /**
+     * Top-k sur tableaux primitifs : on remplace le minimum courant (k est petit).
+     */
+    private static final class TopK {
+
+        final int[] indexes;
+        final float[] scores;
+        int size;
+        int minPosition;
+
+        TopK(int k) {
+            indexes = new int[k];
+            scores = new float[k];
+        }
+
+        void offer(int index, float score) {
+            if (size < indexes.length) {
+                indexes[size] = index;
+                scores[size] = score;
+                size++;
+                if (size == indexes.length) {
+                    updateMin();
+                }
+            } else if (score > scores[minPosition]) {
+                indexes[minPosition] = index;
+                scores[minPosition] = score;
+                updateMin();
+            }
+        }
+
+        private void updateMin() {
+            minPosition = 0;
+            for (int k = 1; k < size; k++) {
+                if (scores[k] < scores[minPosition]) {
+                    minPosition = k;
+                }
+            }
+        }
+
+        int[] sortedPositions() {
+            Integer[] order = new Integer[size];
+            for (int k = 0; k < size; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+            int[] positions = new int[size];
+            for (int k = 0; k < size; k++) {
+                positions[k] = order[k];
+            }
+            return positions;
+        }
+    }
+
+    // -------------------------------
+    // Utilitaires
+    // -------------------------------
+
+    private static List<String> randomIds(int n) {
+        List<String> generated = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            generated.add(UUID.randomUUID().toString());
+        }
+        return generated;
+    }
+
+    private static void normalizeInto(float[] source, float[] target, int offset) {
+        double norm = 0;
+        for (float v : source) {
+            norm += v * v;
+        }
+        float inverse = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < source.length; i++) {
+            target[offset + i] = source[i] * inverse;
+        }
+    }
+
+    /**
+     * Quantification symétrique : {@code code = round(x / scale)} avec {@code scale = max|x| / 127}.
+     */
+    private static float quantizeInto(float[] source, int sourceOffset, int length, byte[] target, int targetOffset) {
+        float max = 0;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, Math.abs(source[sourceOffset + i]));
+        }
+        float scale = max == 0 ? 1 : max / 127f;
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = (byte) Math.round(source[sourceOffset + i] / scale);
+        }
+        return scale;
+    }
+}
@@ -0,0 +1,85 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sérialisation binaire compacte d'un {@link TextSegment} (texte + métadonnées typées).
+ * Utilisée par les fichiers "sidecar" des index persistants.
+ */
+public final class SegmentCodec {
+
+    private SegmentCodec() {
+    }
+
+    public static void write(DataOutput out, TextSegment segment) throws IOException {
+        if (segment == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        writeString(out, segment.text());
+
+        Map<String, Object> map = segment.metadata().toMap();
+        out.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            // Un tag d'un caractère pour retrouver le type exact au chargement
+            switch (value) {
+                case Integer i -> { out.writeByte('I'); out.writeInt(i); }
+                case Long l -> { out.writeByte('L'); out.writeLong(l); }
+                case Float f -> { out.writeByte('F'); out.writeFloat(f); }
+                case Double d -> { out.writeByte('D'); out.writeDouble(d); }
+                case UUID u -> { out.writeByte('U'); writeString(out, u.toString()); }
+                default -> { out.writeByte('S'); writeString(out, String.valueOf(value)); }
+            }
+        }
+    }
+
+    public static TextSegment read(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        String text = readString(in);
+
+        int size = in.readInt();
+        Map<String, Object> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            byte tag = in.readByte();
+            Object value = switch (tag) {
+                case 'I' -> in.readInt();
+                case 'L' -> in.readLong();
+                case 'F' -> in.readFloat();
+                case 'D' -> in.readDouble();
+                case 'U' -> UUID.fromString(readString(in));
+                case 'S' -> readString(in);
+                default -> throw new IOException("Type de métadonnée inconnu : " + (char) tag);
+            };
+            map.put(key, value);
+        }
+        return TextSegment.from(text, Metadata.from(map));
+    }
+
+    // writeUTF est limité à 64 Ko : on préfixe par la longueur en octets
+    public static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,342 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * {@link EmbeddingStore} réparti sur N shards (par défaut des {@link PackedEmbeddingStore}).
+ * <p>
+ * Chaque entrée est affectée à un shard par hachage de son vecteur, ou par document
+ * ({@code file_name}) en partitionnement {@link Partitioning#DOCUMENT}. La recherche interroge tous
+ * les shards en parallèle sur un {@link ForkJoinPool} (top-k de chaque shard) puis fusionne les
+ * résultats dans un tas borné à {@code maxResults}.
+ * <p>
+ * Les stores des shards gèrent eux-mêmes leur concurrence (c'est le cas de {@link PackedEmbeddingStore}
+ * et de {@link HnswEmbeddingStore}) : des écritures sur des shards différents avancent en même temps,
+ * et un lot est réparti puis écrit shard par shard en parallèle.
+ */
+public class ShardedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    public enum Partitioning {
+        /**
+         * Hachage du vecteur : shards équilibrés, avec la même clé pour toutes les méthodes d'ajout
+         * (avec ou sans segment).
+         */
+        HASH,
+        /**
+         * Un document entier par shard ({@code absolute_directory_path} + {@code file_name}) :
+         * les recherches filtrées par document ne sollicitent vraiment qu'un shard.
+         */
+        DOCUMENT
+    }
+
+    private static final Comparator<EmbeddingMatch<TextSegment>> BY_SCORE =
+            Comparator.comparingDouble(EmbeddingMatch::score);
+
+    private final EmbeddingStore<TextSegment>[] shards;
+    private final Partitioning partitioning;
+    private final ForkJoinPool pool;
+
+    @SuppressWarnings("unchecked")
+    private ShardedEmbeddingStore(Builder builder) {
+        this.shards = new EmbeddingStore[builder.shards];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = builder.shardFactory.get();
+        }
+        this.partitioning = builder.partitioning;
+        this.pool = builder.pool;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // -------------------------------
+    // Écriture
+    // -------------------------------
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        shards[shardOf(embedding, null)].add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return shards[shardOf(embedding, segment)].add(embedding, segment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> added = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            added.add(add(embedding));
+        }
+        return added;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("Le nombre d'embeddings et de segments doit être identique");
+        }
+        // 1. Répartition du lot par shard, en gardant la position d'origine de chaque entrée
+        List<List<Integer>> positions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            positions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < embedded.size(); i++) {
+            positions.get(shardOf(embeddings.get(i), embedded.get(i))).add(i);
+        }
+
+        // 2. Écriture des sous-lots en parallèle, un par shard
+        String[] ids = new String[embeddings.size()];
+        Runnable[] writes = new Runnable[shards.length];
+        for (int s = 0; s < shards.length; s++) {
+            int shard = s;
+            List<Integer> mine = positions.get(s);
+            writes[s] = () -> {
+                if (mine.isEmpty()) {
+                    return;
+                }
+                List<Embedding> shardEmbeddings = new ArrayList<>(mine.size());
+                List<TextSegment> shardSegments = new ArrayList<>(mine.size());
+                for (int position : mine) {
+                    shardEmbeddings.add(embeddings.get(position));
+                    shardSegments.add(embedded.get(position));
+                }
+                List<String> shardIds = shards[shard].addAll(shardEmbeddings, shardSegments);
+                for (int k = 0; k < mine.size(); k++) {
+                    ids[mine.get(k)] = shardIds.get(k);
+                }
+            };
+        }
+        forEachShard(writes);
+        return Arrays.asList(ids);
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    /**
+     * Les identifiants ne disent pas dans quel shard se trouve l'entrée : la suppression est
+     * diffusée à tous les shards (opération rare, contrairement à la recherche).
+     */
+    @Override
+    public void removeAll(Collection<String> ids) {
+        Runnable[] removals = new Runnable[shards.length];
+        for (int s = 0; s < shards.length; s++) {
+            int shard = s;
+            removals[s] = () -> shards[shard].removeAll(ids);
+        }
+        forEachShard(removals);
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            shard.removeAll(filter);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            shard.removeAll();
+        }
+    }
+
+    private int shardOf(Embedding embedding, TextSegment segment) {
+        if (partitioning == Partitioning.DOCUMENT && segment != null) {
+            Map<String, Object> metadata = segment.metadata().toMap();
+            Object fileName = metadata.get("file_name");
+            if (fileName != null) {
+                return spread((metadata.get("absolute_directory_path") + "/" + fileName).hashCode());
+            }
+        }
+        return spread(Arrays.hashCode(embedding.vector()));
+    }
+
+    private int spread(int hash) {
+        return Math.floorMod(hash * 0x9E3779B9, shards.length);
+    }
+
+    // -------------------------------
+    // Recherche
+    // -------------------------------
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        if (pool == null || shards.length == 1) {
+            List<EmbeddingMatch<TextSegment>> matches = shards[0].search(request).matches();
+            for (int shard = 1; shard < shards.length; shard++) {
+                matches = merge(matches, shards[shard].search(request).matches(), request.maxResults());
+            }
+            return new EmbeddingSearchResult<>(matches);
+        }
+        return new EmbeddingSearchResult<>(pool.invoke(new SearchShards(request, 0, shards.length)));
+    }
+
+    /**
+     * Fusion dans un tas min borné à {@code k} : seuls les k meilleurs scores sont conservés.
+     */
+    static List<EmbeddingMatch<TextSegment>> merge(List<EmbeddingMatch<TextSegment>> left,
+                                                   List<EmbeddingMatch<TextSegment>> right, int k) {
+        PriorityQueue<EmbeddingMatch<TextSegment>> heap = new PriorityQueue<>(k + 1, BY_SCORE);
+        for (List<EmbeddingMatch<TextSegment>> matches : List.of(left, right)) {
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                if (heap.size() < k) {
+                    heap.add(match);
+                } else if (match.score() > heap.peek().score()) {
+                    heap.poll();
+                    heap.add(match);
+                } else {
+                    break; // résultats de shard triés par score décroissant
+                }
+            }
+        }
+        List<EmbeddingMatch<TextSegment>> merged = new ArrayList<>(heap);
+        merged.sort(BY_SCORE.reversed());
+        return merged;
+    }
+
+    private void forEachShard(Runnable[] tasks) {
+        if (pool == null) {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        } else {
+            pool.invoke(new ForEachShard(tasks, 0, tasks.length));
+        }
+    }
+
+    /**
+     * Diviser pour régner sur l'intervalle de shards {@code [from, to)} : une feuille interroge
+     * un shard, chaque nœud fusionne les top-k de ses deux moitiés.
+     */
+    private final class SearchShards extends RecursiveTask<List<EmbeddingMatch<TextSegment>>> {
+
+        private final EmbeddingSearchRequest request;
+        private final int from;
+        private final int to;
+
+        SearchShards(EmbeddingSearchRequest request, int from, int to) {
+            this.request = request;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<EmbeddingMatch<TextSegment>> compute() {
+            if (to - from == 1) {
+                return shards[from].search(request).matches();
+            }
+            int middle = (from + to) >>> 1;
+            SearchShards right = new SearchShards(request, middle, to);
+            right.fork();
+            List<EmbeddingMatch<TextSegment>> left = new SearchShards(request, from, middle).compute();
+            return merge(left, right.join(), request.maxResults());
+        }
+    }
+
+    private static final class ForEachShard extends RecursiveAction {
+
+        private final Runnable[] tasks;
+        private final int from;
+        private final int to;
+
+        ForEachShard(Runnable[] tasks, int from, int to) {
+            this.tasks = tasks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                tasks[from].run();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForEachShard(tasks, from, middle), new ForEachShard(tasks, middle, to));
+        }
+    }
+
+    public static class Builder {
+
+        private int shards = Runtime.getRuntime().availableProcessors();
+        private Supplier<EmbeddingStore<TextSegment>> shardFactory = PackedEmbeddingStore::new;
+        private Partitioning partitioning = Partitioning.HASH;
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        /**
+         * Nombre de shards ; par défaut, un par cœur.
+         */
+        public Builder shards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Store créé pour chaque shard (par ex. {@code () -> new PackedEmbeddingStore(Mode.INT8, 4)}),
+         * sûr entre threads.
+         */
+        public Builder shardFactory(Supplier<EmbeddingStore<TextSegment>> shardFactory) {
+            this.shardFactory = shardFactory;
+            return this;
+        }
+
+        public Builder partitioning(Partitioning partitioning) {
+            this.partitioning = partitioning;
+            return this;
+        }
+
+        /**
+         * Pool des recherches et écritures parallèles ({@code null} : exécution dans le thread appelant).
+         */
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public ShardedEmbeddingStore build() {
+            if (shards < 1) {
+                throw new IllegalStateException("Au moins un shard est nécessaire");
+            }
+            if (shardFactory == null) {
+                throw new IllegalStateException("shardFactory est obligatoire");
+            }
+            return new ShardedEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implémentations SIMD de {@link VectorKernels}. Classe séparée : elle n'est chargée que si
+ * le module incubator est présent, sinon la JVM lèverait NoClassDefFoundError.
+ */
+final class SimdKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Au moins 64 bits d'octets (plus petite forme existante) : avec des entiers sur 128 bits,
+    // 4 octets par itération ne formeraient pas un vecteur, on en charge 8 élargis en 2 parties.
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(INTS.length() * Byte.SIZE, 64)));
+    private static final int PARTS = BYTES.length() / INTS.length();
+
+    private SimdKernels() {
+    }
+
+    static float dot(float[] a, float[] b, int offset) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int i = 0;
+        int bound = FLOATS.loopBound(a.length);
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, offset + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+
+    static int dot(byte[] a, byte[] b, int offset) {
+        IntVector acc = IntVector.zero(INTS);
+        int i = 0;
+        int bound = BYTES.loopBound(a.length);
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector ba = ByteVector.fromArray(BYTES, a, i);
+            ByteVector bb = ByteVector.fromArray(BYTES, b, offset + i);
+            for (int part = 0; part < PARTS; part++) {
+                IntVector va = (IntVector) ba.convertShape(VectorOperators.B2I, INTS, part);
+                IntVector vb = (IntVector) bb.convertShape(VectorOperators.B2I, INTS, part);
+                acc = acc.add(va.mul(vb));
+            }
+        }
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,45 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+/**
+ * Produits scalaires sur tableaux primitifs. Utilise l'API Vector (SIMD) quand le module
+ * {@code jdk.incubator.vector} est chargé ({@code --add-modules jdk.incubator.vector}),
+ * sinon des boucles scalaires que C2 sait en partie vectoriser.
+ * <p>
+ * L'option JVM est facultative : sans elle (serveur d'applications lancé sans
+ * {@code --add-modules}), {@link SimdKernels} n'est jamais chargée et le repli scalaire sert.
+ */
+public final class VectorKernels {
+
+    public static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Produit scalaire entre {@code a} et {@code b[offset .. offset + a.length)}.
+     */
+    public static float dot(float[] a, float[] b, int offset) {
+        if (SIMD) {
+            return SimdKernels.dot(a, b, offset);
+        }
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Produit scalaire entier entre {@code a} et {@code b[offset .. offset + a.length)}.
+     */
+    public static int dot(byte[] a, byte[] b, int offset) {
+        if (SIMD) {
+            return SimdKernels.dot(a, b, offset);
+        }
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+}
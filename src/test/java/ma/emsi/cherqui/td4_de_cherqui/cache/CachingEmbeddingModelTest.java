@@ -0,0 +1,188 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingEmbeddingModelTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger embedded = new AtomicInteger();
+    private final EmbeddingModel counting = segments -> {
+        embedded.addAndGet(segments.size());
+        return Response.from(segments.stream().map(CachingEmbeddingModelTest::vector).toList());
+    };
+
+    @Test
+    void normalizedTextIsServedFromMemory() {
+        CachingEmbeddingModel cache = CachingEmbeddingModel.builder().delegate(counting).build();
+
+        Embedding first = cache.embed("Qu'est-ce que le RAG ?").content();
+        Embedding second = cache.embed("  Qu'est-ce   que le RAG ?\n").content();
+
+        assertEquals(1, embedded.get());
+        assertArrayEquals(first.vector(), second.vector());
+        assertEquals(1, cache.stats().memoryHits());
+    }
+
+    @Test
+    void diskCacheSurvivesRestart() {
+        Path file = dir.resolve("embeddings.log");
+        try (CachingEmbeddingModel cache = persistent(file, 1 << 20)) {
+            cache.embed("question");
+        }
+
+        try (CachingEmbeddingModel restarted = persistent(file, 1 << 20)) {
+            restarted.embed("question");
+            assertEquals(1, embedded.get());
+            assertEquals(1, restarted.stats().diskHits());
+        }
+    }
+
+    @Test
+    void aSecondInstanceOnTheSameFileWorksInMemoryOnly() {
+        Path file = dir.resolve("embeddings.log");
+        try (CachingEmbeddingModel owner = persistent(file, 1 << 20);
+             CachingEmbeddingModel other = persistent(file, 1 << 20)) {
+            owner.embed("première");
+            other.embed("seconde");
+            other.embed("seconde");
+            assertEquals(1, other.stats().memoryHits());
+        }
+
+        try (CachingEmbeddingModel restarted = persistent(file, 1 << 20)) {
+            restarted.embed("première");
+            restarted.embed("seconde");
+            // Seul le propriétaire du verrou a écrit sur disque
+            assertEquals(1, restarted.stats().diskHits());
+        }
+    }
+
+    @Test
+    void diskLogIsCompactedAndKeepsTheRecentlyUsedEntries() throws IOException {
+        Path file = dir.resolve("embeddings.log");
+        long maxDiskBytes = 2_000;
+        try (CachingEmbeddingModel cache = persistent(file, maxDiskBytes)) {
+            for (int i = 0; i < 200; i++) {
+                cache.embed("question " + i);
+                assertTrue(Files.size(file) <= maxDiskBytes);
+            }
+        }
+
+        embedded.set(0);
+        try (CachingEmbeddingModel restarted = persistent(file, maxDiskBytes)) {
+            restarted.embed("question 199");
+            restarted.embed("question 0");
+            assertEquals(1, restarted.stats().diskHits());
+            assertEquals(1, embedded.get());
+        }
+    }
+
+    @Test
+    void diskFailureIsALoggedMiss() {
+        CachingEmbeddingModel cache = persistent(dir.resolve("embeddings.log"), 1 << 20);
+        cache.close(); // journal fermé : toute lecture ou écriture disque échoue
+
+        assertEquals(2, cache.embed("question").content().vector().length);
+        assertEquals(1, cache.stats().misses());
+        assertEquals(1, embedded.get());
+    }
+
+    @Test
+    void concurrentIdenticalQueriesCallTheModelOnce() throws Exception {
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CachingEmbeddingModel cache = CachingEmbeddingModel.builder()
+                .delegate(blocking(called, release, counting))
+                .build();
+
+        CompletableFuture<Embedding> first = CompletableFuture.supplyAsync(() -> cache.embed("question").content());
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Embedding> second = CompletableFuture.supplyAsync(() -> cache.embed("question").content());
+        waitUntilCoalesced(cache);
+        release.countDown();
+
+        assertArrayEquals(first.get(5, TimeUnit.SECONDS).vector(), second.get(5, TimeUnit.SECONDS).vector());
+        assertEquals(1, embedded.get());
+    }
+
+    @Test
+    void failureReachesWaitersAndDoesNotPinTheKey() throws Exception {
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Réponse de mauvaise taille : l'appelant et le thread en attente doivent échouer, sans bloquer
+        EmbeddingModel wrongSize = segments -> Response.from(List.of());
+        CachingEmbeddingModel cache = CachingEmbeddingModel.builder()
+                .delegate(blocking(called, release, wrongSize))
+                .build();
+
+        CompletableFuture<Embedding> first = CompletableFuture.supplyAsync(() -> cache.embed("question").content());
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Embedding> second = CompletableFuture.supplyAsync(() -> cache.embed("question").content());
+        waitUntilCoalesced(cache);
+        release.countDown();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            CompletionException failure = assertThrows(CompletionException.class, first::join);
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+            assertThrows(CompletionException.class, second::join);
+        });
+        // La clé n'est plus « en cours » : un nouvel appel recalcule au lieu d'attendre
+        assertThrows(IllegalStateException.class, () -> cache.embed("question"));
+    }
+
+    private CachingEmbeddingModel persistent(Path file, long maxDiskBytes) {
+        return CachingEmbeddingModel.builder()
+                .delegate(counting)
+                .persistentFile(file)
+                .maxDiskBytes(maxDiskBytes)
+                .build();
+    }
+
+    private static EmbeddingModel blocking(CountDownLatch called, CountDownLatch release, EmbeddingModel delegate) {
+        return segments -> {
+            called.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate.embedAll(segments);
+        };
+    }
+
+    private static void waitUntilCoalesced(CachingEmbeddingModel cache) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.stats().coalesced() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, cache.stats().coalesced());
+    }
+
+    private static Embedding vector(TextSegment segment) {
+        return Embedding.from(new float[]{segment.text().length(), 1});
+    }
+}
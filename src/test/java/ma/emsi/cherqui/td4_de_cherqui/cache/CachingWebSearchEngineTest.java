@@ -0,0 +1,167 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchResults;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingWebSearchEngineTest {
+
+    @TempDir
+    Path dir;
+
+    private final MutableClock clock = new MutableClock();
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile boolean failing;
+    private final WebSearchEngine engine = request -> {
+        int call = calls.incrementAndGet();
+        if (failing) {
+            throw new IllegalStateException("quota Tavily épuisé");
+        }
+        return results(request.searchTerms() + " #" + call);
+    };
+
+    @Test
+    void normalizedQueryIsServedFromCache() {
+        CachingWebSearchEngine cache = builder().build();
+
+        String first = title(cache.search("Qu'est-ce que LangChain4j ?"));
+        String second = title(cache.search("  qu'est-ce   que langchain4j ?"));
+
+        assertEquals(first, second);
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.stats().hits());
+    }
+
+    @Test
+    void staleEntryIsServedWhileRefreshing() {
+        CachingWebSearchEngine cache = builder().build();
+        String first = title(cache.search("rag"));
+        clock.advance(Duration.ofHours(2));
+
+        assertEquals(first, title(cache.search("rag")));
+        cache.close(); // attend la fin du rafraîchissement
+
+        assertEquals(2, calls.get());
+        assertEquals(1, cache.stats().staleHits());
+        assertEquals(1, cache.stats().refreshes());
+    }
+
+    @Test
+    void expiredEntryIsServedWhenTheEngineFails() {
+        CachingWebSearchEngine cache = builder().build();
+        String first = title(cache.search("rag"));
+        clock.advance(Duration.ofDays(3));
+        failing = true;
+
+        assertEquals(first, title(cache.search("rag")));
+        assertEquals(1, cache.stats().servedOnError());
+    }
+
+    @Test
+    void concurrentIdenticalSearchesCallTheEngineOnce() throws Exception {
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CachingWebSearchEngine cache = CachingWebSearchEngine.builder()
+                .delegate(request -> {
+                    called.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return engine.search(request);
+                })
+                .clock(clock)
+                .build();
+
+        CompletableFuture<WebSearchResults> first = CompletableFuture.supplyAsync(() -> cache.search("rag"));
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        CompletableFuture<WebSearchResults> second = CompletableFuture.supplyAsync(() -> cache.search("rag"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.stats().coalesced() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertEquals(title(first.get(5, TimeUnit.SECONDS)), title(second.get(5, TimeUnit.SECONDS)));
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.stats().coalesced());
+    }
+
+    @Test
+    void persistedEntriesSurviveRestartAndCompaction() {
+        Path file = dir.resolve("web.log");
+        try (CachingWebSearchEngine cache = builder().persistentFile(file).maxEntries(2).build()) {
+            for (String query : List.of("a", "b", "c", "d", "e")) {
+                cache.search(query);
+            }
+        }
+
+        try (CachingWebSearchEngine restarted = builder().persistentFile(file).maxEntries(2).build()) {
+            assertEquals(2, restarted.stats().entries());
+            restarted.search("e");
+            assertEquals(5, calls.get());
+            assertEquals(1, restarted.stats().hits());
+        }
+    }
+
+    private CachingWebSearchEngine.Builder builder() {
+        return CachingWebSearchEngine.builder()
+                .delegate(engine)
+                .ttl(Duration.ofHours(1))
+                .staleWhileRevalidate(Duration.ofDays(1))
+                .clock(clock);
+    }
+
+    private static WebSearchResults results(String title) {
+        return WebSearchResults.from(WebSearchInformationResult.from(1L), List.of(
+                WebSearchOrganicResult.from(title, URI.create("https://example.org"), "extrait", null)));
+    }
+
+    private static String title(WebSearchResults results) {
+        return results.results().get(0).title();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
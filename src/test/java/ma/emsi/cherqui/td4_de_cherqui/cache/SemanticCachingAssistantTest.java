@@ -0,0 +1,147 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.emsi.cherqui.td4_de_cherqui.Assistant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SemanticCachingAssistantTest {
+
+    // Cosinus avec "rag" : 0.96 pour la paraphrase, 0.6 pour la question voisine
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "Qu'est-ce que le RAG ?", new float[]{1, 0, 0},
+            "C'est quoi le RAG ?", new float[]{0.96f, 0.28f, 0},
+            "À quoi sert un embedding ?", new float[]{0.6f, 0.8f, 0});
+
+    private final EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+            .map(segment -> Embedding.from(VECTORS.get(segment.text())))
+            .toList());
+    private final AtomicInteger calls = new AtomicInteger();
+    private final Assistant delegate = message -> "réponse " + calls.incrementAndGet();
+    private final MutableClock clock = new MutableClock();
+    private final AtomicLong version = new AtomicLong();
+
+    @Test
+    void paraphraseAboveTheThresholdIsServedFromTheCache() {
+        SemanticCachingAssistant assistant = assistant("cours", cache(0.9));
+
+        assertEquals("réponse 1", assistant.chat("Qu'est-ce que le RAG ?"));
+        assertEquals("réponse 1", assistant.chat("C'est quoi le RAG ?"));
+        assertEquals("réponse 2", assistant.chat("À quoi sert un embedding ?"));
+        assertEquals(1, assistant.stats().hits());
+        assertEquals(2, assistant.stats().misses());
+    }
+
+    @Test
+    void aHigherThresholdRejectsTheParaphrase() {
+        SemanticCachingAssistant assistant = assistant("cours", cache(0.99));
+
+        assistant.chat("Qu'est-ce que le RAG ?");
+        assertEquals("réponse 2", assistant.chat("C'est quoi le RAG ?"));
+    }
+
+    @Test
+    void entriesExpireAfterTheTtl() {
+        SemanticCachingAssistant assistant = assistant("cours", cache(0.9));
+
+        assistant.chat("Qu'est-ce que le RAG ?");
+        clock.advance(Duration.ofMinutes(59));
+        assertEquals("réponse 1", assistant.chat("Qu'est-ce que le RAG ?"));
+        clock.advance(Duration.ofMinutes(2));
+        assertEquals("réponse 2", assistant.chat("Qu'est-ce que le RAG ?"));
+    }
+
+    @Test
+    void aNewIndexVersionInvalidatesTheAnswers() {
+        SemanticCache cache = cache(0.9);
+        SemanticCachingAssistant assistant = assistant("cours", cache);
+
+        assistant.chat("Qu'est-ce que le RAG ?");
+        version.incrementAndGet();
+        assertEquals("réponse 2", assistant.chat("Qu'est-ce que le RAG ?"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void anAnswerGeneratedWhileTheIndexChangesIsNotStored() {
+        SemanticCache cache = cache(0.9);
+        SemanticCachingAssistant assistant = SemanticCachingAssistant.builder()
+                .delegate(message -> {
+                    version.incrementAndGet(); // ré-indexation pendant la génération
+                    return delegate.chat(message);
+                })
+                .embeddingModel(embeddingModel)
+                .indexVersion(version::get)
+                .cache(cache)
+                .build();
+
+        assistant.chat("Qu'est-ce que le RAG ?");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void aSharedCacheKeepsScopesApart() {
+        SemanticCache cache = cache(0.9);
+        SemanticCachingAssistant cours = assistant("cours", cache);
+        SemanticCachingAssistant web = assistant("web", cache);
+
+        assertEquals("réponse 1", cours.chat("Qu'est-ce que le RAG ?"));
+        assertEquals("réponse 2", web.chat("Qu'est-ce que le RAG ?"));
+        assertEquals("réponse 1", assistant("cours", cache).chat("C'est quoi le RAG ?"));
+        assertEquals(2, cache.size());
+    }
+
+    private SemanticCache cache(double threshold) {
+        return SemanticCache.builder()
+                .threshold(threshold)
+                .ttl(Duration.ofHours(1))
+                .clock(clock)
+                .build();
+    }
+
+    private SemanticCachingAssistant assistant(String scope, SemanticCache cache) {
+        return SemanticCachingAssistant.builder()
+                .delegate(delegate)
+                .embeddingModel(embeddingModel)
+                .scope(scope)
+                .indexVersion(version::get)
+                .cache(cache)
+                .build();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ma.emsi.cherqui.td4_de_cherqui.cache;
+
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchResults;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class WebSearchLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void lastRecordOfAKeyWins() {
+        Path file = dir.resolve("web.log");
+        try (WebSearchLog log = new WebSearchLog(file)) {
+            log.append("rag", cached("ancien", 1));
+            log.append("java", cached("java", 2));
+            log.append("rag", cached("nouveau", 3));
+        }
+
+        Map<String, CachingWebSearchEngine.Cached> entries = new WebSearchLog(file).load();
+
+        assertEquals(List.of("java", "rag"), List.copyOf(entries.keySet()));
+        WebSearchOrganicResult result = entries.get("rag").results().results().get(0);
+        assertEquals("nouveau", result.title());
+        assertNull(result.content());
+        assertEquals(Instant.ofEpochMilli(3), entries.get("rag").fetchedAt());
+    }
+
+    @Test
+    void truncatedTailKeepsEarlierRecords() throws IOException {
+        Path file = dir.resolve("web.log");
+        try (WebSearchLog log = new WebSearchLog(file)) {
+            log.append("a", cached("a", 1));
+            log.append("b", cached("b", 2));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertEquals(List.of("a"), List.copyOf(new WebSearchLog(file).load().keySet()));
+    }
+
+    @Test
+    void garbageLengthIsRejectedWithoutAllocating() throws IOException {
+        Path file = dir.resolve("web.log");
+        try (WebSearchLog log = new WebSearchLog(file)) {
+            log.append("a", cached("a", 1));
+        }
+        // Enregistrement dont la clé annonce ~2 Go : lecture arrêtée, pas d'OutOfMemoryError
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+            out.writeLong(2);
+            out.writeInt(Integer.MAX_VALUE - 8);
+            out.write(new byte[64]);
+        }
+
+        assertEquals(List.of("a"), List.copyOf(new WebSearchLog(file).load().keySet()));
+    }
+
+    @Test
+    void compactionKeepsOnlyLiveEntries() {
+        Path file = dir.resolve("web.log");
+        WebSearchLog log = new WebSearchLog(file);
+        log.append("a", cached("a", 1));
+        log.append("a", cached("a2", 2));
+        log.append("b", cached("b", 3));
+
+        log.compact(() -> Map.of("b", cached("b", 3)));
+        log.close();
+
+        WebSearchLog reloaded = new WebSearchLog(file);
+        assertEquals(List.of("b"), List.copyOf(reloaded.load().keySet()));
+        assertEquals(1, reloaded.records());
+    }
+
+    private static CachingWebSearchEngine.Cached cached(String title, long millis) {
+        WebSearchOrganicResult result = WebSearchOrganicResult.from(title, URI.create("https://example.org/" + title),
+                "extrait", null);
+        return new CachingWebSearchEngine.Cached(
+                WebSearchResults.from(WebSearchInformationResult.from(1L), List.of(result)), Instant.ofEpochMilli(millis));
+    }
+}
@@ -0,0 +1,109 @@
+package ma.emsi.cherqui.td4_de_cherqui.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagConfigTest {
+
+    @Test
+    void bundledConfigurationsAreValid() {
+        for (String name : List.of("naif", "pas-rag", "recuperation", "routage", "serveur")) {
+            Properties properties = RagConfig.properties("rag/" + name + ".properties");
+            // Chemins non ouverts ici ; noms ASCII pour les JVM dont l'encodage des fichiers n'est pas UTF-8
+            properties.replaceAll((key, value) -> key.toString().endsWith(".path") ? "docs/" + key : value);
+            RagConfig config = RagConfig.from(properties);
+            assertTrue(!config.sources().isEmpty() || config.web().enabled(), name);
+        }
+    }
+
+    @Test
+    void valuesAreParsedWithTheirDefaults() {
+        RagConfig config = RagConfig.from(properties(
+                "sources", " cours , notes ",
+                "source.cours.path", "docs/cours.pdf",
+                "source.cours.max-segment-size", "1_000",
+                "source.cours.store", "hnsw",
+                "source.cours.deadline", "1500ms",
+                "source.notes.path", "docs/notes",
+                "source.notes.glob", "*.txt",
+                "source.notes.watch", "2s",
+                "router", "embedding",
+                "router.fallback", "llm-gate",
+                "web.enabled", "true",
+                "web.cache.ttl", "PT30M",
+                "scheduler.chat.rate", "2.5",
+                "scheduler.chat.hedge-after", "1d"));
+
+        RagConfig.Source cours = config.sources().getFirst();
+        assertEquals(List.of("cours", "notes"), config.sources().stream().map(RagConfig.Source::name).toList());
+        assertEquals(Path.of("docs/cours.pdf"), cours.path());
+        assertEquals("cours", cours.description());
+        assertEquals(1_000, cours.maxSegmentSize());
+        assertEquals(100, cours.maxOverlap());
+        assertEquals(RagConfig.StoreType.HNSW, cours.store());
+        assertEquals(Duration.ofMillis(1500), cours.deadline());
+        assertNull(cours.watch());
+        assertEquals(Duration.ofSeconds(2), config.sources().get(1).watch());
+        assertEquals(RagConfig.Fallback.LLM_GATE, config.routing().fallback());
+        assertEquals(Duration.ofMinutes(30), config.web().cacheTtl());
+        assertNull(config.web().cacheFile());
+        assertNull(config.caches().queryEmbeddingsFile());
+        assertTrue(config.scheduling().chat().enabled());
+        assertEquals(Duration.ofDays(1), config.scheduling().chat().hedgeAfter());
+        assertFalse(config.scheduling().embedding().enabled());
+        assertEquals(Path.of(".rag-index"), config.indexDir());
+    }
+
+    @Test
+    void invalidValuesNameTheirKey() {
+        assertRejected("valeur invalide pour source.cours.max-results : beaucoup",
+                "sources", "cours", "source.cours.path", "cours.pdf", "source.cours.max-results", "beaucoup");
+        assertRejected("valeur invalide pour source.cours.deadline : 3x",
+                "sources", "cours", "source.cours.path", "cours.pdf", "source.cours.deadline", "3x");
+        assertRejected("valeur invalide pour router : aleatoire",
+                "sources", "cours", "source.cours.path", "cours.pdf", "router", "aleatoire");
+        assertRejected("source.cours.path est obligatoire", "sources", "cours");
+    }
+
+    @Test
+    void incompatibleOptionsAreRejected() {
+        assertRejected("au moins une source", "chat.model", "gemini-2.5-flash");
+        assertRejected("cache.semantic exige memory=none",
+                "sources", "cours", "source.cours.path", "cours.pdf", "cache.semantic", "true", "memory", "window");
+        assertRejected("cache.semantic n'est pas disponible en streaming",
+                "sources", "cours", "source.cours.path", "cours.pdf", "cache.semantic", "true",
+                "chat.streaming", "true");
+        assertRejected("router.fallback=llm-gate exige au moins une source",
+                "web.enabled", "true", "router", "embedding", "router.fallback", "llm-gate");
+        assertRejected("source.notes.watch exige store=mapped et retriever=vector",
+                "sources", "notes", "source.notes.path", "notes", "source.notes.watch", "2s",
+                "source.notes.retriever", "hybrid");
+        assertRejected("scheduler.*.max-concurrency >= 1",
+                "sources", "cours", "source.cours.path", "cours.pdf",
+                "scheduler.embedding.rate", "5", "scheduler.embedding.max-concurrency", "0");
+    }
+
+    private static void assertRejected(String message, String... keyValues) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> RagConfig.from(properties(keyValues)));
+        assertTrue(error.getMessage().contains(message), error.getMessage());
+    }
+
+    private static Properties properties(String... keyValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,147 @@
+package ma.emsi.cherqui.td4_de_cherqui.engine;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.web.search.WebSearchEngine;
+import ma.emsi.cherqui.td4_de_cherqui.bench.FakeStreamingChatModel;
+import ma.emsi.cherqui.td4_de_cherqui.bench.StubEmbeddingModel;
+import ma.emsi.cherqui.td4_de_cherqui.memory.TokenBudgetChatMemory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagEngineTest {
+
+    private static final String COURS = "Le RAG ajoute au prompt les segments les plus proches de la question.\n\n"
+            + "Les segments sont produits par un splitter puis stockes avec leurs embeddings.";
+
+    @TempDir
+    Path dir;
+
+    private final StubEmbeddingModel embeddingModel = new StubEmbeddingModel(16);
+    private final AtomicInteger chatCalls = new AtomicInteger();
+    // Renvoie le prompt reçu : la réponse montre le contenu injecté par le RAG
+    private final ChatLanguageModel chatModel = messages -> {
+        chatCalls.incrementAndGet();
+        return Response.from(AiMessage.from(TokenBudgetChatMemory.textOf(messages.getLast())));
+    };
+    private final ModelProvider models = new ModelProvider() {
+
+        @Override
+        public ChatLanguageModel chatModel(RagConfig.Models config) {
+            return chatModel;
+        }
+
+        @Override
+        public StreamingChatLanguageModel streamingChatModel(RagConfig.Models config) {
+            return new FakeStreamingChatModel(Duration.ZERO, Duration.ZERO, "Réponse en streaming");
+        }
+
+        @Override
+        public EmbeddingModel embeddingModel(RagConfig.Models config) {
+            return embeddingModel;
+        }
+
+        @Override
+        public WebSearchEngine webSearchEngine() {
+            throw new IllegalStateException("pas de recherche Web dans ces tests");
+        }
+    };
+
+    @Test
+    void retrievedSegmentsAreInjectedIntoThePrompt() throws IOException {
+        try (RagEngine engine = engine(config())) {
+            String answer = engine.assistant().chat("Qu'est-ce que le RAG ?");
+
+            assertTrue(answer.startsWith("Qu'est-ce que le RAG ?"), answer);
+            assertTrue(answer.contains("Le RAG ajoute au prompt"), answer);
+            assertTrue(engine.stats().contains("source/cours"), engine.stats());
+        }
+    }
+
+    @Test
+    void reconfigureReusesTheIndexAndSwitchesTheCurrentPipeline() throws IOException {
+        try (RagEngine engine = engine(config())) {
+            var assistant = engine.assistant();
+            long ingestionCalls = embeddingModel.calls();
+
+            Properties packing = config();
+            packing.setProperty("aggregator", "packing");
+            engine.reconfigure(RagConfig.from(packing));
+
+            assertEquals(ingestionCalls, embeddingModel.calls());
+            assertEquals(RagConfig.AggregatorType.PACKING, engine.config().aggregation().type());
+            assertTrue(assistant.chat("Qu'est-ce que le RAG ?").contains("Le RAG ajoute au prompt"));
+            assertTrue(engine.stats().contains("Agrégateur"), engine.stats());
+        }
+    }
+
+    @Test
+    void semanticCacheAnswersRepeatedQuestionsWithoutTheModel() throws IOException {
+        Properties cached = config();
+        cached.setProperty("cache.semantic", "true");
+        try (RagEngine engine = engine(cached)) {
+            String first = engine.assistant().chat("Qu'est-ce que le RAG ?");
+            String second = engine.assistant().chat("Qu'est-ce que le RAG ?");
+
+            assertEquals(first, second);
+            assertEquals(1, chatCalls.get());
+        }
+    }
+
+    @Test
+    void streamingPipelinesOnlyServeTheStreamingAssistant() throws IOException {
+        Properties streaming = config();
+        streaming.setProperty("chat.streaming", "true");
+        try (RagEngine engine = engine(streaming)) {
+            assertThrows(IllegalStateException.class, () -> engine.assistant().chat("Qu'est-ce que le RAG ?"));
+
+            StringBuilder answer = new StringBuilder();
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            engine.streamingAssistant().chat("Qu'est-ce que le RAG ?")
+                    .onNext(answer::append)
+                    .onComplete(response -> done.complete(null))
+                    .onError(done::completeExceptionally)
+                    .start();
+            done.join();
+            assertEquals("Réponse en streaming", answer.toString());
+        }
+    }
+
+    private RagEngine engine(Properties properties) {
+        return RagEngine.builder()
+                .config(RagConfig.from(properties))
+                .modelProvider(models)
+                .build();
+    }
+
+    private Properties config() throws IOException {
+        Path cours = dir.resolve("cours.txt");
+        if (!Files.exists(cours)) {
+            Files.writeString(cours, COURS);
+        }
+        Properties properties = new Properties();
+        properties.setProperty("index.dir", dir.resolve("index").toString());
+        properties.setProperty("sources", "cours");
+        properties.setProperty("source.cours.path", cours.toString());
+        properties.setProperty("source.cours.max-segment-size", "100");
+        properties.setProperty("source.cours.max-overlap", "0");
+        // Embeddings simulés (sans sens) : min-score 0 par défaut, les deux segments sont toujours injectés
+        properties.setProperty("source.cours.max-results", "2");
+        return properties;
+    }
+}
@@ -0,0 +1,95 @@
+package ma.emsi.cherqui.td4_de_cherqui.evaluation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvaluationSetTest {
+
+    private static final List<String> RETRIEVED = List.of(
+            "Introduction au cours.",
+            "Un EmbeddingStore garde les vecteurs.",
+            "Le RAG combine recherche et génération.",
+            "Le ChatMemory conserve l'historique.");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recallCountsPassagesFoundInTheTopK() {
+        EvaluationSet.Question question = question("embeddingstore | rag combine | absent du corpus");
+
+        assertEquals(0.0, question.recallAt(1, RETRIEVED));
+        assertEquals(1.0 / 3, question.recallAt(2, RETRIEVED), 1e-9);
+        assertEquals(2.0 / 3, question.recallAt(3, RETRIEVED), 1e-9);
+        // k au-delà du nombre de segments : tous les segments comptent
+        assertEquals(2.0 / 3, question.recallAt(10, RETRIEVED), 1e-9);
+    }
+
+    @Test
+    void reciprocalRankUsesTheFirstRelevantSegment() {
+        assertEquals(0.5, question("EmbeddingStore, garde").reciprocalRank(RETRIEVED));
+        assertEquals(1.0 / 3, question("RAG COMBINE").reciprocalRank(RETRIEVED), 1e-9);
+        assertEquals(0.0, question("absent du corpus").reciprocalRank(RETRIEVED));
+        assertEquals(0.0, question("").reciprocalRank(RETRIEVED));
+    }
+
+    @Test
+    void loadNormalizesPassagesAndMarksOffTopicQuestions() throws IOException {
+        Path file = Files.writeString(dir.resolve("questions.tsv"), """
+                # commentaire
+                Qu'est-ce que le RAG ?\tRecherche  et Génération | EmbeddingStore
+
+                Quelle est la capitale de l'Australie ?
+                """);
+
+        EvaluationSet set = EvaluationSet.load(file.toString());
+
+        assertEquals(2, set.questions().size());
+        EvaluationSet.Question rag = set.questions().get(0);
+        assertEquals("q01", rag.id());
+        assertEquals(List.of("recherche et génération", "embeddingstore"), rag.passages());
+        assertTrue(rag.labelled());
+        assertFalse(set.questions().get(1).labelled());
+    }
+
+    @Test
+    void summaryAveragesLabelledSuccessfulQuestionsOnly() {
+        List<EvaluationReport.Result> results = List.of(
+                result("q01", true, 1.0, 1.0, null),
+                result("q02", true, 0.0, 0.25, null),
+                result("q03", true, Double.NaN, Double.NaN, "IllegalStateException : échec"),
+                result("q04", false, Double.NaN, Double.NaN, null));
+        EvaluationReport report = new EvaluationReport("test.properties", "questions.tsv", "stub", 1,
+                0, 0, 1, results, List.of());
+
+        Map<String, Double> summary = report.summary();
+
+        assertEquals(2.0, summary.get("labelled"));
+        assertEquals(1.0, summary.get("errors"));
+        assertEquals(0.5, summary.get("recall_at_1"));
+        assertEquals(0.625, summary.get("mrr"));
+        assertEquals(3.0, summary.get("off_topic_segments"));
+    }
+
+    private static EvaluationSet.Question question(String passages) {
+        List<String> normalized = passages.isBlank() ? List.of()
+                : List.of(passages.split("\\|")).stream().map(EvaluationSet::normalize).toList();
+        return new EvaluationSet.Question("q", "question", normalized);
+    }
+
+    private static EvaluationReport.Result result(String id, boolean labelled, double recall, double reciprocalRank,
+                                                  String error) {
+        return new EvaluationReport.Result(id, "question " + id, labelled, recall, recall, recall, reciprocalRank,
+                3, 10, 20, 100, 10, error);
+    }
+}
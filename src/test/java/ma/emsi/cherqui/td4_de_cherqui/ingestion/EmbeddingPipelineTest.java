@@ -0,0 +1,168 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingPipelineTest {
+
+    private final InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+
+    @Test
+    void segmentsAreEmbeddedInBatchesAndAllStored() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        EmbeddingModel model = segments -> {
+            batchSizes.add(segments.size());
+            return embeddings(segments);
+        };
+        List<String> stored = Collections.synchronizedList(new ArrayList<>());
+
+        EmbeddingPipeline.Stats stats = EmbeddingPipeline.builder()
+                .embeddingModel(model)
+                .embeddingStore(store)
+                .batchSize(3)
+                .onStored((ids, batch) -> stored.addAll(ids))
+                .build()
+                .ingest(segments(10));
+
+        assertEquals(10, stats.segments());
+        assertEquals(List.of(1, 3, 3, 3), batchSizes.stream().sorted().toList());
+        assertEquals(10, stored.size());
+        assertEquals(10, store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{1, 1}))
+                .maxResults(20)
+                .build()).matches().size());
+    }
+
+    @Test
+    void rateLimitsAreRetriedAndOtherErrorsAreNot() {
+        AtomicInteger calls = new AtomicInteger();
+        EmbeddingModel throttled = segments -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw new RuntimeException("HTTP 429 Too Many Requests");
+            }
+            return embeddings(segments);
+        };
+        EmbeddingPipeline.Stats stats = pipeline(throttled, 1, 1).ingest(segments(1));
+        assertEquals(2, stats.retries());
+        assertEquals(1, stats.segments());
+        assertEquals(3, calls.get());
+
+        AtomicInteger failing = new AtomicInteger();
+        EmbeddingModel broken = segments -> {
+            failing.incrementAndGet();
+            throw new IllegalArgumentException("requête invalide");
+        };
+        assertThrows(IllegalArgumentException.class, () -> pipeline(broken, 1, 1).ingest(segments(1)));
+        assertEquals(1, failing.get());
+    }
+
+    @Test
+    void producerIsBlockedWhenTheQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        EmbeddingModel slow = segments -> {
+            await(release);
+            return embeddings(segments);
+        };
+        EmbeddingPipeline pipeline = pipeline(slow, 1, 1);
+        AtomicInteger accepted = new AtomicInteger();
+        Thread producer = Thread.ofPlatform().start(() -> {
+            for (TextSegment segment : segments(5)) {
+                pipeline.accept(segment);
+                accepted.incrementAndGet();
+            }
+        });
+
+        // Un lot chez le worker, un dans la file : le troisième attend
+        Thread.sleep(300);
+        assertEquals(2, accepted.get());
+        assertEquals(Thread.State.WAITING, producer.getState());
+
+        release.countDown();
+        producer.join(5_000);
+        assertEquals(5, pipeline.finish().segments());
+    }
+
+    @Test
+    void interruptedFinishStopsTheWorkers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch workerInterrupted = new CountDownLatch(1);
+        EmbeddingModel blocked = segments -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                workerInterrupted.countDown();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return embeddings(segments);
+        };
+        EmbeddingPipeline pipeline = pipeline(blocked, 1, 1);
+        pipeline.accept(TextSegment.from("en cours"));
+        pipeline.accept(TextSegment.from("en attente"));
+
+        // File pleine : finish() bloque en y déposant le marqueur de fin
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread finishing = Thread.ofPlatform().start(() -> {
+            try {
+                pipeline.finish();
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        Thread.sleep(200);
+        finishing.interrupt();
+        finishing.join(5_000);
+
+        assertInstanceOf(IllegalStateException.class, thrown.get());
+        assertTrue(workerInterrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    private EmbeddingPipeline pipeline(EmbeddingModel model, int batchSize, int queueCapacity) {
+        return EmbeddingPipeline.builder()
+                .embeddingModel(model)
+                .embeddingStore(store)
+                .batchSize(batchSize)
+                .concurrency(1)
+                .queueCapacity(queueCapacity)
+                .initialBackoff(Duration.ofMillis(1))
+                .build();
+    }
+
+    private static List<TextSegment> segments(int count) {
+        return IntStream.range(0, count).mapToObj(i -> TextSegment.from("segment " + i)).toList();
+    }
+
+    private static Response<List<Embedding>> embeddings(List<TextSegment> segments) {
+        return Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{segment.text().length(), 1}))
+                .toList());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.ParserDecorator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalIndexerTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger embedded = new AtomicInteger();
+    private final AtomicBoolean unavailable = new AtomicBoolean();
+    private final EmbeddingModel embeddingModel = segments -> {
+        if (unavailable.get()) {
+            throw new IllegalStateException("modèle d'embedding indisponible");
+        }
+        embedded.addAndGet(segments.size());
+        return Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{segment.text().length(), 1}))
+                .toList());
+    };
+    private final PdfTextExtractor extractor = PdfTextExtractor.builder().cacheDir(null).build();
+
+    @Test
+    void onlyChangedSegmentsAreEmbeddedAndKeptOnesAreRenumbered() throws IOException {
+        Path source = Files.createDirectories(dir.resolve("docs"));
+        Files.writeString(source.resolve("cours.txt"), paragraphs(0, 12));
+        Files.writeString(source.resolve("notes.txt"), paragraphs(100, 4));
+        Files.writeString(source.resolve("ignore.md"), paragraphs(200, 4));
+
+        IncrementalIndexer.UpdateReport first = indexer(source).update();
+        assertEquals(2, first.filesAdded());
+        int initial = embedded.get();
+        assertEquals(initial, first.segmentsEmbedded());
+
+        // Un paragraphe ajouté en tête : tous les segments suivants changent de position
+        Path cours = source.resolve("cours.txt");
+        Files.writeString(cours, "Nouveau paragraphe d'introduction au cours.\n\n" + paragraphs(0, 12));
+        IncrementalIndexer indexer = indexer(source);
+        IncrementalIndexer.UpdateReport second = indexer.update();
+
+        assertEquals(1, second.filesChanged());
+        assertEquals(1, second.filesUnchanged());
+        assertTrue(second.segmentsKept() > 0);
+        assertEquals(second.segmentsEmbedded(), embedded.get() - initial);
+        assertTrue(second.segmentsEmbedded() < initial / 2);
+
+        String text = extractor.load(cours).text();
+        List<TextSegment> segments = segmentsOf(indexer, "cours.txt");
+        List<String> indexes = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            int start = segment.metadata().getInteger(OffsetRecursiveSplitter.START_OFFSET);
+            int end = segment.metadata().getInteger(OffsetRecursiveSplitter.END_OFFSET);
+            assertEquals(text.substring(start, end), segment.text());
+            indexes.add(segment.metadata().getString("index"));
+        }
+        assertEquals(segments.size(), indexes.stream().distinct().count());
+        for (int i = 0; i < segments.size(); i++) {
+            assertTrue(indexes.contains(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    void deletedFilesAreRemovedAndUnchangedOnesAreNotReembedded() throws IOException {
+        Path source = Files.createDirectories(dir.resolve("docs"));
+        Files.writeString(source.resolve("cours.txt"), paragraphs(0, 6));
+        Path notes = Files.writeString(source.resolve("notes.txt"), paragraphs(100, 4));
+        indexer(source).update();
+        int initial = embedded.get();
+
+        Files.delete(notes);
+        IncrementalIndexer indexer = indexer(source);
+        IncrementalIndexer.UpdateReport report = indexer.update();
+
+        assertEquals(1, report.filesRemoved());
+        assertEquals(1, report.filesUnchanged());
+        assertEquals(0, report.segmentsEmbedded());
+        assertEquals(initial, embedded.get());
+        assertEquals(List.of(), segmentsOf(indexer, "notes.txt"));
+        assertEquals(indexer.store().size(), segmentsOf(indexer, "cours.txt").size());
+    }
+
+    @Test
+    void failedNewFileIsRetriedAtTheNextUpdate() throws IOException {
+        Path source = Files.createDirectories(dir.resolve("docs"));
+        Files.writeString(source.resolve("cours.txt"), paragraphs(0, 6));
+        Path broken = Files.writeString(source.resolve("notes.txt"), "CORROMPU " + paragraphs(100, 4));
+        // Parseur qui échoue sur les fichiers marqués, comme sur un PDF corrompu
+        PdfTextExtractor flaky = PdfTextExtractor.builder()
+                .cacheDir(null)
+                .parserFactory(() -> new ParserDecorator(new AutoDetectParser()) {
+                    @Override
+                    public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
+                                      ParseContext context) throws IOException, SAXException, TikaException {
+                        byte[] content = stream.readAllBytes();
+                        if (new String(content, StandardCharsets.UTF_8).startsWith("CORROMPU")) {
+                            throw new TikaException("fichier corrompu");
+                        }
+                        super.parse(new ByteArrayInputStream(content), handler, metadata, context);
+                    }
+                })
+                .build();
+
+        IncrementalIndexer indexer = indexer(source, flaky);
+        IncrementalIndexer.UpdateReport first = indexer.update();
+        assertEquals(1, first.filesAdded());
+        assertEquals(1, first.filesFailed());
+        assertEquals(List.of(), segmentsOf(indexer, "notes.txt"));
+
+        Files.writeString(broken, paragraphs(100, 4));
+        IncrementalIndexer.UpdateReport second = indexer(source, flaky).update();
+        assertEquals(1, second.filesAdded());
+        assertEquals(1, second.filesUnchanged());
+        assertEquals(0, second.filesFailed());
+    }
+
+    @Test
+    void failedEmbeddingLeavesThePreviousVersionIndexedAndIsRetried() throws IOException {
+        Path source = Files.createDirectories(dir.resolve("docs"));
+        Path cours = Files.writeString(source.resolve("cours.txt"), paragraphs(0, 6));
+        indexer(source).update();
+        List<String> before = segmentsOf(indexer(source), "cours.txt").stream().map(TextSegment::text).toList();
+
+        Files.writeString(cours, paragraphs(0, 3) + "\n\n" + paragraphs(50, 3));
+        Files.writeString(source.resolve("notes.txt"), paragraphs(100, 4));
+        unavailable.set(true);
+        IncrementalIndexer.UpdateReport failedUpdate = indexer(source).update();
+
+        assertEquals(0, failedUpdate.filesChanged());
+        assertEquals(0, failedUpdate.filesAdded());
+        assertEquals(2, failedUpdate.filesFailed());
+        IncrementalIndexer reopened = indexer(source);
+        assertEquals(before, segmentsOf(reopened, "cours.txt").stream().map(TextSegment::text).toList());
+        assertEquals(List.of(), segmentsOf(reopened, "notes.txt"));
+        assertEquals(before.size(), reopened.store().size());
+
+        unavailable.set(false);
+        IncrementalIndexer.UpdateReport retried = reopened.update();
+        assertEquals(1, retried.filesChanged());
+        assertEquals(1, retried.filesAdded());
+        assertEquals(3, retried.segmentsKept());
+        String text = extractor.load(cours).text();
+        for (TextSegment segment : segmentsOf(reopened, "cours.txt")) {
+            int start = segment.metadata().getInteger(OffsetRecursiveSplitter.START_OFFSET);
+            int end = segment.metadata().getInteger(OffsetRecursiveSplitter.END_OFFSET);
+            assertEquals(text.substring(start, end), segment.text());
+        }
+    }
+
+    private IncrementalIndexer indexer(Path source) {
+        return indexer(source, extractor);
+    }
+
+    private IncrementalIndexer indexer(Path source, PdfTextExtractor extractor) {
+        return IncrementalIndexer.builder()
+                .sourceDir(source)
+                .indexDir(dir.resolve("index"))
+                .embeddingModel(embeddingModel)
+                .modelName("test")
+                .extractor(extractor)
+                .maxSegmentSize(200)
+                .maxOverlap(0)
+                .glob("*.txt")
+                .build();
+    }
+
+    private static List<TextSegment> segmentsOf(IncrementalIndexer indexer, String file) {
+        List<TextSegment> segments = new ArrayList<>();
+        indexer.store().forEach((id, segment) -> {
+            if (file.equals(segment.metadata().getString(IncrementalIndexer.SOURCE_KEY))) {
+                segments.add(segment);
+            }
+        });
+        return segments;
+    }
+
+    /**
+     * Paragraphes d'environ 150 caractères (un par segment de 200), en ASCII et sans séparateurs :
+     * Tika détecte alors le même type et le même charset d'une version du fichier à l'autre.
+     */
+    private static String paragraphs(int first, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int p = first; p < first + count; p++) {
+            text.append(p == first ? "" : "\n\n")
+                    .append("Paragraphe ").append(p)
+                    .append(" du cours ou le RAG combine la recherche de segments pertinents et la production des")
+                    .append(" reponses avec des segments qui gardent leurs positions.");
+        }
+        return text.toString();
+    }
+}
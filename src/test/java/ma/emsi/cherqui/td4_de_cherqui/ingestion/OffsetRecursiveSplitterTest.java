@@ -0,0 +1,101 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffsetRecursiveSplitterTest {
+
+    private static final String[] WORDS = {"LangChain4j", "relie", "les", "modèles", "de", "langage", "aux",
+            "applications", "Java", "le", "RAG", "combine", "recherche", "et", "génération", "embeddings"};
+
+    @Test
+    void parallelSplitMatchesSequentialSplit() {
+        Document document = Document.from(corpus(200_000));
+        List<TextSegment> sequential = OffsetRecursiveSplitter.builder().pool(null).build().split(document);
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            List<TextSegment> parallel = OffsetRecursiveSplitter.builder()
+                    .pool(pool)
+                    .parallelThreshold(1_000)
+                    .build()
+                    .split(document);
+            assertEquals(sequential, parallel);
+        }
+    }
+
+    @Test
+    void offsetsPointBackIntoTheDocument() {
+        String text = corpus(20_000);
+        List<TextSegment> segments = OffsetRecursiveSplitter.recursive(300, 60).split(Document.from(text));
+
+        int previousStart = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            TextSegment segment = segments.get(i);
+            int start = segment.metadata().getInteger(OffsetRecursiveSplitter.START_OFFSET);
+            int end = segment.metadata().getInteger(OffsetRecursiveSplitter.END_OFFSET);
+            assertEquals(text.substring(start, end), segment.text());
+            assertEquals(String.valueOf(i), segment.metadata().getString("index"));
+            assertTrue(segment.text().length() <= 300);
+            assertTrue(start > previousStart);
+            previousStart = start;
+        }
+        // Tout le texte non blanc est couvert, du premier au dernier caractère
+        assertEquals(0, segments.getFirst().metadata().getInteger(OffsetRecursiveSplitter.START_OFFSET));
+        assertEquals(text.strip().length(),
+                segments.getLast().metadata().getInteger(OffsetRecursiveSplitter.END_OFFSET));
+    }
+
+    @Test
+    void consecutiveSegmentsOverlapWithinTheLimit() {
+        List<TextSegment> segments = OffsetRecursiveSplitter.recursive(300, 60).split(Document.from(corpus(20_000)));
+
+        for (int i = 1; i < segments.size(); i++) {
+            int previousEnd = segments.get(i - 1).metadata().getInteger(OffsetRecursiveSplitter.END_OFFSET);
+            int start = segments.get(i).metadata().getInteger(OffsetRecursiveSplitter.START_OFFSET);
+            assertTrue(previousEnd - start <= 60, "recouvrement de " + (previousEnd - start) + " caractères");
+        }
+    }
+
+    @Test
+    void pageByPageNumbersSegmentsAcrossTheDocument() {
+        List<String> pages = List.of(corpus(1_500), corpus(900), corpus(2_000));
+        String text = String.join("\n\n", pages);
+
+        List<TextSegment> segments = new ArrayList<>();
+        var onPage = OffsetRecursiveSplitter.recursive(300, 60).pageByPage(segments::add);
+        pages.forEach(page -> onPage.accept(Document.from(page)));
+
+        for (int i = 0; i < segments.size(); i++) {
+            TextSegment segment = segments.get(i);
+            int start = segment.metadata().getInteger(OffsetRecursiveSplitter.START_OFFSET);
+            int end = segment.metadata().getInteger(OffsetRecursiveSplitter.END_OFFSET);
+            assertEquals(text.substring(start, end), segment.text());
+            assertEquals(String.valueOf(i), segment.metadata().getString("index"));
+        }
+    }
+
+    /**
+     * Texte pseudo-aléatoire reproductible : phrases, lignes et paragraphes de longueurs variées.
+     */
+    private static String corpus(int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            int words = 3 + random.nextInt(25);
+            for (int w = 0; w < words; w++) {
+                text.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            int separator = random.nextInt(10);
+            text.append(separator < 6 ? ". " : separator < 9 ? ".\n" : ".\n\n");
+        }
+        return text.toString().strip();
+    }
+}
@@ -0,0 +1,84 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import org.apache.tika.parser.AutoDetectParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class PdfTextExtractorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesAreStreamedWithTheirNumber() throws IOException {
+        Path file = write("cours.txt", "LangChain4j relie les modèles de langage aux applications Java.");
+        PdfTextExtractor extractor = PdfTextExtractor.builder().cacheDir(null).build();
+
+        List<Document> pages = new ArrayList<>();
+        assertEquals(1, extractor.loadPages(file, pages::add));
+
+        assertEquals(1, pages.size());
+        assertEquals(extractor.load(file).text(), pages.getFirst().text());
+        assertEquals(1, pages.getFirst().metadata().getInteger(PdfTextExtractor.PAGE_NUMBER));
+        assertEquals("cours.txt", pages.getFirst().metadata().getString("file_name"));
+    }
+
+    @Test
+    void statsSeparateColdParsesFromCacheHits() throws IOException {
+        Path file = write("cours.txt", "Le RAG combine recherche et génération.");
+        PdfTextExtractor extractor = PdfTextExtractor.builder().cacheDir(dir.resolve("cache")).build();
+
+        extractor.extract(file, page -> {
+        });
+        extractor.extract(file, page -> {
+        });
+        extractor.extract(file, page -> {
+        });
+
+        PdfTextExtractor.Stats stats = extractor.stats();
+        assertEquals(1, stats.parsedFiles());
+        assertEquals(2, stats.cachedFiles());
+        assertEquals(3, stats.files());
+        assertEquals(stats.parsedPages() * 3, stats.pages());
+    }
+
+    @Test
+    void failedParserCreationFreesItsPoolSlot() throws IOException {
+        Path file = write("cours.txt", "Texte du cours.");
+        AtomicBoolean fail = new AtomicBoolean(true);
+        PdfTextExtractor extractor = PdfTextExtractor.builder()
+                .cacheDir(null)
+                .poolSize(1)
+                .parserFactory(() -> {
+                    if (fail.getAndSet(false)) {
+                        throw new UncheckedIOException(new IOException("configuration Tika illisible"));
+                    }
+                    return new AutoDetectParser();
+                })
+                .build();
+
+        assertThrows(UncheckedIOException.class, () -> extractor.extract(file, page -> {
+        }));
+        // Sans la place rendue, le seul parseur du pool serait attendu indéfiniment
+        assertEquals(1, assertTimeoutPreemptively(Duration.ofSeconds(10), () -> extractor.extract(file, page -> {
+        })));
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(dir.resolve(name), text);
+    }
+}
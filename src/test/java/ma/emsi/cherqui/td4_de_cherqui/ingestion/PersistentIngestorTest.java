@@ -0,0 +1,97 @@
+package ma.emsi.cherqui.td4_de_cherqui.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.emsi.cherqui.td4_de_cherqui.store.MappedEmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentIngestorTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger embedded = new AtomicInteger();
+    private final EmbeddingModel embeddingModel = segments -> {
+        embedded.addAndGet(segments.size());
+        return Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{segment.text().length(), 1}))
+                .toList());
+    };
+
+    @Test
+    void indexedDocumentIsReloadedWithoutEmbeddingCalls() throws IOException {
+        Path document = write("cours.txt", "LangChain4j relie les modèles de langage aux applications Java.");
+        Path indexDir = dir.resolve("index");
+
+        MappedEmbeddingStore first = PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 500, 100);
+        int calls = embedded.get();
+        MappedEmbeddingStore second = PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 500, 100);
+
+        assertTrue(calls > 0);
+        assertEquals(calls, embedded.get());
+        assertEquals(first.size(), second.size());
+    }
+
+    @Test
+    void documentWithoutTextIsNotIngestedAgain() throws IOException {
+        Path document = write("vide.txt", " \n\n ");
+        Path indexDir = dir.resolve("index");
+
+        PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 500, 100);
+        String key = PersistentIngestor.indexKey(document, "test", 500, 100);
+        assertTrue(MappedEmbeddingStore.exists(indexDir, key));
+
+        // Deuxième démarrage : l'index vide est complet, rien n'est ré-extrait ni ré-ingéré
+        assertTrue(PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 500, 100).isEmpty());
+        assertEquals(0, embedded.get());
+    }
+
+    @Test
+    void reingestionDeletesThePreviousVersionFiles() throws IOException {
+        Path document = write("cours.txt", "Première version du cours.");
+        Path indexDir = dir.resolve("index");
+        PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 500, 100);
+        String oldKey = PersistentIngestor.indexKey(document, "test", 500, 100);
+        Files.writeString(indexDir.resolve(oldKey + ".snapshot"), "dérivé de l'ancienne version");
+
+        Files.writeString(document, "Deuxième version du cours, modifiée.");
+        PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 500, 100);
+        String newKey = PersistentIngestor.indexKey(document, "test", 500, 100);
+
+        assertFalse(MappedEmbeddingStore.exists(indexDir, oldKey));
+        assertTrue(MappedEmbeddingStore.exists(indexDir, newKey));
+        try (Stream<Path> files = Files.list(indexDir)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(oldKey)));
+        }
+    }
+
+    @Test
+    void otherSplitterParametersKeepTheirOwnIndex() throws IOException {
+        Path document = write("cours.txt", "Un même document découpé de deux façons.");
+        Path indexDir = dir.resolve("index");
+        PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 500, 100);
+        PersistentIngestor.loadOrIngest(document, indexDir, embeddingModel, "test", 200, 20);
+
+        for (List<Integer> params : List.of(List.of(500, 100), List.of(200, 20))) {
+            assertTrue(MappedEmbeddingStore.exists(indexDir,
+                    PersistentIngestor.indexKey(document, "test", params.get(0), params.get(1))));
+        }
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(dir.resolve(name), text);
+    }
+}
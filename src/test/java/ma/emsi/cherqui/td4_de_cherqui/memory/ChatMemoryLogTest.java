@@ -0,0 +1,129 @@
+package ma.emsi.cherqui.td4_de_cherqui.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatMemoryLogTest {
+
+    @TempDir
+    Path dir;
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void historiesSurviveReopeningAndDeletion() {
+        Path file = dir.resolve("sessions.log");
+        try (ChatMemoryLog log = new ChatMemoryLog(file)) {
+            log.updateMessages("a", conversation("a", 1));
+            log.updateMessages("b", conversation("b", 1));
+            log.updateMessages("a", conversation("a", 2));
+            log.deleteMessages("b");
+        }
+        try (ChatMemoryLog log = new ChatMemoryLog(file)) {
+            assertEquals(conversation("a", 2), log.getMessages("a"));
+            assertEquals(List.of(), log.getMessages("b"));
+            assertEquals(1, log.stats().sessions());
+        }
+    }
+
+    @Test
+    void expiredHistoriesAreForgotten() {
+        Path file = dir.resolve("sessions.log");
+        try (ChatMemoryLog log = new ChatMemoryLog(file, 2.0, Duration.ofHours(1), clock)) {
+            log.updateMessages("ancienne", conversation("ancienne", 1));
+            clock.advance(Duration.ofMinutes(40));
+            log.updateMessages("recente", conversation("recente", 1));
+            clock.advance(Duration.ofMinutes(30));
+
+            assertEquals(List.of(), log.getMessages("ancienne"));
+            log.expire();
+            assertEquals(1, log.stats().sessions());
+            assertEquals(1, log.stats().expired());
+        }
+        // Relu au démarrage : l'historique expiré n'est pas restauré
+        clock.advance(Duration.ofMinutes(10));
+        try (ChatMemoryLog log = new ChatMemoryLog(file, 2.0, Duration.ofHours(1), clock)) {
+            assertEquals(List.of(), log.getMessages("ancienne"));
+            assertEquals(conversation("recente", 1), log.getMessages("recente"));
+        }
+    }
+
+    @Test
+    void compactionKeepsConcurrentUpdates() throws Exception {
+        Path file = dir.resolve("sessions.log");
+        // Ratio élevé : pas de compaction en arrière-plan, seulement celle appelée ici
+        try (ChatMemoryLog log = new ChatMemoryLog(file, 1_000, null, clock)) {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int s = 0; s < 8; s++) {
+                    String id = "session-" + s;
+                    executor.execute(() -> {
+                        for (int turn = 1; turn <= 40; turn++) {
+                            log.updateMessages(id, conversation(id, turn));
+                        }
+                    });
+                }
+            }
+            long before = Files.size(file);
+            log.compact();
+            assertTrue(Files.size(file) * 10 < before);
+            for (int s = 0; s < 8; s++) {
+                assertEquals(conversation("session-" + s, 40), log.getMessages("session-" + s));
+            }
+        }
+        try (ChatMemoryLog log = new ChatMemoryLog(file)) {
+            assertEquals(8, log.stats().sessions());
+            assertEquals(conversation("session-3", 40), log.getMessages("session-3"));
+        }
+    }
+
+    private static List<ChatMessage> conversation(String id, int turns) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int turn = 1; turn <= turns; turn++) {
+            messages.add(UserMessage.from("Question " + turn + " de " + id + " sur le RAG ?"));
+            messages.add(AiMessage.from("Réponse " + turn + " : le RAG combine recherche et génération."));
+        }
+        return messages;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ma.emsi.cherqui.td4_de_cherqui.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBudgetChatMemoryTest {
+
+    private static final String SYSTEM = "Tu es un assistant pour le cours de RAG.";
+
+    @Test
+    void oldestWholeExchangesAreRemovedToStayWithinTheBudget() {
+        TokenBudgetChatMemory.Metrics metrics = new TokenBudgetChatMemory.Metrics();
+        int exchange = tokens(question(0)) + tokens(answer(0));
+        int budget = tokens(SystemMessage.from(SYSTEM)) + 2 * exchange + tokens(question(3));
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder().maxTokens(budget).metrics(metrics).build();
+
+        memory.add(SystemMessage.from(SYSTEM));
+        for (int i = 0; i < 3; i++) {
+            memory.add(question(i));
+            memory.add(answer(i));
+        }
+        memory.add(question(3));
+
+        List<ChatMessage> messages = memory.messages();
+        assertEquals(List.of(SystemMessage.from(SYSTEM), question(1), answer(1), question(2), answer(2), question(3)),
+                messages);
+        assertTrue(total(messages) <= budget);
+        assertEquals(2, metrics.droppedMessages());
+        assertEquals(total(messages), metrics.maxPromptTokens());
+    }
+
+    @Test
+    void theCurrentQuestionIsKeptEvenAboveTheBudget() {
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder().maxTokens(5).build();
+
+        memory.add(SystemMessage.from(SYSTEM));
+        memory.add(question(0));
+        memory.add(answer(0));
+        memory.add(question(1));
+
+        assertEquals(List.of(SystemMessage.from(SYSTEM), question(1)), memory.messages());
+    }
+
+    @Test
+    void retrievedContentIsKeptOnlyUntilTheAnswerArrives() {
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder().build();
+        String augmented = "Qu'est-ce que le RAG ?" + TokenBudgetChatMemory.DEFAULT_RETRIEVED_CONTENT_MARKER
+                + "Le RAG combine la recherche de segments et la génération.";
+
+        memory.add(UserMessage.from(augmented));
+        assertEquals(UserMessage.from(augmented), memory.messages().getLast());
+
+        memory.add(AiMessage.from("Une technique qui ajoute des documents au prompt."));
+        assertEquals(List.of(UserMessage.from("Qu'est-ce que le RAG ?"),
+                AiMessage.from("Une technique qui ajoute des documents au prompt.")), memory.messages());
+    }
+
+    @Test
+    void evictedExchangesAreSummarizedIntoTheSystemMessage() {
+        List<String> prompts = new ArrayList<>();
+        ChatLanguageModel summarizer = messages -> {
+            prompts.add(TokenBudgetChatMemory.textOf(messages.getLast()));
+            return Response.from(AiMessage.from("résumé " + prompts.size()));
+        };
+        TokenBudgetChatMemory.Metrics metrics = new TokenBudgetChatMemory.Metrics();
+        int budget = tokens(SystemMessage.from(SYSTEM + "\n\nRésumé de la conversation précédente : résumé 1"))
+                + tokens(question(0)) + tokens(answer(0)) + tokens(question(0));
+        TokenBudgetChatMemory memory = TokenBudgetChatMemory.builder()
+                .maxTokens(budget)
+                .summarizer(summarizer)
+                .metrics(metrics)
+                .build();
+
+        memory.add(SystemMessage.from(SYSTEM));
+        for (int i = 0; i < 3; i++) {
+            memory.add(question(i));
+            memory.add(answer(i));
+        }
+
+        List<ChatMessage> messages = memory.messages();
+        assertEquals(SystemMessage.from(SYSTEM + "\n\nRésumé de la conversation précédente : résumé 2"),
+                messages.getFirst());
+        assertEquals(List.of(question(2), answer(2)), messages.subList(1, messages.size()));
+        assertEquals(2, metrics.summaries());
+        assertTrue(prompts.get(0).contains("Utilisateur : " + question(0).singleText()), prompts.get(0));
+        // Le résumé précédent est repris dans le suivant
+        assertTrue(prompts.get(1).contains("résumé 1"), prompts.get(1));
+        assertTrue(prompts.get(1).contains("Assistant : " + answer(1).text()), prompts.get(1));
+
+        // Un nouveau message système remplace l'ancien sans perdre le résumé
+        memory.add(SystemMessage.from("Réponds en anglais."));
+        assertEquals(SystemMessage.from("Réponds en anglais.\n\nRésumé de la conversation précédente : résumé 2"),
+                memory.messages().getFirst());
+        assertEquals(1, memory.messages().stream().filter(SystemMessage.class::isInstance).count());
+        assertInstanceOf(UserMessage.class, memory.messages().get(1));
+    }
+
+    private static UserMessage question(int i) {
+        return UserMessage.from("Question " + i + " : que fait l'étape de récupération ?");
+    }
+
+    private static AiMessage answer(int i) {
+        return AiMessage.from("Réponse " + i + " : elle cherche les segments les plus proches de la question.");
+    }
+
+    private static int tokens(ChatMessage message) {
+        return TokenBudgetChatMemory.estimateTokens(message);
+    }
+
+    private static int total(List<ChatMessage> messages) {
+        return messages.stream().mapToInt(TokenBudgetChatMemoryTest::tokens).sum();
+    }
+}
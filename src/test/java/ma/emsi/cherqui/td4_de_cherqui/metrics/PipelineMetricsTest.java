@@ -0,0 +1,24 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineMetricsTest {
+
+    @Test
+    void labelValuesAreEscaped() {
+        assertEquals("a\\\\b\\\"c\\nd", PipelineMetrics.escape("a\\b\"c\nd"));
+    }
+
+    @Test
+    void scrapeKeepsOneSamplePerLine() {
+        PipelineMetrics metrics = new PipelineMetrics(false);
+        metrics.cache("cache\nmultiligne", () -> 3, () -> 1);
+
+        String scrape = metrics.scrape();
+
+        assertTrue(scrape.contains("rag_cache_hits_total{cache=\"cache\\nmultiligne\"} 3\n"), scrape);
+    }
+}
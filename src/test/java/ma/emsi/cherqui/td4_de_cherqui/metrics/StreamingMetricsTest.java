@@ -0,0 +1,71 @@
+package ma.emsi.cherqui.td4_de_cherqui.metrics;
+
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.service.AiServices;
+import ma.emsi.cherqui.td4_de_cherqui.StreamingAssistant;
+import ma.emsi.cherqui.td4_de_cherqui.bench.FakeStreamingChatModel;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingMetricsTest {
+
+    private static final String ANSWER = "Le RAG combine recherche et génération.";
+
+    @Test
+    void firstTokenArrivesLongBeforeTheEndOfTheAnswer() {
+        // 100 ms avant le premier token, puis 5 tokens espacés de 40 ms
+        StreamingAssistant assistant = assistant(new FakeStreamingChatModel(
+                Duration.ofMillis(100), Duration.ofMillis(40), ANSWER));
+        StreamingMetrics metrics = new StreamingMetrics();
+        List<String> tokens = new ArrayList<>();
+
+        String answer = metrics.stream(System.nanoTime(), assistant.chat("Qu'est-ce que le RAG ?"), tokens::add);
+
+        assertEquals(ANSWER, answer);
+        assertEquals(List.of("Le ", "RAG ", "combine ", "recherche ", "et ", "génération."), tokens);
+        StreamingMetrics.Stats stats = metrics.stats();
+        assertEquals(1, stats.requests());
+        assertTrue(stats.ttftP50Millis() >= 100, stats.toString());
+        assertTrue(stats.totalP50Millis() >= 300, stats.toString());
+        assertTrue(stats.totalP50Millis() - stats.ttftP50Millis() >= 150, stats.toString());
+    }
+
+    @Test
+    void latenciesIncludeTheTimeBeforeTheStreamStarts() throws InterruptedException {
+        StreamingAssistant assistant = assistant(new FakeStreamingChatModel(Duration.ZERO, Duration.ZERO, ANSWER));
+        StreamingMetrics metrics = new StreamingMetrics();
+
+        long start = System.nanoTime();
+        Thread.sleep(50); // récupération RAG simulée
+        metrics.stream(start, assistant.chat("Qu'est-ce que le RAG ?"), token -> {
+        });
+
+        assertTrue(metrics.stats().ttftP50Millis() >= 50, metrics.stats().toString());
+    }
+
+    @Test
+    void streamingErrorsAreRethrownAndNotRecorded() {
+        StreamingChatLanguageModel failing = (messages, handler) -> handler.onError(new IllegalStateException("quota"));
+        StreamingMetrics metrics = new StreamingMetrics();
+
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> metrics.stream(System.nanoTime(), assistant(failing).chat("Question"), token -> {
+                }));
+
+        assertEquals("quota", error.getMessage());
+        assertEquals(0, metrics.stats().requests());
+    }
+
+    private static StreamingAssistant assistant(StreamingChatLanguageModel chatModel) {
+        return AiServices.builder(StreamingAssistant.class)
+                .streamingChatLanguageModel(chatModel)
+                .build();
+    }
+}
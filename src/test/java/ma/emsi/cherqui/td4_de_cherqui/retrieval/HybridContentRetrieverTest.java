@@ -0,0 +1,98 @@
+package ma.emsi.cherqui.td4_de_cherqui.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.cherqui.td4_de_cherqui.lexical.Bm25Index;
+import ma.emsi.cherqui.td4_de_cherqui.store.PackedEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HybridContentRetrieverTest {
+
+    // Axe 0 : récupération, axe 1 : cuisine, axe 2 : sport
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "Le retriever interroge le store d'embeddings.", new float[]{1, 0, 0},
+            "La recherche lexicale BM25 complète le retriever.", new float[]{0.8f, 0.6f, 0},
+            "Une recette de tarte aux pommes.", new float[]{0, 1, 0},
+            "Le match de football a eu lieu hier.", new float[]{0, 0, 1});
+    private static final Map<String, float[]> QUERIES = Map.of(
+            "Le retriever et la recherche lexicale", new float[]{0.7f, 0.7f, 0});
+
+    private final EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+            .map(segment -> Embedding.from(VECTORS.getOrDefault(segment.text(),
+                    QUERIES.getOrDefault(segment.text(), new float[]{1, 0, 0}))))
+            .toList());
+
+    private final PackedEmbeddingStore store = new PackedEmbeddingStore();
+    private final Bm25Index lexicalIndex;
+
+    HybridContentRetrieverTest() {
+        Bm25Index.Builder lexical = Bm25Index.builder();
+        for (Map.Entry<String, float[]> entry : VECTORS.entrySet()) {
+            TextSegment segment = TextSegment.from(entry.getKey());
+            lexical.add(store.add(Embedding.from(entry.getValue()), segment), segment);
+        }
+        lexicalIndex = lexical.build();
+    }
+
+    @Test
+    void segmentFoundByBothSearchesRanksFirst() {
+        try (HybridContentRetriever retriever = builder().maxResults(2).build()) {
+            List<String> texts = texts(retriever.retrieve(Query.from("Le retriever et la recherche lexicale")));
+
+            assertEquals("La recherche lexicale BM25 complète le retriever.", texts.get(0));
+        }
+    }
+
+    @Test
+    void lexicalOnlyHitsBelowTheirThresholdAreDropped() {
+        // "tarte" n'apparaît que dans un segment orthogonal à la question : sous le seuil vectoriel
+        try (HybridContentRetriever gated = builder().maxResults(4).minScore(0.6).lexicalMinScore(100).build();
+             HybridContentRetriever open = builder().maxResults(4).minScore(0.6).build()) {
+            Query query = Query.from("tarte");
+
+            assertTrue(texts(open.retrieve(query)).contains("Une recette de tarte aux pommes."));
+            assertTrue(texts(gated.retrieve(query)).stream().noneMatch(text -> text.contains("tarte")));
+        }
+    }
+
+    @Test
+    void slowEmbeddingFallsBackToLexicalResults() {
+        EmbeddingModel slow = segments -> {
+            try {
+                Thread.sleep(5_000); // interrompu à l'échéance
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return embeddingModel.embedAll(segments);
+        };
+        try (HybridContentRetriever retriever = builder().embeddingModel(slow)
+                .embeddingTimeout(Duration.ofMillis(50)).build()) {
+            List<String> texts = texts(retriever.retrieve(Query.from("football")));
+
+            assertEquals(List.of("Le match de football a eu lieu hier."), texts);
+            assertEquals(1, retriever.stats().lexicalOnly());
+        }
+    }
+
+    private HybridContentRetriever.Builder builder() {
+        return HybridContentRetriever.builder()
+                .lexicalIndex(lexicalIndex)
+                .embeddingStore(store)
+                .embeddingModel(embeddingModel);
+    }
+
+    private static List<String> texts(List<Content> contents) {
+        return contents.stream().map(content -> content.textSegment().text()).toList();
+    }
+}
@@ -0,0 +1,111 @@
+package ma.emsi.cherqui.td4_de_cherqui.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.OffsetRecursiveSplitter;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PackingContentAggregatorTest {
+
+    private static final String COURS = "Le RAG combine la recherche de segments pertinents et la génération"
+            + " de réponses. Les segments voisins se recouvrent pour garder le contexte de chaque phrase.";
+
+    private final PackingContentAggregator aggregator = PackingContentAggregator.builder().build();
+
+    @Test
+    void adjacentSegmentsWithOffsetsAreMergedExactly() {
+        List<Content> packed = aggregator.aggregate(single(
+                located(1, 40, 100), located(0, 0, 50)));
+
+        assertEquals(List.of(COURS.substring(0, 100)), texts(packed));
+        assertEquals(1, aggregator.stats().merged());
+    }
+
+    @Test
+    void aGapBetweenOffsetsIsJoinedWithoutRemovingText() {
+        List<Content> packed = aggregator.aggregate(single(located(0, 0, 30), located(1, 35, 60)));
+
+        assertEquals(List.of(COURS.substring(0, 30) + " " + COURS.substring(35, 60)), texts(packed));
+    }
+
+    @Test
+    void overlapWithoutOffsetsMustReachTheMinimumLength() {
+        StringBuilder coincidence = new StringBuilder("Le cours présente la classe");
+        PackingContentAggregator.appendWithoutOverlap(coincidence, "est utile pour le RAG", 10, 1_000);
+        assertEquals("Le cours présente la classe est utile pour le RAG", coincidence.toString());
+
+        StringBuilder overlapping = new StringBuilder("Le RAG combine la recherche de segments");
+        PackingContentAggregator.appendWithoutOverlap(overlapping, "la recherche de segments pertinents", 10, 1_000);
+        assertEquals("Le RAG combine la recherche de segments pertinents", overlapping.toString());
+
+        // Recouvrement plus long que celui du splitter : coïncidence, pas un recouvrement
+        StringBuilder bounded = new StringBuilder("Le RAG combine la recherche de segments");
+        PackingContentAggregator.appendWithoutOverlap(bounded, "la recherche de segments pertinents", 10, 12);
+        assertEquals("Le RAG combine la recherche de segments la recherche de segments pertinents", bounded.toString());
+    }
+
+    @Test
+    void segmentsWithoutOffsetsAreMergedOnTheirTextualOverlap() {
+        List<Content> packed = aggregator.aggregate(single(
+                indexed(0, "Le cours présente la classe"), indexed(1, "est utile pour le RAG")));
+
+        assertEquals(List.of("Le cours présente la classe est utile pour le RAG"), texts(packed));
+    }
+
+    @Test
+    void repeatedSegmentsAndNearDuplicatesAreDropped() {
+        Content first = located(0, 0, 81);
+        Content copy = Content.from(TextSegment.from("Copie web : " + COURS.substring(0, 81)));
+        Map<Query, Collection<List<Content>>> queries = Map.of(
+                Query.from("Qu'est-ce que le RAG ?"), List.of(List.of(first, copy), List.of(located(0, 0, 81))));
+
+        List<Content> packed = aggregator.aggregate(queries);
+
+        // Le segment renvoyé par les deux requêtes est fusionné par le RRF, la copie est retirée ensuite
+        assertEquals(List.of(COURS.substring(0, 81)), texts(packed));
+        assertEquals(1, aggregator.stats().duplicates());
+    }
+
+    @Test
+    void passagesAreSkippedWhenTheyExceedTheRemainingBudget() {
+        PackingContentAggregator packing = PackingContentAggregator.builder().maxTokens(20).build();
+        String shortText = "Les embeddings sont normalisés avant";
+        String longText = "La recherche hybride combine le score BM25 des mots exacts et la similarité cosinus.";
+        String lastText = "Le prompt reste court ainsi";
+
+        List<Content> packed = packing.aggregate(single(
+                Content.from(shortText), Content.from(longText), Content.from(lastText)));
+
+        assertEquals(List.of(shortText, lastText), texts(packed));
+        assertEquals(1, packing.stats().overBudget());
+        assertEquals(16, packing.stats().tokensOut());
+    }
+
+    private static Content located(int index, int start, int end) {
+        return Content.from(TextSegment.from(COURS.substring(start, end), Metadata.from("file_name", "cours.txt")
+                .put("index", String.valueOf(index))
+                .put(OffsetRecursiveSplitter.START_OFFSET, start)
+                .put(OffsetRecursiveSplitter.END_OFFSET, end)));
+    }
+
+    private static Content indexed(int index, String text) {
+        return Content.from(TextSegment.from(text, Metadata.from("file_name", "notes.txt")
+                .put("index", String.valueOf(index))));
+    }
+
+    private static Map<Query, Collection<List<Content>>> single(Content... contents) {
+        return Map.of(Query.from("Qu'est-ce que le RAG ?"), List.of(List.of(contents)));
+    }
+
+    private static List<String> texts(List<Content> contents) {
+        return contents.stream().map(content -> content.textSegment().text()).toList();
+    }
+}
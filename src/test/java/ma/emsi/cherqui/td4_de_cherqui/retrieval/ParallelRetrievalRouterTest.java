@@ -0,0 +1,61 @@
+package ma.emsi.cherqui.td4_de_cherqui.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelRetrievalRouterTest {
+
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+    private final ContentRetriever fast = query -> List.of(Content.from("rapide"));
+    private final ContentRetriever slow = query -> {
+        try {
+            Thread.sleep(5_000);
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return List.of(Content.from("lent"));
+    };
+
+    @Test
+    void lateSourceIsDroppedAndInterrupted() throws InterruptedException {
+        try (ParallelRetrievalRouter router = ParallelRetrievalRouter.builder()
+                .delegate(new DefaultQueryRouter(fast, slow))
+                .source(slow, "lente", Duration.ofMillis(50))
+                .build()) {
+            assertEquals(List.of("rapide"), retrieve(router));
+            assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void singleRoutedSourceKeepsItsDeadline() throws InterruptedException {
+        try (ParallelRetrievalRouter router = ParallelRetrievalRouter.builder()
+                .delegate(new DefaultQueryRouter(slow))
+                .defaultDeadline(Duration.ofMillis(50))
+                .build()) {
+            long start = System.nanoTime();
+            assertEquals(List.of(), retrieve(router));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+            assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+        }
+    }
+
+    private static List<String> retrieve(ParallelRetrievalRouter router) {
+        Query query = Query.from("question");
+        return router.route(query).stream()
+                .flatMap(retriever -> retriever.retrieve(query).stream())
+                .map(content -> content.textSegment().text())
+                .toList();
+    }
+}
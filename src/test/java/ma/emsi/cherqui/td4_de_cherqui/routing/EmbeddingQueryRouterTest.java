@@ -0,0 +1,95 @@
+package ma.emsi.cherqui.td4_de_cherqui.routing;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EmbeddingQueryRouterTest {
+
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "cours", new float[]{1, 0, 0},
+            "web", new float[]{0, 1, 0},
+            "Qu'est-ce que le RAG ?", new float[]{1, 0.1f, 0},
+            "Recette de la pizza", new float[]{0.2f, 0, 1},
+            "Actualité du RAG", new float[]{1, 1, 0},
+            "RAG dans la presse", new float[]{1, 0.95f, 0});
+
+    private final EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+            .map(segment -> Embedding.from(VECTORS.get(segment.text())))
+            .toList());
+    private final ContentRetriever cours = query -> List.of();
+    private final ContentRetriever web = query -> List.of();
+    private final AtomicInteger fallbackCalls = new AtomicInteger();
+    private final QueryRouter fallback = query -> {
+        fallbackCalls.incrementAndGet();
+        return List.of(cours, web);
+    };
+    private final AtomicLong version = new AtomicLong();
+
+    @Test
+    void clearQuestionsAreRoutedLocally() {
+        EmbeddingQueryRouter router = router(fallback);
+
+        assertEquals(List.of(cours), List.copyOf(router.route(Query.from("Qu'est-ce que le RAG ?"))));
+        assertEquals(List.of(), List.copyOf(router.route(Query.from("Recette de la pizza"))));
+        assertEquals(0, fallbackCalls.get());
+        assertEquals(2, router.stats().local());
+    }
+
+    @Test
+    void ambiguousQuestionsAreDelegatedOnceThenServedFromTheCache() {
+        EmbeddingQueryRouter router = router(fallback);
+
+        assertEquals(List.of(cours, web), List.copyOf(router.route(Query.from("Actualité du RAG"))));
+        assertEquals(List.of(cours, web), List.copyOf(router.route(Query.from("  actualité du rag "))));
+        assertEquals(1, fallbackCalls.get());
+        assertEquals(1, router.stats().cached());
+    }
+
+    @Test
+    void aNewIndexVersionInvalidatesCachedDecisions() {
+        EmbeddingQueryRouter router = router(fallback);
+
+        router.route(Query.from("Actualité du RAG"));
+        version.incrementAndGet();
+        router.route(Query.from("Actualité du RAG"));
+        assertEquals(2, fallbackCalls.get());
+        assertEquals(0, router.stats().cached());
+    }
+
+    @Test
+    void failingFallbackUsesTheBestLocalRouteWithoutCachingIt() {
+        AtomicInteger attempts = new AtomicInteger();
+        EmbeddingQueryRouter router = router(query -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("LLM indisponible");
+        });
+
+        assertEquals(List.of(cours), List.copyOf(router.route(Query.from("RAG dans la presse"))));
+        assertEquals(List.of(cours), List.copyOf(router.route(Query.from("RAG dans la presse"))));
+        assertEquals(2, attempts.get());
+        assertEquals(2, router.stats().fallbackFailures());
+        assertEquals(0, router.stats().cached());
+    }
+
+    private EmbeddingQueryRouter router(QueryRouter fallback) {
+        return EmbeddingQueryRouter.builder()
+                .embeddingModel(embeddingModel)
+                .route(cours, "cours", null)
+                .route(web, "web", null)
+                .fallback(fallback)
+                .indexVersion(version::get)
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+package ma.emsi.cherqui.td4_de_cherqui.scheduling;
+
+import ma.emsi.cherqui.td4_de_cherqui.scheduling.RequestScheduler.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestSchedulerTest {
+
+    @Test
+    void bulkIsAdmittedWithABurstOfOne() {
+        // Avec burst = 1, l'ancienne réserve (0,25 jeton) empêchait tout appel d'ingestion
+        try (RequestScheduler scheduler = RequestScheduler.builder()
+                .ratePerSecond(100)
+                .burst(1)
+                .maxWait(Duration.ofSeconds(2))
+                .build()) {
+            assertEquals("ok", scheduler.execute(Priority.BULK, () -> "ok"));
+        }
+    }
+
+    @Test
+    void waitingInteractiveCallGoesBeforeBulk() throws Exception {
+        try (RequestScheduler scheduler = RequestScheduler.builder()
+                .ratePerSecond(1000)
+                .burst(10)
+                .initialConcurrency(1)
+                .maxConcurrency(1)
+                .build()) {
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<String> order = new CopyOnWriteArrayList<>();
+
+            CompletableFuture<Void> busy = CompletableFuture.runAsync(() -> scheduler.execute(Priority.INTERACTIVE, () -> {
+                running.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            }));
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Void> bulk = CompletableFuture.runAsync(() -> scheduler.execute(Priority.BULK, () -> order.add("bulk")));
+            Thread.sleep(50);
+            CompletableFuture<Void> interactive = CompletableFuture.runAsync(
+                    () -> scheduler.execute(Priority.INTERACTIVE, () -> order.add("interactif")));
+            Thread.sleep(50);
+            release.countDown();
+
+            CompletableFuture.allOf(busy, bulk, interactive).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("interactif", "bulk"), order);
+        }
+    }
+
+    @Test
+    void rateLimitedCallIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        try (RequestScheduler scheduler = RequestScheduler.builder()
+                .ratePerSecond(1000)
+                .retryBackoff(Duration.ofMillis(1))
+                .pauseAfterRateLimit(Duration.ofMillis(1))
+                .build()) {
+            String result = scheduler.execute(Priority.BULK, () -> {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("HTTP 429 Too Many Requests");
+                }
+                return "ok";
+            });
+
+            assertEquals("ok", result);
+            assertEquals(1, scheduler.stats().retries());
+            assertEquals(1, scheduler.stats().rateLimited());
+        }
+    }
+
+    @Test
+    void slowCallIsHedgedAndEverySlotIsReturned() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (RequestScheduler scheduler = RequestScheduler.builder()
+                .ratePerSecond(1000)
+                .burst(10)
+                .hedgeAfter(Duration.ofMillis(20))
+                .build()) {
+            String result = scheduler.execute(Priority.INTERACTIVE, () -> {
+                if (attempts.incrementAndGet() == 1) {
+                    Thread.sleep(5_000); // interrompu quand le second appel gagne
+                    return "lent";
+                }
+                return "rapide";
+            });
+
+            assertEquals("rapide", result);
+            assertEquals(1, scheduler.stats().hedges());
+            assertEquals(1, scheduler.stats().hedgesWon());
+            waitUntilIdle(scheduler);
+        }
+    }
+
+    private static void waitUntilIdle(RequestScheduler scheduler) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.inFlight() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, scheduler.inFlight());
+    }
+}
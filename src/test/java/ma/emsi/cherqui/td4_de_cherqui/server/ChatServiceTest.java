@@ -0,0 +1,104 @@
+package ma.emsi.cherqui.td4_de_cherqui.server;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatServiceTest {
+
+    private final Map<String, ChatMemory> memories = new ConcurrentHashMap<>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Test
+    void rejectedQuestionIsRolledBack() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        ChatLanguageModel model = messages -> {
+            if (reject.get()) {
+                throw new AdmissionRejectedException("saturé");
+            }
+            return Response.from(AiMessage.from("réponse " + messages.size()));
+        };
+        ChatService service = service(model, 10);
+
+        assertThrows(AdmissionRejectedException.class, () -> service.chat("a", "question 1"));
+        assertEquals(List.of(), memories.get("a").messages());
+
+        reject.set(false);
+        assertEquals("réponse 1", service.chat("a", "question 2"));
+        assertEquals(2, memories.get("a").messages().size());
+    }
+
+    @Test
+    void busySessionIsNotEvicted() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ChatLanguageModel model = messages -> {
+            if (messages.getLast().toString().contains("lente")) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Response.from(AiMessage.from("ok"));
+        };
+        ChatService service = service(model, 1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> busy = executor.submit(() -> service.chat("a", "question lente"));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            // Table pleine : "a" est occupée, c'est "b" qui sera évincée à son tour
+            service.chat("b", "question");
+            release.countDown();
+            busy.get(5, TimeUnit.SECONDS);
+        }
+        service.chat("a", "suite");
+
+        assertEquals(2, created.get()); // "a" n'a jamais été recréée
+        assertEquals(4, memories.get("a").messages().size());
+    }
+
+    @Test
+    void closeDeletesHistory() {
+        ChatService service = service(messages -> Response.from(AiMessage.from("ok")), 10);
+        service.chat("a", "question");
+        ChatMemory memory = memories.get("a");
+
+        service.close("a");
+
+        assertEquals(List.of(), memory.messages());
+        assertEquals(0, service.stats().activeSessions());
+    }
+
+    private ChatService service(ChatLanguageModel model, int maxSessions) {
+        return ChatService.builder()
+                .chatModel(model)
+                .maxSessions(maxSessions)
+                .memoryFactory(sessionId -> {
+                    created.incrementAndGet();
+                    ChatMemory memory = MessageWindowChatMemory.withMaxMessages(10);
+                    memories.put(sessionId, memory);
+                    return memory;
+                })
+                .build();
+    }
+}
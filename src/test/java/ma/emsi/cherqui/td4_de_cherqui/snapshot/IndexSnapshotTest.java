@@ -0,0 +1,55 @@
+package ma.emsi.cherqui.td4_de_cherqui.snapshot;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import ma.emsi.cherqui.td4_de_cherqui.ingestion.PersistentIngestor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private final EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+            .map(segment -> Embedding.from(new float[]{segment.text().length(), 1}))
+            .toList());
+
+    @Test
+    void secondStartIsRestoredFromTheSnapshot() throws IOException {
+        Path document = Files.writeString(dir.resolve("cours.txt"), "Le RAG ajoute des documents au prompt.");
+        Path indexDir = dir.resolve("index");
+
+        IndexSnapshot built = IndexSnapshot.loadOrBuild(document, indexDir, embeddingModel, "test", 500, 100);
+        IndexSnapshot restored = IndexSnapshot.loadOrBuild(document, indexDir, embeddingModel, "test", 500, 100);
+
+        assertFalse(built.restored());
+        assertTrue(restored.restored());
+        assertArrayEquals(built.centroid(), restored.centroid());
+    }
+
+    @Test
+    void failedSnapshotWriteKeepsTheBuiltState() throws IOException {
+        Path document = Files.writeString(dir.resolve("cours.txt"), "Le RAG ajoute des documents au prompt.");
+        Path indexDir = dir.resolve("index");
+        // Un répertoire non vide à la place du snapshot : le renommage final échoue
+        String key = PersistentIngestor.indexKey(document, "test", 500, 100);
+        Files.createDirectories(indexDir.resolve(key + ".snapshot").resolve("bloque"));
+
+        IndexSnapshot state = IndexSnapshot.loadOrBuild(document, indexDir, embeddingModel, "test", 500, 100);
+
+        assertFalse(state.restored());
+        assertFalse(state.store().search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{1, 1})).maxResults(1).build()).matches().isEmpty());
+    }
+}
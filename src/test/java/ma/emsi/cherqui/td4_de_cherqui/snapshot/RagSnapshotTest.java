@@ -0,0 +1,83 @@
+package ma.emsi.cherqui.td4_de_cherqui.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RagSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sectionsRoundTrip() {
+        Path file = dir.resolve("index.snapshot");
+        RagSnapshot.writer(file, "empreinte")
+                .section("a", out -> out.writeInt(42))
+                .section("b", out -> out.writeLong(7L))
+                .commit();
+
+        try (RagSnapshot snapshot = RagSnapshot.openIfCurrent(file, "empreinte")) {
+            assertNotNull(snapshot);
+            assertEquals(Set.of("a", "b"), snapshot.sections());
+            assertEquals(42, snapshot.section("a").getInt());
+            assertEquals(7L, snapshot.section("b").getLong());
+            // Sections alignées sur 64 octets
+            assertEquals(Integer.BYTES, snapshot.section("a").remaining());
+        }
+    }
+
+    @Test
+    void otherFingerprintOrTruncatedFileIsRejected() throws IOException {
+        Path file = dir.resolve("index.snapshot");
+        RagSnapshot.writer(file, "v1").section("a", out -> out.writeInt(1)).commit();
+
+        assertNull(RagSnapshot.openIfCurrent(file, "v2"));
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertNull(RagSnapshot.openIfCurrent(file, "v1"));
+    }
+
+    @Test
+    void failingSectionLeavesNoTemporaryFile() throws IOException {
+        Path file = dir.resolve("index.snapshot");
+        RagSnapshot.Writer writer = RagSnapshot.writer(file, "v1");
+
+        assertThrows(IllegalStateException.class, () -> writer.section("a", out -> {
+            out.writeInt(1);
+            throw new IllegalStateException("contenu invalide");
+        }));
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(), files.toList());
+        }
+    }
+
+    @Test
+    void missingSectionIsReported() {
+        Path file = dir.resolve("index.snapshot");
+        RagSnapshot.writer(file, "v1").section("a", out -> out.write(new byte[0])).commit();
+
+        try (RagSnapshot snapshot = RagSnapshot.open(file)) {
+            ByteBuffer empty = snapshot.section("a");
+            assertEquals(0, empty.remaining());
+            assertFalse(snapshot.has("b"));
+            assertThrows(IllegalArgumentException.class, () -> snapshot.section("b"));
+        }
+    }
+}
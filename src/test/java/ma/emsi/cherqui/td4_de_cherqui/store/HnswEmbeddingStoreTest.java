@@ -0,0 +1,150 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswEmbeddingStoreTest {
+
+    private static final int DIMENSION = 32;
+
+    private final Random random = new Random(5);
+
+    @Test
+    void recallAtTenIsCloseToBruteForce() {
+        List<Embedding> embeddings = randomEmbeddings(2_000);
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().m(8).efSearch(100).build();
+        List<String> ids = store.addAll(embeddings);
+
+        double recall = recall(store, embeddings, ids);
+        assertTrue(recall >= 0.9, "rappel@10 : " + recall);
+    }
+
+    @Test
+    void linkListsNeverExceedTheMaximumDegree() {
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().m(4).efConstruction(32).build();
+        store.addAll(randomEmbeddings(1_000));
+
+        assertTrue(store.maxDegree(0) <= 8);
+        assertTrue(store.maxDegree(1) <= 4);
+    }
+
+    @Test
+    void searchWidensUntilEnoughLiveResultsAreFound() {
+        List<Embedding> embeddings = randomEmbeddings(1_000);
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().m(8).efSearch(16).build();
+        List<String> ids = store.addAll(embeddings);
+        // 97 % de tombstones : la recherche doit aller bien au-delà de 2 × efSearch
+        store.removeAll(ids.subList(0, 970));
+
+        List<EmbeddingMatch<TextSegment>> matches = search(store, randomEmbeddings(1).get(0), 10);
+        assertEquals(10, matches.size());
+        Set<String> live = new HashSet<>(ids.subList(970, 1_000));
+        assertTrue(matches.stream().allMatch(match -> live.contains(match.embeddingId())));
+    }
+
+    @Test
+    void insertionsDuringSearchesKeepTheGraphUsable() throws Exception {
+        List<Embedding> embeddings = randomEmbeddings(2_000);
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().m(8).efSearch(100).build();
+        List<Embedding> queries = randomEmbeddings(20);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        List<String> ids = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(5)) {
+            List<Future<List<String>>> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                List<Embedding> part = embeddings.subList(w * 500, (w + 1) * 500);
+                writers.add(executor.submit(() -> store.addAll(part)));
+            }
+            Future<Integer> reader = executor.submit(() -> {
+                int searches = 0;
+                while (writing.get()) {
+                    List<EmbeddingMatch<TextSegment>> matches = search(store, queries.get(searches % 20), 5);
+                    assertTrue(matches.size() <= 5);
+                    for (int i = 1; i < matches.size(); i++) {
+                        assertTrue(matches.get(i - 1).score() >= matches.get(i).score());
+                    }
+                    searches++;
+                }
+                return searches;
+            });
+            for (Future<List<String>> writer : writers) {
+                ids.addAll(writer.get(60, TimeUnit.SECONDS));
+            }
+            writing.set(false);
+            assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+        }
+
+        assertEquals(2_000, store.size());
+        // Writers dans l'ordre : les ids suivent celui des embeddings
+        double recall = recall(store, embeddings, ids);
+        assertTrue(recall >= 0.9, "rappel@10 : " + recall);
+    }
+
+    private double recall(HnswEmbeddingStore store, List<Embedding> embeddings, List<String> ids) {
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            Embedding query = randomEmbeddings(1).get(0);
+            Set<String> expected = new HashSet<>();
+            IntStream.range(0, embeddings.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -cosine(query.vector(), embeddings.get(i).vector())))
+                    .limit(10)
+                    .forEach(i -> expected.add(ids.get(i)));
+            for (EmbeddingMatch<TextSegment> match : search(store, query, 10)) {
+                found += expected.contains(match.embeddingId()) ? 1 : 0;
+            }
+        }
+        return found / (10.0 * queries);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(HnswEmbeddingStore store, Embedding query, int maxResults) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(maxResults)
+                .build()).matches();
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private List<Embedding> randomEmbeddings(int count) {
+        List<Embedding> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            embeddings.add(Embedding.from(vector));
+        }
+        return embeddings;
+    }
+}
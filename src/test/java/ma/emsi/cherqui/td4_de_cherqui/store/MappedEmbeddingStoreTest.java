@@ -0,0 +1,121 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedEmbeddingStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void savedIndexIsReloadedWithSameIdsSegmentsAndScores() {
+        MappedEmbeddingStore store = MappedEmbeddingStore.open(dir, "index");
+        String first = store.add(Embedding.from(new float[]{1, 0, 0}),
+                TextSegment.from("premier", Metadata.from("index", "0")));
+        String second = store.add(Embedding.from(new float[]{0, 2, 0}), TextSegment.from("second"));
+        store.save();
+
+        MappedEmbeddingStore reloaded = MappedEmbeddingStore.open(dir, "index");
+        assertEquals(2, reloaded.size());
+        assertEquals(3, reloaded.dimension());
+        List<EmbeddingMatch<TextSegment>> matches = search(reloaded, new float[]{0, 1, 0}, 2);
+        assertEquals(second, matches.get(0).embeddingId());
+        assertEquals(1.0, matches.get(0).score(), 1e-6);
+        assertEquals(first, matches.get(1).embeddingId());
+        assertEquals("premier", matches.get(1).embedded().text());
+        assertEquals("0", matches.get(1).embedded().metadata().getString("index"));
+    }
+
+    @Test
+    void saveCompactsRemovedEntriesAndKeepsPendingOnes() {
+        MappedEmbeddingStore store = MappedEmbeddingStore.open(dir, "index");
+        String removed = store.add(Embedding.from(new float[]{1, 0}), TextSegment.from("supprimé"));
+        store.add(Embedding.from(new float[]{0, 1}), TextSegment.from("gardé"));
+        store.save();
+        store.remove(removed);
+        store.add(Embedding.from(new float[]{1, 1}), TextSegment.from("ajouté"));
+        store.save();
+
+        MappedEmbeddingStore reloaded = MappedEmbeddingStore.open(dir, "index");
+        List<String> texts = new ArrayList<>();
+        reloaded.forEach((id, segment) -> texts.add(segment.text()));
+        assertEquals(List.of("gardé", "ajouté"), texts);
+    }
+
+    @Test
+    void emptyIndexIsWrittenAndRecognizedAsComplete() {
+        assertFalse(MappedEmbeddingStore.exists(dir, "vide"));
+        MappedEmbeddingStore.open(dir, "vide").save();
+
+        assertTrue(MappedEmbeddingStore.exists(dir, "vide"));
+        assertTrue(MappedEmbeddingStore.open(dir, "vide").isEmpty());
+    }
+
+    @Test
+    void interruptedSaveIsDetectedAndTheIndexIsDiscarded() throws IOException {
+        MappedEmbeddingStore store = MappedEmbeddingStore.open(dir, "index");
+        String id = store.add(Embedding.from(new float[]{1, 0}), TextSegment.from("avant"));
+        store.save();
+        Path previousSegments = Files.copy(dir.resolve("index.seg"), dir.resolve("ancien.seg"));
+        store.replaceSegment(id, TextSegment.from("après"));
+        store.save();
+
+        // Arrêt entre les deux déplacements : nouveau .vec, ancien .seg (même nombre d'entrées)
+        Files.move(previousSegments, dir.resolve("index.seg"), StandardCopyOption.REPLACE_EXISTING);
+
+        MappedEmbeddingStore reopened = MappedEmbeddingStore.open(dir, "index");
+        assertTrue(reopened.isEmpty());
+        assertFalse(MappedEmbeddingStore.exists(dir, "index"));
+    }
+
+    @Test
+    void copyToPassesTheIdsAssignedByTheTarget() {
+        MappedEmbeddingStore store = MappedEmbeddingStore.open(dir, "index");
+        for (int i = 0; i < 1_000; i++) {
+            store.add(Embedding.from(oneHot(i, 1_000)), TextSegment.from("segment " + i));
+        }
+        PackedEmbeddingStore target = new PackedEmbeddingStore();
+        List<String> ids = new ArrayList<>();
+        store.copyTo(target, (id, segment) -> ids.add(id));
+
+        assertEquals(1_000, target.size());
+        assertEquals(1_000, ids.size());
+        EmbeddingMatch<TextSegment> best = search(target, oneHot(999, 1_000), 1).get(0);
+        assertTrue(ids.contains(best.embeddingId()));
+        assertNotNull(best.embedded());
+        assertEquals("segment 999", best.embedded().text());
+    }
+
+    private static float[] oneHot(int index, int dimension) {
+        float[] vector = new float[dimension];
+        vector[index] = 1;
+        return vector;
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(EmbeddingStore<TextSegment> store, float[] query,
+                                                            int maxResults) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(query))
+                .maxResults(maxResults)
+                .build()).matches();
+    }
+}
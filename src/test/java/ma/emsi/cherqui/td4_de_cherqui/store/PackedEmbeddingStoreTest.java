@@ -0,0 +1,141 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedEmbeddingStoreTest {
+
+    private static final int DIMENSION = 64;
+    private static final int COUNT = 500;
+
+    private final Random random = new Random(11);
+    private final List<Embedding> embeddings = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+
+    PackedEmbeddingStoreTest() {
+        for (int i = 0; i < COUNT; i++) {
+            embeddings.add(randomEmbedding());
+            segments.add(TextSegment.from("segment " + i));
+        }
+    }
+
+    @Test
+    void float32SearchMatchesBruteForce() {
+        PackedEmbeddingStore store = new PackedEmbeddingStore();
+        store.addAll(embeddings, segments);
+
+        for (int q = 0; q < 20; q++) {
+            Embedding query = randomEmbedding();
+            List<EmbeddingMatch<TextSegment>> matches = store.search(request(query, 10)).matches();
+            assertEquals(bruteForce(query, 10), texts(matches));
+            assertEquals(cosine(query.vector(), embeddings.get(index(matches.get(0))).vector()),
+                    2 * matches.get(0).score() - 1, 1e-5);
+        }
+    }
+
+    @Test
+    void int8ReRankKeepsTheExactScoresAndAHighRecall() {
+        PackedEmbeddingStore store = new PackedEmbeddingStore(PackedEmbeddingStore.Mode.INT8, 4);
+        store.addAll(embeddings, segments);
+
+        int found = 0;
+        for (int q = 0; q < 20; q++) {
+            Embedding query = randomEmbedding();
+            List<EmbeddingMatch<TextSegment>> matches = store.search(request(query, 10)).matches();
+            Set<String> expected = new HashSet<>(bruteForce(query, 10));
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                // Re-classement en pleine précision : le score est le cosinus exact
+                assertEquals(cosine(query.vector(), embeddings.get(index(match)).vector()),
+                        2 * match.score() - 1, 1e-5);
+                found += expected.contains(match.embedded().text()) ? 1 : 0;
+            }
+        }
+        assertTrue(found >= 190, "rappel@10 trop faible : " + found + "/200");
+    }
+
+    @Test
+    void int8WithAFullReRankIsExact() {
+        PackedEmbeddingStore store = new PackedEmbeddingStore(PackedEmbeddingStore.Mode.INT8, COUNT);
+        store.addAll(embeddings, segments);
+
+        Embedding query = randomEmbedding();
+        assertEquals(bruteForce(query, 1), texts(store.search(request(query, 1)).matches()));
+    }
+
+    @Test
+    void removedEntriesAreNotReturned() {
+        PackedEmbeddingStore store = new PackedEmbeddingStore(PackedEmbeddingStore.Mode.INT8, 4);
+        List<String> ids = store.addAll(embeddings, segments);
+        store.remove(ids.get(3));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(request(embeddings.get(3), 5)).matches();
+        assertEquals(COUNT - 1, store.size());
+        assertTrue(matches.stream().noneMatch(match -> match.embeddingId().equals(ids.get(3))));
+    }
+
+    @Test
+    void int8FootprintIncludesTheFloatsKeptForReRanking() {
+        PackedEmbeddingStore float32 = new PackedEmbeddingStore();
+        PackedEmbeddingStore int8 = new PackedEmbeddingStore(PackedEmbeddingStore.Mode.INT8, 4);
+        float32.addAll(embeddings, segments);
+        int8.addAll(embeddings, segments);
+
+        assertEquals(DIMENSION * Float.BYTES, float32.bytesPerVector());
+        assertEquals(DIMENSION * Float.BYTES + DIMENSION + Float.BYTES, int8.bytesPerVector());
+        assertEquals(DIMENSION + Float.BYTES, int8.scannedBytesPerVector());
+    }
+
+    private List<String> bruteForce(Embedding query, int k) {
+        return IntStream.range(0, COUNT).boxed()
+                .sorted(Comparator.comparingDouble(i -> -cosine(query.vector(), embeddings.get(i).vector())))
+                .limit(k)
+                .map(i -> segments.get(i).text())
+                .toList();
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static int index(EmbeddingMatch<TextSegment> match) {
+        return Integer.parseInt(match.embedded().text().substring("segment ".length()));
+    }
+
+    private static EmbeddingSearchRequest request(Embedding query, int maxResults) {
+        return EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(maxResults).build();
+    }
+
+    private static List<String> texts(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(match -> match.embedded().text()).toList();
+    }
+
+    private Embedding randomEmbedding() {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return Embedding.from(vector);
+    }
+}
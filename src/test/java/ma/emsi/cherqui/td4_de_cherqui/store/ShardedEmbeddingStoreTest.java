@@ -0,0 +1,73 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShardedEmbeddingStoreTest {
+
+    @Test
+    void parallelSearchMatchesASingleStore() {
+        PackedEmbeddingStore single = new PackedEmbeddingStore();
+        ShardedEmbeddingStore sharded = ShardedEmbeddingStore.builder()
+                .shards(4)
+                .pool(ForkJoinPool.commonPool())
+                .build();
+        Random random = new Random(42);
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            float[] vector = new float[16];
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            embeddings.add(Embedding.from(vector));
+            segments.add(TextSegment.from("segment " + i));
+        }
+        single.addAll(embeddings, segments);
+        sharded.addAll(embeddings, segments);
+
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embeddings.get(7))
+                .maxResults(10)
+                .build();
+        assertEquals(texts(single.search(request).matches()), texts(sharded.search(request).matches()));
+    }
+
+    @Test
+    void entriesWithoutSegmentAreSearchableAndRemovable() {
+        ShardedEmbeddingStore sharded = ShardedEmbeddingStore.builder().shards(4).build();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String id = "id-" + i;
+            sharded.add(id, Embedding.from(new float[]{1, i}));
+            ids.add(id);
+        }
+
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{1, 0}))
+                .maxResults(3)
+                .build();
+        assertEquals(List.of("id-0", "id-1", "id-2"), ids(sharded.search(request).matches()));
+
+        sharded.removeAll(ids.subList(0, 2));
+        assertEquals(List.of("id-2", "id-3", "id-4"), ids(sharded.search(request).matches()));
+    }
+
+    private static List<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+
+    private static List<String> texts(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(match -> match.embedded().text()).toList();
+    }
+}
@@ -0,0 +1,63 @@
+package ma.emsi.cherqui.td4_de_cherqui.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorKernelsTest {
+
+    private final Random random = new Random(3);
+
+    @Test
+    void simdIsEnabledByTheTestRun() {
+        // surefire lance la JVM avec --add-modules jdk.incubator.vector
+        assertTrue(VectorKernels.SIMD);
+    }
+
+    @Test
+    void floatDotMatchesTheScalarLoopForEveryLengthAndOffset() {
+        for (int length = 0; length <= 70; length++) {
+            float[] a = floats(length);
+            float[] b = floats(length + 5);
+            for (int offset = 0; offset <= 5; offset++) {
+                float expected = 0;
+                for (int i = 0; i < length; i++) {
+                    expected += a[i] * b[offset + i];
+                }
+                assertEquals(expected, VectorKernels.dot(a, b, offset), 1e-4f * Math.max(1, length));
+            }
+        }
+    }
+
+    @Test
+    void byteDotMatchesTheScalarLoopForEveryLengthAndOffset() {
+        for (int length = 0; length <= 140; length++) {
+            byte[] a = bytes(length);
+            byte[] b = bytes(length + 5);
+            for (int offset = 0; offset <= 5; offset++) {
+                int expected = 0;
+                for (int i = 0; i < length; i++) {
+                    expected += a[i] * b[offset + i];
+                }
+                assertEquals(expected, VectorKernels.dot(a, b, offset));
+            }
+        }
+    }
+
+    private float[] floats(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    private byte[] bytes(int length) {
+        byte[] values = new byte[length];
+        random.nextBytes(values);
+        return values;
+    }
+}